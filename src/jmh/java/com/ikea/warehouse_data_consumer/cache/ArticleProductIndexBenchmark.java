@@ -0,0 +1,93 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import com.ikea.warehouse_data_consumer.cache.ArticleProductIndex.Snapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebuild time and fan-out latency of the artId to products index for a catalog of products, each requiring
+ * articlesPerProduct articles drawn uniformly from articles. The Mongo scan of a real rebuild is not included.
+ *
+ * The estimated footprint of the built index is printed after each fork; compare it with a heap histogram
+ * (-prof gc, or jcmd GC.class_histogram on the fork) when sizing the consumer's heap.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx4g"})
+public class ArticleProductIndexBenchmark {
+
+    private static final int INVENTORY_BATCH_SIZE = 500;
+
+    @Param({"100000", "1000000"})
+    private int products;
+
+    @Param({"100000"})
+    private int articles;
+
+    @Param({"4"})
+    private int articlesPerProduct;
+
+    private List<ProductRequirements> catalog;
+    private List<List<String>> inventoryBatches;
+    private Snapshot snapshot;
+    private int nextBatch;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        catalog = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            Map<String, Long> requiredAmounts = new TreeMap<>();
+            while (requiredAmounts.size() < articlesPerProduct) {
+                requiredAmounts.put(String.valueOf(random.nextInt(articles)), 1L + random.nextInt(8));
+            }
+            catalog.add(new ProductRequirements("product-name-" + i, 1L, requiredAmounts));
+        }
+        inventoryBatches = new ArrayList<>();
+        for (int b = 0; b < 64; b++) {
+            List<String> batch = new ArrayList<>(INVENTORY_BATCH_SIZE);
+            for (int i = 0; i < INVENTORY_BATCH_SIZE; i++) {
+                batch.add(String.valueOf(random.nextInt(articles)));
+            }
+            inventoryBatches.add(batch);
+        }
+        snapshot = build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.printf("products=%d, articles=%d, estimatedBytes=%d (%.1f bytes/product)%n",
+                snapshot.productCount(), snapshot.articleCount(), snapshot.estimatedBytes(),
+                (double) snapshot.estimatedBytes() / snapshot.productCount());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object rebuild() {
+        return build();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<ProductRequirements> fanOutInventoryBatch() {
+        List<String> batch = inventoryBatches.get(nextBatch++ & 63);
+        return snapshot.dependents(batch);
+    }
+
+    private Snapshot build() {
+        Snapshot built = new Snapshot();
+        for (ProductRequirements product : catalog) {
+            built.put(product);
+        }
+        return built;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.config.kafka.ListenerExecutionProperties.ExecutionMode;
+import com.ikea.warehouse_data_consumer.data.dto.BulkWriteOutcome;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for every listener container to write one polled batch when each bulkWrite blocks for writeLatencyMillis,
+ * with the containers on platform threads (today's mode) or on virtual threads. Each batch is written as
+ * subPartitions key-ordered sub-batches by the KeyPartitionedBulkExecutor, the way the services do it.
+ *
+ * listeners stands for the total listener concurrency of the instance: in PLATFORM mode every listener holds an OS
+ * thread for the whole batch, in VIRTUAL mode it only holds a carrier while it is not blocked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ListenerExecutionBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"PLATFORM", "VIRTUAL"})
+    private ExecutionMode mode;
+
+    @Param({"16", "256", "1024"})
+    private int listeners;
+
+    @Param({"1", "8"})
+    private int subPartitions;
+
+    @Param({"5"})
+    private long writeLatencyMillis;
+
+    private List<String> batch;
+    private ThreadFactory threadFactory;
+    private KeyPartitionedBulkExecutor keyPartitionedBulkExecutor;
+
+    @Setup
+    public void setUp() {
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(String.valueOf(i));
+        }
+        threadFactory = mode.threadFactory("benchmark-listener-");
+        keyPartitionedBulkExecutor = new KeyPartitionedBulkExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyPartitionedBulkExecutor.destroy();
+    }
+
+    @Benchmark
+    public void writeOneBatchPerListener() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(listeners);
+        for (int i = 0; i < listeners; i++) {
+            Thread thread = threadFactory.newThread(() ->
+                    keyPartitionedBulkExecutor.execute(batch, key -> key, subPartitions, this::blockingWrite));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private BulkWriteOutcome<String> blockingWrite(List<String> subBatch) {
+        try {
+            Thread.sleep(writeLatencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return BulkWriteOutcome.applied();
+    }
+}
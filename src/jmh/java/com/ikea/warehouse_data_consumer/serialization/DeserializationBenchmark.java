@@ -0,0 +1,121 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.dto.ArticleAmount;
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.ikea.warehouse_data_consumer.serialization.StreamingEventDeserializer.CONTENT_TYPE_HEADER;
+
+/**
+ * Cost of decoding one polled batch of update event payloads: the streaming JSON deserializers, Spring's
+ * JsonDeserializer (the previous value deserializer) as baseline, and the compact binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class DeserializationBenchmark {
+
+    private static final String TOPIC = "benchmark";
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    private int batchSize;
+
+    private List<byte[]> inventoryJson;
+    private List<byte[]> inventoryBinary;
+    private List<byte[]> productJson;
+    private List<byte[]> productBinary;
+    private Headers binaryHeaders;
+
+    private InventoryUpdateEventDeserializer inventoryDeserializer;
+    private ProductUpdateEventDeserializer productDeserializer;
+    private JsonDeserializer<InventoryUpdateEvent> inventoryJsonDeserializer;
+    private JsonDeserializer<ProductUpdateEvent> productJsonDeserializer;
+
+    @Setup
+    public void setUp() {
+        InventoryUpdateEventBinaryCodec inventoryCodec = new InventoryUpdateEventBinaryCodec();
+        ProductUpdateEventBinaryCodec productCodec = new ProductUpdateEventBinaryCodec();
+        Instant now = Instant.parse("2024-01-01T10:00:00.123Z");
+
+        inventoryJson = new ArrayList<>(batchSize);
+        inventoryBinary = new ArrayList<>(batchSize);
+        productJson = new ArrayList<>(batchSize);
+        productBinary = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            inventoryJson.add(("{\"artId\":\"" + i + "\",\"name\":\"article-" + i + "\",\"stock\":" + i
+                    + ",\"fileCreatedAt\":\"" + now + "\"}").getBytes(StandardCharsets.UTF_8));
+            inventoryBinary.add(inventoryCodec.encode(new InventoryUpdateEvent(String.valueOf(i), "article-" + i, (long) i, now)));
+
+            productJson.add(("{\"name\":\"product-" + i + "\",\"containArticles\":[{\"art_id\":\"" + i
+                    + "\",\"amount_of\":4},{\"art_id\":\"" + (i + 1) + "\",\"amount_of\":1}],\"fileCreatedAt\":\""
+                    + now + "\"}").getBytes(StandardCharsets.UTF_8));
+            productBinary.add(productCodec.encode(new ProductUpdateEvent("product-" + i,
+                    List.of(new ArticleAmount(String.valueOf(i), 4L), new ArticleAmount(String.valueOf(i + 1), 1L)),
+                    now)));
+        }
+
+        binaryHeaders = new RecordHeaders();
+        binaryHeaders.add(CONTENT_TYPE_HEADER, CompactBinaryCodec.CONTENT_TYPE.getBytes(StandardCharsets.UTF_8));
+
+        inventoryDeserializer = new InventoryUpdateEventDeserializer();
+        productDeserializer = new ProductUpdateEventDeserializer();
+        inventoryJsonDeserializer = new JsonDeserializer<>(InventoryUpdateEvent.class, false);
+        productJsonDeserializer = new JsonDeserializer<>(ProductUpdateEvent.class, false);
+    }
+
+    @Benchmark
+    public void inventoryStreamingJson(Blackhole blackhole) {
+        for (byte[] payload : inventoryJson) {
+            blackhole.consume(inventoryDeserializer.deserialize(TOPIC, payload));
+        }
+    }
+
+    @Benchmark
+    public void inventorySpringJson(Blackhole blackhole) {
+        for (byte[] payload : inventoryJson) {
+            blackhole.consume(inventoryJsonDeserializer.deserialize(TOPIC, payload));
+        }
+    }
+
+    @Benchmark
+    public void inventoryBinary(Blackhole blackhole) {
+        for (byte[] payload : inventoryBinary) {
+            blackhole.consume(inventoryDeserializer.deserialize(TOPIC, binaryHeaders, payload));
+        }
+    }
+
+    @Benchmark
+    public void productStreamingJson(Blackhole blackhole) {
+        for (byte[] payload : productJson) {
+            blackhole.consume(productDeserializer.deserialize(TOPIC, payload));
+        }
+    }
+
+    @Benchmark
+    public void productSpringJson(Blackhole blackhole) {
+        for (byte[] payload : productJson) {
+            blackhole.consume(productJsonDeserializer.deserialize(TOPIC, payload));
+        }
+    }
+
+    @Benchmark
+    public void productBinary(Blackhole blackhole) {
+        for (byte[] payload : productBinary) {
+            blackhole.consume(productDeserializer.deserialize(TOPIC, binaryHeaders, payload));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.builder.InventoryBulkOperationBuilder;
+import com.ikea.warehouse_data_consumer.cache.ArticleVersionCache;
+import com.ikea.warehouse_data_consumer.cache.VersionWatermark;
+import com.ikea.warehouse_data_consumer.concurrent.ArticleChunkSizer;
+import com.ikea.warehouse_data_consumer.concurrent.KeyPartitionedBulkExecutor;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.CircuitBreakerProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties.WriteMode;
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a batch of inventory update events into Mongo write models, per write mode.
+ * Every key has a cached version, so the versioned path never reaches the (absent) collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class InventoryBulkOperationBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    private int batchSize;
+
+    private List<InventoryUpdateEvent> events;
+    private Map<String, VersionWatermark> watermarks;
+    private InventoryBulkOperationBuilder builder;
+    private InventoryService inventoryService;
+    private KeyPartitionedBulkExecutor keyPartitionedBulkExecutor;
+
+    @Setup
+    public void setUp() {
+        Instant now = Instant.now();
+        events = new ArrayList<>(batchSize);
+        watermarks = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            String artId = String.valueOf(i);
+            events.add(new InventoryUpdateEvent(artId, "article-" + i, (long) i, now));
+            watermarks.put(artId, new VersionWatermark((long) i, now.minusSeconds(60)));
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        builder = new InventoryBulkOperationBuilder();
+        keyPartitionedBulkExecutor = new KeyPartitionedBulkExecutor();
+        inventoryService = new InventoryService(null,
+                new MongoWriteProperties(WriteMode.VERSIONED, 1),
+                keyPartitionedBulkExecutor,
+                new ArticleVersionCache(new VersionCacheProperties(false, 1), meterRegistry),
+                meterRegistry,
+                new ConsumerMetrics(meterRegistry),
+                new ArticleChunkSizer(new ChunkSizeProperties(false, 1, 1, 1, Duration.ofMillis(200), 1, 0.5), meterRegistry),
+                new MongoCircuitBreaker(new CircuitBreakerProperties(false, 1, Duration.ofSeconds(30), 1), meterRegistry),
+                null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyPartitionedBulkExecutor.destroy();
+    }
+
+    @Benchmark
+    public List<WriteModel<Document>> builder() {
+        return builder.build(events);
+    }
+
+    @Benchmark
+    public List<WriteModel<Document>> versioned() {
+        return inventoryService.buildVersionedOperations(null, events, watermarks, new HashMap<>(), Map.of());
+    }
+
+    @Benchmark
+    public List<WriteModel<Document>> conditional() {
+        return inventoryService.buildConditionalOperations(events, Map.of());
+    }
+}
@@ -0,0 +1,100 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.builder.ProductBulkOperationBuilder;
+import com.ikea.warehouse_data_consumer.cache.ProductVersionCache;
+import com.ikea.warehouse_data_consumer.cache.VersionWatermark;
+import com.ikea.warehouse_data_consumer.concurrent.ProductChunkSizer;
+import com.ikea.warehouse_data_consumer.concurrent.KeyPartitionedBulkExecutor;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.CircuitBreakerProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties.WriteMode;
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
+import com.ikea.warehouse_data_consumer.data.dto.ArticleAmount;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a batch of product update events into Mongo write models, per write mode.
+ * Every product name has a cached version, so the versioned path never reaches the (absent) collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ProductBulkOperationBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    private int batchSize;
+
+    private List<ProductUpdateEvent> events;
+    private Map<String, VersionWatermark> watermarks;
+    private ProductBulkOperationBuilder builder;
+    private ProductService productService;
+    private KeyPartitionedBulkExecutor keyPartitionedBulkExecutor;
+
+    @Setup
+    public void setUp() {
+        Instant now = Instant.now();
+        events = new ArrayList<>(batchSize);
+        watermarks = new HashMap<>();
+        for (int i = 0; i < batchSize; i++) {
+            String name = "product-" + i;
+            events.add(ProductUpdateEvent.builder()
+                    .name(name)
+                    .containArticles(List.of(new ArticleAmount(String.valueOf(i), 4L),
+                            new ArticleAmount(String.valueOf(i + 1), 1L)))
+                    .fileCreatedAt(now)
+                    .build());
+            watermarks.put(name, new VersionWatermark((long) i, now.minusSeconds(60)));
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        builder = new ProductBulkOperationBuilder();
+        keyPartitionedBulkExecutor = new KeyPartitionedBulkExecutor();
+        productService = new ProductService(null,
+                new MongoWriteProperties(WriteMode.VERSIONED, 1),
+                keyPartitionedBulkExecutor,
+                new ProductVersionCache(new VersionCacheProperties(false, 1), meterRegistry),
+                meterRegistry,
+                new ConsumerMetrics(meterRegistry),
+                new ProductChunkSizer(new ChunkSizeProperties(false, 1, 1, 1, Duration.ofMillis(200), 1, 0.5), meterRegistry),
+                new MongoCircuitBreaker(new CircuitBreakerProperties(false, 1, Duration.ofSeconds(30), 1), meterRegistry),
+                null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        keyPartitionedBulkExecutor.destroy();
+    }
+
+    @Benchmark
+    public List<WriteModel<Document>> builder() {
+        return builder.build(events);
+    }
+
+    @Benchmark
+    public List<WriteModel<Document>> versioned() {
+        return productService.buildVersionedOperations(null, events, watermarks, new HashMap<>(), Map.of());
+    }
+
+    @Benchmark
+    public List<WriteModel<Document>> conditional() {
+        return productService.buildConditionalOperations(events, Map.of());
+    }
+}
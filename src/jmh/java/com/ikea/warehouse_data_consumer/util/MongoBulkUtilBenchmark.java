@@ -0,0 +1,60 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.BsonString;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the operations of a batch whose bulk write outcome needs a read-back, for a fully matched batch, a
+ * batch where every other operation was an upsert and a batch where every other operation matched nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class MongoBulkUtilBenchmark {
+
+    @Param({"1", "10", "100", "1000", "5000"})
+    private int batchSize;
+
+    private BulkWriteResult allMatched;
+    private BulkWriteResult halfUpserted;
+    private BulkWriteResult halfNotMatched;
+
+    @Setup
+    public void setUp() {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            if (i % 2 == 0) {
+                upserts.add(new BulkWriteUpsert(i, new BsonString(String.valueOf(i))));
+            }
+        }
+        int half = batchSize / 2;
+
+        allMatched = BulkWriteResult.acknowledged(0, batchSize, 0, batchSize, List.of(), List.of());
+        halfUpserted = BulkWriteResult.acknowledged(0, half, 0, half, upserts, List.of());
+        halfNotMatched = BulkWriteResult.acknowledged(0, half, 0, half, List.of(), List.of());
+    }
+
+    @Benchmark
+    public List<Integer> allMatched() {
+        return MongoBulkUtil.getAmbiguousIndexes(batchSize, allMatched, List.of());
+    }
+
+    @Benchmark
+    public List<Integer> halfUpserted() {
+        return MongoBulkUtil.getAmbiguousIndexes(batchSize, halfUpserted, List.of());
+    }
+
+    @Benchmark
+    public List<Integer> halfNotMatched() {
+        return MongoBulkUtil.getAmbiguousIndexes(batchSize, halfNotMatched, List.of());
+    }
+}
@@ -0,0 +1,389 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import com.ikea.warehouse_data_consumer.config.mongo.AvailabilityProperties;
+import com.ikea.warehouse_data_consumer.data.document.ProductDocument;
+import com.mongodb.client.model.Projections;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process reverse index from artId to the products requiring it, so that the product availability of a whole
+ * inventory batch is fanned out without querying products.containArticles.
+ *
+ * Products and articles are numbered by ordinal and stored in primitive arrays: per product its version and the
+ * ordinals and amounts of its articles, per article the ordinals of its products. Only the name lookup tables hold
+ * objects, which keeps the footprint at about 250 bytes per product with four articles (see {@link #estimatedBytes()}).
+ *
+ * The index is built from the products collection on a background thread at startup and rebuilt every
+ * reverseIndexRefresh, which picks up products written by other instances. In between, ProductAvailabilityService
+ * puts every product it reads after a ProductService write. A product is only replaced by the same or a newer version.
+ */
+@Slf4j
+@Component
+public class ArticleProductIndex implements InitializingBean, DisposableBean {
+
+    public static final String PRODUCTS_METRIC = "warehouse.consumer.availability.index.products";
+    public static final String BYTES_METRIC = "warehouse.consumer.availability.index.bytes";
+    public static final String REBUILD_METRIC = "warehouse.consumer.availability.index.rebuild";
+
+    private static final int REBUILD_BATCH_SIZE = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final AvailabilityProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("article-product-index-", 0).factory());
+
+    private Snapshot snapshot = new Snapshot();
+    // Puts made while a rebuild scans the collection; replayed onto the rebuilt snapshot. Guarded by the lock.
+    private List<ProductRequirements> putsDuringRebuild;
+    private volatile boolean ready;
+
+    public ArticleProductIndex(MongoTemplate mongoTemplate, AvailabilityProperties properties, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        if (isEnabled()) {
+            Gauge.builder(PRODUCTS_METRIC, this, ArticleProductIndex::productCount)
+                    .description("Products in the in-process artId to products index")
+                    .register(meterRegistry);
+            Gauge.builder(BYTES_METRIC, this, ArticleProductIndex::estimatedBytes)
+                    .baseUnit("bytes")
+                    .description("Estimated heap footprint of the in-process artId to products index")
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) {
+            return;
+        }
+        scheduler.execute(this::rebuildSafely);
+        long refreshMillis = properties.reverseIndexRefresh().toMillis();
+        if (refreshMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::rebuildSafely, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled() && properties.reverseIndex();
+    }
+
+    /**
+     * @return true once the first build completed; until then dependents must be queried from Mongo
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Adds or replaces a product unless the index already holds a newer version of it.
+     */
+    public void put(ProductRequirements product) {
+        if (!isEnabled() || product.name() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            snapshot.put(product);
+            if (putsDuringRebuild != null) {
+                putsDuringRebuild.add(product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Fans a batch of artIds out to the products requiring any of them, each product once with all its requirements.
+     */
+    public List<ProductRequirements> dependents(Collection<String> artIds) {
+        lock.readLock().lock();
+        try {
+            return snapshot.dependents(artIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the products collection. Puts made meanwhile are replayed onto the new index, so a
+     * product written during the scan is not lost when the scan read it before the write.
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            putsDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Snapshot rebuilt = new Snapshot();
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(ProductDocument.class))
+                    .find()
+                    .projection(Projections.include("name", "containArticles", "version"))
+                    .batchSize(REBUILD_BATCH_SIZE)
+                    .forEach(product -> rebuilt.put(toRequirements(product)));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                putsDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            putsDuringRebuild.forEach(rebuilt::put);
+            putsDuringRebuild = null;
+            snapshot = rebuilt;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long nanos = sample.stop(meterRegistry.timer(REBUILD_METRIC));
+        log.info("Rebuilt artId to products index; products={}, articles={}, estimatedBytes={}, took={}ms",
+                rebuilt.productCount(), rebuilt.articleCount(), rebuilt.estimatedBytes(),
+                TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    public int productCount() {
+        lock.readLock().lock();
+        try {
+            return snapshot.productCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Heap held by the index, estimated from its array lengths and typical object sizes of a 64-bit JVM with
+     * compressed oops; the products and articles lookup tables are counted at 64 bytes per entry plus the key.
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return snapshot.estimatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Reads the requirements of a product document as written by ProductService.
+     */
+    public static ProductRequirements toRequirements(Document product) {
+        Map<String, Long> amounts = new TreeMap<>();
+        List<Document> containArticles = product.getList("containArticles", Document.class, List.of());
+        for (Document containArticle : containArticles) {
+            String artId = containArticle.getString("artId");
+            long amountOf = containArticle.get("amountOf") instanceof Number number ? number.longValue() : 0L;
+            if (artId != null && amountOf > 0) {
+                amounts.merge(artId, amountOf, Long::sum);
+            }
+        }
+        long version = product.get("version") instanceof Number number ? number.longValue() : 0L;
+        return new ProductRequirements(product.getString("name"), version, amounts);
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild the artId to products index; keeping the current one, ready={}", ready, e);
+        }
+    }
+
+    /**
+     * The index data; not thread-safe.
+     */
+    static final class Snapshot {
+
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final long LOOKUP_ENTRY_BYTES = 64;
+
+        private final Map<String, Integer> productOrdinals = new HashMap<>();
+        private String[] productNames = new String[INITIAL_CAPACITY];
+        private long[] productVersions = new long[INITIAL_CAPACITY];
+        private int[][] productArticles = new int[INITIAL_CAPACITY][];
+        private int[][] productAmounts = new int[INITIAL_CAPACITY][];
+        private int productCount;
+
+        private final Map<String, Integer> articleOrdinals = new HashMap<>();
+        private String[] articleIds = new String[INITIAL_CAPACITY];
+        private int[][] postings = new int[INITIAL_CAPACITY][];
+        private int[] postingSizes = new int[INITIAL_CAPACITY];
+        private int articleCount;
+
+        void put(ProductRequirements product) {
+            Integer ordinal = productOrdinals.get(product.name());
+            if (ordinal == null) {
+                ordinal = productCount++;
+                ensureProductCapacity(productCount);
+                productOrdinals.put(product.name(), ordinal);
+                productNames[ordinal] = product.name();
+            } else if (productVersions[ordinal] > product.version()) {
+                return;
+            } else {
+                for (int article : productArticles[ordinal]) {
+                    removePosting(article, ordinal);
+                }
+            }
+
+            int[] articles = new int[product.requiredAmounts().size()];
+            int[] amounts = new int[articles.length];
+            int i = 0;
+            for (Map.Entry<String, Long> required : product.requiredAmounts().entrySet()) {
+                articles[i] = articleOrdinal(required.getKey());
+                amounts[i] = (int) Math.min(required.getValue(), Integer.MAX_VALUE);
+                addPosting(articles[i], ordinal);
+                i++;
+            }
+            productVersions[ordinal] = product.version();
+            productArticles[ordinal] = articles;
+            productAmounts[ordinal] = amounts;
+        }
+
+        List<ProductRequirements> dependents(Collection<String> artIds) {
+            BitSet seen = new BitSet(productCount);
+            List<ProductRequirements> dependents = new ArrayList<>();
+            for (String artId : artIds) {
+                Integer article = articleOrdinals.get(artId);
+                if (article == null) {
+                    continue;
+                }
+                int[] products = postings[article];
+                for (int i = 0; i < postingSizes[article]; i++) {
+                    int product = products[i];
+                    if (!seen.get(product)) {
+                        seen.set(product);
+                        dependents.add(requirements(product));
+                    }
+                }
+            }
+            return dependents;
+        }
+
+        int productCount() {
+            return productCount;
+        }
+
+        int articleCount() {
+            return articleCount;
+        }
+
+        long estimatedBytes() {
+            long bytes = 0;
+            // per-ordinal arrays: names, versions, the two requirement references, article ids, postings, sizes
+            bytes += array(productNames.length, 4) + array(productVersions.length, 8)
+                    + 2 * array(productArticles.length, 4);
+            bytes += array(articleIds.length, 4) + array(postings.length, 4) + array(postingSizes.length, 4);
+            for (int i = 0; i < productCount; i++) {
+                bytes += string(productNames[i]) + LOOKUP_ENTRY_BYTES;
+                bytes += array(productArticles[i].length, 4) + array(productAmounts[i].length, 4);
+            }
+            for (int i = 0; i < articleCount; i++) {
+                bytes += string(articleIds[i]) + LOOKUP_ENTRY_BYTES + array(postings[i].length, 4);
+            }
+            return bytes;
+        }
+
+        private ProductRequirements requirements(int product) {
+            int[] articles = productArticles[product];
+            Map<String, Long> requiredAmounts = new TreeMap<>();
+            for (int i = 0; i < articles.length; i++) {
+                requiredAmounts.put(articleIds[articles[i]], (long) productAmounts[product][i]);
+            }
+            return new ProductRequirements(productNames[product], productVersions[product], requiredAmounts);
+        }
+
+        private int articleOrdinal(String artId) {
+            Integer ordinal = articleOrdinals.get(artId);
+            if (ordinal != null) {
+                return ordinal;
+            }
+            int article = articleCount++;
+            if (articleCount > articleIds.length) {
+                int capacity = articleIds.length * 2;
+                articleIds = Arrays.copyOf(articleIds, capacity);
+                postings = Arrays.copyOf(postings, capacity);
+                postingSizes = Arrays.copyOf(postingSizes, capacity);
+            }
+            articleOrdinals.put(artId, article);
+            articleIds[article] = artId;
+            postings[article] = new int[4];
+            return article;
+        }
+
+        private void addPosting(int article, int product) {
+            int size = postingSizes[article];
+            if (size == postings[article].length) {
+                postings[article] = Arrays.copyOf(postings[article], size + (size >> 1) + 1);
+            }
+            postings[article][size] = product;
+            postingSizes[article] = size + 1;
+        }
+
+        private void removePosting(int article, int product) {
+            int[] products = postings[article];
+            int size = postingSizes[article];
+            for (int i = 0; i < size; i++) {
+                if (products[i] == product) {
+                    // Order within a posting list does not matter; move the last one into the gap.
+                    products[i] = products[size - 1];
+                    postingSizes[article] = size - 1;
+                    return;
+                }
+            }
+        }
+
+        private void ensureProductCapacity(int capacity) {
+            if (capacity <= productNames.length) {
+                return;
+            }
+            int grown = productNames.length * 2;
+            productNames = Arrays.copyOf(productNames, grown);
+            productVersions = Arrays.copyOf(productVersions, grown);
+            productArticles = Arrays.copyOf(productArticles, grown);
+            productAmounts = Arrays.copyOf(productAmounts, grown);
+        }
+
+        private static long array(int length, int elementBytes) {
+            return align(16 + (long) length * elementBytes);
+        }
+
+        private static long string(String value) {
+            // String object plus its Latin-1 byte array
+            return 24 + align(16 + value.length());
+        }
+
+        private static long align(long bytes) {
+            return (bytes + 7) & ~7L;
+        }
+    }
+}
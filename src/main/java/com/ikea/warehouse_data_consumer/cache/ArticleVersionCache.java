@@ -0,0 +1,16 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Version/watermark cache for the articles collection, keyed by artId.
+ */
+@Component
+public class ArticleVersionCache extends VersionWatermarkCache {
+
+    public ArticleVersionCache(VersionCacheProperties properties, MeterRegistry meterRegistry) {
+        super("articleVersions", properties, meterRegistry);
+    }
+}
@@ -0,0 +1,12 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import java.util.Map;
+
+/**
+ * The articles a product requires, as the product availability is computed from them.
+ *
+ * @param name the product name
+ * @param version the product version the requirements were read at
+ * @param requiredAmounts required amount per artId, repeated articles added up; only positive amounts
+ */
+public record ProductRequirements(String name, long version, Map<String, Long> requiredAmounts) {}
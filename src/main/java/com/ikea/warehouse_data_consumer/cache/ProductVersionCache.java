@@ -0,0 +1,16 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Version/watermark cache for the products collection, keyed by product name.
+ */
+@Component
+public class ProductVersionCache extends VersionWatermarkCache {
+
+    public ProductVersionCache(VersionCacheProperties properties, MeterRegistry meterRegistry) {
+        super("productVersions", properties, meterRegistry);
+    }
+}
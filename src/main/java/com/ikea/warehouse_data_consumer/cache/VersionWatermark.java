@@ -0,0 +1,31 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import java.time.Instant;
+
+/**
+ * Last known state of a document as applied by this consumer.
+ *
+ * @param version last applied optimistic lock version, or null when it is not known precisely
+ * @param fileCreatedAt fileCreatedAt of the last applied event; a lower bound of the stored value
+ * @param lastMessageId id of the Kafka message that last applied the document, or null when it is not known
+ */
+public record VersionWatermark(Long version, Instant fileCreatedAt, String lastMessageId) {
+
+    public VersionWatermark(Long version, Instant fileCreatedAt) {
+        this(version, fileCreatedAt, null);
+    }
+
+    /**
+     * An event is stale when it is not newer than the watermark; the fileCreatedAt guard would reject it anyway.
+     */
+    public boolean isNotOlderThan(Instant eventFileCreatedAt) {
+        return fileCreatedAt != null && eventFileCreatedAt != null && !eventFileCreatedAt.isAfter(fileCreatedAt);
+    }
+
+    /**
+     * A message is a duplicate when it is the one that last applied the document, e.g. a replay after a rebalance.
+     */
+    public boolean isAppliedBy(String messageId) {
+        return messageId != null && messageId.equals(lastMessageId);
+    }
+}
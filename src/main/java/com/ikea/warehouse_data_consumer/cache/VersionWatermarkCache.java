@@ -0,0 +1,84 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Size-bounded cache of {@link VersionWatermark} per document key, kept up to date from bulk write results.
+ * Eviction follows Caffeine's size policy (W-TinyLFU), which favours frequently written keys over merely recent ones.
+ * Hit, miss, put and eviction counts are published as cache.* meters tagged with the cache name.
+ *
+ * The lastMessageId of the entries makes the cache the recently-applied set of the message id deduplication: a
+ * replayed message whose id is the one that last applied its key is dropped before any Mongo work.
+ *
+ * Inside a Mongo transaction (exactly-once batches) a put only takes effect once the transaction committed; a
+ * watermark of a rolled back write would otherwise reject the rerun of the same events as stale.
+ */
+public abstract class VersionWatermarkCache {
+
+    private final boolean enabled;
+    private final Cache<String, VersionWatermark> cache;
+
+    protected VersionWatermarkCache(String cacheName, VersionCacheProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public VersionWatermark get(String key) {
+        return enabled ? cache.getIfPresent(key) : null;
+    }
+
+    public Map<String, VersionWatermark> getAll(Collection<String> keys) {
+        return enabled ? cache.getAllPresent(keys) : Map.of();
+    }
+
+    public void put(String key, Long version, Instant fileCreatedAt) {
+        put(key, version, fileCreatedAt, null);
+    }
+
+    public void put(String key, Long version, Instant fileCreatedAt, String lastMessageId) {
+        if (!enabled || key == null || fileCreatedAt == null) {
+            return;
+        }
+        VersionWatermark watermark = new VersionWatermark(version, fileCreatedAt, lastMessageId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.put(key, watermark);
+                }
+            });
+            return;
+        }
+        cache.put(key, watermark);
+    }
+
+    public void invalidate(String key) {
+        if (enabled && key != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    public void invalidateAll(Collection<String> keys) {
+        if (enabled) {
+            cache.invalidateAll(keys);
+        }
+    }
+}
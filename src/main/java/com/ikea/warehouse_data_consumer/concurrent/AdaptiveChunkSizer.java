@@ -0,0 +1,120 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD controller of the number of operations passed to one bulkWrite. A write whose latency, scaled from its
+ * operations to the current size, stays within the target grows the size by a fixed step; a chunk that was slower
+ * or failed cuts it to a fraction of that chunk's size. Scaling lets the key-partitioned sub-batches, which are
+ * usually smaller than a chunk, grow the size too, while a small write that was slow per operation does not.
+ * Cutting relative to the observed chunk keeps concurrent sub-batches that hit the same slow Mongo from compounding
+ * the decrease.
+ *
+ * The current size is published as a gauge tagged with the entity.
+ */
+@Slf4j
+public abstract class AdaptiveChunkSizer {
+
+    public static final String CHUNK_SIZE_METRIC = "warehouse.consumer.mongo.write.chunk.size";
+
+    private final String entity;
+    private final boolean adaptive;
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatencyNanos;
+    private final int increaseStep;
+    private final double decreaseFactor;
+    private final AtomicInteger chunkSize;
+
+    protected AdaptiveChunkSizer(String entity, ChunkSizeProperties properties, MeterRegistry meterRegistry) {
+        this.entity = entity;
+        this.adaptive = properties.adaptive();
+        this.minSize = Math.max(1, properties.minSize());
+        this.maxSize = Math.max(minSize, properties.maxSize());
+        this.targetLatencyNanos = properties.targetLatency().toNanos();
+        this.increaseStep = Math.max(1, properties.increaseStep());
+        this.decreaseFactor = properties.decreaseFactor();
+        this.chunkSize = new AtomicInteger(clamp(properties.initialSize()));
+        if (adaptive) {
+            Gauge.builder(CHUNK_SIZE_METRIC, chunkSize, AtomicInteger::get)
+                    .tag("entity", entity)
+                    .baseUnit("operations")
+                    .register(meterRegistry);
+        }
+    }
+
+    public int chunkSize() {
+        return adaptive ? chunkSize.get() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Splits the events into consecutive chunks of the current size; a single chunk when not adaptive.
+     */
+    public <T> List<List<T>> split(List<T> events) {
+        int size = chunkSize();
+        if (events.size() <= size) {
+            return List.of(events);
+        }
+        List<List<T>> chunks = new ArrayList<>((events.size() + size - 1) / size);
+        for (int from = 0; from < events.size(); from += size) {
+            chunks.add(events.subList(from, Math.min(events.size(), from + size)));
+        }
+        return chunks;
+    }
+
+    /**
+     * @param operations number of operations of the bulkWrite
+     * @param latencyNanos time until Mongo answered, write errors included
+     */
+    public void onWrite(int operations, long latencyNanos) {
+        if (!adaptive) {
+            return;
+        }
+        if (latencyNanos > targetLatencyNanos) {
+            decrease(operations);
+        } else {
+            chunkSize.updateAndGet(current ->
+                    projectedLatencyNanos(operations, latencyNanos, current) <= targetLatencyNanos
+                            ? clamp(current + increaseStep) : current);
+        }
+    }
+
+    /**
+     * Latency of a chunk of the given size, assuming it grows linearly with the operations; the fixed cost per
+     * bulkWrite makes this an overestimate for small writes, which only delays growth.
+     */
+    private static long projectedLatencyNanos(int operations, long latencyNanos, int size) {
+        if (operations <= 0 || operations >= size) {
+            return latencyNanos;
+        }
+        return (long) ((double) latencyNanos * size / operations);
+    }
+
+    /**
+     * A bulkWrite that failed as a whole, e.g. with a timeout, counts as a slow one.
+     */
+    public void onFailure(int operations) {
+        if (adaptive) {
+            decrease(operations);
+        }
+    }
+
+    private void decrease(int operations) {
+        int target = clamp((int) (operations * decreaseFactor));
+        int previous = chunkSize.getAndUpdate(current -> Math.min(current, target));
+        if (target < previous) {
+            log.debug("Reduced {} bulk write chunk size; from={}, to={}", entity, previous, target);
+        }
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+}
@@ -0,0 +1,16 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk write chunk sizer for the articles collection.
+ */
+@Component
+public class ArticleChunkSizer extends AdaptiveChunkSizer {
+
+    public ArticleChunkSizer(ChunkSizeProperties properties, MeterRegistry meterRegistry) {
+        super("article", properties, meterRegistry);
+    }
+}
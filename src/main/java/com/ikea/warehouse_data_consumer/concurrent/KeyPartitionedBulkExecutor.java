@@ -0,0 +1,97 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.data.dto.BulkWriteOutcome;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static com.ikea.warehouse_data_consumer.util.KeyPartitionUtil.partitionByKey;
+
+/**
+ * Runs the bulk write of one listener batch as several concurrent sub-batches on virtual threads.
+ * Events are split by key hash, so all events for one artId/product name are written by the same sub-batch.
+ * The call only returns once every sub-batch has completed, so the caller can acknowledge the whole batch afterwards.
+ * Inside a Mongo transaction the batch is written on the calling thread, since the transaction's session is bound
+ * to it and writes from other threads would not be part of the transaction.
+ */
+@Slf4j
+@Component
+public class KeyPartitionedBulkExecutor implements DisposableBean {
+
+    private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param events the events to write
+     * @param keyExtractor key used for partitioning
+     * @param parallelism number of sub-batches; 1 writes the whole batch on the calling thread, as does an active
+     *                    transaction
+     * @param writer writes one sub-batch and reports the events it could not apply
+     * @return the merged outcome of all sub-batches
+     */
+    public <T> BulkWriteOutcome<T> execute(List<T> events,
+                                           Function<T, String> keyExtractor,
+                                           int parallelism,
+                                           Function<List<T>, BulkWriteOutcome<T>> writer) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return writer.apply(events);
+        }
+        List<List<T>> subBatches = partitionByKey(events, keyExtractor, parallelism);
+        if (subBatches.size() <= 1) {
+            return writer.apply(events);
+        }
+
+        List<Callable<BulkWriteOutcome<T>>> tasks = new ArrayList<>(subBatches.size());
+        for (List<T> subBatch : subBatches) {
+            tasks.add(() -> writer.apply(subBatch));
+        }
+
+        List<Future<BulkWriteOutcome<T>>> futures;
+        try {
+            futures = executorService.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for bulk write sub-batches", e);
+        }
+
+        List<BulkWriteOutcome<T>> outcomes = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (Future<BulkWriteOutcome<T>> future : futures) {
+            try {
+                outcomes.add(future.get());
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new IllegalStateException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for bulk write sub-batches", e);
+            }
+        }
+        if (failure != null) {
+            // Same contract as the sequential path: unexpected errors surface to the listener's retry/recover.
+            throw failure;
+        }
+        log.debug("Wrote batch as parallel sub-batches; events={}, subBatches={}", events.size(), subBatches.size());
+        return BulkWriteOutcome.merge(outcomes);
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdown();
+    }
+}
@@ -0,0 +1,139 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.config.mongo.CircuitBreakerProperties;
+import com.ikea.warehouse_data_consumer.data.exception.MongoCircuitOpenException;
+import com.mongodb.MongoException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Circuit breaker in front of the bulk writes of InventoryService and ProductService, shared by both since they
+ * write to the same cluster.
+ *
+ * failureThreshold consecutive writes failing as a whole open the breaker; while open every write fails fast with a
+ * MongoCircuitOpenException instead of waiting out the driver timeouts. After openDuration the breaker is half-open
+ * and lets exactly one write through, limited to probeSize operations: its success closes the breaker, its failure
+ * opens it again. Errors of single documents (MongoBulkWriteException) are answers from a healthy server and do not
+ * count as failures.
+ *
+ * The state is published as a gauge (0 closed, 1 half-open, 2 open) and every transition is counted.
+ */
+@Slf4j
+@Component
+public class MongoCircuitBreaker {
+
+    public static final String STATE_METRIC = "warehouse.consumer.mongo.circuit.state";
+    public static final String TRANSITIONS_METRIC = "warehouse.consumer.mongo.circuit.transitions";
+    public static final String REJECTED_METRIC = "warehouse.consumer.mongo.circuit.rejected";
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final boolean enabled;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final int probeSize;
+    private final MeterRegistry meterRegistry;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private String lastFailure;
+
+    public MongoCircuitBreaker(CircuitBreakerProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.failureThreshold = Math.max(1, properties.failureThreshold());
+        this.openDurationNanos = properties.openDuration().toNanos();
+        this.probeSize = Math.max(1, properties.probeSize());
+        this.meterRegistry = meterRegistry;
+        if (enabled) {
+            Gauge.builder(STATE_METRIC, this, breaker -> breaker.state().ordinal())
+                    .description("Mongo write circuit breaker state: 0 closed, 1 half-open, 2 open")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Must be called before each write; every permitted write must be followed by onSuccess or onFailure.
+     *
+     * @return the maximum number of operations the write may contain: unbounded when closed, probeSize for the probe
+     * @throws MongoCircuitOpenException when the write must not reach Mongo
+     */
+    public synchronized int acquirePermission() {
+        if (!enabled || state == State.CLOSED) {
+            return Integer.MAX_VALUE;
+        }
+        if (state == State.OPEN && now() - openedAtNanos >= openDurationNanos) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            log.info("Mongo circuit half-open; probing with at most {} operations", probeSize);
+            return probeSize;
+        }
+        meterRegistry.counter(REJECTED_METRIC).increment();
+        throw new MongoCircuitOpenException("Mongo circuit " + state + "; write rejected after " + lastFailure);
+    }
+
+    public synchronized void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    /**
+     * Counts Mongo errors of the whole write; any other error only gives back a probe permit.
+     */
+    public synchronized void onFailure(Throwable failure) {
+        if (!enabled) {
+            return;
+        }
+        probeInFlight = false;
+        if (!(failure instanceof MongoException)) {
+            return;
+        }
+        consecutiveFailures++;
+        lastFailure = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openedAtNanos = now();
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * @return OPEN only while writes fail fast; once openDuration elapsed the next write is a probe, so HALF_OPEN
+     */
+    public synchronized State state() {
+        if (state == State.OPEN && now() - openedAtNanos >= openDurationNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized String lastFailure() {
+        return lastFailure;
+    }
+
+    private void transition(State target) {
+        log.warn("Mongo circuit {} -> {}; consecutiveFailures={}, lastFailure={}", state, target, consecutiveFailures,
+                lastFailure);
+        meterRegistry.counter(TRANSITIONS_METRIC, "from", state.name().toLowerCase(), "to", target.name().toLowerCase())
+                .increment();
+        state = target;
+    }
+
+    private long now() {
+        return meterRegistry.config().clock().monotonicTime();
+    }
+}
@@ -0,0 +1,16 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk write chunk sizer for the products collection.
+ */
+@Component
+public class ProductChunkSizer extends AdaptiveChunkSizer {
+
+    public ProductChunkSizer(ChunkSizeProperties properties, MeterRegistry meterRegistry) {
+        super("product", properties, meterRegistry);
+    }
+}
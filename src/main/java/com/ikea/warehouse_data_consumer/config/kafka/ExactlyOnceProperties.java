@@ -0,0 +1,17 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Exactly-once mode of the update topic listeners: the article/product writes of a batch and the batch's next
+ * offsets are committed in one Mongo transaction, and partitions are positioned from the stored offsets on
+ * assignment. Requires a replica set and cannot be combined with the key-ordered lanes.
+ *
+ * @param enabled when true every batch is written in a transaction together with its offsets
+ * @param transactionAttempts how often a batch transaction is run when Mongo reports a transient error
+ */
+@ConfigurationProperties(prefix = "app.kafka.consumer.exactly-once")
+public record ExactlyOnceProperties(@DefaultValue("false") boolean enabled,
+                                    @DefaultValue("3") int transactionAttempts) {
+}
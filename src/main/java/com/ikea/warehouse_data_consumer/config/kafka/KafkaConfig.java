@@ -1,14 +1,28 @@
 package com.ikea.warehouse_data_consumer.config.kafka;
 
+import com.ikea.warehouse_data_consumer.config.kafka.ListenerExecutionProperties.ExecutionMode;
+import com.ikea.warehouse_data_consumer.consumer.offset.InventoryExactlyOnceProcessor;
+import com.ikea.warehouse_data_consumer.consumer.offset.ProductExactlyOnceProcessor;
+import com.ikea.warehouse_data_consumer.consumer.ordered.InventoryKeyOrderedDispatcher;
+import com.ikea.warehouse_data_consumer.consumer.ordered.ProductKeyOrderedDispatcher;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.InventoryBatchPipeline;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.ProductBatchPipeline;
 import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
 import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+import com.ikea.warehouse_data_consumer.serialization.InventoryUpdateEventDeserializer;
+import com.ikea.warehouse_data_consumer.serialization.ProductUpdateEventDeserializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
@@ -16,6 +30,7 @@ import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -26,6 +41,15 @@ import java.util.Map;
 public class KafkaConfig {
 
     private final KafkaConfigurationProperties kafkaConfigurationProperties;
+    private final ListenerExecutionProperties listenerExecutionProperties;
+    private final InventoryBatchPipeline inventoryBatchPipeline;
+    private final InventoryKeyOrderedDispatcher inventoryKeyOrderedDispatcher;
+    private final ProductBatchPipeline productBatchPipeline;
+    private final ProductKeyOrderedDispatcher productKeyOrderedDispatcher;
+    private final InventoryExactlyOnceProcessor inventoryExactlyOnceProcessor;
+    private final ProductExactlyOnceProcessor productExactlyOnceProcessor;
+    private final ConsumerMetrics consumerMetrics;
+    private final MeterRegistry meterRegistry;
 
     @Bean
     public ProducerFactory<String, Object> producerFactory() {
@@ -71,16 +95,19 @@ public class KafkaConfig {
 
     @Bean
     public ConsumerFactory<String, ProductUpdateEvent> productConsumerFactory() {
-        Map<String, Object> configProps = consumerConfigProps();
-        configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, ProductUpdateEvent.class.getName());
-        return new DefaultKafkaConsumerFactory<>(configProps);
+        DefaultKafkaConsumerFactory<String, ProductUpdateEvent> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                consumerConfigProps(), new StringDeserializer(), new ProductUpdateEventDeserializer(consumerMetrics));
+        // Binds the client metrics, including the per-partition records-lag, of every consumer the factory creates.
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry, List.of(Tag.of("entity", "product"))));
+        return consumerFactory;
     }
 
     @Bean
     public ConsumerFactory<String, InventoryUpdateEvent> inventoryConsumerFactory() {
-        Map<String, Object> configProps = consumerConfigProps();
-        configProps.put(JsonDeserializer.VALUE_DEFAULT_TYPE, InventoryUpdateEvent.class.getName());
-        return new DefaultKafkaConsumerFactory<>(configProps);
+        DefaultKafkaConsumerFactory<String, InventoryUpdateEvent> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                consumerConfigProps(), new StringDeserializer(), new InventoryUpdateEventDeserializer(consumerMetrics));
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry, List.of(Tag.of("entity", "article"))));
+        return consumerFactory;
     }
 
     @Bean
@@ -89,19 +116,24 @@ public class KafkaConfig {
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(productConsumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(productKeyOrderedDispatcher.isEnabled()
+                ? productKeyOrderedDispatcher
+                : productExactlyOnceProcessor.isEnabled() ? productExactlyOnceProcessor : productBatchPipeline);
         factory.setConcurrency(kafkaConfigurationProperties.consumer().concurrency());
+        applyExecutionMode(factory, "product-listener-");
         factory.setBatchListener(Boolean.TRUE);
         return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, ProductUpdateEvent> kafkaListenerContainerFactoryProduct() {
+    public ConcurrentKafkaListenerContainerFactory<String, ProductUpdateEvent> batchRetryKafkaListenerContainerFactoryProduct() {
         ConcurrentKafkaListenerContainerFactory<String, ProductUpdateEvent> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(productConsumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
         factory.setConcurrency(kafkaConfigurationProperties.consumer().concurrency());
-        factory.setBatchListener(Boolean.FALSE);
+        applyExecutionMode(factory, "product-retry-listener-");
+        factory.setBatchListener(Boolean.TRUE);
         return factory;
     }
 
@@ -111,19 +143,34 @@ public class KafkaConfig {
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(inventoryConsumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
+        factory.getContainerProperties().setConsumerRebalanceListener(inventoryKeyOrderedDispatcher.isEnabled()
+                ? inventoryKeyOrderedDispatcher
+                : inventoryExactlyOnceProcessor.isEnabled() ? inventoryExactlyOnceProcessor : inventoryBatchPipeline);
         factory.setConcurrency(kafkaConfigurationProperties.consumer().concurrency());
+        applyExecutionMode(factory, "inventory-listener-");
         factory.setBatchListener(Boolean.TRUE);
         return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, InventoryUpdateEvent> kafkaListenerContainerFactoryInventory() {
+    public ConcurrentKafkaListenerContainerFactory<String, InventoryUpdateEvent> batchRetryKafkaListenerContainerFactoryInventory() {
         ConcurrentKafkaListenerContainerFactory<String, InventoryUpdateEvent> factory =
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(inventoryConsumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL_IMMEDIATE);
         factory.setConcurrency(kafkaConfigurationProperties.consumer().concurrency());
-        factory.setBatchListener(Boolean.FALSE);
+        applyExecutionMode(factory, "inventory-retry-listener-");
+        factory.setBatchListener(Boolean.TRUE);
         return factory;
     }
+
+    /**
+     * In VIRTUAL mode every container of the factory polls and runs its listener on its own virtual thread.
+     */
+    private void applyExecutionMode(ConcurrentKafkaListenerContainerFactory<?, ?> factory, String threadNamePrefix) {
+        if (listenerExecutionProperties.mode() == ExecutionMode.VIRTUAL) {
+            factory.getContainerProperties().setListenerTaskExecutor(
+                    new SimpleAsyncTaskExecutor(ExecutionMode.VIRTUAL.threadFactory(threadNamePrefix)));
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Key-ordered processing mode of the update topic listeners: the records of every polled batch are dispatched to
+ * lanes by artId / product name, so different keys are written concurrently regardless of the partition count.
+ * Takes precedence over the pipeline when both are enabled.
+ *
+ * @param enabled when true the listener dispatches each batch to the lanes and goes back to polling
+ * @param lanes number of lanes per entity; every key always goes to the same lane, which keeps its order
+ * @param maxPendingRecords records dispatched but not yet processed per entity; the listener blocks above it
+ * @param drainTimeout how long a rebalance or rewind waits for the lanes to finish their queued records
+ */
+@ConfigurationProperties(prefix = "app.kafka.consumer.key-ordered")
+public record KeyOrderedProperties(@DefaultValue("false") boolean enabled,
+                                   @DefaultValue("16") int lanes,
+                                   @DefaultValue("5000") int maxPendingRecords,
+                                   @DefaultValue("30s") Duration drainTimeout) {
+}
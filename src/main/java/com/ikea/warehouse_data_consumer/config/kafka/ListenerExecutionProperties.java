@@ -0,0 +1,34 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads the listener containers (main and retry) run their consumers and listeners on.
+ *
+ * @param mode PLATFORM keeps one OS thread per container; VIRTUAL runs every container on a virtual thread
+ */
+@ConfigurationProperties(prefix = "app.kafka.consumer.execution")
+public record ListenerExecutionProperties(@DefaultValue("PLATFORM") ExecutionMode mode) {
+
+    public enum ExecutionMode {
+        /**
+         * One platform thread per listener container; concurrency is bought with OS threads.
+         */
+        PLATFORM,
+        /**
+         * One virtual thread per listener container. The blocking Mongo and producer calls unmount it instead of
+         * holding an OS thread, so concurrency is scaled by the key-ordered sub-batches of app.mongo.write.parallelism
+         * rather than by more containers.
+         */
+        VIRTUAL;
+
+        public ThreadFactory threadFactory(String prefix) {
+            return this == VIRTUAL
+                    ? Thread.ofVirtual().name(prefix, 0).factory()
+                    : Thread.ofPlatform().name(prefix, 0).factory();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Pipelined consume -> write -> ack mode of the batch listeners.
+ *
+ * @param enabled when true the listener thread hands each batch to a writer thread and goes back to polling
+ * @param maxInFlight maximum number of polled batches queued or being written per consumer; its listener blocks above it
+ * @param drainTimeout how long a rebalance waits for in-flight batches before giving up their acknowledgements
+ */
+@ConfigurationProperties(prefix = "app.kafka.consumer.pipeline")
+public record PipelineProperties(@DefaultValue("false") boolean enabled,
+                                 @DefaultValue("2") int maxInFlight,
+                                 @DefaultValue("30s") Duration drainTimeout) {
+}
@@ -0,0 +1,16 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Retry/error topic publishing.
+ *
+ * @param sendTimeout how long sendBatch waits for the broker to acknowledge the whole batch; records not acknowledged
+ *                    by then are reported as failed
+ */
+@ConfigurationProperties(prefix = "app.kafka.producer")
+public record ProducerProperties(@DefaultValue("30s") Duration sendTimeout) {
+}
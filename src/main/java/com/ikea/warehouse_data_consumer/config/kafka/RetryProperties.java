@@ -0,0 +1,55 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Delayed retry tiers. Every tier is a topic derived from an entity's retryTopic (e.g. {retryTopic}-10s) whose
+ * records all wait the same delay, so they become due in offset order.
+ *
+ * @param maxAttempts retry attempts per event before it is sent to the error topic
+ * @param tiers delay of each tier; retry attempt n goes to tier n (1-based), attempts beyond the last tier reuse it
+ */
+@ConfigurationProperties(prefix = "app.kafka.consumer.retry")
+public record RetryProperties(@DefaultValue("5") int maxAttempts,
+                              @DefaultValue({"1s", "10s", "60s"}) List<Duration> tiers) {
+
+    /**
+     * @return how long the given (1-based) retry attempt waits before it is processed
+     */
+    public Duration delay(int attempt) {
+        return tiers.get(tierIndex(attempt));
+    }
+
+    /**
+     * @return the delay topic the given (1-based) retry attempt is published to
+     */
+    public String tierTopic(String retryTopic, int attempt) {
+        return tierTopic(retryTopic, tiers.get(tierIndex(attempt)));
+    }
+
+    /**
+     * @return the base retry topic followed by every tier topic; the base topic holds records published before the
+     *         tiers existed and is consumed without delay
+     */
+    public String[] topics(String retryTopic) {
+        String[] topics = new String[tiers.size() + 1];
+        topics[0] = retryTopic;
+        for (int i = 0; i < tiers.size(); i++) {
+            topics[i + 1] = tierTopic(retryTopic, tiers.get(i));
+        }
+        return topics;
+    }
+
+    private int tierIndex(int attempt) {
+        return Math.min(Math.max(attempt, 1), tiers.size()) - 1;
+    }
+
+    private static String tierTopic(String retryTopic, Duration delay) {
+        long millis = delay.toMillis();
+        return retryTopic + "-" + (millis % 1_000 == 0 ? (millis / 1_000) + "s" : millis + "ms");
+    }
+}
@@ -0,0 +1,21 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Maintenance of the product_availability collection by ProductAvailabilityService.
+ *
+ * @param enabled whether applied article and product writes recompute the buildable quantity of the affected products
+ * @param reverseIndex whether the products requiring a changed article are looked up in the in-process
+ *                     ArticleProductIndex instead of queried from Mongo; the query is used until the index is warm
+ * @param reverseIndexRefresh how often the index is rebuilt from the products collection, which picks up products
+ *                            written by other instances; zero only builds it at startup
+ */
+@ConfigurationProperties(prefix = "app.mongo.availability")
+public record AvailabilityProperties(@DefaultValue("false") boolean enabled,
+                                     @DefaultValue("true") boolean reverseIndex,
+                                     @DefaultValue("15m") Duration reverseIndexRefresh) {
+}
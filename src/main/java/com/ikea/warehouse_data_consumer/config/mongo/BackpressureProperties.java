@@ -0,0 +1,31 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Thresholds of the Mongo backpressure mode. Every checkInterval the connection pool wait times and write command
+ * latencies observed by the driver are compared with the pause thresholds; the listeners resume only after
+ * healthyChecksToResume consecutive checks below the (lower) resume thresholds and at least minPause.
+ *
+ * @param enabled whether saturation pauses the listener containers
+ * @param checkInterval how often the driver observations are evaluated
+ * @param pauseWaitThreshold longest connection checkout wait within one check that pauses the listeners
+ * @param resumeWaitThreshold longest connection checkout wait within one check that still counts as healthy
+ * @param pauseWriteLatency mean write command latency within one check that pauses the listeners
+ * @param resumeWriteLatency mean write command latency within one check that still counts as healthy
+ * @param minPause minimum time the listeners stay paused
+ * @param healthyChecksToResume consecutive healthy checks needed to resume
+ */
+@ConfigurationProperties(prefix = "app.mongo.backpressure")
+public record BackpressureProperties(@DefaultValue("false") boolean enabled,
+                                     @DefaultValue("1s") Duration checkInterval,
+                                     @DefaultValue("200ms") Duration pauseWaitThreshold,
+                                     @DefaultValue("20ms") Duration resumeWaitThreshold,
+                                     @DefaultValue("2s") Duration pauseWriteLatency,
+                                     @DefaultValue("500ms") Duration resumeWriteLatency,
+                                     @DefaultValue("5s") Duration minPause,
+                                     @DefaultValue("3") int healthyChecksToResume) {
+}
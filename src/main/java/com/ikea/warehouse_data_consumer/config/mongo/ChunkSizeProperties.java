@@ -0,0 +1,28 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Adaptive sizing of the chunks a (sub-)batch is split into, one bulkWrite per chunk.
+ *
+ * @param adaptive whether batches are chunked at all; false keeps a single bulkWrite per (sub-)batch
+ * @param initialSize chunk size until the first bulkWrite has been observed
+ * @param minSize lower bound the size shrinks to under pressure
+ * @param maxSize upper bound the size grows to; only reached when polls are at least that large
+ * @param targetLatency bulkWrite latency above which the size is cut
+ * @param increaseStep operations added after a write whose latency, scaled to the current size, was within the
+ *                     target latency
+ * @param decreaseFactor factor applied to the size of a chunk that was slower than the target or failed
+ */
+@ConfigurationProperties(prefix = "app.mongo.write.chunk")
+public record ChunkSizeProperties(@DefaultValue("true") boolean adaptive,
+                                  @DefaultValue("500") int initialSize,
+                                  @DefaultValue("50") int minSize,
+                                  @DefaultValue("5000") int maxSize,
+                                  @DefaultValue("200ms") Duration targetLatency,
+                                  @DefaultValue("50") int increaseStep,
+                                  @DefaultValue("0.5") double decreaseFactor) {
+}
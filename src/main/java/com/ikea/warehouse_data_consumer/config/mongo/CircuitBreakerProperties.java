@@ -0,0 +1,21 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker around the bulk writes of both services.
+ *
+ * @param enabled whether failing writes open the breaker; false lets every write through
+ * @param failureThreshold consecutive failed writes that open the breaker
+ * @param openDuration how long writes fail fast before a probe is let through
+ * @param probeSize operations of the single probe bulkWrite sent while half-open
+ */
+@ConfigurationProperties(prefix = "app.mongo.circuit-breaker")
+public record CircuitBreakerProperties(@DefaultValue("false") boolean enabled,
+                                       @DefaultValue("5") int failureThreshold,
+                                       @DefaultValue("30s") Duration openDuration,
+                                       @DefaultValue("50") int probeSize) {
+}
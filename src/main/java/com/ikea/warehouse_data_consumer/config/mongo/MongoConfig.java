@@ -1,8 +1,10 @@
 package com.ikea.warehouse_data_consumer.config.mongo;
 
+import com.ikea.warehouse_data_consumer.consumer.backpressure.MongoPressureMonitor;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.ReadConcern;
 import com.mongodb.ReadPreference;
+import com.mongodb.TransactionOptions;
 import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
@@ -28,11 +30,14 @@ public class MongoConfig {
     private String mongoUri;
 
     @Bean
-    public MongoClient mongoClient() {
+    public MongoClient mongoClient(MongoPressureMonitor mongoPressureMonitor) {
         MongoClientSettings.Builder builder = MongoClientSettings.builder()
             .readConcern(ReadConcern.MAJORITY)
             .readPreference(ReadPreference.secondary())
-            .writeConcern(WriteConcern.MAJORITY.withJournal(true));
+            .writeConcern(WriteConcern.MAJORITY.withJournal(true))
+            // Feeds the backpressure checks with connection checkout waits and write latencies.
+            .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(mongoPressureMonitor))
+            .addCommandListener(mongoPressureMonitor);
 
         assert StringUtils.isNotBlank(mongoUri);
         return MongoClients.create(builder.applyConnectionString(new com.mongodb.ConnectionString(mongoUri)).build());
@@ -54,6 +59,11 @@ public class MongoConfig {
     // Enable transactions (requires replica set)
     @Bean
     public MongoTransactionManager transactionManager(MongoDatabaseFactory factory) {
-        return new MongoTransactionManager(factory);
+        // Reads inside a transaction must go to the primary; the client default is secondary.
+        return new MongoTransactionManager(factory, TransactionOptions.builder()
+                .readPreference(ReadPreference.primary())
+                .readConcern(ReadConcern.SNAPSHOT)
+                .writeConcern(WriteConcern.MAJORITY)
+                .build());
     }
 }
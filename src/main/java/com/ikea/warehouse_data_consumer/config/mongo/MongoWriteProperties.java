@@ -0,0 +1,29 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Tuning of the batch write path used by InventoryService and ProductService.
+ *
+ * @param mode how last-writer-wins is enforced for a batch (see {@link WriteMode})
+ * @param parallelism number of key-partitioned sub-batches written concurrently per listener batch;
+ *                    1 keeps a single bulkWrite on the listener thread
+ */
+@ConfigurationProperties(prefix = "app.mongo.write")
+public record MongoWriteProperties(@DefaultValue("VERSIONED") WriteMode mode,
+                                   @DefaultValue("1") int parallelism) {
+
+    public enum WriteMode {
+        /**
+         * Pre-reads the current versions of the batch and guards every update with both the version and the
+         * fileCreatedAt filter. Two round trips per batch.
+         */
+        VERSIONED,
+        /**
+         * Single round trip: every update matches on the key only and an update pipeline applies the fields
+         * only when the stored fileCreatedAt is older than the event's. Stale events match without modifying.
+         */
+        CONDITIONAL
+    }
+}
@@ -0,0 +1,24 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * The availability outbox: product availability deltas written in the same transaction as product_availability and
+ * relayed to Kafka by AvailabilityOutboxRelay.
+ *
+ * @param enabled whether availability writes go through a transaction that also records their deltas
+ * @param topic topic the deltas are published to, keyed by product name
+ * @param pollInterval delay between two relay runs
+ * @param batchSize deltas read and published per round trip of a relay run
+ * @param leaseDuration how long one instance holds the relay; another instance takes over once it expired
+ */
+@ConfigurationProperties(prefix = "app.mongo.outbox")
+public record OutboxProperties(@DefaultValue("false") boolean enabled,
+                               @DefaultValue("ikea.warehouse.product.availability.topic") String topic,
+                               @DefaultValue("500ms") Duration pollInterval,
+                               @DefaultValue("500") int batchSize,
+                               @DefaultValue("30s") Duration leaseDuration) {
+}
@@ -0,0 +1,15 @@
+package com.ikea.warehouse_data_consumer.config.mongo;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Sizing of the in-process version/watermark caches kept in front of the articles and products collections.
+ *
+ * @param enabled whether the caches are consulted at all
+ * @param maximumSize maximum number of keys per cache before entries are evicted
+ */
+@ConfigurationProperties(prefix = "app.mongo.version-cache")
+public record VersionCacheProperties(@DefaultValue("false") boolean enabled,
+                                     @DefaultValue("100000") long maximumSize) {
+}
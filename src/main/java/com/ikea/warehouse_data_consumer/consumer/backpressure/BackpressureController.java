@@ -0,0 +1,188 @@
+package com.ikea.warehouse_data_consumer.consumer.backpressure;
+
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.BackpressureProperties;
+import com.ikea.warehouse_data_consumer.consumer.backpressure.MongoPressureMonitor.PressureWindow;
+import com.ikea.warehouse_data_consumer.data.exception.MongoCircuitOpenException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteConcernException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses every listener container while Mongo is saturated, so that records stay in Kafka instead of being handed
+ * off to the retry/error topics.
+ *
+ * The listeners are paused either by a periodic check of the driver observations (connection checkout waits, write
+ * latency, checkout timeouts) or right away by a listener whose write failed with a saturation error. They resume
+ * with hysteresis: after minPause and healthyChecksToResume consecutive checks below the resume thresholds. A check
+ * without writes counts as healthy, so the first batches after resuming act as the probe; if they saturate Mongo
+ * again the listeners are paused again. While the MongoCircuitBreaker is open they do not resume at all; the first
+ * batch after it turned half-open carries its probe.
+ */
+@Slf4j
+@Component
+public class BackpressureController implements InitializingBean, DisposableBean {
+
+    public static final String PAUSED_METRIC = "warehouse.consumer.backpressure.paused";
+    public static final String PAUSES_METRIC = "warehouse.consumer.backpressure.pauses";
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final MongoPressureMonitor mongoPressureMonitor;
+    private final MongoCircuitBreaker mongoCircuitBreaker;
+    private final BackpressureProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("mongo-backpressure-", 0).factory());
+
+    private boolean paused;
+    private long pausedAtNanos;
+    private int healthyChecks;
+
+    public BackpressureController(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                  MongoPressureMonitor mongoPressureMonitor,
+                                  MongoCircuitBreaker mongoCircuitBreaker,
+                                  BackpressureProperties properties,
+                                  MeterRegistry meterRegistry) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.mongoPressureMonitor = mongoPressureMonitor;
+        this.mongoCircuitBreaker = mongoCircuitBreaker;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(PAUSED_METRIC, this, controller -> controller.isPaused() ? 1 : 0)
+                .description("1 while the listener containers are paused on Mongo saturation")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.enabled()) {
+            long intervalMillis = properties.checkInterval().toMillis();
+            scheduler.scheduleWithFixedDelay(this::evaluateSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Pauses the listeners when the failure is caused by Mongo saturation.
+     *
+     * @return true when the listeners are (now) paused and the failed batch must stay in Kafka; false when the
+     *         failure is not a saturation error or backpressure is disabled
+     */
+    public boolean pauseIfSaturated(Throwable failure) {
+        if (!properties.enabled() || !isSaturationError(failure)) {
+            return false;
+        }
+        pause("saturation_error");
+        return true;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Compares the driver observations since the previous check with the thresholds; pauses or resumes accordingly.
+     */
+    synchronized void evaluate() {
+        PressureWindow window = mongoPressureMonitor.snapshot();
+        String overload = overload(window);
+        if (overload != null) {
+            pause(overload);
+            return;
+        }
+        if (!paused) {
+            return;
+        }
+        healthyChecks = isHealthy(window) ? healthyChecks + 1 : 0;
+        long pausedNanos = System.nanoTime() - pausedAtNanos;
+        if (healthyChecks >= properties.healthyChecksToResume() && pausedNanos >= properties.minPause().toNanos()
+                && mongoCircuitBreaker.state() != MongoCircuitBreaker.State.OPEN) {
+            resume(window);
+        }
+    }
+
+    private synchronized void pause(String reason) {
+        // Every new sign of saturation restarts the hysteresis.
+        pausedAtNanos = System.nanoTime();
+        healthyChecks = 0;
+        if (paused) {
+            return;
+        }
+        paused = true;
+        meterRegistry.counter(PAUSES_METRIC, "reason", reason).increment();
+        log.warn("Mongo saturated (reason={}); pausing all listener containers", reason);
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            container.pause();
+        }
+    }
+
+    private void resume(PressureWindow window) {
+        paused = false;
+        log.info("Mongo recovered (maxWaitMs={}, meanWriteMs={}); resuming all listener containers",
+                TimeUnit.NANOSECONDS.toMillis(window.maxWaitNanos()), TimeUnit.NANOSECONDS.toMillis(window.meanWriteNanos()));
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            container.resume();
+        }
+    }
+
+    private String overload(PressureWindow window) {
+        if (window.checkOutTimeouts() > 0) {
+            return "checkout_timeout";
+        }
+        if (window.maxWaitNanos() >= properties.pauseWaitThreshold().toNanos()) {
+            return "pool_wait";
+        }
+        if (window.writes() > 0 && window.meanWriteNanos() >= properties.pauseWriteLatency().toNanos()) {
+            return "write_latency";
+        }
+        return null;
+    }
+
+    private boolean isHealthy(PressureWindow window) {
+        return window.writeFailures() == 0
+                && window.maxWaitNanos() <= properties.resumeWaitThreshold().toNanos()
+                && window.meanWriteNanos() <= properties.resumeWriteLatency().toNanos();
+    }
+
+    private void evaluateSafely() {
+        try {
+            evaluate();
+        } catch (RuntimeException e) {
+            log.error("Mongo backpressure check failed", e);
+        }
+    }
+
+    /**
+     * Timeouts and connectivity errors mean Mongo (or the path to it) cannot keep up, as does a write rejected by the
+     * open circuit breaker; errors of single documents do not.
+     */
+    static boolean isSaturationError(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCircuitOpenException
+                    || cause instanceof MongoTimeoutException
+                    || cause instanceof MongoSocketException
+                    || cause instanceof MongoExecutionTimeoutException
+                    || cause instanceof MongoWriteConcernException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ikea.warehouse_data_consumer.consumer.backpressure;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the driver's view of Mongo load between two backpressure checks: how long threads waited to check out a
+ * pooled connection, how long write commands took and how many of them failed or timed out waiting for a
+ * connection. Registered on the MongoClient as both a connection pool and a command listener.
+ */
+@Component
+public class MongoPressureMonitor implements ConnectionPoolListener, CommandListener {
+
+    private static final Set<String> WRITE_COMMANDS = Set.of("insert", "update", "delete", "findAndModify");
+
+    // The sync driver checks a connection out on the calling thread, so start and end meet on the same thread.
+    private final ThreadLocal<Long> checkOutStartedAt = new ThreadLocal<>();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder checkOutTimeouts = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        checkOutStartedAt.set(System.nanoTime());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        Long startedAt = checkOutStartedAt.get();
+        if (startedAt != null) {
+            checkOutStartedAt.remove();
+            maxWaitNanos.accumulateAndGet(System.nanoTime() - startedAt, Math::max);
+        }
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkOutStartedAt.remove();
+        if (event.getReason() == ConnectionCheckOutFailedEvent.Reason.TIMEOUT) {
+            checkOutTimeouts.increment();
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (WRITE_COMMANDS.contains(event.getCommandName())) {
+            writeNanos.add(event.getElapsedTime(TimeUnit.NANOSECONDS));
+            writeCount.increment();
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        if (WRITE_COMMANDS.contains(event.getCommandName())) {
+            writeFailures.increment();
+        }
+    }
+
+    /**
+     * Returns the observations since the previous call and starts a new window.
+     */
+    public PressureWindow snapshot() {
+        long writes = writeCount.sumThenReset();
+        long totalWriteNanos = writeNanos.sumThenReset();
+        return new PressureWindow(maxWaitNanos.getAndSet(0), checkOutTimeouts.sumThenReset(),
+                writes == 0 ? 0 : totalWriteNanos / writes, writes, writeFailures.sumThenReset());
+    }
+
+    /**
+     * @param maxWaitNanos longest connection checkout wait
+     * @param checkOutTimeouts checkouts that gave up waiting for a connection
+     * @param meanWriteNanos mean latency of the successful write commands; 0 without writes
+     * @param writes number of successful write commands
+     * @param writeFailures number of write commands that failed as a whole
+     */
+    public record PressureWindow(long maxWaitNanos, long checkOutTimeouts, long meanWriteNanos, long writes,
+                                 long writeFailures) {
+    }
+}
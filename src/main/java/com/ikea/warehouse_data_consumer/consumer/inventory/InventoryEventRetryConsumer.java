@@ -1,50 +1,140 @@
 package com.ikea.warehouse_data_consumer.consumer.inventory;
 
+import com.ikea.warehouse_data_consumer.config.kafka.RetryProperties;
+import com.ikea.warehouse_data_consumer.consumer.backpressure.BackpressureController;
+import com.ikea.warehouse_data_consumer.consumer.retry.DelayedRetryScheduler;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
 import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import com.ikea.warehouse_data_consumer.data.event.MalformedRecord;
+import com.ikea.warehouse_data_consumer.data.exception.ArticleDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
 import com.ikea.warehouse_data_consumer.service.InventoryService;
 import com.ikea.warehouse_data_consumer.service.KafkaProducerService;
+import com.ikea.warehouse_data_consumer.util.RetryHeaderUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-applies records of the inventory retry delay tiers through the bulk write path. A failed event moves on to the
+ * next tier; the listener thread never sleeps, partitions that are not due yet are paused by the scheduler.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class InventoryEventRetryConsumer {
 
+    static final String LISTENER_ID = "inventoryRetryListener";
+
     private final InventoryService inventoryService;
     private final KafkaProducerService kafkaProducerService;
+    private final RetryProperties retryProperties;
+    private final DelayedRetryScheduler delayedRetryScheduler;
+    private final ConsumerMetrics consumerMetrics;
+    private final BackpressureController backpressureController;
+
+    @Value("${app.kafka.consumer.inventory.retryTopic}")
+    private String retryTopic;
 
     @Value("${app.kafka.consumer.inventory.errorTopic}")
     private String errorTopic;
 
-    @Retryable(
-            maxAttempts = 3,
-            noRetryFor = {OptimisticLockingFailureException.class},
-            backoff = @Backoff(delay = 50, multiplier = 2.0)
-    )
     @KafkaListener(
-            topics = "${app.kafka.consumer.inventory.retryTopic}",
-            containerFactory = "kafkaListenerContainerFactoryInventory"
+            id = LISTENER_ID,
+            idIsGroup = false,
+            topics = "#{@retryTopics.inventory()}",
+            containerFactory = "batchRetryKafkaListenerContainerFactoryInventory"
     )
-    public void consume(InventoryUpdateEvent inventoryUpdateEvent, Acknowledgment ack) {
-        log.info("RETRY CONSUMER Received inventory update event; artId={}", inventoryUpdateEvent.artId());
-        inventoryService.proceedInventoryUpdateEvent(inventoryUpdateEvent);
-        ack.acknowledge();
+    public void consume(List<ConsumerRecord<String, InventoryUpdateEvent>> records, Consumer<?, ?> consumer) {
+        log.info("RETRY CONSUMER Received inventory update records size={}", records.size());
+        consumerMetrics.recordPollBatch("article", "retry", records.size());
+        delayedRetryScheduler.dispatch(LISTENER_ID, records, consumer, this::writeDueRecords);
     }
 
-    @Recover
-    public void recover(Exception exception, InventoryUpdateEvent inventoryUpdateEvent, Acknowledgment ack) {
-        log.error("InventoryEventRetryConsumer recover exception", exception);
-        kafkaProducerService.send(errorTopic, inventoryUpdateEvent.artId(), inventoryUpdateEvent);
-        ack.acknowledge();
+    private List<SendBatchResult> writeDueRecords(List<ConsumerRecord<String, InventoryUpdateEvent>> dueRecords) {
+        List<KafkaKeyValueRecord> malformedRecords = new ArrayList<>();
+        Map<InventoryUpdateEvent, Integer> attempts = new IdentityHashMap<>();
+        List<InventoryUpdateEvent> dueEvents = new ArrayList<>(dueRecords.size());
+        for (ConsumerRecord<String, InventoryUpdateEvent> record : dueRecords) {
+            if (record.value() == null) {
+                malformedRecords.add(new KafkaKeyValueRecord(record.key(), MalformedRecord.from(record)));
+            } else {
+                attempts.put(record.value(), RetryHeaderUtil.attempt(record.headers()));
+                dueEvents.add(record.value());
+            }
+        }
+
+        List<InventoryUpdateEvent> failedEvents = List.of();
+        List<InventoryUpdateEvent> criteriaNotMatchedEvents = List.of();
+        RuntimeException saturation = null;
+        try {
+            if (!dueEvents.isEmpty()) {
+                inventoryService.proceedInventoryUpdateBatchEvent(dueEvents);
+            }
+        } catch (ArticleDocumentMongoWriteException ex) {
+            failedEvents = ex.getFailedEvents();
+            criteriaNotMatchedEvents = ex.getCriteriaNotMatchedEvents();
+        } catch (RuntimeException ex) {
+            if (backpressureController.pauseIfSaturated(ex)) {
+                saturation = ex;
+            } else {
+                log.error("Retrying inventory update batch failed as a whole; size={}", dueEvents.size(), ex);
+                failedEvents = dueEvents;
+            }
+        }
+        if (saturation != null) {
+            // Reported as not handed off, so that the scheduler seeks back and the records stay in their delay tier.
+            // Malformed records are only sent once the due records can be committed, not on every redelivery.
+            log.warn("Mongo saturated; keeping retried inventory update records in Kafka; size={}", dueRecords.size(), saturation);
+            return List.of(
+                    SendBatchResult.notSent(retryTopic, dueEvents.stream()
+                            .map(event -> new KafkaKeyValueRecord(event.artId(), event))
+                            .toList(), saturation),
+                    SendBatchResult.notSent(errorTopic, malformedRecords, saturation));
+        }
+        if (malformedRecords.isEmpty() && failedEvents.isEmpty() && criteriaNotMatchedEvents.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, List<KafkaKeyValueRecord>> recordsByTopic = new LinkedHashMap<>();
+        if (!malformedRecords.isEmpty()) {
+            log.error("Sending malformed inventory update retry records to error topic; size={}", malformedRecords.size());
+            recordsByTopic.put(errorTopic, new ArrayList<>(malformedRecords));
+        }
+        Instant now = Instant.now();
+        criteriaNotMatchedEvents.forEach(event -> recordsByTopic.computeIfAbsent(errorTopic, topic -> new ArrayList<>())
+                .add(new KafkaKeyValueRecord(event.artId(), event)));
+        for (InventoryUpdateEvent event : failedEvents) {
+            int attempt = attempts.getOrDefault(event, 1);
+            if (attempt >= retryProperties.maxAttempts()) {
+                recordsByTopic.computeIfAbsent(errorTopic, topic -> new ArrayList<>())
+                        .add(new KafkaKeyValueRecord(event.artId(), event));
+            } else {
+                int nextAttempt = attempt + 1;
+                recordsByTopic.computeIfAbsent(retryProperties.tierTopic(retryTopic, nextAttempt), topic -> new ArrayList<>())
+                        .add(new KafkaKeyValueRecord(event.artId(), event,
+                                RetryHeaderUtil.retryHeaders(nextAttempt, now.plus(retryProperties.delay(nextAttempt)))));
+            }
+        }
+
+        if (!failedEvents.isEmpty() || !criteriaNotMatchedEvents.isEmpty()) {
+            log.error("Retried inventory update events not applied; failed={}, criteria not matched={}",
+                    failedEvents.size(), criteriaNotMatchedEvents.size());
+        }
+        List<SendBatchResult> sendBatchResults = new ArrayList<>();
+        recordsByTopic.forEach((topic, topicRecords) -> sendBatchResults.add(kafkaProducerService.sendBatch(topic, topicRecords)));
+        return sendBatchResults;
     }
 }
-
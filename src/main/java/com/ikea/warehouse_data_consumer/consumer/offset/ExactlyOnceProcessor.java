@@ -0,0 +1,214 @@
+package com.ikea.warehouse_data_consumer.consumer.offset;
+
+import com.ikea.warehouse_data_consumer.config.kafka.ExactlyOnceProperties;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.BatchPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static com.ikea.warehouse_data_consumer.util.MongoTransactionUtil.executeWithRetry;
+
+/**
+ * Exactly-once processing of the update topic batches: the Mongo writes of a batch and the next offset of each of
+ * its partitions are committed in one transaction (see {@link MongoOffsetStore}). The Kafka acknowledgement still
+ * follows, but it is no longer what decides where a partition resumes.
+ *
+ * On assignment every partition is positioned at its stored offset when that is ahead of the committed one, so a
+ * batch whose transaction committed before a crash is not polled again. Records below the stored offset that are
+ * polled anyway, after a pipeline rewind or a nack, are skipped without touching Mongo.
+ *
+ * A batch that is handed off to the retry topic instead of written stores its offsets afterwards, outside a
+ * transaction: nothing was written, and a crash before the store only hands it off once more.
+ *
+ * Malformed records are sent to the error topic before the transaction, which also stores their offsets. When the
+ * transaction then does not commit and the batch is redelivered, the records already sent are remembered in memory
+ * and skipped like stored ones, so they are not published again on every redelivery.
+ */
+@Slf4j
+public abstract class ExactlyOnceProcessor implements ConsumerAwareRebalanceListener {
+
+    public static final String SKIPPED_METRIC = "warehouse.consumer.offsets.skipped";
+
+    private final String name;
+    private final String entity;
+    private final boolean enabled;
+    private final int transactionAttempts;
+    private final MongoOffsetStore offsetStore;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchPipeline pipeline;
+    private final MeterRegistry meterRegistry;
+    // Next offset to process per assigned partition, as far as it is stored.
+    private final Map<TopicPartition, Long> positions = new ConcurrentHashMap<>();
+    // Offsets at or above the position whose records were already sent to the error topic, per partition.
+    private final Map<TopicPartition, NavigableSet<Long>> sentToErrorTopic = new ConcurrentHashMap<>();
+
+    protected ExactlyOnceProcessor(String name, String entity, ExactlyOnceProperties properties, boolean keyOrdered,
+                                   MongoOffsetStore offsetStore, MongoTransactionManager transactionManager,
+                                   BatchPipeline pipeline, MeterRegistry meterRegistry) {
+        if (properties.enabled() && keyOrdered) {
+            // Lanes complete records out of offset order, so no single offset per partition covers what was written.
+            throw new IllegalStateException("app.kafka.consumer.exactly-once cannot be combined with app.kafka.consumer.key-ordered");
+        }
+        this.name = name;
+        this.entity = entity;
+        this.enabled = properties.enabled();
+        this.transactionAttempts = Math.max(1, properties.transactionAttempts());
+        this.offsetStore = offsetStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pipeline = pipeline;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true when the record is below the stored offset of its partition, i.e. its batch was already
+     *         committed to Mongo or handed off, or when it was already sent to the error topic
+     */
+    public boolean isProcessed(ConsumerRecord<?, ?> record) {
+        if (!enabled) {
+            return false;
+        }
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        Long position = positions.get(partition);
+        if (position != null && record.offset() < position) {
+            return true;
+        }
+        NavigableSet<Long> sent = sentToErrorTopic.get(partition);
+        return sent != null && sent.contains(record.offset());
+    }
+
+    /**
+     * Remembers malformed records whose error topic hand-off succeeded before the batch transaction, until the
+     * stored offset of their partition passes them.
+     */
+    public void markSentToErrorTopic(List<? extends ConsumerRecord<?, ?>> records) {
+        if (!enabled) {
+            return;
+        }
+        for (ConsumerRecord<?, ?> record : records) {
+            sentToErrorTopic.computeIfAbsent(new TopicPartition(record.topic(), record.partition()),
+                    partition -> new ConcurrentSkipListSet<>()).add(record.offset());
+        }
+    }
+
+    public void recordSkipped(int count) {
+        if (count > 0) {
+            log.debug("{} skipped records below their stored offset; count={}", name, count);
+            meterRegistry.counter(SKIPPED_METRIC, "entity", entity).increment(count);
+        }
+    }
+
+    /**
+     * Runs the write and stores the next offsets of the batch in one transaction, rerunning both on a transient
+     * error. Any exception means that nothing of the batch was written.
+     */
+    public void execute(List<? extends ConsumerRecord<?, ?>> records, Runnable write) {
+        Map<TopicPartition, Long> nextOffsets = nextOffsets(records);
+        executeWithRetry(transactionTemplate, transactionAttempts, () -> {
+            write.run();
+            offsetStore.store(nextOffsets);
+        });
+        advance(nextOffsets);
+    }
+
+    /**
+     * Stores the next offsets of a batch whose events were all handed off to the retry/error topics. A failed store
+     * is only logged: the batch is then handed off again when it is replayed.
+     */
+    public void markHandedOff(List<? extends ConsumerRecord<?, ?>> records) {
+        if (!enabled) {
+            return;
+        }
+        Map<TopicPartition, Long> nextOffsets = nextOffsets(records);
+        try {
+            offsetStore.store(nextOffsets);
+            advance(nextOffsets);
+        } catch (RuntimeException e) {
+            log.warn("{} could not store the offsets of a handed off batch; offsets={}", name, nextOffsets, e);
+        }
+    }
+
+    /**
+     * Seeks every assigned partition whose stored offset is ahead of its committed one. When the stored offsets
+     * cannot be read the partitions resume from the committed offsets, which replays at least once.
+     */
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!enabled || partitions.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, Long> stored;
+        try {
+            stored = offsetStore.read(partitions);
+        } catch (RuntimeException e) {
+            log.warn("{} could not read stored offsets; resuming partitions={} from the committed offsets", name, partitions, e);
+            return;
+        }
+        if (stored.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(stored.keySet()));
+        stored.forEach((partition, offset) -> {
+            OffsetAndMetadata committedOffset = committed.get(partition);
+            long committedPosition = committedOffset != null ? committedOffset.offset() : -1L;
+            positions.merge(partition, Math.max(offset, committedPosition), Math::max);
+            if (offset > committedPosition) {
+                consumer.seek(partition, offset);
+                log.info("{} seeked partition={} to stored offset={}; committed={}", name, partition, offset, committedPosition);
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        pipeline.onPartitionsRevokedBeforeCommit(consumer, partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        positions.keySet().removeAll(partitions);
+        sentToErrorTopic.keySet().removeAll(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        positions.keySet().removeAll(partitions);
+        sentToErrorTopic.keySet().removeAll(partitions);
+    }
+
+    private void advance(Map<TopicPartition, Long> nextOffsets) {
+        nextOffsets.forEach((partition, offset) -> {
+            positions.merge(partition, offset, Math::max);
+            NavigableSet<Long> sent = sentToErrorTopic.get(partition);
+            if (sent != null) {
+                sent.headSet(offset).clear();
+            }
+        });
+    }
+
+    static Map<TopicPartition, Long> nextOffsets(List<? extends ConsumerRecord<?, ?>> records) {
+        Map<TopicPartition, Long> nextOffsets = new HashMap<>();
+        for (ConsumerRecord<?, ?> record : records) {
+            nextOffsets.merge(new TopicPartition(record.topic(), record.partition()), record.offset() + 1, Math::max);
+        }
+        return nextOffsets;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ikea.warehouse_data_consumer.consumer.offset;
+
+import com.ikea.warehouse_data_consumer.config.kafka.ExactlyOnceProperties;
+import com.ikea.warehouse_data_consumer.config.kafka.KeyOrderedProperties;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.InventoryBatchPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exactly-once processing of the inventory update batch listener.
+ */
+@Component
+public class InventoryExactlyOnceProcessor extends ExactlyOnceProcessor {
+
+    public InventoryExactlyOnceProcessor(ExactlyOnceProperties properties, KeyOrderedProperties keyOrderedProperties,
+                                    MongoOffsetStore offsetStore, MongoTransactionManager transactionManager,
+                                    InventoryBatchPipeline inventoryBatchPipeline, MeterRegistry meterRegistry) {
+        super("inventory", "article", properties, keyOrderedProperties.enabled(), offsetStore, transactionManager,
+                inventoryBatchPipeline, meterRegistry);
+    }
+}
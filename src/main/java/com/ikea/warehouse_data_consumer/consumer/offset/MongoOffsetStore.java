@@ -0,0 +1,89 @@
+package com.ikea.warehouse_data_consumer.consumer.offset;
+
+import com.ikea.warehouse_data_consumer.config.kafka.KafkaConfigurationProperties;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kafka offsets of the consumer group kept in the kafka_offsets collection, one document per partition holding the
+ * next offset to consume. Written through MongoTemplate's collections, so a store inside a transaction is part of it.
+ * An offset only ever moves forward.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoOffsetStore {
+
+    static final String COLLECTION = "kafka_offsets";
+
+    private final MongoTemplate mongoTemplate;
+    private final KafkaConfigurationProperties kafkaConfigurationProperties;
+
+    /**
+     * Reads the stored next offsets from the primary; partitions without a stored offset are absent.
+     */
+    public Map<TopicPartition, Long> read(Collection<TopicPartition> partitions) {
+        Map<String, TopicPartition> partitionsById = new HashMap<>();
+        partitions.forEach(partition -> partitionsById.put(idOf(partition), partition));
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        collection().withReadPreference(ReadPreference.primary())
+                .find(Filters.in("_id", partitionsById.keySet()))
+                .forEach(doc -> {
+                    TopicPartition partition = partitionsById.get(doc.getString("_id"));
+                    if (partition != null && doc.get("offset") instanceof Number offset) {
+                        offsets.put(partition, offset.longValue());
+                    }
+                });
+        return offsets;
+    }
+
+    /**
+     * @param nextOffsets per partition the offset after the last processed record
+     */
+    public void store(Map<TopicPartition, Long> nextOffsets) {
+        if (nextOffsets.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<WriteModel<Document>> operations = new ArrayList<>(nextOffsets.size());
+        nextOffsets.forEach((partition, offset) -> operations.add(new UpdateOneModel<>(
+                Filters.eq("_id", idOf(partition)),
+                Updates.combine(
+                        Updates.max("offset", offset),
+                        Updates.set("updatedAt", now),
+                        Updates.setOnInsert("groupId", groupId()),
+                        Updates.setOnInsert("topic", partition.topic()),
+                        Updates.setOnInsert("partition", partition.partition())),
+                new UpdateOptions().upsert(true))));
+        collection().bulkWrite(operations, new BulkWriteOptions().ordered(false));
+    }
+
+    private String idOf(TopicPartition partition) {
+        return groupId() + ":" + partition.topic() + ":" + partition.partition();
+    }
+
+    private String groupId() {
+        return kafkaConfigurationProperties.consumer().groupId();
+    }
+
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(COLLECTION);
+    }
+}
@@ -0,0 +1,22 @@
+package com.ikea.warehouse_data_consumer.consumer.offset;
+
+import com.ikea.warehouse_data_consumer.config.kafka.ExactlyOnceProperties;
+import com.ikea.warehouse_data_consumer.config.kafka.KeyOrderedProperties;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.ProductBatchPipeline;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exactly-once processing of the product update batch listener.
+ */
+@Component
+public class ProductExactlyOnceProcessor extends ExactlyOnceProcessor {
+
+    public ProductExactlyOnceProcessor(ExactlyOnceProperties properties, KeyOrderedProperties keyOrderedProperties,
+                                   MongoOffsetStore offsetStore, MongoTransactionManager transactionManager,
+                                   ProductBatchPipeline productBatchPipeline, MeterRegistry meterRegistry) {
+        super("product", "product", properties, keyOrderedProperties.enabled(), offsetStore, transactionManager,
+                productBatchPipeline, meterRegistry);
+    }
+}
@@ -0,0 +1,22 @@
+package com.ikea.warehouse_data_consumer.consumer.ordered;
+
+import com.ikea.warehouse_data_consumer.config.kafka.KeyOrderedProperties;
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+
+/**
+ * Key-ordered lanes for the inventory update batch listener, keyed by artId.
+ */
+@Component
+public class InventoryKeyOrderedDispatcher extends KeyOrderedDispatcher {
+
+    public InventoryKeyOrderedDispatcher(KeyOrderedProperties properties) {
+        super("inventory", properties);
+    }
+
+    @Override
+    protected String keyOf(ConsumerRecord<String, ?> record) {
+        return record.value() instanceof InventoryUpdateEvent event ? event.artId() : record.key();
+    }
+}
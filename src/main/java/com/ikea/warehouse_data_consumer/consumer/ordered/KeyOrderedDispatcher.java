@@ -0,0 +1,294 @@
+package com.ikea.warehouse_data_consumer.consumer.ordered;
+
+import com.ikea.warehouse_data_consumer.config.kafka.KeyOrderedProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static com.ikea.warehouse_data_consumer.util.KeyPartitionUtil.bucketOf;
+
+/**
+ * Processes the records of a polled batch on key-ordered lanes instead of on the listener thread, so that the
+ * parallelism is no longer capped by the partition count.
+ *
+ * Every key hashes to the same single-threaded lane, so the records of one artId / product name are processed in
+ * offset order across batches while different keys are processed concurrently. The listener thread dispatches each
+ * batch and goes back to polling; at most maxPendingRecords records are dispatched and not yet processed.
+ *
+ * Completion is tracked per record. A batch is acknowledged once all of its records and all earlier batches are
+ * completed, so commits never pass an unfinished record. When a lane cannot complete a record (its hand-off failed
+ * or Mongo is saturated), later lane work of the same consumer is skipped and on its next call its listener commits
+ * the contiguous completed prefix of every partition it owns and rewinds to it.
+ *
+ * The dispatcher is shared by every consumer of the container factory, so the pending batches and the failed state
+ * are kept per consumer: a failure of one consumer neither skips nor rewinds the batches of another, and a consumer
+ * only commits and seeks its own assigned partitions.
+ */
+@Slf4j
+public abstract class KeyOrderedDispatcher implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    private final String name;
+    private final boolean enabled;
+    private final int maxPendingRecords;
+    private final Duration drainTimeout;
+    private final Semaphore pendingRecords;
+    private final List<ExecutorService> lanes;
+    private final Map<Consumer<?, ?>, ConsumerBatches> consumerBatches = new ConcurrentHashMap<>();
+
+    protected KeyOrderedDispatcher(String name, KeyOrderedProperties properties) {
+        this.name = name;
+        this.enabled = properties.enabled();
+        this.maxPendingRecords = Math.max(1, properties.maxPendingRecords());
+        this.drainTimeout = properties.drainTimeout();
+        this.pendingRecords = new Semaphore(maxPendingRecords);
+        int laneCount = enabled ? Math.max(1, properties.lanes()) : 0;
+        this.lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(Executors.newSingleThreadExecutor(Thread.ofVirtual().name(name + "-lane-" + i + "-", 0).factory()));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The key records are ordered by; records without one all go to the first lane.
+     */
+    protected abstract String keyOf(ConsumerRecord<String, ?> record);
+
+    /**
+     * Splits the batch into lanes and queues them. Blocks while maxPendingRecords records are already pending.
+     * Must be called on the listener thread of the consumer that polled the batch, after rewindIfFailed.
+     *
+     * @param processor processes the records of one lane and acknowledges them through the given Acknowledgment,
+     *                  the way it would a whole batch: acknowledge, or nack from the first record to redeliver
+     */
+    public <V> void dispatch(Consumer<?, ?> consumer, List<ConsumerRecord<String, V>> records, Acknowledgment ack,
+                             BiConsumer<List<ConsumerRecord<String, V>>, Acknowledgment> processor) {
+        ConsumerBatches batches = consumerBatches.computeIfAbsent(consumer, ignored -> new ConsumerBatches());
+        PendingBatch batch = new PendingBatch(records, ack);
+        synchronized (batches) {
+            batches.pending.addLast(batch);
+        }
+
+        Map<Integer, List<Integer>> indexesByLane = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            indexesByLane.computeIfAbsent(bucketOf(keyOf(records.get(i)), lanes.size()), lane -> new ArrayList<>()).add(i);
+        }
+        indexesByLane.forEach((lane, indexes) -> {
+            int permits = Math.min(indexes.size(), maxPendingRecords);
+            acquire(permits);
+            lanes.get(lane).execute(() -> {
+                try {
+                    if (batches.failed.get()) {
+                        // An earlier record could not be completed; the listener will rewind and re-poll these.
+                        return;
+                    }
+                    List<ConsumerRecord<String, V>> laneRecords = indexes.stream().map(records::get).toList();
+                    processor.accept(laneRecords, new LaneAcknowledgment(batches, batch, indexes));
+                } catch (RuntimeException e) {
+                    log.error("{} lane could not process nor hand off its records; rewinding to the completed prefix", name, e);
+                    batches.failed.set(true);
+                } finally {
+                    pendingRecords.release(permits);
+                }
+            });
+        });
+    }
+
+    /**
+     * When a lane failed one of this consumer's records, waits for the lanes to finish, commits the contiguous
+     * completed prefix of every assigned partition and seeks them back to their committed offsets.
+     *
+     * @return true when the consumer was rewound; the current batch must then be dropped without acknowledgement
+     */
+    public boolean rewindIfFailed(Consumer<?, ?> consumer) {
+        ConsumerBatches batches = consumerBatches.get(consumer);
+        if (batches == null || !batches.failed.get()) {
+            return false;
+        }
+        drain();
+        Set<TopicPartition> assignment = consumer.assignment();
+        Map<TopicPartition, OffsetAndMetadata> completedPrefix;
+        synchronized (batches) {
+            completedPrefix = completedPrefix(batches.pending);
+            batches.pending.clear();
+        }
+        completedPrefix.keySet().retainAll(assignment);
+        if (!completedPrefix.isEmpty()) {
+            consumer.commitSync(completedPrefix);
+        }
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(assignment);
+        for (TopicPartition topicPartition : assignment) {
+            OffsetAndMetadata offsetAndMetadata = committed.get(topicPartition);
+            if (offsetAndMetadata != null) {
+                consumer.seek(topicPartition, offsetAndMetadata.offset());
+            } else {
+                consumer.seekToBeginning(Set.of(topicPartition));
+            }
+        }
+        batches.failed.set(false);
+        log.warn("{} lanes rewound partitions={} to the completed prefix={}", name, assignment, completedPrefix);
+        return true;
+    }
+
+    /**
+     * Waits until every lane has processed (or skipped) the records dispatched so far.
+     */
+    public void drain() {
+        CompletableFuture<?>[] barriers = lanes.stream()
+                .map(lane -> CompletableFuture.runAsync(() -> { }, lane))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(barriers).get(drainTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("{} lanes did not drain within {}", name, drainTimeout, e);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (enabled) {
+            // Let the lanes queue their acks so they are committed before the partitions move away.
+            drain();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        lanes.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * Per partition, the first record of the pending batches that is not completed, or the offset after the last
+     * one when all of them are. Must hold the monitor of their ConsumerBatches.
+     */
+    private static Map<TopicPartition, OffsetAndMetadata> completedPrefix(Deque<PendingBatch> pendingBatches) {
+        Map<TopicPartition, Long> firstIncomplete = new HashMap<>();
+        Map<TopicPartition, Long> next = new HashMap<>();
+        for (PendingBatch batch : pendingBatches) {
+            for (int i = 0; i < batch.records.size(); i++) {
+                ConsumerRecord<String, ?> record = batch.records.get(i);
+                TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+                if (!batch.completed[i]) {
+                    firstIncomplete.putIfAbsent(topicPartition, record.offset());
+                }
+                next.merge(topicPartition, record.offset() + 1, Math::max);
+            }
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        next.forEach((topicPartition, offset) ->
+                offsets.put(topicPartition, new OffsetAndMetadata(firstIncomplete.getOrDefault(topicPartition, offset))));
+        return offsets;
+    }
+
+    /**
+     * Acknowledges the completed batches at the head of the consumer's queue, in dispatch order.
+     */
+    private static void complete(ConsumerBatches batches, PendingBatch batch, List<Integer> indexes) {
+        synchronized (batches) {
+            for (int index : indexes) {
+                if (!batch.completed[index]) {
+                    batch.completed[index] = true;
+                    batch.remaining--;
+                }
+            }
+            while (!batches.pending.isEmpty() && batches.pending.peekFirst().remaining == 0) {
+                batches.pending.pollFirst().ack.acknowledge();
+            }
+        }
+    }
+
+    private void acquire(int permits) {
+        try {
+            pendingRecords.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for free " + name + " lane capacity", e);
+        }
+    }
+
+    /**
+     * The batches one consumer dispatched and not yet acknowledged, and whether a lane failed one of its records.
+     */
+    private static final class ConsumerBatches {
+
+        private final Deque<PendingBatch> pending = new ArrayDeque<>();
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+    }
+
+    private static final class PendingBatch {
+
+        private final List<? extends ConsumerRecord<String, ?>> records;
+        private final Acknowledgment ack;
+        private final boolean[] completed;
+        private int remaining;
+
+        private PendingBatch(List<? extends ConsumerRecord<String, ?>> records, Acknowledgment ack) {
+            this.records = records;
+            this.ack = ack;
+            this.completed = new boolean[records.size()];
+            this.remaining = records.size();
+        }
+    }
+
+    /**
+     * Acknowledgment handed to the processor of one lane; indexes are the lane's positions in the polled batch.
+     */
+    private static final class LaneAcknowledgment implements Acknowledgment {
+
+        private final ConsumerBatches batches;
+        private final PendingBatch batch;
+        private final List<Integer> indexes;
+
+        private LaneAcknowledgment(ConsumerBatches batches, PendingBatch batch, List<Integer> indexes) {
+            this.batches = batches;
+            this.batch = batch;
+            this.indexes = indexes;
+        }
+
+        @Override
+        public void acknowledge() {
+            complete(batches, batch, indexes);
+        }
+
+        @Override
+        public void nack(int index, Duration sleep) {
+            complete(batches, batch, indexes.subList(0, index));
+            batches.failed.set(true);
+        }
+
+        @Override
+        public void nack(Duration sleep) {
+            batches.failed.set(true);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ikea.warehouse_data_consumer.consumer.ordered;
+
+import com.ikea.warehouse_data_consumer.config.kafka.KeyOrderedProperties;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+
+/**
+ * Key-ordered lanes for the product update batch listener, keyed by product name.
+ */
+@Component
+public class ProductKeyOrderedDispatcher extends KeyOrderedDispatcher {
+
+    public ProductKeyOrderedDispatcher(KeyOrderedProperties properties) {
+        super("product", properties);
+    }
+
+    @Override
+    protected String keyOf(ConsumerRecord<String, ?> record) {
+        return record.value() instanceof ProductUpdateEvent event ? event.name() : record.key();
+    }
+}
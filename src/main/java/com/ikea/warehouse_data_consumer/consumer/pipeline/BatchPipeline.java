@@ -0,0 +1,182 @@
+package com.ikea.warehouse_data_consumer.consumer.pipeline;
+
+import com.ikea.warehouse_data_consumer.config.kafka.PipelineProperties;
+import com.ikea.warehouse_data_consumer.data.exception.KafkaProduceFailedException;
+import com.ikea.warehouse_data_consumer.data.exception.MongoSaturatedException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Overlaps fetching/deserializing batch N+1 with writing batch N.
+ *
+ * The listener thread submits each polled batch and goes back to polling; a single writer thread processes the
+ * batches strictly in submission order and acknowledges each one when its write completes, so offsets are committed
+ * in order. At most maxInFlight batches are queued or being written; above that the listener thread blocks.
+ *
+ * If a batch can neither be written nor recovered, every later batch is skipped without acknowledgement and the
+ * listener rewinds to the committed offsets on its next poll, so nothing is committed past the failed batch.
+ *
+ * Every consumer of the container factory (one per unit of concurrency) gets its own writer, in-flight limit and
+ * failed state: a failed batch only skips and rewinds the batches of the consumer that polled it, whose assignment
+ * they belong to.
+ */
+@Slf4j
+public abstract class BatchPipeline implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    private final String name;
+    private final boolean enabled;
+    private final Duration drainTimeout;
+    private final int maxInFlight;
+    private final Map<Consumer<?, ?>, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger laneCount = new AtomicInteger();
+
+    protected BatchPipeline(String name, PipelineProperties properties) {
+        this.name = name;
+        this.enabled = properties.enabled();
+        this.drainTimeout = properties.drainTimeout();
+        this.maxInFlight = Math.max(1, properties.maxInFlight());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a polled batch for writing by the consumer's writer. Blocks while maxInFlight batches of the consumer are
+     * already pending.
+     *
+     * @param consumer the consumer that polled the batch
+     * @param batch writes the batch and acknowledges it
+     * @param recoverer called when the batch fails; must acknowledge the batch itself
+     */
+    public void submit(Consumer<?, ?> consumer, Runnable batch, java.util.function.Consumer<Throwable> recoverer) {
+        Lane lane = lanes.computeIfAbsent(consumer, ignored -> new Lane());
+        try {
+            lane.inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free " + name + " pipeline slot", e);
+        }
+        lane.writer.execute(() -> {
+            try {
+                if (lane.failed.get()) {
+                    // An earlier batch was not acknowledged; the listener will rewind and re-poll this one.
+                    return;
+                }
+                run(batch, recoverer);
+            } catch (RuntimeException e) {
+                log.error("{} pipeline batch could not be written nor recovered; rewinding to committed offsets", name, e);
+                lane.failed.set(true);
+            } finally {
+                lane.inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * A failed hand-off to the retry/error topics is not recovered: the batch is rewound so that nothing past it
+     * gets committed. Neither is a batch held back by Mongo backpressure, which must stay in Kafka.
+     */
+    private static void run(Runnable batch, java.util.function.Consumer<Throwable> recoverer) {
+        try {
+            batch.run();
+        } catch (KafkaProduceFailedException | MongoSaturatedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            recoverer.accept(e);
+        }
+    }
+
+    /**
+     * Must be called by the listener before submitting. When an earlier batch of this consumer failed, waits for its
+     * in-flight batches to be skipped and seeks every partition assigned to it back to its committed offset.
+     *
+     * @return true when the consumer was rewound; the current batch must then be dropped without acknowledgement
+     */
+    public boolean rewindIfFailed(Consumer<?, ?> consumer) {
+        Lane lane = lanes.get(consumer);
+        if (lane == null || !lane.failed.get()) {
+            return false;
+        }
+        lane.drain();
+        Set<TopicPartition> assignment = consumer.assignment();
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(assignment);
+        for (TopicPartition topicPartition : assignment) {
+            OffsetAndMetadata offsetAndMetadata = committed.get(topicPartition);
+            if (offsetAndMetadata != null) {
+                consumer.seek(topicPartition, offsetAndMetadata.offset());
+            } else {
+                consumer.seekToBeginning(Set.of(topicPartition));
+            }
+        }
+        lane.failed.set(false);
+        log.warn("{} pipeline rewound partitions={} to committed offsets", name, assignment);
+        return true;
+    }
+
+    /**
+     * Waits until every batch the consumer submitted so far has been written (or skipped).
+     */
+    public void drain(Consumer<?, ?> consumer) {
+        Lane lane = lanes.get(consumer);
+        if (lane != null) {
+            lane.drain();
+        }
+    }
+
+    /**
+     * Waits until every batch submitted so far, by any consumer, has been written (or skipped).
+     */
+    public void drain() {
+        lanes.values().forEach(Lane::drain);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (enabled) {
+            // Let in-flight batches queue their acks so they are committed before the partitions move away.
+            drain(consumer);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        lanes.values().forEach(lane -> lane.writer.shutdown());
+    }
+
+    private final class Lane {
+
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(
+                Thread.ofVirtual().name(name + "-pipeline-" + laneCount.getAndIncrement() + "-", 0).factory());
+        private final AtomicBoolean failed = new AtomicBoolean(false);
+
+        private void drain() {
+            try {
+                writer.submit(() -> { }).get(drainTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("{} pipeline did not drain within {}", name, drainTimeout, e);
+            }
+        }
+    }
+}
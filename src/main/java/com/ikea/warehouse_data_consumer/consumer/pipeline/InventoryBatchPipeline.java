@@ -0,0 +1,15 @@
+package com.ikea.warehouse_data_consumer.consumer.pipeline;
+
+import com.ikea.warehouse_data_consumer.config.kafka.PipelineProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pipelined writer for the inventory update batch listener.
+ */
+@Component
+public class InventoryBatchPipeline extends BatchPipeline {
+
+    public InventoryBatchPipeline(PipelineProperties properties) {
+        super("inventory", properties);
+    }
+}
@@ -0,0 +1,15 @@
+package com.ikea.warehouse_data_consumer.consumer.pipeline;
+
+import com.ikea.warehouse_data_consumer.config.kafka.PipelineProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pipelined writer for the product update batch listener.
+ */
+@Component
+public class ProductBatchPipeline extends BatchPipeline {
+
+    public ProductBatchPipeline(PipelineProperties properties) {
+        super("product", properties);
+    }
+}
@@ -1,22 +1,40 @@
 package com.ikea.warehouse_data_consumer.consumer.product;
 
+import com.ikea.warehouse_data_consumer.config.kafka.RetryProperties;
+import com.ikea.warehouse_data_consumer.consumer.backpressure.BackpressureController;
+import com.ikea.warehouse_data_consumer.consumer.offset.ProductExactlyOnceProcessor;
+import com.ikea.warehouse_data_consumer.consumer.ordered.ProductKeyOrderedDispatcher;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.ProductBatchPipeline;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
 import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import com.ikea.warehouse_data_consumer.data.event.MalformedRecord;
 import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import com.ikea.warehouse_data_consumer.data.exception.KafkaProduceFailedException;
+import com.ikea.warehouse_data_consumer.data.exception.MongoSaturatedException;
 import com.ikea.warehouse_data_consumer.data.exception.ProductDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
 import com.ikea.warehouse_data_consumer.service.KafkaProducerService;
 import com.ikea.warehouse_data_consumer.service.ProductService;
+import com.ikea.warehouse_data_consumer.util.BatchAckUtil;
+import com.ikea.warehouse_data_consumer.util.MessageIdUtil;
+import com.ikea.warehouse_data_consumer.util.RetryHeaderUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Slf4j
 @Service
@@ -25,6 +43,12 @@ public class ProductEventConsumer {
 
     private final ProductService productService;
     private final KafkaProducerService kafkaProducerService;
+    private final RetryProperties retryProperties;
+    private final ProductBatchPipeline productBatchPipeline;
+    private final ProductKeyOrderedDispatcher productKeyOrderedDispatcher;
+    private final ProductExactlyOnceProcessor productExactlyOnceProcessor;
+    private final ConsumerMetrics consumerMetrics;
+    private final BackpressureController backpressureController;
 
     @Value("${app.kafka.consumer.product.retryTopic}")
     private String retryTopic;
@@ -32,31 +56,110 @@ public class ProductEventConsumer {
     @Value("${app.kafka.consumer.product.errorTopic}")
     private String errorTopic;
 
-    @Retryable(
-            noRetryFor = {ProductDocumentMongoWriteException.class},
-            maxAttempts = 3,
-            backoff = @Backoff(delay = 50, multiplier = 2.0)
-    )
+    @Value("${app.kafka.consumer.redelivery-backoff}")
+    private Duration redeliveryBackoff;
+
     @KafkaListener(
             topics = "${app.kafka.consumer.product.topic}",
             containerFactory = "batchKafkaListenerContainerFactoryProduct"
     )
-    public void consume(List<ProductUpdateEvent> productUpdateEventList, Acknowledgment ack) {
-        log.info("BATCH CONSUMER Received inventory update event list size={}", productUpdateEventList.size());
+    public void consume(List<ConsumerRecord<String, ProductUpdateEvent>> records, Acknowledgment ack, Consumer<?, ?> consumer) {
+        log.info("BATCH CONSUMER Received product update event list size={}", records.size());
+        consumerMetrics.recordPollBatch("product", "main", records.size());
+        if (ObjectUtils.isEmpty(records)) {
+            log.warn("Received empty product update records; acking.");
+            ack.acknowledge();
+            return;
+        }
+        if (productKeyOrderedDispatcher.isEnabled()) {
+            if (productKeyOrderedDispatcher.rewindIfFailed(consumer)) {
+                // This batch will be polled again from the completed prefix.
+                return;
+            }
+            productKeyOrderedDispatcher.dispatch(consumer, records, ack, this::processBatch);
+            return;
+        }
+        if (productBatchPipeline.isEnabled()) {
+            if (productBatchPipeline.rewindIfFailed(consumer)) {
+                // This batch will be polled again from the committed offsets.
+                return;
+            }
+            productBatchPipeline.submit(consumer, () -> processBatch(records, ack),
+                    throwable -> recover(asException(throwable), records, ack));
+            return;
+        }
+        processBatch(records, ack);
+    }
 
-        if (ObjectUtils.isEmpty(productUpdateEventList)) {
-            log.warn("Received empty product update productUpdateEventList; acking.");
+    private void processBatch(List<ConsumerRecord<String, ProductUpdateEvent>> records, Acknowledgment ack) {
+        // One entry per record, in batch order: the event, the MalformedRecord published in its place, or the record
+        // itself when its offset was already stored.
+        List<Object> handOffItems = new ArrayList<>(records.size());
+        List<ProductUpdateEvent> productUpdateEventList = new ArrayList<>(records.size());
+        // Recorded as lastMessageId, so that a replay of an applied record is dropped before any Mongo write.
+        Map<ProductUpdateEvent, String> messageIds = new IdentityHashMap<>(records.size());
+        List<KafkaKeyValueRecord> malformedRecords = new ArrayList<>();
+        List<ConsumerRecord<String, ProductUpdateEvent>> malformedConsumerRecords = new ArrayList<>();
+        int skipped = 0;
+        for (ConsumerRecord<String, ProductUpdateEvent> record : records) {
+            if (productExactlyOnceProcessor.isProcessed(record)) {
+                handOffItems.add(record);
+                skipped++;
+            } else if (record.value() == null) {
+                MalformedRecord malformedRecord = MalformedRecord.from(record);
+                handOffItems.add(malformedRecord);
+                malformedRecords.add(new KafkaKeyValueRecord(record.key(), malformedRecord));
+                malformedConsumerRecords.add(record);
+            } else {
+                handOffItems.add(record.value());
+                productUpdateEventList.add(record.value());
+                messageIds.put(record.value(), MessageIdUtil.messageId(record));
+            }
+        }
+
+        productExactlyOnceProcessor.recordSkipped(skipped);
+        if (skipped == records.size()) {
+            // A replay of batches that were already committed to Mongo.
             ack.acknowledge();
             return;
         }
+
+        List<SendBatchResult> sendBatchResults = new ArrayList<>();
+        if (productExactlyOnceProcessor.isEnabled() && !malformedRecords.isEmpty()) {
+            // The batch transaction also stores the offsets of the malformed records, so they are handed off first.
+            SendBatchResult malformedResult = sendMalformed(malformedRecords);
+            if (!malformedResult.allSent()) {
+                // The batch transaction would store offsets past the unsent records, so nothing is written.
+                redeliverWholeBatch(records.size(), ack);
+                return;
+            }
+            // Skipped when the batch is redelivered because its transaction did not commit.
+            productExactlyOnceProcessor.markSentToErrorTopic(malformedConsumerRecords);
+        }
+        boolean offsetsStored = false;
         try {
-            productService.proceedProductUpdateBatchEvent(productUpdateEventList);
+            if (productExactlyOnceProcessor.isEnabled()) {
+                productExactlyOnceProcessor.execute(records, () -> {
+                    if (!productUpdateEventList.isEmpty()) {
+                        productService.proceedProductUpdateBatchEvent(productUpdateEventList, messageIds);
+                    }
+                });
+                offsetsStored = true;
+            } else if (!productUpdateEventList.isEmpty()) {
+                productService.proceedProductUpdateBatchEvent(productUpdateEventList, messageIds);
+            }
         } catch (ProductDocumentMongoWriteException productDocumentMongoWriteException) {
+            if (productExactlyOnceProcessor.isEnabled()) {
+                // The batch transaction was rolled back, so none of the events were written.
+                log.error("Recovering from rolled back batch transaction; events size={}",
+                        productUpdateEventList.size(), productDocumentMongoWriteException);
+                sendBatchResults.add(kafkaProducerService.sendBatch(retryProperties.tierTopic(retryTopic, 1),
+                        toFirstRetryRecords(productUpdateEventList)));
+                acknowledgeHandedOff(handOffItems, records, ack, sendBatchResults, false);
+                return;
+            }
             // Handle known business exception locally to prevent container-level retries
-            List<KafkaKeyValueRecord> retryableEventMap = productDocumentMongoWriteException.getFailedEvents()
-                    .stream()
-                    .map(event -> new KafkaKeyValueRecord(event.name(), event))
-                    .toList();
+            List<KafkaKeyValueRecord> retryableEventMap = toFirstRetryRecords(productDocumentMongoWriteException.getFailedEvents());
 
             List<KafkaKeyValueRecord> nonRetryableEventMap = productDocumentMongoWriteException.getCriteriaNotMatchedEvents()
                     .stream()
@@ -68,22 +171,97 @@ public class ProductEventConsumer {
                     ObjectUtils.isEmpty(nonRetryableEventMap) ? 0 : nonRetryableEventMap.size(),
                     productDocumentMongoWriteException);
 
-            kafkaProducerService.sendBatch(retryTopic, retryableEventMap);
-            kafkaProducerService.sendBatch(errorTopic, nonRetryableEventMap);
-        } finally {
-            ack.acknowledge();
+            sendBatchResults.add(kafkaProducerService.sendBatch(retryProperties.tierTopic(retryTopic, 1), retryableEventMap));
+            sendBatchResults.add(kafkaProducerService.sendBatch(errorTopic, nonRetryableEventMap));
+        } catch (RuntimeException ex) {
+            if (backpressureController.pauseIfSaturated(ex)) {
+                keepInKafka(ex, records.size(), ack);
+                return;
+            }
+            log.error("Recovering from Exception; events size={}", productUpdateEventList.size(), ex);
+            sendBatchResults.add(kafkaProducerService.sendBatch(retryProperties.tierTopic(retryTopic, 1),
+                    toFirstRetryRecords(productUpdateEventList)));
+        }
+        if (!productExactlyOnceProcessor.isEnabled() && !malformedRecords.isEmpty()) {
+            // Only sent once the batch is acknowledged, so that a batch kept in Kafka does not publish them again.
+            sendBatchResults.add(sendMalformed(malformedRecords));
         }
+        acknowledgeHandedOff(handOffItems, records, ack, sendBatchResults, offsetsStored);
     }
 
-    @Recover
-    public void recover(Exception exception, List<ProductUpdateEvent> eventList, Acknowledgment ack) {
+    private SendBatchResult sendMalformed(List<KafkaKeyValueRecord> malformedRecords) {
+        log.error("Sending malformed product update records to error topic; size={}", malformedRecords.size());
+        return kafkaProducerService.sendBatch(errorTopic, malformedRecords);
+    }
+
+    /**
+     * Leaves the whole batch in Kafka while the listeners are paused on Mongo saturation. Its malformed records are
+     * sent to the error topic once it is acknowledged, or were sent and are skipped on redelivery in exactly-once
+     * mode.
+     */
+    private void keepInKafka(RuntimeException ex, int size, Acknowledgment ack) {
+        if (productBatchPipeline.isEnabled()) {
+            throw new MongoSaturatedException("Mongo saturated; rewinding product batch of size=" + size, ex);
+        }
+        log.warn("Mongo saturated; redelivering product batch of size={} once the listeners resume", size, ex);
+        ack.nack(0, redeliveryBackoff);
+    }
+
+    private void redeliverWholeBatch(int size, Acknowledgment ack) {
+        if (productBatchPipeline.isEnabled()) {
+            throw new KafkaProduceFailedException("Could not hand off malformed product records to the error topic; batch size=" + size);
+        }
+        log.warn("Could not hand off malformed product records to the error topic; redelivering batch of size={}", size);
+        ack.nack(0, redeliveryBackoff);
+    }
+
+    /**
+     * Sends the whole batch to the first retry tier when it could not be processed at all.
+     */
+    private void recover(Exception exception, List<ConsumerRecord<String, ProductUpdateEvent>> records, Acknowledgment ack) {
         log.error("Recovering from Exception; events size={}",
-                ObjectUtils.isEmpty(eventList) ? 0 : eventList.size(), exception);
-        List<KafkaKeyValueRecord> kafkaKeyValueRecords = eventList.stream()
-                .map(event -> new KafkaKeyValueRecord(event.name(), event))
+                ObjectUtils.isEmpty(records) ? 0 : records.size(), exception);
+        // Aligned with records; malformed records and records whose offset was already stored are null here.
+        List<ProductUpdateEvent> eventList = records.stream()
+                .map(record -> productExactlyOnceProcessor.isProcessed(record) ? null : record.value())
+                .toList();
+        SendBatchResult retryResult = kafkaProducerService.sendBatch(retryProperties.tierTopic(retryTopic, 1),
+                toFirstRetryRecords(eventList.stream().filter(Objects::nonNull).toList()));
+        acknowledgeHandedOff(eventList, records, ack, List.of(retryResult), false);
+    }
+
+    private List<KafkaKeyValueRecord> toFirstRetryRecords(List<ProductUpdateEvent> events) {
+        Instant notBefore = Instant.now().plus(retryProperties.delay(1));
+        return events.stream()
+                .map(event -> new KafkaKeyValueRecord(event.name(), event, RetryHeaderUtil.retryHeaders(1, notBefore)))
                 .toList();
-        kafkaProducerService.sendBatch(errorTopic, kafkaKeyValueRecords);
-        ack.acknowledge();
     }
 
+    /**
+     * Acknowledges the batch up to the first event whose retry/error record was not acknowledged by the broker.
+     * The listener thread re-seeks the rest with nack; a pipelined writer thread cannot, so it fails the batch and
+     * the pipeline rewinds to the committed offsets instead. In exactly-once mode a fully handed off batch also stores
+     * its offsets, unless its transaction already did.
+     */
+    private void acknowledgeHandedOff(List<?> eventList, List<ConsumerRecord<String, ProductUpdateEvent>> records,
+                                      Acknowledgment ack, List<SendBatchResult> sendBatchResults, boolean offsetsStored) {
+        int firstUnsafeIndex = BatchAckUtil.firstUnsafeIndex(eventList, sendBatchResults);
+        if (firstUnsafeIndex < 0) {
+            if (!offsetsStored) {
+                productExactlyOnceProcessor.markHandedOff(records);
+            }
+            ack.acknowledge();
+            return;
+        }
+        if (productBatchPipeline.isEnabled()) {
+            throw new KafkaProduceFailedException("Could not hand off product events to the retry/error topics; index=" + firstUnsafeIndex);
+        }
+        log.warn("Could not hand off product events to the retry/error topics; redelivering from index={} of size={}",
+                firstUnsafeIndex, eventList.size());
+        ack.nack(firstUnsafeIndex, redeliveryBackoff);
+    }
+
+    private static Exception asException(Throwable throwable) {
+        return throwable instanceof Exception exception ? exception : new IllegalStateException(throwable);
+    }
 }
@@ -1,47 +1,140 @@
 package com.ikea.warehouse_data_consumer.consumer.product;
 
+import com.ikea.warehouse_data_consumer.config.kafka.RetryProperties;
+import com.ikea.warehouse_data_consumer.consumer.backpressure.BackpressureController;
+import com.ikea.warehouse_data_consumer.consumer.retry.DelayedRetryScheduler;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import com.ikea.warehouse_data_consumer.data.event.MalformedRecord;
 import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import com.ikea.warehouse_data_consumer.data.exception.ProductDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
 import com.ikea.warehouse_data_consumer.service.KafkaProducerService;
 import com.ikea.warehouse_data_consumer.service.ProductService;
+import com.ikea.warehouse_data_consumer.util.RetryHeaderUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Recover;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-applies records of the product retry delay tiers through the bulk write path. A failed event moves on to the
+ * next tier; the listener thread never sleeps, partitions that are not due yet are paused by the scheduler.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProductEventRetryConsumer {
 
+    static final String LISTENER_ID = "productRetryListener";
+
     private final ProductService productService;
     private final KafkaProducerService kafkaProducerService;
+    private final RetryProperties retryProperties;
+    private final DelayedRetryScheduler delayedRetryScheduler;
+    private final ConsumerMetrics consumerMetrics;
+    private final BackpressureController backpressureController;
+
+    @Value("${app.kafka.consumer.product.retryTopic}")
+    private String retryTopic;
 
     @Value("${app.kafka.consumer.product.errorTopic}")
     private String errorTopic;
 
-    @Retryable(
-            maxAttempts = 3,
-            backoff = @Backoff(delay = 50, multiplier = 2.0)
-    )
     @KafkaListener(
-            topics = "${app.kafka.consumer.product.retryTopic}",
-            containerFactory = "kafkaListenerContainerFactoryProduct"
+            id = LISTENER_ID,
+            idIsGroup = false,
+            topics = "#{@retryTopics.product()}",
+            containerFactory = "batchRetryKafkaListenerContainerFactoryProduct"
     )
-    public void consume(ProductUpdateEvent productUpdateEvent, Acknowledgment ack) {
-        productService.proceedProductUpdateEvent(productUpdateEvent);
-        ack.acknowledge();
+    public void consume(List<ConsumerRecord<String, ProductUpdateEvent>> records, Consumer<?, ?> consumer) {
+        log.info("RETRY CONSUMER Received product update records size={}", records.size());
+        consumerMetrics.recordPollBatch("product", "retry", records.size());
+        delayedRetryScheduler.dispatch(LISTENER_ID, records, consumer, this::writeDueRecords);
     }
 
-    @Recover
-    public void recover(Exception exception, ProductUpdateEvent productUpdateEvent, Acknowledgment ack) {
-        log.error("ProductEventRetryConsumer recover exception", exception);
-        kafkaProducerService.send(errorTopic, productUpdateEvent.name(), productUpdateEvent);
-        ack.acknowledge();
+    private List<SendBatchResult> writeDueRecords(List<ConsumerRecord<String, ProductUpdateEvent>> dueRecords) {
+        List<KafkaKeyValueRecord> malformedRecords = new ArrayList<>();
+        Map<ProductUpdateEvent, Integer> attempts = new IdentityHashMap<>();
+        List<ProductUpdateEvent> dueEvents = new ArrayList<>(dueRecords.size());
+        for (ConsumerRecord<String, ProductUpdateEvent> record : dueRecords) {
+            if (record.value() == null) {
+                malformedRecords.add(new KafkaKeyValueRecord(record.key(), MalformedRecord.from(record)));
+            } else {
+                attempts.put(record.value(), RetryHeaderUtil.attempt(record.headers()));
+                dueEvents.add(record.value());
+            }
+        }
+
+        List<ProductUpdateEvent> failedEvents = List.of();
+        List<ProductUpdateEvent> criteriaNotMatchedEvents = List.of();
+        RuntimeException saturation = null;
+        try {
+            if (!dueEvents.isEmpty()) {
+                productService.proceedProductUpdateBatchEvent(dueEvents);
+            }
+        } catch (ProductDocumentMongoWriteException ex) {
+            failedEvents = ex.getFailedEvents();
+            criteriaNotMatchedEvents = ex.getCriteriaNotMatchedEvents();
+        } catch (RuntimeException ex) {
+            if (backpressureController.pauseIfSaturated(ex)) {
+                saturation = ex;
+            } else {
+                log.error("Retrying product update batch failed as a whole; size={}", dueEvents.size(), ex);
+                failedEvents = dueEvents;
+            }
+        }
+        if (saturation != null) {
+            // Reported as not handed off, so that the scheduler seeks back and the records stay in their delay tier.
+            // Malformed records are only sent once the due records can be committed, not on every redelivery.
+            log.warn("Mongo saturated; keeping retried product update records in Kafka; size={}", dueRecords.size(), saturation);
+            return List.of(
+                    SendBatchResult.notSent(retryTopic, dueEvents.stream()
+                            .map(event -> new KafkaKeyValueRecord(event.name(), event))
+                            .toList(), saturation),
+                    SendBatchResult.notSent(errorTopic, malformedRecords, saturation));
+        }
+        if (malformedRecords.isEmpty() && failedEvents.isEmpty() && criteriaNotMatchedEvents.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, List<KafkaKeyValueRecord>> recordsByTopic = new LinkedHashMap<>();
+        if (!malformedRecords.isEmpty()) {
+            log.error("Sending malformed product update retry records to error topic; size={}", malformedRecords.size());
+            recordsByTopic.put(errorTopic, new ArrayList<>(malformedRecords));
+        }
+        Instant now = Instant.now();
+        criteriaNotMatchedEvents.forEach(event -> recordsByTopic.computeIfAbsent(errorTopic, topic -> new ArrayList<>())
+                .add(new KafkaKeyValueRecord(event.name(), event)));
+        for (ProductUpdateEvent event : failedEvents) {
+            int attempt = attempts.getOrDefault(event, 1);
+            if (attempt >= retryProperties.maxAttempts()) {
+                recordsByTopic.computeIfAbsent(errorTopic, topic -> new ArrayList<>())
+                        .add(new KafkaKeyValueRecord(event.name(), event));
+            } else {
+                int nextAttempt = attempt + 1;
+                recordsByTopic.computeIfAbsent(retryProperties.tierTopic(retryTopic, nextAttempt), topic -> new ArrayList<>())
+                        .add(new KafkaKeyValueRecord(event.name(), event,
+                                RetryHeaderUtil.retryHeaders(nextAttempt, now.plus(retryProperties.delay(nextAttempt)))));
+            }
+        }
+
+        if (!failedEvents.isEmpty() || !criteriaNotMatchedEvents.isEmpty()) {
+            log.error("Retried product update events not applied; failed={}, criteria not matched={}",
+                    failedEvents.size(), criteriaNotMatchedEvents.size());
+        }
+        List<SendBatchResult> sendBatchResults = new ArrayList<>();
+        recordsByTopic.forEach((topic, topicRecords) -> sendBatchResults.add(kafkaProducerService.sendBatch(topic, topicRecords)));
+        return sendBatchResults;
     }
 }
-
@@ -0,0 +1,154 @@
+package com.ikea.warehouse_data_consumer.consumer.retry;
+
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.MalformedRecord;
+import com.ikea.warehouse_data_consumer.util.BatchAckUtil;
+import com.ikea.warehouse_data_consumer.util.RetryHeaderUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Drives the delay tier listeners without sleeping the listener thread.
+ *
+ * Each polled batch is split per partition. The due records of all partitions are written together; a partition
+ * whose next record is not due yet is seeked back to that record and paused until its due time, while the other
+ * partitions keep flowing. Offsets are committed per partition up to the first record that was not handed off,
+ * including malformed records whose error topic record was not acknowledged.
+ */
+@Slf4j
+@Component
+public class DelayedRetryScheduler implements DisposableBean {
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final Duration redeliveryBackoff;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("retry-resume-", 0).factory());
+
+    public DelayedRetryScheduler(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                 @Value("${app.kafka.consumer.redelivery-backoff}") Duration redeliveryBackoff) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.redeliveryBackoff = redeliveryBackoff;
+    }
+
+    /**
+     * Must be called on the listener thread.
+     *
+     * @param listenerId id of the calling listener, used to pause and resume its partitions
+     * @param records the polled batch
+     * @param consumer the listener's consumer, used to seek and commit
+     * @param writer writes the due records and returns the results of handing off the failed ones
+     */
+    public <V> void dispatch(String listenerId, List<ConsumerRecord<String, V>> records, Consumer<?, ?> consumer,
+                             Function<List<ConsumerRecord<String, V>>, List<SendBatchResult>> writer) {
+        Instant now = Instant.now();
+        Map<TopicPartition, List<ConsumerRecord<String, V>>> recordsByPartition = new LinkedHashMap<>();
+        records.forEach(record -> recordsByPartition
+                .computeIfAbsent(new TopicPartition(record.topic(), record.partition()), tp -> new ArrayList<>())
+                .add(record));
+
+        Map<TopicPartition, Integer> dueCounts = new HashMap<>();
+        List<ConsumerRecord<String, V>> dueRecords = new ArrayList<>();
+        recordsByPartition.forEach((topicPartition, partitionRecords) -> {
+            int dueCount = RetryHeaderUtil.dueCount(partitionRecords, now);
+            dueCounts.put(topicPartition, dueCount);
+            dueRecords.addAll(partitionRecords.subList(0, dueCount));
+        });
+
+        List<SendBatchResult> sendBatchResults = dueRecords.isEmpty() ? List.of() : writer.apply(dueRecords);
+
+        Set<Object> unsafeEvents = BatchAckUtil.unsafeEvents(sendBatchResults);
+        Map<TopicPartition, Set<Long>> unsafeMalformedOffsets = unsafeMalformedOffsets(unsafeEvents);
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        recordsByPartition.forEach((topicPartition, partitionRecords) -> {
+            int dueCount = dueCounts.get(topicPartition);
+            Set<Long> malformedOffsets = unsafeMalformedOffsets.getOrDefault(topicPartition, Set.of());
+            int firstUnsafeIndex = firstUnsafeIndex(partitionRecords.subList(0, dueCount), unsafeEvents, malformedOffsets);
+            int handledCount = firstUnsafeIndex >= 0 ? firstUnsafeIndex : dueCount;
+            if (handledCount > 0) {
+                offsets.put(topicPartition, new OffsetAndMetadata(partitionRecords.get(handledCount - 1).offset() + 1));
+            }
+            if (handledCount < partitionRecords.size()) {
+                ConsumerRecord<String, V> next = partitionRecords.get(handledCount);
+                Instant resumeAt = firstUnsafeIndex >= 0
+                        ? now.plus(redeliveryBackoff)
+                        : RetryHeaderUtil.notBefore(next.headers());
+                consumer.seek(topicPartition, next.offset());
+                pauseUntil(listenerId, topicPartition, resumeAt);
+            }
+        });
+
+        if (!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+        }
+    }
+
+    /**
+     * Records are matched to their hand-off by value; a malformed record has none, so its error topic record is
+     * traced back by its offset instead.
+     *
+     * @return the index in records, or -1 when every one of them was handed off
+     */
+    private static int firstUnsafeIndex(List<? extends ConsumerRecord<String, ?>> records, Set<Object> unsafeEvents,
+                                        Set<Long> unsafeMalformedOffsets) {
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, ?> record = records.get(i);
+            boolean unsafe = record.value() == null
+                    ? unsafeMalformedOffsets.contains(record.offset())
+                    : unsafeEvents.contains(record.value());
+            if (unsafe) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<TopicPartition, Set<Long>> unsafeMalformedOffsets(Set<Object> unsafeEvents) {
+        Map<TopicPartition, Set<Long>> offsets = new HashMap<>();
+        for (Object event : unsafeEvents) {
+            if (event instanceof MalformedRecord malformedRecord) {
+                offsets.computeIfAbsent(new TopicPartition(malformedRecord.topic(), malformedRecord.partition()),
+                        topicPartition -> new HashSet<>()).add(malformedRecord.offset());
+            }
+        }
+        return offsets;
+    }
+
+    private void pauseUntil(String listenerId, TopicPartition topicPartition, Instant resumeAt) {
+        MessageListenerContainer container = kafkaListenerEndpointRegistry.getListenerContainer(listenerId);
+        if (container == null) {
+            log.warn("No listener container id={}; partition={} is redelivered without pausing", listenerId, topicPartition);
+            return;
+        }
+        long delayMillis = Math.max(0, Duration.between(Instant.now(), resumeAt).toMillis());
+        log.debug("Pausing partition={} of listener={} for {}ms", topicPartition, listenerId, delayMillis);
+        container.pausePartition(topicPartition);
+        scheduler.schedule(() -> container.resumePartition(topicPartition), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+}
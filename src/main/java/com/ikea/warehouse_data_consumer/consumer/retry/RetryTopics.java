@@ -0,0 +1,30 @@
+package com.ikea.warehouse_data_consumer.consumer.retry;
+
+import com.ikea.warehouse_data_consumer.config.kafka.RetryProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the delay tier topics of each entity to the retry listeners' topic expressions.
+ */
+@Component("retryTopics")
+@RequiredArgsConstructor
+public class RetryTopics {
+
+    private final RetryProperties retryProperties;
+
+    @Value("${app.kafka.consumer.inventory.retryTopic}")
+    private String inventoryRetryTopic;
+
+    @Value("${app.kafka.consumer.product.retryTopic}")
+    private String productRetryTopic;
+
+    public String[] inventory() {
+        return retryProperties.topics(inventoryRetryTopic);
+    }
+
+    public String[] product() {
+        return retryProperties.topics(productRetryTopic);
+    }
+}
@@ -26,7 +26,7 @@ public record ArticleDocument(
     @Schema(description = "Available stock quantity", example = "12")
     Long stock,
 
-    @Schema(description = "Optional idempotency marker for last applied message id")
+    @Schema(description = "Id of the Kafka message that last applied the article, used to skip replays", example = "inventory-0@42")
     String lastMessageId,
 
     @Version
@@ -0,0 +1,35 @@
+package com.ikea.warehouse_data_consumer.data.document;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "availability_outbox")
+@Schema(description = "Product availability delta waiting to be published; deleted once the broker acknowledged it")
+public record AvailabilityOutboxDocument(
+    @Id
+    ObjectId id,
+
+    @Schema(description = "Product name", example = "Dining Chair")
+    String name,
+
+    @Schema(description = "Buildable quantity before the change; null for a new product", example = "2")
+    Long previousBuildableQuantity,
+
+    @Schema(description = "Buildable quantity after the change", example = "3")
+    Long buildableQuantity,
+
+    @Schema(description = "Article that limits the buildable quantity", example = "1")
+    String limitingArtId,
+
+    @Schema(description = "Product version the quantity was computed from", example = "2")
+    Long productVersion,
+
+    @Schema(description = "Sum of the required articles' versions the quantity was computed from", example = "17")
+    Long articleVersionSum,
+
+    Instant computedAt
+) {}
@@ -0,0 +1,29 @@
+package com.ikea.warehouse_data_consumer.data.document;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "product_availability")
+@Schema(description = "Denormalized buildable quantity of a product, maintained by the consumer on every article or product change")
+public record ProductAvailabilityDocument(
+    @Id
+    @Schema(description = "Product name", example = "Dining Chair")
+    String id,
+
+    @Schema(description = "How many products the current article stock can build", example = "3")
+    Long buildableQuantity,
+
+    @Schema(description = "Article that limits the buildable quantity; null when the product requires no articles", example = "1")
+    String limitingArtId,
+
+    @Schema(description = "Product version the quantity was computed from", example = "2")
+    Long productVersion,
+
+    @Schema(description = "Sum of the required articles' versions the quantity was computed from", example = "17")
+    Long articleVersionSum,
+
+    Instant computedAt
+) {}
@@ -34,6 +34,9 @@ public record ProductDocument(
     @Field("containArticles")
     List<ArticleAmount> containArticles,
 
+    @Schema(description = "Id of the Kafka message that last applied the product, used to skip replays", example = "product-0@42")
+    String lastMessageId,
+
     @Version
     @Schema(description = "Optimistic lock version", example = "0")
     Long version,
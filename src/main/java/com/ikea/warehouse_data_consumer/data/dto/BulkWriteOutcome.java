@@ -0,0 +1,32 @@
+package com.ikea.warehouse_data_consumer.data.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Events of a bulk write that were not applied, split the same way as the Mongo write exceptions.
+ *
+ * @param failedEvents events whose write failed with a write error or lost an optimistic version race (retryable)
+ * @param criteriaNotMatchedEvents events rejected for good and routed to the error topic; the bulk write path drops
+ *                                 stale events itself, so it does not report any
+ */
+public record BulkWriteOutcome<T>(List<T> failedEvents, List<T> criteriaNotMatchedEvents) {
+
+    public static <T> BulkWriteOutcome<T> applied() {
+        return new BulkWriteOutcome<>(List.of(), List.of());
+    }
+
+    public boolean hasRejections() {
+        return !failedEvents.isEmpty() || !criteriaNotMatchedEvents.isEmpty();
+    }
+
+    public static <T> BulkWriteOutcome<T> merge(List<BulkWriteOutcome<T>> outcomes) {
+        List<T> failed = new ArrayList<>();
+        List<T> notMatched = new ArrayList<>();
+        for (BulkWriteOutcome<T> outcome : outcomes) {
+            failed.addAll(outcome.failedEvents());
+            notMatched.addAll(outcome.criteriaNotMatchedEvents());
+        }
+        return new BulkWriteOutcome<>(failed, notMatched);
+    }
+}
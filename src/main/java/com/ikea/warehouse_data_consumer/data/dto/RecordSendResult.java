@@ -0,0 +1,26 @@
+package com.ikea.warehouse_data_consumer.data.dto;
+
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+/**
+ * Outcome of publishing a single record.
+ *
+ * @param record the record that was sent
+ * @param metadata broker acknowledgement; null when the send failed
+ * @param error why the send failed or timed out; null on success
+ */
+public record RecordSendResult(KafkaKeyValueRecord record, RecordMetadata metadata, Throwable error) {
+
+    public static RecordSendResult sent(KafkaKeyValueRecord record, RecordMetadata metadata) {
+        return new RecordSendResult(record, metadata, null);
+    }
+
+    public static RecordSendResult failed(KafkaKeyValueRecord record, Throwable error) {
+        return new RecordSendResult(record, null, error);
+    }
+
+    public boolean isSent() {
+        return error == null;
+    }
+}
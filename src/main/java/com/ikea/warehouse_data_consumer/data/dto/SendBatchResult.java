@@ -0,0 +1,33 @@
+package com.ikea.warehouse_data_consumer.data.dto;
+
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+
+import java.util.List;
+
+/**
+ * Per-record outcomes of a batch published to one topic, in the order the records were given.
+ */
+public record SendBatchResult(String topic, List<RecordSendResult> results) {
+
+    public static SendBatchResult empty(String topic) {
+        return new SendBatchResult(topic, List.of());
+    }
+
+    /**
+     * Marks records as not handed off without sending them, so that they are redelivered from Kafka.
+     */
+    public static SendBatchResult notSent(String topic, List<KafkaKeyValueRecord> records, Throwable error) {
+        return new SendBatchResult(topic, records.stream().map(record -> RecordSendResult.failed(record, error)).toList());
+    }
+
+    public boolean allSent() {
+        return results.stream().allMatch(RecordSendResult::isSent);
+    }
+
+    public List<KafkaKeyValueRecord> failedRecords() {
+        return results.stream()
+                .filter(result -> !result.isSent())
+                .map(RecordSendResult::record)
+                .toList();
+    }
+}
@@ -0,0 +1,28 @@
+package com.ikea.warehouse_data_consumer.data.dto;
+
+/**
+ * What one update operation of a bulk write did to its document.
+ */
+public enum WriteOutcome {
+
+    /**
+     * The document holds the event's state.
+     */
+    APPLIED,
+
+    /**
+     * The stored document is at least as new as the event, so the fileCreatedAt guard rightly rejected it.
+     */
+    STALE,
+
+    /**
+     * The event is newer than the stored document but its version guard did not match, because another writer
+     * updated the document after the version was read. Retrying re-reads the version.
+     */
+    CONFLICT,
+
+    /**
+     * The operation failed with a write error.
+     */
+    ERROR
+}
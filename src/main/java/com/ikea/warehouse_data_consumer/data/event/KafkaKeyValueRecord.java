@@ -1,7 +1,12 @@
 package com.ikea.warehouse_data_consumer.data.event;
 
 import lombok.Builder;
+import org.apache.kafka.common.header.Headers;
 
 @Builder
-public record KafkaKeyValueRecord(String key, Object event) {
+public record KafkaKeyValueRecord(String key, Object event, Headers headers) {
+
+    public KafkaKeyValueRecord(String key, Object event) {
+        this(key, event, null);
+    }
 }
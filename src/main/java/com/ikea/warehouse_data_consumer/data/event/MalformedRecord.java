@@ -0,0 +1,27 @@
+package com.ikea.warehouse_data_consumer.data.event;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.ikea.warehouse_data_consumer.serialization.StreamingEventDeserializer.DESERIALIZATION_ERROR_HEADER;
+import static com.ikea.warehouse_data_consumer.serialization.StreamingEventDeserializer.DESERIALIZATION_PAYLOAD_HEADER;
+
+/**
+ * A record whose value could not be deserialized; published to the error topic in place of the event.
+ *
+ * @param payload the raw value, decoded as UTF-8
+ */
+public record MalformedRecord(String topic, int partition, long offset, String key, String error, String payload) {
+
+    public static MalformedRecord from(ConsumerRecord<String, ?> record) {
+        return new MalformedRecord(record.topic(), record.partition(), record.offset(), record.key(),
+                headerValue(record, DESERIALIZATION_ERROR_HEADER), headerValue(record, DESERIALIZATION_PAYLOAD_HEADER));
+    }
+
+    private static String headerValue(ConsumerRecord<String, ?> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
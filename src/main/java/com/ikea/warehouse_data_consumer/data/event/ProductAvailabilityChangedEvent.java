@@ -0,0 +1,11 @@
+package com.ikea.warehouse_data_consumer.data.event;
+
+import java.time.Instant;
+
+/**
+ * Published for every change of a product's buildable quantity. Delivery is at least once; a consumer keeps the
+ * event with the highest (productVersion, articleVersionSum) per product.
+ */
+public record ProductAvailabilityChangedEvent(String name, Long previousBuildableQuantity, Long buildableQuantity,
+                                              String limitingArtId, Long productVersion, Long articleVersionSum,
+                                              Instant computedAt) {}
@@ -0,0 +1,11 @@
+package com.ikea.warehouse_data_consumer.data.exception;
+
+/**
+ * Thrown instead of writing to Mongo while the MongoCircuitBreaker is open, or half-open with its probe in flight.
+ */
+public class MongoCircuitOpenException extends RuntimeException {
+
+    public MongoCircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.ikea.warehouse_data_consumer.data.exception;
+
+/**
+ * Thrown by a listener when a batch could not be written because Mongo is saturated. The batch is left in Kafka
+ * instead of being handed off to the retry/error topics, and is redelivered once the listeners resume.
+ */
+public class MongoSaturatedException extends RuntimeException {
+
+    public MongoSaturatedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
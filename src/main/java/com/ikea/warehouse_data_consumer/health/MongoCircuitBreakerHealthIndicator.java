@@ -0,0 +1,32 @@
+package com.ikea.warehouse_data_consumer.health;
+
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker.State;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the Mongo write circuit breaker as the mongoCircuitBreaker health component: OUT_OF_SERVICE while writes
+ * fail fast, UP otherwise.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoCircuitBreakerHealthIndicator implements HealthIndicator {
+
+    private final MongoCircuitBreaker mongoCircuitBreaker;
+
+    @Override
+    public Health health() {
+        State state = mongoCircuitBreaker.state();
+        Health.Builder builder = state == State.OPEN ? Health.outOfService() : Health.up();
+        builder.withDetail("state", state)
+                .withDetail("consecutiveFailures", mongoCircuitBreaker.consecutiveFailures());
+        String lastFailure = mongoCircuitBreaker.lastFailure();
+        if (lastFailure != null) {
+            builder.withDetail("lastFailure", lastFailure);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,149 @@
+package com.ikea.warehouse_data_consumer.metrics;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters of the consumer hot path, one per stage: poll, deserialization, version pre-read, Mongo write and the
+ * write's per-operation counts. Every meter is tagged with the entity (article/product); the Mongo stages also with
+ * the InventoryService/ProductService method that ran them.
+ *
+ * The freshness gauge is how far the read model lags behind the source: now minus the newest fileCreatedAt applied
+ * to Mongo by this instance. It reports NaN until the first event of an entity is applied.
+ */
+@Component
+@RequiredArgsConstructor
+public class ConsumerMetrics {
+
+    public static final String POLL_BATCH_SIZE_METRIC = "warehouse.consumer.poll.batch.size";
+    public static final String DESERIALIZATION_METRIC = "warehouse.consumer.deserialization";
+    public static final String VERSION_PRE_READ_METRIC = "warehouse.consumer.mongo.version.preread";
+    public static final String WRITE_METRIC = "warehouse.consumer.mongo.write";
+    public static final String WRITE_DOCUMENTS_METRIC = "warehouse.consumer.mongo.write.documents";
+    public static final String WRITE_REJECTED_METRIC = "warehouse.consumer.mongo.write.rejected";
+    public static final String FRESHNESS_METRIC = "warehouse.consumer.freshness";
+
+    private static final long NOTHING_APPLIED = Long.MIN_VALUE;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicLong> newestAppliedEpochMillis = new ConcurrentHashMap<>();
+
+    /**
+     * @param listener main for the update topic listeners, retry for the retry tier listeners
+     */
+    public void recordPollBatch(String entity, String listener, int size) {
+        DistributionSummary.builder(POLL_BATCH_SIZE_METRIC)
+                .baseUnit("records")
+                .tags("entity", entity, "listener", listener)
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    /**
+     * @param format json or binary
+     */
+    public Timer deserializationTimer(String entity, String format) {
+        return meterRegistry.timer(DESERIALIZATION_METRIC, "entity", entity, "format", format);
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void recordVersionPreRead(Timer.Sample sample, String entity, String method) {
+        sample.stop(meterRegistry.timer(VERSION_PRE_READ_METRIC, "entity", entity, "method", method));
+    }
+
+    /**
+     * Records the latency of one bulkWrite and how its operations ended. not_matched counts the operations that
+     * neither matched, upserted nor failed, before the service verifies which of them were stale.
+     *
+     * @return the recorded latency in nanoseconds
+     */
+    public long recordBulkWrite(Timer.Sample sample, String entity, String method, int operations,
+                                BulkWriteResult result, List<BulkWriteError> writeErrors) {
+        long latencyNanos = sample.stop(meterRegistry.timer(WRITE_METRIC, "entity", entity, "method", method,
+                "operation", "bulkWrite", "outcome", writeErrors.isEmpty() ? "success" : "partial"));
+
+        int upserted = result.getUpserts().size();
+        recordDocuments(entity, method, "inserted", result.getInsertedCount());
+        recordDocuments(entity, method, "matched", result.getMatchedCount());
+        recordDocuments(entity, method, "modified", result.getModifiedCount());
+        recordDocuments(entity, method, "upserted", upserted);
+
+        int notMatched = operations - result.getMatchedCount() - upserted - writeErrors.size();
+        recordRejected(entity, method, "not_matched", Math.max(0, notMatched));
+        recordRejected(entity, method, "failed", writeErrors.size());
+        return latencyNanos;
+    }
+
+    public void recordUpdateOne(Timer.Sample sample, String entity, String method, UpdateResult result) {
+        sample.stop(meterRegistry.timer(WRITE_METRIC, "entity", entity, "method", method,
+                "operation", "updateOne", "outcome", "success"));
+
+        int upserted = result.getUpsertedId() != null ? 1 : 0;
+        recordDocuments(entity, method, "matched", result.getMatchedCount());
+        recordDocuments(entity, method, "modified", result.getModifiedCount());
+        recordDocuments(entity, method, "upserted", upserted);
+        recordRejected(entity, method, "not_matched", result.getMatchedCount() == 0 && upserted == 0 ? 1 : 0);
+    }
+
+    /**
+     * Records the latency of a write that failed as a whole, without a result to count.
+     *
+     * @param operation bulkWrite or updateOne
+     */
+    public void recordWriteFailure(Timer.Sample sample, String entity, String method, String operation) {
+        sample.stop(meterRegistry.timer(WRITE_METRIC, "entity", entity, "method", method,
+                "operation", operation, "outcome", "failure"));
+    }
+
+    /**
+     * Moves the freshness watermark of the entity forward; older timestamps, e.g. from a retry tier, are ignored.
+     */
+    public void recordApplied(String entity, Instant newestFileCreatedAt) {
+        if (newestFileCreatedAt == null) {
+            return;
+        }
+        newestAppliedEpochMillis.computeIfAbsent(entity, this::registerFreshnessGauge)
+                .accumulateAndGet(newestFileCreatedAt.toEpochMilli(), Math::max);
+    }
+
+    private AtomicLong registerFreshnessGauge(String entity) {
+        AtomicLong epochMillis = new AtomicLong(NOTHING_APPLIED);
+        TimeGauge.builder(FRESHNESS_METRIC, epochMillis, TimeUnit.MILLISECONDS, this::freshnessMillis)
+                .tag("entity", entity)
+                .description("Now minus the newest fileCreatedAt applied to Mongo")
+                .register(meterRegistry);
+        return epochMillis;
+    }
+
+    private double freshnessMillis(AtomicLong epochMillis) {
+        long newest = epochMillis.get();
+        return newest == NOTHING_APPLIED ? Double.NaN : meterRegistry.config().clock().wallTime() - newest;
+    }
+
+    private void recordDocuments(String entity, String method, String result, long count) {
+        meterRegistry.counter(WRITE_DOCUMENTS_METRIC, "entity", entity, "method", method, "result", result)
+                .increment(count);
+    }
+
+    private void recordRejected(String entity, String method, String reason, long count) {
+        meterRegistry.counter(WRITE_REJECTED_METRIC, "entity", entity, "method", method, "reason", reason)
+                .increment(count);
+    }
+}
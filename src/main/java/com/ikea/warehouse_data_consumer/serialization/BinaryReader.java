@@ -0,0 +1,105 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.ikea.warehouse_data_consumer.serialization.BinaryWriter.WIRE_LENGTH_DELIMITED;
+import static com.ikea.warehouse_data_consumer.serialization.BinaryWriter.WIRE_VARINT;
+
+/**
+ * Reads the compact binary format written by BinaryWriter directly from the record's byte array.
+ */
+final class BinaryReader {
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+
+    BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    private BinaryReader(byte[] buffer, int position, int limit) {
+        this.buffer = buffer;
+        this.position = position;
+        this.limit = limit;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    int readByte() {
+        checkAvailable(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * @return field number << 3 | wire type
+     */
+    int readTag() {
+        return (int) readVarint();
+    }
+
+    long readSigned() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+        int length = readLength();
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * @return a reader over the nested message, which this reader skips
+     */
+    BinaryReader readMessage() {
+        int length = readLength();
+        BinaryReader message = new BinaryReader(buffer, position, position + length);
+        position += length;
+        return message;
+    }
+
+    /**
+     * Skips a field this schema version does not know, so producers can add fields without breaking consumers.
+     */
+    void skipField(int tag) {
+        switch (tag & 0x7) {
+            case WIRE_VARINT -> readVarint();
+            case WIRE_LENGTH_DELIMITED -> {
+                // The length has to be read before position is, since reading it moves past its varint.
+                int length = readLength();
+                position += length;
+            }
+            default -> throw new IllegalArgumentException("Unsupported wire type " + (tag & 0x7));
+        }
+    }
+
+    private int readLength() {
+        long length = readVarint();
+        if (length < 0 || length > limit - position) {
+            throw new IllegalArgumentException("Truncated field");
+        }
+        return (int) length;
+    }
+
+    private void checkAvailable(int count) {
+        if (position + count > limit) {
+            throw new IllegalArgumentException("Truncated record");
+        }
+    }
+}
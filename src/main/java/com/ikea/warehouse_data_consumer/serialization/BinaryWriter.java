@@ -0,0 +1,82 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable output buffer of the compact binary format: protobuf-style tagged fields with varint and
+ * length-delimited values.
+ */
+final class BinaryWriter {
+
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_LENGTH_DELIMITED = 2;
+
+    private byte[] buffer;
+    private int position;
+
+    BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeTag(int fieldNumber, int wireType) {
+        writeVarint(((long) fieldNumber << 3) | wireType);
+    }
+
+    void writeVarintField(int fieldNumber, long value) {
+        writeTag(fieldNumber, WIRE_VARINT);
+        writeVarint(value);
+    }
+
+    void writeSignedField(int fieldNumber, long value) {
+        writeVarintField(fieldNumber, (value << 1) ^ (value >> 63));
+    }
+
+    void writeStringField(int fieldNumber, String value) {
+        if (value == null) {
+            return;
+        }
+        writeBytesField(fieldNumber, value.getBytes(StandardCharsets.UTF_8), 0, -1);
+    }
+
+    void writeMessageField(int fieldNumber, BinaryWriter message) {
+        writeBytesField(fieldNumber, message.buffer, 0, message.position);
+    }
+
+    void reset() {
+        position = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeBytesField(int fieldNumber, byte[] bytes, int offset, int length) {
+        int byteCount = length < 0 ? bytes.length : length;
+        writeTag(fieldNumber, WIRE_LENGTH_DELIMITED);
+        writeVarint(byteCount);
+        ensureCapacity(byteCount);
+        System.arraycopy(bytes, offset, buffer, position, byteCount);
+        position += byteCount;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (position + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + additional));
+        }
+    }
+}
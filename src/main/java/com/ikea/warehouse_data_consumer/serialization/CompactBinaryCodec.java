@@ -0,0 +1,58 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+/**
+ * Compact binary encoding of the update events: a schema version byte followed by protobuf-style tagged fields
+ * (varints, zig-zag signed varints and length-delimited UTF-8 strings / nested messages). Absent (null) fields are
+ * not written.
+ *
+ * Adding a field is backwards compatible and keeps the schema version, since readers skip unknown fields. The
+ * version only changes when an existing field changes meaning; readers reject versions they do not know.
+ *
+ * A record that lacks a field every event needs, e.g. because it was truncated, is rejected like an unparsable one,
+ * so that it reaches the listener as a malformed record instead of an event without a key.
+ */
+public abstract class CompactBinaryCodec<T> implements EventCodec<T> {
+
+    public static final String CONTENT_TYPE = "application/vnd.warehouse.event+binary";
+    public static final int SCHEMA_VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(T event) {
+        BinaryWriter writer = new BinaryWriter(INITIAL_CAPACITY);
+        writer.writeByte(SCHEMA_VERSION);
+        writeFields(writer, event);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] data) {
+        BinaryReader reader = new BinaryReader(data);
+        int schemaVersion = reader.readByte();
+        if (schemaVersion != SCHEMA_VERSION) {
+            throw new IllegalArgumentException("Unsupported schema version " + schemaVersion);
+        }
+        return readFields(reader);
+    }
+
+    abstract void writeFields(BinaryWriter writer, T event);
+
+    abstract T readFields(BinaryReader reader);
+
+    static <V> V required(V value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing field " + field);
+        }
+        return value;
+    }
+
+    static int fieldNumber(int tag) {
+        return tag >>> 3;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+/**
+ * An alternative wire format of an update event, chosen per record by its content type header.
+ */
+public interface EventCodec<T> {
+
+    /**
+     * @return the content type header value of records written in this format
+     */
+    String contentType();
+
+    byte[] encode(T event);
+
+    T decode(byte[] data);
+}
@@ -0,0 +1,55 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+
+import java.time.Instant;
+
+/**
+ * Compact binary codec of InventoryUpdateEvent, schema version 1:
+ * 1 artId (string), 2 name (string), 3 stock (signed), 4 fileCreatedAt epoch seconds (signed), 5 fileCreatedAt nanos.
+ */
+public class InventoryUpdateEventBinaryCodec extends CompactBinaryCodec<InventoryUpdateEvent> {
+
+    private static final int ART_ID = 1;
+    private static final int NAME = 2;
+    private static final int STOCK = 3;
+    private static final int FILE_CREATED_AT_SECONDS = 4;
+    private static final int FILE_CREATED_AT_NANOS = 5;
+
+    @Override
+    void writeFields(BinaryWriter writer, InventoryUpdateEvent event) {
+        writer.writeStringField(ART_ID, event.artId());
+        writer.writeStringField(NAME, event.name());
+        if (event.stock() != null) {
+            writer.writeSignedField(STOCK, event.stock());
+        }
+        if (event.fileCreatedAt() != null) {
+            writer.writeSignedField(FILE_CREATED_AT_SECONDS, event.fileCreatedAt().getEpochSecond());
+            writer.writeVarintField(FILE_CREATED_AT_NANOS, event.fileCreatedAt().getNano());
+        }
+    }
+
+    @Override
+    InventoryUpdateEvent readFields(BinaryReader reader) {
+        String artId = null;
+        String name = null;
+        Long stock = null;
+        Long fileCreatedAtSeconds = null;
+        long fileCreatedAtNanos = 0;
+
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            switch (fieldNumber(tag)) {
+                case ART_ID -> artId = reader.readString();
+                case NAME -> name = reader.readString();
+                case STOCK -> stock = reader.readSigned();
+                case FILE_CREATED_AT_SECONDS -> fileCreatedAtSeconds = reader.readSigned();
+                case FILE_CREATED_AT_NANOS -> fileCreatedAtNanos = reader.readVarint();
+                default -> reader.skipField(tag);
+            }
+        }
+        Instant fileCreatedAt = fileCreatedAtSeconds == null ? null : Instant.ofEpochSecond(fileCreatedAtSeconds, fileCreatedAtNanos);
+        return new InventoryUpdateEvent(required(artId, "artId"), required(name, "name"), stock,
+                required(fileCreatedAt, "fileCreatedAt"));
+    }
+}
@@ -0,0 +1,42 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Streaming deserializer of inventory update topic records.
+ */
+public class InventoryUpdateEventDeserializer extends StreamingEventDeserializer<InventoryUpdateEvent> {
+
+    public InventoryUpdateEventDeserializer() {
+        super(new InventoryUpdateEventBinaryCodec());
+    }
+
+    public InventoryUpdateEventDeserializer(ConsumerMetrics consumerMetrics) {
+        super(new InventoryUpdateEventBinaryCodec(), consumerMetrics, "article");
+    }
+
+    @Override
+    protected InventoryUpdateEvent readObject(JsonParser parser) throws IOException {
+        String artId = null;
+        String name = null;
+        Long stock = null;
+        Instant fileCreatedAt = null;
+
+        String fieldName;
+        while ((fieldName = parser.nextFieldName()) != null) {
+            switch (fieldName) {
+                case "artId" -> artId = readString(parser);
+                case "name" -> name = readString(parser);
+                case "stock" -> stock = readLong(parser);
+                case "fileCreatedAt" -> fileCreatedAt = readInstant(parser);
+                default -> skipValue(parser);
+            }
+        }
+        return new InventoryUpdateEvent(artId, name, stock, fileCreatedAt);
+    }
+}
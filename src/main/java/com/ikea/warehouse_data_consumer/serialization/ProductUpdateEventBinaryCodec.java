@@ -0,0 +1,95 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.dto.ArticleAmount;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary codec of ProductUpdateEvent, schema version 1:
+ * 1 name (string), 2 containArticles (repeated message: 1 artId (string), 2 amountOf (signed)),
+ * 3 fileCreatedAt epoch seconds (signed), 4 fileCreatedAt nanos, 5 containArticles present (varint, set when the
+ * list is present but empty).
+ */
+public class ProductUpdateEventBinaryCodec extends CompactBinaryCodec<ProductUpdateEvent> {
+
+    private static final int NAME = 1;
+    private static final int CONTAIN_ARTICLES = 2;
+    private static final int FILE_CREATED_AT_SECONDS = 3;
+    private static final int FILE_CREATED_AT_NANOS = 4;
+    private static final int CONTAIN_ARTICLES_PRESENT = 5;
+
+    private static final int ARTICLE_ART_ID = 1;
+    private static final int ARTICLE_AMOUNT_OF = 2;
+
+    @Override
+    void writeFields(BinaryWriter writer, ProductUpdateEvent event) {
+        writer.writeStringField(NAME, event.name());
+        if (event.containArticles() != null) {
+            if (event.containArticles().isEmpty()) {
+                writer.writeVarintField(CONTAIN_ARTICLES_PRESENT, 1);
+            }
+            BinaryWriter article = new BinaryWriter(32);
+            for (ArticleAmount articleAmount : event.containArticles()) {
+                article.reset();
+                article.writeStringField(ARTICLE_ART_ID, articleAmount.artId());
+                if (articleAmount.amountOf() != null) {
+                    article.writeSignedField(ARTICLE_AMOUNT_OF, articleAmount.amountOf());
+                }
+                writer.writeMessageField(CONTAIN_ARTICLES, article);
+            }
+        }
+        if (event.fileCreatedAt() != null) {
+            writer.writeSignedField(FILE_CREATED_AT_SECONDS, event.fileCreatedAt().getEpochSecond());
+            writer.writeVarintField(FILE_CREATED_AT_NANOS, event.fileCreatedAt().getNano());
+        }
+    }
+
+    @Override
+    ProductUpdateEvent readFields(BinaryReader reader) {
+        String name = null;
+        List<ArticleAmount> containArticles = null;
+        Long fileCreatedAtSeconds = null;
+        long fileCreatedAtNanos = 0;
+
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            switch (fieldNumber(tag)) {
+                case NAME -> name = reader.readString();
+                case CONTAIN_ARTICLES -> {
+                    if (containArticles == null) {
+                        containArticles = new ArrayList<>();
+                    }
+                    containArticles.add(readArticleAmount(reader.readMessage()));
+                }
+                case FILE_CREATED_AT_SECONDS -> fileCreatedAtSeconds = reader.readSigned();
+                case FILE_CREATED_AT_NANOS -> fileCreatedAtNanos = reader.readVarint();
+                case CONTAIN_ARTICLES_PRESENT -> {
+                    reader.readVarint();
+                    if (containArticles == null) {
+                        containArticles = new ArrayList<>();
+                    }
+                }
+                default -> reader.skipField(tag);
+            }
+        }
+        Instant fileCreatedAt = fileCreatedAtSeconds == null ? null : Instant.ofEpochSecond(fileCreatedAtSeconds, fileCreatedAtNanos);
+        return new ProductUpdateEvent(required(name, "name"), containArticles, required(fileCreatedAt, "fileCreatedAt"));
+    }
+
+    private static ArticleAmount readArticleAmount(BinaryReader reader) {
+        String artId = null;
+        Long amountOf = null;
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            switch (fieldNumber(tag)) {
+                case ARTICLE_ART_ID -> artId = reader.readString();
+                case ARTICLE_AMOUNT_OF -> amountOf = reader.readSigned();
+                default -> reader.skipField(tag);
+            }
+        }
+        return new ArticleAmount(artId, amountOf);
+    }
+}
@@ -0,0 +1,78 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ikea.warehouse_data_consumer.data.dto.ArticleAmount;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming deserializer of product update topic records.
+ */
+public class ProductUpdateEventDeserializer extends StreamingEventDeserializer<ProductUpdateEvent> {
+
+    public ProductUpdateEventDeserializer() {
+        super(new ProductUpdateEventBinaryCodec());
+    }
+
+    public ProductUpdateEventDeserializer(ConsumerMetrics consumerMetrics) {
+        super(new ProductUpdateEventBinaryCodec(), consumerMetrics, "product");
+    }
+
+    @Override
+    protected ProductUpdateEvent readObject(JsonParser parser) throws IOException {
+        String name = null;
+        List<ArticleAmount> containArticles = null;
+        Instant fileCreatedAt = null;
+
+        String fieldName;
+        while ((fieldName = parser.nextFieldName()) != null) {
+            switch (fieldName) {
+                case "name" -> name = readString(parser);
+                case "containArticles" -> containArticles = readArticleAmounts(parser);
+                case "fileCreatedAt" -> fileCreatedAt = readInstant(parser);
+                default -> skipValue(parser);
+            }
+        }
+        return new ProductUpdateEvent(name, containArticles, fileCreatedAt);
+    }
+
+    private static List<ArticleAmount> readArticleAmounts(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of articles but was " + token);
+        }
+        List<ArticleAmount> articleAmounts = new ArrayList<>();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected an article object but was " + token);
+            }
+            articleAmounts.add(readArticleAmount(parser));
+        }
+        return articleAmounts;
+    }
+
+    private static ArticleAmount readArticleAmount(JsonParser parser) throws IOException {
+        String artId = null;
+        Long amountOf = null;
+
+        String fieldName;
+        while ((fieldName = parser.nextFieldName()) != null) {
+            switch (fieldName) {
+                case "art_id" -> artId = readString(parser);
+                case "amount_of" -> amountOf = readLong(parser);
+                default -> skipValue(parser);
+            }
+        }
+        return new ArticleAmount(artId, amountOf);
+    }
+}
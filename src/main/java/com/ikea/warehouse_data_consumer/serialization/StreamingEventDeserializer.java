@@ -0,0 +1,158 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class of the schema-specific event deserializers. Events are read token by token straight into their record,
+ * without an intermediate tree or reflective binding. The parser runs directly on the record's byte array and
+ * Jackson recycles its read buffers per thread, so the only allocations left are the event's own fields.
+ *
+ * Records whose contentType header names the binary codec's content type are decoded by that codec instead; JSON
+ * stays the default for records without the header.
+ *
+ * A record that cannot be parsed is not thrown to the container: it is returned as a null value with the parse
+ * error and the raw payload in headers, from which the listener builds a MalformedRecord.
+ *
+ * When created with ConsumerMetrics, the decoding time of every record is recorded per format.
+ */
+@Slf4j
+public abstract class StreamingEventDeserializer<T> implements Deserializer<T> {
+
+    public static final String DESERIALIZATION_ERROR_HEADER = "x-deserialization-error";
+    public static final String DESERIALIZATION_PAYLOAD_HEADER = "x-deserialization-payload";
+    /**
+     * Same name as Spring messaging's MessageHeaders.CONTENT_TYPE, so it survives the Kafka header mapper.
+     */
+    public static final String CONTENT_TYPE_HEADER = "contentType";
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder().build();
+
+    private final EventCodec<T> binaryCodec;
+    private final byte[] binaryContentType;
+    private final Timer jsonTimer;
+    private final Timer binaryTimer;
+
+    protected StreamingEventDeserializer(EventCodec<T> binaryCodec) {
+        this(binaryCodec, null, null);
+    }
+
+    protected StreamingEventDeserializer(EventCodec<T> binaryCodec, ConsumerMetrics consumerMetrics, String entity) {
+        this.binaryCodec = binaryCodec;
+        this.binaryContentType = binaryCodec.contentType().getBytes(StandardCharsets.UTF_8);
+        this.jsonTimer = consumerMetrics != null ? consumerMetrics.deserializationTimer(entity, "json") : null;
+        this.binaryTimer = consumerMetrics != null ? consumerMetrics.deserializationTimer(entity, "binary") : null;
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        boolean binary = isBinary(headers);
+        Timer timer = binary ? binaryTimer : jsonTimer;
+        long start = timer != null ? System.nanoTime() : 0;
+        try {
+            return binary ? binaryCodec.decode(data) : readJson(data);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not deserialize record of topic={}; {}", topic, e.getMessage());
+            if (headers != null) {
+                headers.add(DESERIALIZATION_ERROR_HEADER, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                headers.add(DESERIALIZATION_PAYLOAD_HEADER, data);
+            }
+            return null;
+        } finally {
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private T readJson(byte[] data) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            return readObject(parser);
+        }
+    }
+
+    private boolean isBinary(Headers headers) {
+        if (headers == null) {
+            return false;
+        }
+        Header contentType = headers.lastHeader(CONTENT_TYPE_HEADER);
+        return contentType != null && Arrays.equals(contentType.value(), binaryContentType);
+    }
+
+    /**
+     * Reads the fields of the object whose START_OBJECT token is current, up to and including its END_OBJECT.
+     */
+    protected abstract T readObject(JsonParser parser) throws IOException;
+
+    protected static String readString(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        return token == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    /**
+     * Accepts numbers and numeric strings, like Jackson's default coercion.
+     */
+    protected static Long readLong(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        return switch (token) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT -> parser.getLongValue();
+            case VALUE_STRING -> Long.parseLong(parser.getText().trim());
+            default -> throw new JsonParseException(parser, "Expected a number but was " + token);
+        };
+    }
+
+    /**
+     * Accepts both forms written by Jackson's JavaTimeModule: ISO-8601 strings and (fractional) epoch seconds.
+     */
+    protected static Instant readInstant(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        return switch (token) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING -> Instant.parse(parser.getText());
+            case VALUE_NUMBER_INT -> Instant.ofEpochSecond(parser.getLongValue());
+            case VALUE_NUMBER_FLOAT -> fromDecimalSeconds(parser.getDecimalValue());
+            default -> throw new JsonParseException(parser, "Expected a timestamp but was " + token);
+        };
+    }
+
+    /**
+     * Skips the value of a field this deserializer does not know.
+     */
+    protected static void skipValue(JsonParser parser) throws IOException {
+        parser.nextToken();
+        parser.skipChildren();
+    }
+
+    private static Instant fromDecimalSeconds(BigDecimal seconds) {
+        long epochSecond = seconds.longValue();
+        int nanos = seconds.subtract(BigDecimal.valueOf(epochSecond)).movePointRight(9).intValue();
+        return Instant.ofEpochSecond(epochSecond, nanos);
+    }
+}
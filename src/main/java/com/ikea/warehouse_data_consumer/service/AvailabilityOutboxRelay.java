@@ -0,0 +1,201 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.config.mongo.AvailabilityProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.OutboxProperties;
+import com.ikea.warehouse_data_consumer.data.document.AvailabilityOutboxDocument;
+import com.ikea.warehouse_data_consumer.data.dto.RecordSendResult;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import com.ikea.warehouse_data_consumer.data.event.ProductAvailabilityChangedEvent;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.DUPLICATE_KEY_ERROR_CODE;
+
+/**
+ * Publishes the product availability deltas of availability_outbox to Kafka, oldest first, and deletes them once the
+ * broker acknowledged them. A delta is only deleted together with every older one, so a failed send is retried on the
+ * next run; deltas sent after it are published again, which makes delivery at least once.
+ *
+ * Only the instance holding the lease in outbox_leases relays, so that deltas of the same product are not published
+ * out of order by two instances. The lease is renewed on every round trip and handed over once it expired.
+ */
+@Slf4j
+@Component
+public class AvailabilityOutboxRelay implements InitializingBean, DisposableBean {
+
+    static final String PUBLISHED_METRIC = "warehouse.consumer.outbox.published";
+    static final String LEASE_COLLECTION = "outbox_leases";
+    static final String LEASE_ID = "availability";
+
+    private final MongoTemplate mongoTemplate;
+    private final KafkaProducerService kafkaProducerService;
+    private final OutboxProperties properties;
+    private final AvailabilityProperties availabilityProperties;
+    private final MeterRegistry meterRegistry;
+    private final String owner = UUID.randomUUID().toString();
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("availability-outbox-relay-", 0).factory());
+
+    public AvailabilityOutboxRelay(MongoTemplate mongoTemplate, KafkaProducerService kafkaProducerService,
+                                   OutboxProperties properties, AvailabilityProperties availabilityProperties,
+                                   MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.kafkaProducerService = kafkaProducerService;
+        this.properties = properties;
+        this.availabilityProperties = availabilityProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) {
+            return;
+        }
+        long intervalMillis = properties.pollInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::relaySafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return properties.enabled() && availabilityProperties.enabled();
+    }
+
+    /**
+     * Publishes batches of deltas until the outbox is drained, a send failed or the lease is lost.
+     *
+     * @return the number of deltas published and deleted
+     */
+    public int relay() {
+        int published = 0;
+        while (acquireLease()) {
+            List<Document> pending = outbox().withReadPreference(ReadPreference.primary())
+                    .find()
+                    .sort(Sorts.ascending("_id"))
+                    .limit(properties.batchSize())
+                    .into(new ArrayList<>());
+            if (pending.isEmpty()) {
+                break;
+            }
+
+            List<KafkaKeyValueRecord> records = pending.stream()
+                    .map(delta -> new KafkaKeyValueRecord(delta.getString("name"), toEvent(delta)))
+                    .toList();
+            SendBatchResult sendBatchResult = kafkaProducerService.sendBatch(properties.topic(), records);
+            int sent = sentPrefix(sendBatchResult);
+            if (sent > 0) {
+                outbox().deleteMany(Filters.in("_id", pending.subList(0, sent).stream().map(delta -> delta.get("_id")).toList()));
+            }
+            published += sent;
+            meterRegistry.counter(PUBLISHED_METRIC, "outcome", "success").increment(sent);
+            if (sent < pending.size()) {
+                meterRegistry.counter(PUBLISHED_METRIC, "outcome", "failure").increment(pending.size() - sent);
+                log.warn("Relaying availability deltas stopped at a failed send; published={}, pending={}",
+                        sent, pending.size() - sent);
+                break;
+            }
+            if (pending.size() < properties.batchSize()) {
+                break;
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Takes or renews the relay lease. The upsert only inserts when no lease exists; an unexpired lease of another
+     * instance fails the filter and the insert collides with its _id.
+     */
+    boolean acquireLease() {
+        Instant now = Instant.now();
+        try {
+            mongoTemplate.getCollection(LEASE_COLLECTION).findOneAndUpdate(
+                    Filters.and(
+                            Filters.eq("_id", LEASE_ID),
+                            Filters.or(Filters.eq("owner", owner), Filters.lt("expiresAt", Date.from(now)))),
+                    Updates.combine(
+                            Updates.set("owner", owner),
+                            Updates.set("expiresAt", Date.from(now.plus(properties.leaseDuration())))),
+                    new FindOneAndUpdateOptions().upsert(true));
+            return true;
+        } catch (MongoException mongoException) {
+            if (mongoException.getCode() == DUPLICATE_KEY_ERROR_CODE) {
+                return false;
+            }
+            throw mongoException;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            mongoTemplate.getCollection(LEASE_COLLECTION).updateOne(
+                    Filters.and(Filters.eq("_id", LEASE_ID), Filters.eq("owner", owner)),
+                    Updates.set("expiresAt", new Date()));
+        } catch (RuntimeException e) {
+            log.debug("Could not release the availability outbox lease; it expires on its own", e);
+        }
+    }
+
+    static ProductAvailabilityChangedEvent toEvent(Document delta) {
+        Date computedAt = delta.getDate("computedAt");
+        return new ProductAvailabilityChangedEvent(
+                delta.getString("name"),
+                longOrNull(delta.get("previousBuildableQuantity")),
+                longOrNull(delta.get("buildableQuantity")),
+                delta.getString("limitingArtId"),
+                longOrNull(delta.get("productVersion")),
+                longOrNull(delta.get("articleVersionSum")),
+                computedAt != null ? computedAt.toInstant() : null);
+    }
+
+    private static int sentPrefix(SendBatchResult sendBatchResult) {
+        int sent = 0;
+        for (RecordSendResult result : sendBatchResult.results()) {
+            if (!result.isSent()) {
+                break;
+            }
+            sent++;
+        }
+        return sent;
+    }
+
+    private static Long longOrNull(Object value) {
+        return value instanceof Number number ? number.longValue() : null;
+    }
+
+    private MongoCollection<Document> outbox() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(AvailabilityOutboxDocument.class));
+    }
+
+    private void relaySafely() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            log.warn("Could not relay availability deltas; retrying in {}", properties.pollInterval(), e);
+        }
+    }
+}
@@ -1,14 +1,29 @@
 package com.ikea.warehouse_data_consumer.service;
 
+import com.ikea.warehouse_data_consumer.cache.ArticleVersionCache;
+import com.ikea.warehouse_data_consumer.cache.VersionWatermark;
+import com.ikea.warehouse_data_consumer.concurrent.ArticleChunkSizer;
+import com.ikea.warehouse_data_consumer.concurrent.KeyPartitionedBulkExecutor;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties.WriteMode;
 import com.ikea.warehouse_data_consumer.data.document.ArticleDocument;
+import com.ikea.warehouse_data_consumer.data.dto.BulkWriteOutcome;
+import com.ikea.warehouse_data_consumer.data.dto.WriteOutcome;
 import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
 import com.ikea.warehouse_data_consumer.data.exception.ArticleDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+import com.ikea.warehouse_data_consumer.util.EventCoalesceUtil.CoalescedEvents;
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
@@ -18,26 +33,49 @@ import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.getNotMatchedCriteria;
+import static com.ikea.warehouse_data_consumer.util.EventCoalesceUtil.coalesceLatest;
+import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.getPossiblyStaleIndexes;
+import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.resolveOutcomes;
+import static com.ikea.warehouse_data_consumer.util.MongoUpdatePipelineUtil.setIfNewerPipeline;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class InventoryService {
+
+    static final String SUPERSEDED_EVENTS_METRIC = "warehouse.consumer.events.superseded";
+    static final String STALE_EVENTS_METRIC = "warehouse.consumer.events.stale";
+    static final String DUPLICATE_EVENTS_METRIC = "warehouse.consumer.events.duplicate";
+
+    private static final String ENTITY = "article";
+    private static final String SINGLE_METHOD = "proceedInventoryUpdateEvent";
+    private static final String BATCH_METHOD = "proceedInventoryUpdateBatchEvent";
+
     private final MongoTemplate mongoTemplate;
+    private final MongoWriteProperties mongoWriteProperties;
+    private final KeyPartitionedBulkExecutor keyPartitionedBulkExecutor;
+    private final ArticleVersionCache articleVersionCache;
+    private final MeterRegistry meterRegistry;
+    private final ConsumerMetrics consumerMetrics;
+    private final ArticleChunkSizer articleChunkSizer;
+    private final MongoCircuitBreaker mongoCircuitBreaker;
+    private final ProductAvailabilityService productAvailabilityService;
 
     public void proceedInventoryUpdateEvent(InventoryUpdateEvent event) {
 
         MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ArticleDocument.class));
 
         // Read the current version (server-side expected version)
+        Timer.Sample preReadSample = consumerMetrics.startTimer();
         Document existing = collection
                 .find(Filters.eq("_id", event.artId()))
                 .projection(Projections.include("version"))
                 .first();
+        consumerMetrics.recordVersionPreRead(preReadSample, ENTITY, SINGLE_METHOD);
 
         Bson baseFilter = Filters.and(
                 Filters.eq("_id", event.artId()),
@@ -60,76 +98,400 @@ public class InventoryService {
         // Upsert only if the document does not exist
         UpdateOptions options = new UpdateOptions().upsert(Objects.isNull(existing));
 
-        UpdateResult result = collection.updateOne(filter, update, options);
+        Timer.Sample writeSample = consumerMetrics.startTimer();
+        UpdateResult result;
+        try {
+            result = collection.updateOne(filter, update, options);
+        } catch (MongoException mongoException) {
+            consumerMetrics.recordWriteFailure(writeSample, ENTITY, SINGLE_METHOD, "updateOne");
+            throw mongoException;
+        }
+        consumerMetrics.recordUpdateOne(writeSample, ENTITY, SINGLE_METHOD, result);
+        // The version was bumped outside the batch path; force the next batch to re-read it.
+        articleVersionCache.invalidate(event.artId());
 
         // If a document existed (we had a version expectation), but no match happened and no upsert occurred => optimistic conflict
         if (versionFilter != null && result.getMatchedCount() == 0 && result.getUpsertedId() == null) {
             throw new OptimisticLockingFailureException("Optimistic lock conflict for articleId=" + event.artId());
         }
+        if (result.getMatchedCount() > 0 || result.getUpsertedId() != null) {
+            consumerMetrics.recordApplied(ENTITY, event.fileCreatedAt());
+            productAvailabilityService.onArticlesChanged(List.of(event.artId()));
+        }
 
 
     }
 
     public void proceedInventoryUpdateBatchEvent(List<InventoryUpdateEvent> eventList) {
+        proceedInventoryUpdateBatchEvent(eventList, Map.of());
+    }
+
+    /**
+     * Like proceedInventoryUpdateBatchEvent, recording the id of the message that carried each event as the
+     * lastMessageId of the article it applies. An event whose message already applied its article, e.g. a replay
+     * after a rebalance, is dropped before any write is built.
+     *
+     * @param messageIds message id per event, by identity; events without one are written as usual
+     */
+    public void proceedInventoryUpdateBatchEvent(List<InventoryUpdateEvent> eventList,
+                                                 Map<InventoryUpdateEvent, String> messageIds) {
+
+        if (ObjectUtils.isEmpty(eventList)) {
+            log.warn("Received empty inventory update event list; skipping processing.");
+            return;
+        }
+
+        // Only the newest event per artId is written; older ones in the same poll would just lose the version race.
+        CoalescedEvents<InventoryUpdateEvent> coalescedEvents = coalesceLatest(eventList,
+                InventoryUpdateEvent::artId, InventoryUpdateEvent::fileCreatedAt);
+        List<InventoryUpdateEvent> latestEvents = coalescedEvents.latest();
+        if (ObjectUtils.isNotEmpty(coalescedEvents.superseded())) {
+            log.debug("Dropped superseded inventory update events; received={}, written={}, dropped={}",
+                    eventList.size(), latestEvents.size(), coalescedEvents.superseded().size());
+            meterRegistry.counter(SUPERSEDED_EVENTS_METRIC, "entity", "article")
+                    .increment(coalescedEvents.superseded().size());
+        }
+
+        List<String> artIds = latestEvents.stream().map(InventoryUpdateEvent::artId).toList();
+        Map<String, VersionWatermark> watermarks = articleVersionCache.getAll(artIds);
+        if (!messageIds.isEmpty() && mongoWriteProperties.mode() == WriteMode.VERSIONED && watermarks.size() < artIds.size()) {
+            // Cold articles: their stored watermark replaces the version pre-read of the write and reveals replays.
+            watermarks = withStoredWatermarks(artIds, watermarks);
+        }
+        List<InventoryUpdateEvent> writableEvents = rejectStaleEvents(latestEvents, watermarks, messageIds);
+        if (ObjectUtils.isEmpty(writableEvents)) {
+            return;
+        }
+
+        // Sub-batches are split by key, so events of one document are never written concurrently.
+        Map<String, VersionWatermark> finalWatermarks = watermarks;
+        BulkWriteOutcome<InventoryUpdateEvent> outcome = keyPartitionedBulkExecutor.execute(writableEvents, InventoryUpdateEvent::artId,
+                mongoWriteProperties.parallelism(), subBatch -> writeBatch(subBatch, finalWatermarks, messageIds));
+        if (outcome.hasRejections()) {
+            throw new ArticleDocumentMongoWriteException(outcome.failedEvents(), outcome.criteriaNotMatchedEvents());
+        }
+    }
 
-        List<WriteModel<Document>> bulkOperations;
-        List<InventoryUpdateEvent> failedEvents = new ArrayList<>();
+    /**
+     * Writes one (sub-)batch as consecutive chunks sized by the articleChunkSizer, one unordered bulkWrite each, and
+     * reports the events that were not applied. When a chunk fails as a whole, it and the chunks after it are
+     * reported as failed instead of being written into a struggling Mongo. When the first chunk fails, nothing was
+     * written and the error is rethrown, so that the listener can keep the batch in Kafka under backpressure.
+     *
+     * Every chunk passes the mongoCircuitBreaker: while it is open the write fails fast, and while it is half-open
+     * only the first probeSize events are written as the probe; the rest follows once the probe closed it.
+     * Afterwards the product availability of the applied keys is recomputed.
+     */
+    private BulkWriteOutcome<InventoryUpdateEvent> writeBatch(List<InventoryUpdateEvent> writableEvents,
+                                                     Map<String, VersionWatermark> watermarks,
+                                                     Map<InventoryUpdateEvent, String> messageIds) {
+        Deque<List<InventoryUpdateEvent>> chunks = new ArrayDeque<>(articleChunkSizer.split(writableEvents));
+        List<BulkWriteOutcome<InventoryUpdateEvent>> outcomes = new ArrayList<>(chunks.size());
+        int written = 0;
+        while (!chunks.isEmpty()) {
+            List<InventoryUpdateEvent> chunk = chunks.poll();
+            int permittedSize = mongoCircuitBreaker.acquirePermission();
+            if (chunk.size() > permittedSize) {
+                chunks.push(chunk.subList(permittedSize, chunk.size()));
+                chunk = chunk.subList(0, permittedSize);
+            }
+            try {
+                outcomes.add(writeChunk(chunk, watermarks, messageIds));
+                mongoCircuitBreaker.onSuccess();
+                written += chunk.size();
+            } catch (RuntimeException exception) {
+                mongoCircuitBreaker.onFailure(exception);
+                if (written == 0 || !(exception instanceof MongoException)) {
+                    throw exception;
+                }
+                List<InventoryUpdateEvent> unwritten = new ArrayList<>(writableEvents.subList(written, writableEvents.size()));
+                log.warn("Bulk write chunk failed; reporting the remaining inventory update events as failed; count={}",
+                        unwritten.size(), exception);
+                outcomes.add(new BulkWriteOutcome<>(unwritten, List.of()));
+                break;
+            }
+        }
+        BulkWriteOutcome<InventoryUpdateEvent> outcome = outcomes.size() == 1 ? outcomes.get(0) : BulkWriteOutcome.merge(outcomes);
+        productAvailabilityService.onArticlesChanged(appliedKeys(writableEvents, outcome));
+        return outcome;
+    }
+
+    /**
+     * Keys of the events that were neither reported as failed nor as not matched; stale ones included, which only
+     * costs a recompute that changes nothing.
+     */
+    private static Set<String> appliedKeys(List<InventoryUpdateEvent> writtenEvents, BulkWriteOutcome<InventoryUpdateEvent> outcome) {
+        Set<String> appliedKeys = writtenEvents.stream().map(InventoryUpdateEvent::artId).collect(Collectors.toSet());
+        outcome.failedEvents().forEach(event -> appliedKeys.remove(event.artId()));
+        outcome.criteriaNotMatchedEvents().forEach(event -> appliedKeys.remove(event.artId()));
+        return appliedKeys;
+    }
+
+    /**
+     * Writes one chunk with a single unordered bulkWrite and reports the events that were not applied.
+     */
+    private BulkWriteOutcome<InventoryUpdateEvent> writeChunk(List<InventoryUpdateEvent> writableEvents,
+                                                     Map<String, VersionWatermark> watermarks,
+                                                     Map<InventoryUpdateEvent, String> messageIds) {
+        WriteMode writeMode = mongoWriteProperties.mode();
+        Map<String, Long> expectedVersions = new HashMap<>();
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ArticleDocument.class));
 
+        List<WriteModel<Document>> bulkOperations = switch (writeMode) {
+            case VERSIONED -> buildVersionedOperations(collection, writableEvents, watermarks, expectedVersions, messageIds);
+            case CONDITIONAL -> buildConditionalOperations(writableEvents, messageIds);
+        };
+
+        BulkWriteResult bulkWriteResult;
+        List<BulkWriteError> writeErrors;
+        Timer.Sample writeSample = consumerMetrics.startTimer();
         try {
-            if (ObjectUtils.isEmpty(eventList)) {
-                log.warn("Received empty inventory update event list; skipping processing.");
-                return;
+            bulkWriteResult = collection.bulkWrite(bulkOperations, new BulkWriteOptions().ordered(false));
+            writeErrors = List.of();
+        } catch (MongoBulkWriteException mongoBulkWriteException) {
+            bulkWriteResult = mongoBulkWriteException.getWriteResult();
+            writeErrors = mongoBulkWriteException.getWriteErrors();
+        } catch (MongoException mongoException) {
+            consumerMetrics.recordWriteFailure(writeSample, ENTITY, BATCH_METHOD, "bulkWrite");
+            articleChunkSizer.onFailure(bulkOperations.size());
+            throw mongoException;
+        }
+        long latencyNanos = consumerMetrics.recordBulkWrite(writeSample, ENTITY, BATCH_METHOD, bulkOperations.size(),
+                bulkWriteResult, writeErrors);
+        articleChunkSizer.onWrite(bulkOperations.size(), latencyNanos);
+
+        if (writeMode == WriteMode.CONDITIONAL) {
+            // Every operation matches or upserts; a stale event matches without modifying the document. The counts do
+            // not say which ones did, so possibly stale events are neither cached nor move the watermark; this keeps
+            // the single round trip.
+            List<InventoryUpdateEvent> failedEvents = new ArrayList<>();
+            for (BulkWriteError bulkWriteError : writeErrors) {
+                failedEvents.add(writableEvents.get(bulkWriteError.getIndex()));
             }
+            List<InventoryUpdateEvent> notAppliedEvents = new ArrayList<>(failedEvents);
+            Set<Integer> possiblyStaleIndexes = new HashSet<>(
+                    getPossiblyStaleIndexes(writableEvents.size(), bulkWriteResult, writeErrors));
+            Set<Integer> failedIndexes = writeErrors.stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            Instant newestApplied = null;
+            for (int i = 0; i < writableEvents.size(); i++) {
+                if (possiblyStaleIndexes.contains(i)) {
+                    notAppliedEvents.add(writableEvents.get(i));
+                } else if (!failedIndexes.contains(i)) {
+                    newestApplied = newer(newestApplied, writableEvents.get(i).fileCreatedAt());
+                }
+            }
+            recordStaleEvents(bulkWriteResult.getMatchedCount() - bulkWriteResult.getModifiedCount());
+            refreshVersionCache(writableEvents, expectedVersions, notAppliedEvents, false, messageIds);
+            consumerMetrics.recordApplied(ENTITY, newestApplied);
+            return new BulkWriteOutcome<>(failedEvents, List.of());
+        }
 
-            MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ArticleDocument.class));
+        // Only the operations the counts cannot settle are read back, and only those are classified individually.
+        List<WriteOutcome> outcomes = resolveOutcomes(writableEvents, bulkWriteResult, writeErrors,
+                InventoryUpdateEvent::artId, InventoryUpdateEvent::fileCreatedAt,
+                artIds -> readStoredFileCreatedAt(collection, artIds));
+        List<InventoryUpdateEvent> retryableEvents = new ArrayList<>();
+        List<InventoryUpdateEvent> notAppliedEvents = new ArrayList<>();
+        int staleCount = 0;
+        Instant newestApplied = null;
+        for (int i = 0; i < writableEvents.size(); i++) {
+            WriteOutcome writeOutcome = outcomes.get(i);
+            if (writeOutcome == WriteOutcome.APPLIED) {
+                newestApplied = newer(newestApplied, writableEvents.get(i).fileCreatedAt());
+                continue;
+            }
+            notAppliedEvents.add(writableEvents.get(i));
+            if (writeOutcome == WriteOutcome.STALE) {
+                staleCount++;
+            } else {
+                // Write errors and lost version races; the retry re-reads the version.
+                retryableEvents.add(writableEvents.get(i));
+            }
+        }
+        recordStaleEvents(staleCount);
+        refreshVersionCache(writableEvents, expectedVersions, notAppliedEvents, true, messageIds);
+        consumerMetrics.recordApplied(ENTITY, newestApplied);
+        return new BulkWriteOutcome<>(retryableEvents, List.of());
+    }
 
-            Set<String> ids = eventList.stream().map(InventoryUpdateEvent::artId).collect(Collectors.toSet());
+    /**
+     * Reads the stored fileCreatedAt of the given articles from the primary, which acknowledged the bulk write.
+     */
+    private Map<String, Instant> readStoredFileCreatedAt(MongoCollection<Document> collection, Set<String> artIds) {
+        Map<String, Instant> storedFileCreatedAt = new HashMap<>();
+        collection.withReadPreference(ReadPreference.primary())
+                .find(Filters.in("_id", artIds))
+                .projection(Projections.include("_id", "fileCreatedAt"))
+                .forEach(doc -> {
+                    Date fileCreatedAt = doc.getDate("fileCreatedAt");
+                    if (fileCreatedAt != null) {
+                        storedFileCreatedAt.put(doc.getString("_id"), fileCreatedAt.toInstant());
+                    }
+                });
+        return storedFileCreatedAt;
+    }
 
-            Map<String, Long> currentVersions = new HashMap<>();
+    /**
+     * Adds the stored watermarks of the articles missing from the cached ones, read in one query. Articles that do
+     * not exist yet stay missing.
+     */
+    private Map<String, VersionWatermark> withStoredWatermarks(List<String> artIds, Map<String, VersionWatermark> cached) {
+        Set<String> missingIds = new HashSet<>(artIds);
+        missingIds.removeAll(cached.keySet());
+        Map<String, VersionWatermark> watermarks = new HashMap<>(cached);
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ArticleDocument.class));
+        Timer.Sample preReadSample = consumerMetrics.startTimer();
+        collection.find(Filters.in("_id", missingIds))
+                .projection(Projections.include("_id", "version", "fileCreatedAt", "lastMessageId"))
+                .forEach(doc -> {
+                    Date fileCreatedAt = doc.getDate("fileCreatedAt");
+                    watermarks.put(doc.getString("_id"), new VersionWatermark(doc.getLong("version"),
+                            fileCreatedAt == null ? null : fileCreatedAt.toInstant(), doc.getString("lastMessageId")));
+                });
+        consumerMetrics.recordVersionPreRead(preReadSample, ENTITY, BATCH_METHOD);
+        return watermarks;
+    }
+
+    /**
+     * Drops events whose message already applied their article, and events that are not newer than the watermark
+     * of their article; Mongo would reject the latter anyway.
+     */
+    private List<InventoryUpdateEvent> rejectStaleEvents(List<InventoryUpdateEvent> events,
+                                                         Map<String, VersionWatermark> watermarks,
+                                                         Map<InventoryUpdateEvent, String> messageIds) {
+        if (watermarks.isEmpty()) {
+            return events;
+        }
+        List<InventoryUpdateEvent> writableEvents = new ArrayList<>(events.size());
+        int duplicateCount = 0;
+        int staleCount = 0;
+        for (InventoryUpdateEvent event : events) {
+            VersionWatermark watermark = watermarks.get(event.artId());
+            if (watermark == null) {
+                writableEvents.add(event);
+            } else if (watermark.isAppliedBy(messageIds.get(event))) {
+                duplicateCount++;
+            } else if (watermark.isNotOlderThan(event.fileCreatedAt())) {
+                staleCount++;
+            } else {
+                writableEvents.add(event);
+            }
+        }
+        if (duplicateCount > 0) {
+            log.debug("Rejected already applied inventory update events by lastMessageId; count={}", duplicateCount);
+            meterRegistry.counter(DUPLICATE_EVENTS_METRIC, "entity", "article").increment(duplicateCount);
+        }
+        if (staleCount > 0) {
+            log.debug("Rejected stale inventory update events from version cache; count={}", staleCount);
+            meterRegistry.counter(STALE_EVENTS_METRIC, "entity", "article").increment(staleCount);
+        }
+        return writableEvents;
+    }
+
+    /**
+     * Records the new watermark of every applied event and evicts the ones Mongo rejected or may have rejected, so
+     * their next event re-reads the stored version.
+     */
+    private void refreshVersionCache(List<InventoryUpdateEvent> writtenEvents, Map<String, Long> expectedVersions,
+                                     List<InventoryUpdateEvent> rejectedEvents, boolean versionKnown,
+                                     Map<InventoryUpdateEvent, String> messageIds) {
+        if (!articleVersionCache.isEnabled()) {
+            return;
+        }
+        Set<String> rejectedIds = rejectedEvents.stream().map(InventoryUpdateEvent::artId).collect(Collectors.toSet());
+        for (InventoryUpdateEvent event : writtenEvents) {
+            if (rejectedIds.contains(event.artId())) {
+                articleVersionCache.invalidate(event.artId());
+            } else {
+                Long expectedVersion = expectedVersions.get(event.artId());
+                Long appliedVersion = versionKnown ? (expectedVersion == null ? 1L : expectedVersion + 1) : null;
+                articleVersionCache.put(event.artId(), appliedVersion, event.fileCreatedAt(), messageIds.get(event));
+            }
+        }
+    }
+
+    // Package-private for the bulk operation benchmarks.
+    List<WriteModel<Document>> buildVersionedOperations(MongoCollection<Document> collection,
+                                                        List<InventoryUpdateEvent> events,
+                                                        Map<String, VersionWatermark> watermarks,
+                                                        Map<String, Long> currentVersions,
+                                                        Map<InventoryUpdateEvent, String> messageIds) {
+        // Only cache misses (or entries without a known version) need the pre-read.
+        Set<String> ids = new HashSet<>();
+        for (InventoryUpdateEvent event : events) {
+            VersionWatermark watermark = watermarks.get(event.artId());
+            if (watermark != null && watermark.version() != null) {
+                currentVersions.put(event.artId(), watermark.version());
+            } else {
+                ids.add(event.artId());
+            }
+        }
+
+        if (!ids.isEmpty()) {
+            Timer.Sample preReadSample = consumerMetrics.startTimer();
             collection.find(Filters.in("_id", ids))
                     .projection(Projections.include("_id", "version"))
                     .forEach(doc -> currentVersions.put(doc.getString("_id"), doc.getLong("version")));
+            consumerMetrics.recordVersionPreRead(preReadSample, ENTITY, BATCH_METHOD);
+        }
 
-            bulkOperations = new ArrayList<>(eventList.size());
-            for (InventoryUpdateEvent inventoryUpdateEvent : eventList) {
-                Bson baseFilter = Filters.and(
-                        Filters.eq("_id", inventoryUpdateEvent.artId()),
-                        Filters.lt("fileCreatedAt", inventoryUpdateEvent.fileCreatedAt())
-                );
-
-                Long curVer = currentVersions.get(inventoryUpdateEvent.artId());
-                Bson filter = (curVer != null)
-                        ? Filters.and(baseFilter, Filters.eq("version", curVer))
-                        : baseFilter;
-
-                Bson update = Updates.combine(
-                        Updates.set("name", inventoryUpdateEvent.name()),
-                        Updates.set("stock", inventoryUpdateEvent.stock()),
-                        Updates.set("fileCreatedAt", inventoryUpdateEvent.fileCreatedAt()),
-                        Updates.inc("version", 1L)
-                );
-
-                bulkOperations.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
-            }
+        List<WriteModel<Document>> bulkOperations = new ArrayList<>(events.size());
+        for (InventoryUpdateEvent inventoryUpdateEvent : events) {
+            Bson baseFilter = Filters.and(
+                    Filters.eq("_id", inventoryUpdateEvent.artId()),
+                    Filters.lt("fileCreatedAt", inventoryUpdateEvent.fileCreatedAt())
+            );
 
-            BulkWriteResult bulkWriteResult = collection.bulkWrite(bulkOperations, new BulkWriteOptions().ordered(false));
+            Long curVer = currentVersions.get(inventoryUpdateEvent.artId());
+            Bson filter = (curVer != null)
+                    ? Filters.and(baseFilter, Filters.eq("version", curVer))
+                    : baseFilter;
 
-            List<InventoryUpdateEvent> notMatchedEvents = getNotMatchedCriteria(eventList, bulkWriteResult);
-            if (ObjectUtils.isNotEmpty(notMatchedEvents)) {
-                // These include optimistic conflicts (version mismatch) and fileCreatedAt guard rejections.
-                throw new ArticleDocumentMongoWriteException(List.of(), notMatchedEvents);
+            List<Bson> updates = new ArrayList<>(5);
+            updates.add(Updates.set("name", inventoryUpdateEvent.name()));
+            updates.add(Updates.set("stock", inventoryUpdateEvent.stock()));
+            updates.add(Updates.set("fileCreatedAt", inventoryUpdateEvent.fileCreatedAt()));
+            updates.add(Updates.inc("version", 1L));
+            String messageId = messageIds.get(inventoryUpdateEvent);
+            if (messageId != null) {
+                updates.add(Updates.set("lastMessageId", messageId));
             }
-        } catch (MongoBulkWriteException mongoBulkWriteException) {
-            List<InventoryUpdateEvent> notMatchedCriteria = getNotMatchedCriteria(eventList,
-                    mongoBulkWriteException.getWriteResult());
-            for (BulkWriteError bulkWriteError : mongoBulkWriteException.getWriteErrors()) {
-                int index = bulkWriteError.getIndex();
-                InventoryUpdateEvent event = eventList.get(index);
-                failedEvents.add(event);
+            Bson update = Updates.combine(updates);
+
+            bulkOperations.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+        }
+        return bulkOperations;
+    }
+
+    List<WriteModel<Document>> buildConditionalOperations(List<InventoryUpdateEvent> events,
+                                                          Map<InventoryUpdateEvent, String> messageIds) {
+        List<WriteModel<Document>> bulkOperations = new ArrayList<>(events.size());
+        for (InventoryUpdateEvent inventoryUpdateEvent : events) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("name", inventoryUpdateEvent.name());
+            fields.put("stock", inventoryUpdateEvent.stock());
+            String messageId = messageIds.get(inventoryUpdateEvent);
+            if (messageId != null) {
+                fields.put("lastMessageId", messageId);
             }
-            throw new ArticleDocumentMongoWriteException(failedEvents, notMatchedCriteria);
+
+            bulkOperations.add(new UpdateOneModel<>(
+                    Filters.eq("_id", inventoryUpdateEvent.artId()),
+                    setIfNewerPipeline(inventoryUpdateEvent.fileCreatedAt(), fields),
+                    new UpdateOptions().upsert(true)));
         }
+        return bulkOperations;
+    }
+
+    private static Instant newer(Instant current, Instant candidate) {
+        return current == null || (candidate != null && candidate.isAfter(current)) ? candidate : current;
+    }
 
+    private void recordStaleEvents(int staleCount) {
+        if (staleCount > 0) {
+            log.debug("Skipped stale inventory update events; count={}", staleCount);
+            meterRegistry.counter(STALE_EVENTS_METRIC, "entity", "article").increment(staleCount);
+        }
     }
 
 }
@@ -1,9 +1,15 @@
 package com.ikea.warehouse_data_consumer.service;
 
+import com.ikea.warehouse_data_consumer.config.kafka.ProducerProperties;
+import com.ikea.warehouse_data_consumer.data.dto.RecordSendResult;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
 import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
 import com.ikea.warehouse_data_consumer.data.exception.KafkaProduceFailedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
@@ -11,35 +17,88 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class KafkaProducerService {
 
+    static final String SEND_TIMER_METRIC = "warehouse.consumer.producer.send";
+    static final String SEND_FAILED_METRIC = "warehouse.consumer.producer.send.failed";
+    static final String SEND_BATCH_TIMER_METRIC = "warehouse.consumer.producer.send.batch";
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ProducerProperties producerProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Sends all records without waiting in between, then waits for the broker acknowledgements until
+     * app.kafka.producer.send-timeout has elapsed for the batch as a whole. The time until the last acknowledgement is
+     * recorded per topic, which is the publish latency of the retry and error hand-offs.
+     *
+     * @return one result per record, in the given order; records not acknowledged before the deadline are failed
+     */
+    public SendBatchResult sendBatch(String topic, List<KafkaKeyValueRecord> producerRecordList) {
+        if (ObjectUtils.isEmpty(producerRecordList)) {
+            return SendBatchResult.empty(topic);
+        }
+
+        Timer.Sample batchSample = Timer.start(meterRegistry);
+        List<CompletableFuture<SendResult<String, Object>>> futures = new ArrayList<>(producerRecordList.size());
+        for (KafkaKeyValueRecord producerRecord : producerRecordList) {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            CompletableFuture<SendResult<String, Object>> future;
+            try {
+                future = kafkaTemplate.send(new ProducerRecord<>(topic, null, producerRecord.key(),
+                        producerRecord.event(), producerRecord.headers()));
+            } catch (RuntimeException e) {
+                // Serialization errors and a full buffer (max.block.ms) are thrown synchronously.
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((sendResult, throwable) ->
+                    sample.stop(meterRegistry.timer(SEND_TIMER_METRIC, "topic", topic,
+                            "outcome", throwable == null ? "success" : "failure")));
+            futures.add(future);
+        }
 
-    public void sendBatch(String topic, List<KafkaKeyValueRecord> producerRecordList) {
-            List<CompletableFuture<SendResult<String, Object>>> futures = new ArrayList<>();
-            producerRecordList.forEach((producerRecord) -> {
-                CompletableFuture<SendResult<String, Object>> completableFuture = kafkaTemplate.send(new ProducerRecord<>(topic, producerRecord.key(), producerRecord.event()));
-                futures.add(completableFuture);
-                completableFuture.whenComplete((stringObjectSendResult, throwable) -> {
-                    if (Objects.nonNull(throwable)) {
-                        log.error("Sending kafka message failed with the following exception : {}, topic : {}, event: {}", throwable.getMessage(),
-                                stringObjectSendResult.getProducerRecord().topic(),
-                                stringObjectSendResult.getProducerRecord().value());
-                        throw new KafkaProduceFailedException(throwable.getMessage(), throwable);
-                    }
-                });
-            });
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        long deadline = System.nanoTime() + producerProperties.sendTimeout().toNanos();
+        List<RecordSendResult> results = new ArrayList<>(producerRecordList.size());
+        for (int i = 0; i < producerRecordList.size(); i++) {
+            results.add(await(topic, producerRecordList.get(i), futures.get(i), deadline));
+        }
+        SendBatchResult sendBatchResult = new SendBatchResult(topic, results);
+        batchSample.stop(meterRegistry.timer(SEND_BATCH_TIMER_METRIC, "topic", topic,
+                "outcome", sendBatchResult.allSent() ? "success" : "failure"));
+        return sendBatchResult;
     }
 
     public <T> void send(String topic, String key, T event) {
         kafkaTemplate.send(topic, key, event);
     }
 
+    private RecordSendResult await(String topic, KafkaKeyValueRecord producerRecord,
+                                   CompletableFuture<SendResult<String, Object>> future, long deadline) {
+        try {
+            SendResult<String, Object> sendResult = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return RecordSendResult.sent(producerRecord, sendResult.getRecordMetadata());
+        } catch (ExecutionException e) {
+            return failed(topic, producerRecord, "error", e.getCause());
+        } catch (TimeoutException e) {
+            return failed(topic, producerRecord, "timeout",
+                    new KafkaProduceFailedException("Send not acknowledged within " + producerProperties.sendTimeout(), e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(topic, producerRecord, "interrupted", e);
+        }
+    }
+
+    private RecordSendResult failed(String topic, KafkaKeyValueRecord producerRecord, String reason, Throwable error) {
+        meterRegistry.counter(SEND_FAILED_METRIC, "topic", topic, "reason", reason).increment();
+        log.error("Sending kafka message failed; topic={}, key={}, reason={}", topic, producerRecord.key(), reason, error);
+        return RecordSendResult.failed(producerRecord, error);
+    }
 }
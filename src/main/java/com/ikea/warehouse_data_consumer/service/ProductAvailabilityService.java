@@ -0,0 +1,272 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.cache.ArticleProductIndex;
+import com.ikea.warehouse_data_consumer.cache.ProductRequirements;
+import com.ikea.warehouse_data_consumer.config.mongo.AvailabilityProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.OutboxProperties;
+import com.ikea.warehouse_data_consumer.data.document.ArticleDocument;
+import com.ikea.warehouse_data_consumer.data.document.AvailabilityOutboxDocument;
+import com.ikea.warehouse_data_consumer.data.document.ProductAvailabilityDocument;
+import com.ikea.warehouse_data_consumer.data.document.ProductDocument;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.DUPLICATE_KEY_ERROR_CODE;
+import static com.ikea.warehouse_data_consumer.util.MongoTransactionUtil.executeWithRetry;
+
+/**
+ * Maintains the product_availability collection: the buildable quantity of every product, so that reads are a
+ * single-document lookup instead of a join of products.containArticles with articles.
+ *
+ * Only the products touched by a change are recomputed: the products requiring a changed article, or the changed
+ * products themselves. The products requiring an article come from the in-process ArticleProductIndex, so an
+ * inventory batch only reads its articles; until the index is warm they are queried through
+ * idx_products_containArticles_artId. Every product read here is put into the index, which keeps it current with
+ * the ProductService writes. All reads go to the primary, which acknowledged the write that triggered them.
+ *
+ * Recomputes of the same product may run concurrently (sub-batches, lanes, instances) and finish out of order.
+ * Every result therefore carries the product version and the sum of its articles' versions it was computed from,
+ * and only replaces a stored result with a lower (productVersion, articleVersionSum) pair. Versions only grow, so the
+ * recompute that read after the last change always wins.
+ *
+ * With the outbox enabled, product_availability is written in a Mongo transaction that also inserts a delta into
+ * availability_outbox for every product whose buildable quantity changed; AvailabilityOutboxRelay publishes them.
+ * Inside the transaction the stored pairs are read instead of guarded in the filter, since a failed write would
+ * abort it, and a concurrent recompute of the same product aborts one of the two with a transient error, which is
+ * retried. The same applies when the recompute runs inside the transaction of an exactly-once batch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductAvailabilityService {
+
+    static final String RECOMPUTE_METRIC = "warehouse.consumer.availability.recompute";
+    static final String PRODUCTS_METRIC = "warehouse.consumer.availability.products";
+    static final String DELTAS_METRIC = "warehouse.consumer.availability.deltas";
+
+    private static final int TRANSACTION_ATTEMPTS = 3;
+
+    private final MongoTemplate mongoTemplate;
+    private final AvailabilityProperties availabilityProperties;
+    private final ArticleProductIndex articleProductIndex;
+    private final OutboxProperties outboxProperties;
+    private final MongoTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Recomputes the products that require any of the given articles.
+     */
+    public void onArticlesChanged(Collection<String> artIds) {
+        if (!availabilityProperties.enabled() || ObjectUtils.isEmpty(artIds)) {
+            return;
+        }
+        if (articleProductIndex.isReady()) {
+            recompute("article", () -> articleProductIndex.dependents(new HashSet<>(artIds)));
+        } else {
+            recompute("article", () -> readProducts(Filters.in("containArticles.artId", new HashSet<>(artIds))));
+        }
+    }
+
+    /**
+     * Recomputes the given products.
+     */
+    public void onProductsChanged(Collection<String> productNames) {
+        if (!availabilityProperties.enabled() || ObjectUtils.isEmpty(productNames)) {
+            return;
+        }
+        recompute("product", () -> readProducts(Filters.in("name", new HashSet<>(productNames))));
+    }
+
+    /**
+     * The view is derived from articles and products, which are already written; a failed recompute is logged and
+     * counted rather than failing the batch, and the next change of the product recomputes it.
+     */
+    private void recompute(String trigger, Supplier<List<ProductRequirements>> affectedProducts) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            List<ProductRequirements> products = affectedProducts.get();
+            if (products.isEmpty()) {
+                return;
+            }
+            Set<String> artIds = new HashSet<>();
+            for (ProductRequirements product : products) {
+                artIds.addAll(product.requiredAmounts().keySet());
+            }
+            Map<String, Document> articles = readArticles(artIds);
+            writeAvailability(products.stream().map(product -> compute(product, articles)).toList());
+            meterRegistry.counter(PRODUCTS_METRIC, "trigger", trigger).increment(products.size());
+        } catch (MongoException exception) {
+            outcome = "failure";
+            log.warn("Could not recompute product availability; trigger={}", trigger, exception);
+        } finally {
+            sample.stop(meterRegistry.timer(RECOMPUTE_METRIC, "trigger", trigger, "outcome", outcome));
+        }
+    }
+
+    private List<ProductRequirements> readProducts(Bson productFilter) {
+        List<ProductRequirements> products = new ArrayList<>();
+        collection(ProductDocument.class).withReadPreference(ReadPreference.primary())
+                .find(productFilter)
+                .projection(Projections.include("name", "containArticles", "version"))
+                .forEach(doc -> {
+                    ProductRequirements product = ArticleProductIndex.toRequirements(doc);
+                    articleProductIndex.put(product);
+                    products.add(product);
+                });
+        return products;
+    }
+
+    private Map<String, Document> readArticles(Set<String> artIds) {
+        Map<String, Document> articles = new HashMap<>();
+        if (artIds.isEmpty()) {
+            return articles;
+        }
+        collection(ArticleDocument.class).withReadPreference(ReadPreference.primary())
+                .find(Filters.in("_id", artIds))
+                .projection(Projections.include("_id", "stock", "version"))
+                .forEach(doc -> articles.put(doc.getString("_id"), doc));
+        return articles;
+    }
+
+    private void writeAvailability(List<Availability> availabilities) {
+        if (outboxProperties.enabled() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            // Inside the transaction of an exactly-once batch this joins it, and that batch is retried as a whole.
+            executeWithRetry(new TransactionTemplate(transactionManager), TRANSACTION_ATTEMPTS,
+                    () -> writeInTransaction(availabilities));
+            return;
+        }
+        Instant computedAt = Instant.now();
+        List<WriteModel<Document>> operations = new ArrayList<>(availabilities.size());
+        for (Availability availability : availabilities) {
+            // Upserts when there is no result yet; an existing equal or newer one fails the filter and the insert collides.
+            Bson filter = Filters.and(
+                    Filters.eq("_id", availability.productName()),
+                    Filters.or(
+                            Filters.lt("productVersion", availability.productVersion()),
+                            Filters.and(
+                                    Filters.eq("productVersion", availability.productVersion()),
+                                    Filters.lt("articleVersionSum", availability.articleVersionSum()))));
+            operations.add(new UpdateOneModel<>(filter, availabilityUpdate(availability, computedAt),
+                    new UpdateOptions().upsert(true)));
+        }
+        try {
+            collection(ProductAvailabilityDocument.class).bulkWrite(operations, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException mongoBulkWriteException) {
+            List<BulkWriteError> otherErrors = mongoBulkWriteException.getWriteErrors().stream()
+                    .filter(error -> error.getCode() != DUPLICATE_KEY_ERROR_CODE)
+                    .toList();
+            if (!otherErrors.isEmpty()) {
+                throw mongoBulkWriteException;
+            }
+        }
+    }
+
+    private void writeInTransaction(List<Availability> availabilities) {
+        Instant computedAt = Instant.now();
+        Map<String, Document> stored = new HashMap<>();
+        collection(ProductAvailabilityDocument.class).withReadPreference(ReadPreference.primary())
+                .find(Filters.in("_id", availabilities.stream().map(Availability::productName).toList()))
+                .projection(Projections.include("_id", "buildableQuantity", "productVersion", "articleVersionSum"))
+                .forEach(doc -> stored.put(doc.getString("_id"), doc));
+
+        List<WriteModel<Document>> operations = new ArrayList<>(availabilities.size());
+        List<Document> deltas = new ArrayList<>();
+        for (Availability availability : availabilities) {
+            Document current = stored.get(availability.productName());
+            if (current != null && !isNewer(availability, current)) {
+                continue;
+            }
+            operations.add(new UpdateOneModel<>(Filters.eq("_id", availability.productName()),
+                    availabilityUpdate(availability, computedAt), new UpdateOptions().upsert(true)));
+            Long previous = current != null && current.get("buildableQuantity") instanceof Number number
+                    ? number.longValue() : null;
+            if (previous == null || previous != availability.buildableQuantity()) {
+                deltas.add(new Document("name", availability.productName())
+                        .append("previousBuildableQuantity", previous)
+                        .append("buildableQuantity", availability.buildableQuantity())
+                        .append("limitingArtId", availability.limitingArtId())
+                        .append("productVersion", availability.productVersion())
+                        .append("articleVersionSum", availability.articleVersionSum())
+                        .append("computedAt", computedAt));
+            }
+        }
+        if (!operations.isEmpty()) {
+            collection(ProductAvailabilityDocument.class).bulkWrite(operations, new BulkWriteOptions().ordered(false));
+        }
+        if (outboxProperties.enabled() && !deltas.isEmpty()) {
+            collection(AvailabilityOutboxDocument.class).insertMany(deltas);
+            meterRegistry.counter(DELTAS_METRIC).increment(deltas.size());
+        }
+    }
+
+    private static boolean isNewer(Availability availability, Document stored) {
+        long storedProductVersion = longValue(stored.get("productVersion"));
+        return availability.productVersion() > storedProductVersion
+                || (availability.productVersion() == storedProductVersion
+                && availability.articleVersionSum() > longValue(stored.get("articleVersionSum")));
+    }
+
+    private static Bson availabilityUpdate(Availability availability, Instant computedAt) {
+        return Updates.combine(
+                Updates.set("buildableQuantity", availability.buildableQuantity()),
+                Updates.set("limitingArtId", availability.limitingArtId()),
+                Updates.set("productVersion", availability.productVersion()),
+                Updates.set("articleVersionSum", availability.articleVersionSum()),
+                Updates.set("computedAt", computedAt));
+    }
+
+    /**
+     * Buildable quantity of one product: the minimum over its required articles of stock divided by the required
+     * amount. A missing article or one without stock builds nothing, and a product without requirements builds
+     * nothing either.
+     */
+    static Availability compute(ProductRequirements product, Map<String, Document> articles) {
+        long buildableQuantity = Long.MAX_VALUE;
+        String limitingArtId = null;
+        long articleVersionSum = 0;
+        for (Map.Entry<String, Long> required : product.requiredAmounts().entrySet()) {
+            Document article = articles.get(required.getKey());
+            long stock = article != null ? Math.max(0L, longValue(article.get("stock"))) : 0L;
+            articleVersionSum += article != null ? longValue(article.get("version")) : 0L;
+            long quantity = stock / required.getValue();
+            if (quantity < buildableQuantity) {
+                buildableQuantity = quantity;
+                limitingArtId = required.getKey();
+            }
+        }
+        return new Availability(product.name(), limitingArtId == null ? 0L : buildableQuantity,
+                limitingArtId, product.version(), articleVersionSum);
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private MongoCollection<Document> collection(Class<?> documentClass) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(documentClass));
+    }
+
+    record Availability(String productName, long buildableQuantity, String limitingArtId,
+                        long productVersion, long articleVersionSum) {}
+}
@@ -1,14 +1,29 @@
 package com.ikea.warehouse_data_consumer.service;
 
+import com.ikea.warehouse_data_consumer.cache.ProductVersionCache;
+import com.ikea.warehouse_data_consumer.cache.VersionWatermark;
+import com.ikea.warehouse_data_consumer.concurrent.ProductChunkSizer;
+import com.ikea.warehouse_data_consumer.concurrent.KeyPartitionedBulkExecutor;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties.WriteMode;
 import com.ikea.warehouse_data_consumer.data.document.ProductDocument;
+import com.ikea.warehouse_data_consumer.data.dto.BulkWriteOutcome;
+import com.ikea.warehouse_data_consumer.data.dto.WriteOutcome;
 import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
 import com.ikea.warehouse_data_consumer.data.exception.ProductDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
+import com.ikea.warehouse_data_consumer.util.EventCoalesceUtil.CoalescedEvents;
 import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
@@ -18,26 +33,48 @@ import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.getNotMatchedCriteria;
+import static com.ikea.warehouse_data_consumer.util.EventCoalesceUtil.coalesceLatest;
+import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.getPossiblyStaleIndexes;
+import static com.ikea.warehouse_data_consumer.util.MongoBulkUtil.resolveOutcomes;
+import static com.ikea.warehouse_data_consumer.util.MongoUpdatePipelineUtil.setIfNewerPipeline;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
+    private static final String SUPERSEDED_EVENTS_METRIC = InventoryService.SUPERSEDED_EVENTS_METRIC;
+    private static final String STALE_EVENTS_METRIC = InventoryService.STALE_EVENTS_METRIC;
+    private static final String DUPLICATE_EVENTS_METRIC = InventoryService.DUPLICATE_EVENTS_METRIC;
+
+    private static final String ENTITY = "product";
+    private static final String SINGLE_METHOD = "proceedProductUpdateEvent";
+    private static final String BATCH_METHOD = "proceedProductUpdateBatchEvent";
+
     private final MongoTemplate mongoTemplate;
+    private final MongoWriteProperties mongoWriteProperties;
+    private final KeyPartitionedBulkExecutor keyPartitionedBulkExecutor;
+    private final ProductVersionCache productVersionCache;
+    private final MeterRegistry meterRegistry;
+    private final ConsumerMetrics consumerMetrics;
+    private final ProductChunkSizer productChunkSizer;
+    private final MongoCircuitBreaker mongoCircuitBreaker;
+    private final ProductAvailabilityService productAvailabilityService;
 
     public void proceedProductUpdateEvent(ProductUpdateEvent event) {
         MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ProductDocument.class));
 
         // Read current version (server-side)
+        Timer.Sample preReadSample = consumerMetrics.startTimer();
         Document existing = collection
                 .find(Filters.eq("name", event.name()))
                 .projection(Projections.include("version", "fileCreatedAt"))
                 .first();
+        consumerMetrics.recordVersionPreRead(preReadSample, ENTITY, SINGLE_METHOD);
 
         Bson baseFilter = Filters.and(
                 Filters.eq("name", event.name()),
@@ -58,66 +95,391 @@ public class ProductService {
         );
 
         UpdateOptions options = new UpdateOptions().upsert(Objects.isNull(existing));
-        UpdateResult result = collection.updateOne(filter, update, options);
+        Timer.Sample writeSample = consumerMetrics.startTimer();
+        UpdateResult result;
+        try {
+            result = collection.updateOne(filter, update, options);
+        } catch (MongoException mongoException) {
+            consumerMetrics.recordWriteFailure(writeSample, ENTITY, SINGLE_METHOD, "updateOne");
+            throw mongoException;
+        }
+        consumerMetrics.recordUpdateOne(writeSample, ENTITY, SINGLE_METHOD, result);
+        // The version was bumped outside the batch path; force the next batch to re-read it.
+        productVersionCache.invalidate(event.name());
 
         if (Objects.nonNull(versionFilter) && result.getMatchedCount() == 0 && Objects.isNull(result.getUpsertedId())) {
             throw new OptimisticLockingFailureException(STR."Optimistic lock conflict for product name=\{event.name()}");
         }
+        if (result.getMatchedCount() > 0 || Objects.nonNull(result.getUpsertedId())) {
+            consumerMetrics.recordApplied(ENTITY, event.fileCreatedAt());
+            productAvailabilityService.onProductsChanged(List.of(event.name()));
+        }
     }
 
     public void proceedProductUpdateBatchEvent(List<ProductUpdateEvent> eventList) {
-        List<WriteModel<Document>> bulkOperations;
-        List<ProductUpdateEvent> failedEvents = new ArrayList<>();
+        proceedProductUpdateBatchEvent(eventList, Map.of());
+    }
+
+    /**
+     * Like proceedProductUpdateBatchEvent, recording the id of the message that carried each event as the
+     * lastMessageId of the product it applies. An event whose message already applied its product, e.g. a replay
+     * after a rebalance, is dropped before any write is built.
+     *
+     * @param messageIds message id per event, by identity; events without one are written as usual
+     */
+    public void proceedProductUpdateBatchEvent(List<ProductUpdateEvent> eventList,
+                                               Map<ProductUpdateEvent, String> messageIds) {
+        if (ObjectUtils.isEmpty(eventList)) {
+            log.warn("Received empty product update event list; skipping processing.");
+            return;
+        }
+
+        // Only the newest event per product name is written; older ones in the same poll would just lose the version race.
+        CoalescedEvents<ProductUpdateEvent> coalescedEvents = coalesceLatest(eventList,
+                ProductUpdateEvent::name, ProductUpdateEvent::fileCreatedAt);
+        List<ProductUpdateEvent> latestEvents = coalescedEvents.latest();
+        if (ObjectUtils.isNotEmpty(coalescedEvents.superseded())) {
+            log.debug("Dropped superseded product update events; received={}, written={}, dropped={}",
+                    eventList.size(), latestEvents.size(), coalescedEvents.superseded().size());
+            meterRegistry.counter(SUPERSEDED_EVENTS_METRIC, "entity", "product")
+                    .increment(coalescedEvents.superseded().size());
+        }
+
+        List<String> names = latestEvents.stream().map(ProductUpdateEvent::name).toList();
+        Map<String, VersionWatermark> watermarks = productVersionCache.getAll(names);
+        if (!messageIds.isEmpty() && mongoWriteProperties.mode() == WriteMode.VERSIONED && watermarks.size() < names.size()) {
+            // Cold products: their stored watermark replaces the version pre-read of the write and reveals replays.
+            watermarks = withStoredWatermarks(names, watermarks);
+        }
+        List<ProductUpdateEvent> writableEvents = rejectStaleEvents(latestEvents, watermarks, messageIds);
+        if (ObjectUtils.isEmpty(writableEvents)) {
+            return;
+        }
+
+        // Sub-batches are split by key, so events of one document are never written concurrently.
+        Map<String, VersionWatermark> finalWatermarks = watermarks;
+        BulkWriteOutcome<ProductUpdateEvent> outcome = keyPartitionedBulkExecutor.execute(writableEvents, ProductUpdateEvent::name,
+                mongoWriteProperties.parallelism(), subBatch -> writeBatch(subBatch, finalWatermarks, messageIds));
+        if (outcome.hasRejections()) {
+            throw new ProductDocumentMongoWriteException(outcome.failedEvents(), outcome.criteriaNotMatchedEvents());
+        }
+    }
+
+    /**
+     * Writes one (sub-)batch as consecutive chunks sized by the productChunkSizer, one unordered bulkWrite each, and
+     * reports the events that were not applied. When a chunk fails as a whole, it and the chunks after it are
+     * reported as failed instead of being written into a struggling Mongo. When the first chunk fails, nothing was
+     * written and the error is rethrown, so that the listener can keep the batch in Kafka under backpressure.
+     *
+     * Every chunk passes the mongoCircuitBreaker: while it is open the write fails fast, and while it is half-open
+     * only the first probeSize events are written as the probe; the rest follows once the probe closed it.
+     * Afterwards the product availability of the applied keys is recomputed.
+     */
+    private BulkWriteOutcome<ProductUpdateEvent> writeBatch(List<ProductUpdateEvent> writableEvents,
+                                                     Map<String, VersionWatermark> watermarks,
+                                                     Map<ProductUpdateEvent, String> messageIds) {
+        Deque<List<ProductUpdateEvent>> chunks = new ArrayDeque<>(productChunkSizer.split(writableEvents));
+        List<BulkWriteOutcome<ProductUpdateEvent>> outcomes = new ArrayList<>(chunks.size());
+        int written = 0;
+        while (!chunks.isEmpty()) {
+            List<ProductUpdateEvent> chunk = chunks.poll();
+            int permittedSize = mongoCircuitBreaker.acquirePermission();
+            if (chunk.size() > permittedSize) {
+                chunks.push(chunk.subList(permittedSize, chunk.size()));
+                chunk = chunk.subList(0, permittedSize);
+            }
+            try {
+                outcomes.add(writeChunk(chunk, watermarks, messageIds));
+                mongoCircuitBreaker.onSuccess();
+                written += chunk.size();
+            } catch (RuntimeException exception) {
+                mongoCircuitBreaker.onFailure(exception);
+                if (written == 0 || !(exception instanceof MongoException)) {
+                    throw exception;
+                }
+                List<ProductUpdateEvent> unwritten = new ArrayList<>(writableEvents.subList(written, writableEvents.size()));
+                log.warn("Bulk write chunk failed; reporting the remaining product update events as failed; count={}",
+                        unwritten.size(), exception);
+                outcomes.add(new BulkWriteOutcome<>(unwritten, List.of()));
+                break;
+            }
+        }
+        BulkWriteOutcome<ProductUpdateEvent> outcome = outcomes.size() == 1 ? outcomes.get(0) : BulkWriteOutcome.merge(outcomes);
+        productAvailabilityService.onProductsChanged(appliedKeys(writableEvents, outcome));
+        return outcome;
+    }
+
+    /**
+     * Keys of the events that were neither reported as failed nor as not matched; stale ones included, which only
+     * costs a recompute that changes nothing.
+     */
+    private static Set<String> appliedKeys(List<ProductUpdateEvent> writtenEvents, BulkWriteOutcome<ProductUpdateEvent> outcome) {
+        Set<String> appliedKeys = writtenEvents.stream().map(ProductUpdateEvent::name).collect(Collectors.toSet());
+        outcome.failedEvents().forEach(event -> appliedKeys.remove(event.name()));
+        outcome.criteriaNotMatchedEvents().forEach(event -> appliedKeys.remove(event.name()));
+        return appliedKeys;
+    }
+
+    /**
+     * Writes one chunk with a single unordered bulkWrite and reports the events that were not applied.
+     */
+    private BulkWriteOutcome<ProductUpdateEvent> writeChunk(List<ProductUpdateEvent> writableEvents,
+                                                     Map<String, VersionWatermark> watermarks,
+                                                     Map<ProductUpdateEvent, String> messageIds) {
+        WriteMode writeMode = mongoWriteProperties.mode();
+        Map<String, Long> expectedVersions = new HashMap<>();
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ProductDocument.class));
+
+        List<WriteModel<Document>> bulkOperations = switch (writeMode) {
+            case VERSIONED -> buildVersionedOperations(collection, writableEvents, watermarks, expectedVersions, messageIds);
+            case CONDITIONAL -> buildConditionalOperations(writableEvents, messageIds);
+        };
 
+        BulkWriteResult bulkWriteResult;
+        List<BulkWriteError> writeErrors;
+        Timer.Sample writeSample = consumerMetrics.startTimer();
         try {
-            if (ObjectUtils.isEmpty(eventList)) {
-                log.warn("Received empty inventory update event list; skipping processing.");
-                return;
+            bulkWriteResult = collection.bulkWrite(bulkOperations, new BulkWriteOptions().ordered(false));
+            writeErrors = List.of();
+        } catch (MongoBulkWriteException mongoBulkWriteException) {
+            bulkWriteResult = mongoBulkWriteException.getWriteResult();
+            writeErrors = mongoBulkWriteException.getWriteErrors();
+        } catch (MongoException mongoException) {
+            consumerMetrics.recordWriteFailure(writeSample, ENTITY, BATCH_METHOD, "bulkWrite");
+            productChunkSizer.onFailure(bulkOperations.size());
+            throw mongoException;
+        }
+        long latencyNanos = consumerMetrics.recordBulkWrite(writeSample, ENTITY, BATCH_METHOD, bulkOperations.size(),
+                bulkWriteResult, writeErrors);
+        productChunkSizer.onWrite(bulkOperations.size(), latencyNanos);
+
+        if (writeMode == WriteMode.CONDITIONAL) {
+            // Every operation matches or upserts; a stale event matches without modifying the document. The counts do
+            // not say which ones did, so possibly stale events are neither cached nor move the watermark; this keeps
+            // the single round trip.
+            List<ProductUpdateEvent> failedEvents = new ArrayList<>();
+            for (BulkWriteError bulkWriteError : writeErrors) {
+                failedEvents.add(writableEvents.get(bulkWriteError.getIndex()));
+            }
+            List<ProductUpdateEvent> notAppliedEvents = new ArrayList<>(failedEvents);
+            Set<Integer> possiblyStaleIndexes = new HashSet<>(
+                    getPossiblyStaleIndexes(writableEvents.size(), bulkWriteResult, writeErrors));
+            Set<Integer> failedIndexes = writeErrors.stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            Instant newestApplied = null;
+            for (int i = 0; i < writableEvents.size(); i++) {
+                if (possiblyStaleIndexes.contains(i)) {
+                    notAppliedEvents.add(writableEvents.get(i));
+                } else if (!failedIndexes.contains(i)) {
+                    newestApplied = newer(newestApplied, writableEvents.get(i).fileCreatedAt());
+                }
             }
+            recordStaleEvents(bulkWriteResult.getMatchedCount() - bulkWriteResult.getModifiedCount());
+            refreshVersionCache(writableEvents, expectedVersions, notAppliedEvents, false, messageIds);
+            consumerMetrics.recordApplied(ENTITY, newestApplied);
+            return new BulkWriteOutcome<>(failedEvents, List.of());
+        }
 
-            MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ProductDocument.class));
+        // Only the operations the counts cannot settle are read back, and only those are classified individually.
+        List<WriteOutcome> outcomes = resolveOutcomes(writableEvents, bulkWriteResult, writeErrors,
+                ProductUpdateEvent::name, ProductUpdateEvent::fileCreatedAt,
+                names -> readStoredFileCreatedAt(collection, names));
+        List<ProductUpdateEvent> retryableEvents = new ArrayList<>();
+        List<ProductUpdateEvent> notAppliedEvents = new ArrayList<>();
+        int staleCount = 0;
+        Instant newestApplied = null;
+        for (int i = 0; i < writableEvents.size(); i++) {
+            WriteOutcome writeOutcome = outcomes.get(i);
+            if (writeOutcome == WriteOutcome.APPLIED) {
+                newestApplied = newer(newestApplied, writableEvents.get(i).fileCreatedAt());
+                continue;
+            }
+            notAppliedEvents.add(writableEvents.get(i));
+            if (writeOutcome == WriteOutcome.STALE) {
+                staleCount++;
+            } else {
+                // Write errors and lost version races; the retry re-reads the version.
+                retryableEvents.add(writableEvents.get(i));
+            }
+        }
+        recordStaleEvents(staleCount);
+        refreshVersionCache(writableEvents, expectedVersions, notAppliedEvents, true, messageIds);
+        consumerMetrics.recordApplied(ENTITY, newestApplied);
+        return new BulkWriteOutcome<>(retryableEvents, List.of());
+    }
+
+    /**
+     * Reads the stored fileCreatedAt of the given products from the primary, which acknowledged the bulk write.
+     */
+    private Map<String, Instant> readStoredFileCreatedAt(MongoCollection<Document> collection, Set<String> names) {
+        Map<String, Instant> storedFileCreatedAt = new HashMap<>();
+        collection.withReadPreference(ReadPreference.primary())
+                .find(Filters.in("name", names))
+                .projection(Projections.include("name", "fileCreatedAt"))
+                .forEach(doc -> {
+                    Date fileCreatedAt = doc.getDate("fileCreatedAt");
+                    if (fileCreatedAt != null) {
+                        storedFileCreatedAt.put(doc.getString("name"), fileCreatedAt.toInstant());
+                    }
+                });
+        return storedFileCreatedAt;
+    }
 
-            Set<String> names = eventList.stream().map(ProductUpdateEvent::name).collect(Collectors.toSet());
-            Map<String, Long> currentVersions = new HashMap<>();
+    /**
+     * Adds the stored watermarks of the products missing from the cached ones, read in one query. Products that do
+     * not exist yet stay missing.
+     */
+    private Map<String, VersionWatermark> withStoredWatermarks(List<String> names, Map<String, VersionWatermark> cached) {
+        Set<String> missingNames = new HashSet<>(names);
+        missingNames.removeAll(cached.keySet());
+        Map<String, VersionWatermark> watermarks = new HashMap<>(cached);
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(ProductDocument.class));
+        Timer.Sample preReadSample = consumerMetrics.startTimer();
+        collection.find(Filters.in("name", missingNames))
+                .projection(Projections.include("name", "version", "fileCreatedAt", "lastMessageId"))
+                .forEach(doc -> {
+                    Date fileCreatedAt = doc.getDate("fileCreatedAt");
+                    watermarks.put(doc.getString("name"), new VersionWatermark(doc.getLong("version"),
+                            fileCreatedAt == null ? null : fileCreatedAt.toInstant(), doc.getString("lastMessageId")));
+                });
+        consumerMetrics.recordVersionPreRead(preReadSample, ENTITY, BATCH_METHOD);
+        return watermarks;
+    }
+
+    /**
+     * Drops events whose message already applied their product, and events that are not newer than the watermark
+     * of their product; Mongo would reject the latter anyway.
+     */
+    private List<ProductUpdateEvent> rejectStaleEvents(List<ProductUpdateEvent> events,
+                                                       Map<String, VersionWatermark> watermarks,
+                                                       Map<ProductUpdateEvent, String> messageIds) {
+        if (watermarks.isEmpty()) {
+            return events;
+        }
+        List<ProductUpdateEvent> writableEvents = new ArrayList<>(events.size());
+        int duplicateCount = 0;
+        int staleCount = 0;
+        for (ProductUpdateEvent event : events) {
+            VersionWatermark watermark = watermarks.get(event.name());
+            if (watermark == null) {
+                writableEvents.add(event);
+            } else if (watermark.isAppliedBy(messageIds.get(event))) {
+                duplicateCount++;
+            } else if (watermark.isNotOlderThan(event.fileCreatedAt())) {
+                staleCount++;
+            } else {
+                writableEvents.add(event);
+            }
+        }
+        if (duplicateCount > 0) {
+            log.debug("Rejected already applied product update events by lastMessageId; count={}", duplicateCount);
+            meterRegistry.counter(DUPLICATE_EVENTS_METRIC, "entity", "product").increment(duplicateCount);
+        }
+        if (staleCount > 0) {
+            log.debug("Rejected stale product update events from version cache; count={}", staleCount);
+            meterRegistry.counter(STALE_EVENTS_METRIC, "entity", "product").increment(staleCount);
+        }
+        return writableEvents;
+    }
+
+    /**
+     * Records the new watermark of every applied event and evicts the ones Mongo rejected or may have rejected, so
+     * their next event re-reads the stored version.
+     */
+    private void refreshVersionCache(List<ProductUpdateEvent> writtenEvents, Map<String, Long> expectedVersions,
+                                     List<ProductUpdateEvent> rejectedEvents, boolean versionKnown,
+                                     Map<ProductUpdateEvent, String> messageIds) {
+        if (!productVersionCache.isEnabled()) {
+            return;
+        }
+        Set<String> rejectedNames = rejectedEvents.stream().map(ProductUpdateEvent::name).collect(Collectors.toSet());
+        for (ProductUpdateEvent event : writtenEvents) {
+            if (rejectedNames.contains(event.name())) {
+                productVersionCache.invalidate(event.name());
+            } else {
+                Long expectedVersion = expectedVersions.get(event.name());
+                Long appliedVersion = versionKnown ? (expectedVersion == null ? 1L : expectedVersion + 1) : null;
+                productVersionCache.put(event.name(), appliedVersion, event.fileCreatedAt(), messageIds.get(event));
+            }
+        }
+    }
+
+    // Package-private for the bulk operation benchmarks.
+    List<WriteModel<Document>> buildVersionedOperations(MongoCollection<Document> collection,
+                                                        List<ProductUpdateEvent> events,
+                                                        Map<String, VersionWatermark> watermarks,
+                                                        Map<String, Long> currentVersions,
+                                                        Map<ProductUpdateEvent, String> messageIds) {
+        // Only cache misses (or entries without a known version) need the pre-read.
+        Set<String> names = new HashSet<>();
+        for (ProductUpdateEvent event : events) {
+            VersionWatermark watermark = watermarks.get(event.name());
+            if (watermark != null && watermark.version() != null) {
+                currentVersions.put(event.name(), watermark.version());
+            } else {
+                names.add(event.name());
+            }
+        }
+
+        if (!names.isEmpty()) {
+            Timer.Sample preReadSample = consumerMetrics.startTimer();
             collection.find(Filters.in("name", names))
                     .projection(Projections.include("name", "version"))
                     .forEach(doc -> currentVersions.put(doc.getString("name"), doc.getLong("version")));
+            consumerMetrics.recordVersionPreRead(preReadSample, ENTITY, BATCH_METHOD);
+        }
+
+        List<WriteModel<Document>> bulkOperations = new ArrayList<>(events.size());
+        for (ProductUpdateEvent e : events) {
+            Bson baseFilter = Filters.and(
+                    Filters.eq("name", e.name()),
+                    Filters.lt("fileCreatedAt", e.fileCreatedAt())
+            );
+            Long cv = currentVersions.get(e.name());
+            Bson filter = (cv != null) ? Filters.and(baseFilter, Filters.eq("version", cv)) : baseFilter;
 
-            bulkOperations = new ArrayList<>(eventList.size());
-            for (ProductUpdateEvent e : eventList) {
-                Bson baseFilter = Filters.and(
-                        Filters.eq("name", e.name()),
-                        Filters.lt("fileCreatedAt", e.fileCreatedAt())
-                );
-                Long cv = currentVersions.get(e.name());
-                Bson filter = (cv != null) ? Filters.and(baseFilter, Filters.eq("version", cv)) : baseFilter;
-
-                Bson update = Updates.combine(
-                        Updates.set("name", e.name()),
-                        Updates.set("containArticles", e.containArticles()),
-                        Updates.set("fileCreatedAt", e.fileCreatedAt()),
-                        Updates.inc("version", 1L)
-                );
-
-                bulkOperations.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+            List<Bson> updates = new ArrayList<>(5);
+            updates.add(Updates.set("name", e.name()));
+            updates.add(Updates.set("containArticles", e.containArticles()));
+            updates.add(Updates.set("fileCreatedAt", e.fileCreatedAt()));
+            updates.add(Updates.inc("version", 1L));
+            String messageId = messageIds.get(e);
+            if (messageId != null) {
+                updates.add(Updates.set("lastMessageId", messageId));
             }
+            Bson update = Updates.combine(updates);
 
-            BulkWriteResult bulkWriteResult = collection.bulkWrite(bulkOperations, new BulkWriteOptions().ordered(false));
+            bulkOperations.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+        }
+        return bulkOperations;
+    }
 
-            List<ProductUpdateEvent> notMatchedEvents = getNotMatchedCriteria(eventList, bulkWriteResult);
-            if (ObjectUtils.isNotEmpty(notMatchedEvents)) {
-                // These include optimistic conflicts (version mismatch) and fileCreatedAt guard rejections.
-                throw new ProductDocumentMongoWriteException(List.of(), notMatchedEvents);
+    List<WriteModel<Document>> buildConditionalOperations(List<ProductUpdateEvent> events,
+                                                          Map<ProductUpdateEvent, String> messageIds) {
+        List<WriteModel<Document>> bulkOperations = new ArrayList<>(events.size());
+        for (ProductUpdateEvent e : events) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("containArticles", e.containArticles());
+            String messageId = messageIds.get(e);
+            if (messageId != null) {
+                fields.put("lastMessageId", messageId);
             }
-        } catch (MongoBulkWriteException mongoBulkWriteException) {
-            List<ProductUpdateEvent> notMatchedCriteria = getNotMatchedCriteria(eventList,
-                    mongoBulkWriteException.getWriteResult());
-            for (BulkWriteError bulkWriteError : mongoBulkWriteException.getWriteErrors()) {
-                int index = bulkWriteError.getIndex();
-                ProductUpdateEvent event = eventList.get(index);
-                failedEvents.add(event);
-            }
-            throw new ProductDocumentMongoWriteException(failedEvents, notMatchedCriteria);
+
+            bulkOperations.add(new UpdateOneModel<>(
+                    Filters.eq("name", e.name()),
+                    setIfNewerPipeline(e.fileCreatedAt(), fields),
+                    new UpdateOptions().upsert(true)));
+        }
+        return bulkOperations;
+    }
+
+    private static Instant newer(Instant current, Instant candidate) {
+        return current == null || (candidate != null && candidate.isAfter(current)) ? candidate : current;
+    }
+
+    private void recordStaleEvents(int staleCount) {
+        if (staleCount > 0) {
+            log.debug("Skipped stale product update events; count={}", staleCount);
+            meterRegistry.counter(STALE_EVENTS_METRIC, "entity", "product").increment(staleCount);
         }
     }
 }
@@ -0,0 +1,63 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Utility methods for deciding how much of a polled batch can be acknowledged after its failed events were
+ * handed off to the retry/error topics.
+ */
+public final class BatchAckUtil {
+
+    private BatchAckUtil() {}
+
+    /**
+     * Finds the first event of the batch whose retry/error record was not acknowledged by the broker. Everything
+     * before it is safe to commit; it and everything after must be redelivered.
+     *
+     * Events are matched by identity, since the published records carry the very event instances of the batch.
+     *
+     * @return the index in batch, or -1 when every hand-off succeeded; 0 when a failed record cannot be traced back
+     *         to the batch, so that nothing is committed
+     */
+    public static int firstUnsafeIndex(List<?> batch, List<SendBatchResult> sendBatchResults) {
+        Set<Object> unsafe = unsafeEvents(sendBatchResults);
+        if (unsafe.isEmpty()) {
+            return -1;
+        }
+        int index = firstIndexOf(batch, unsafe);
+        return index < 0 ? 0 : index;
+    }
+
+    /**
+     * @return the events whose retry/error record was not acknowledged, compared by identity
+     */
+    public static Set<Object> unsafeEvents(List<SendBatchResult> sendBatchResults) {
+        Set<Object> unsafe = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SendBatchResult sendBatchResult : sendBatchResults) {
+            sendBatchResult.failedRecords().stream()
+                    .map(KafkaKeyValueRecord::event)
+                    .forEach(unsafe::add);
+        }
+        return unsafe;
+    }
+
+    /**
+     * Like firstUnsafeIndex for one slice (e.g. partition) of a batch: unsafe events of other slices are ignored.
+     *
+     * @return the index in events, or -1 when none of them is unsafe
+     */
+    public static int firstIndexOf(List<?> events, Set<Object> unsafeEvents) {
+        for (int i = 0; i < events.size(); i++) {
+            if (unsafeEvents.contains(events.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
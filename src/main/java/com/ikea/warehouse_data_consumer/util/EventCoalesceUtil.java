@@ -0,0 +1,68 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Utility methods for collapsing a polled batch of update events down to the newest event per entity key.
+ */
+public final class EventCoalesceUtil {
+
+    private EventCoalesceUtil() {}
+
+    /**
+     * Keeps only the event with the newest fileCreatedAt for every key. When two events share the same
+     * fileCreatedAt, the one that appears later in the batch (higher offset) wins.
+     *
+     * The relative order of the surviving events follows the first occurrence of their key in the batch.
+     *
+     * @param events the polled batch, in offset order
+     * @param keyExtractor extracts the entity key (e.g. artId, product name)
+     * @param timestampExtractor extracts the event's fileCreatedAt
+     * @return the surviving events and the superseded ones
+     */
+    public static <T> CoalescedEvents<T> coalesceLatest(List<T> events,
+                                                        Function<T, String> keyExtractor,
+                                                        Function<T, Instant> timestampExtractor) {
+        if (ObjectUtils.isEmpty(events)) {
+            return new CoalescedEvents<>(List.of(), List.of());
+        }
+
+        Map<String, T> latestByKey = new LinkedHashMap<>();
+        List<T> superseded = new ArrayList<>();
+        for (T event : events) {
+            String key = keyExtractor.apply(event);
+            T current = latestByKey.get(key);
+            if (current == null) {
+                latestByKey.put(key, event);
+            } else if (isNotOlder(timestampExtractor.apply(event), timestampExtractor.apply(current))) {
+                superseded.add(current);
+                latestByKey.put(key, event);
+            } else {
+                superseded.add(event);
+            }
+        }
+        return new CoalescedEvents<>(new ArrayList<>(latestByKey.values()), superseded);
+    }
+
+    private static boolean isNotOlder(Instant candidate, Instant current) {
+        if (candidate == null) {
+            return current == null;
+        }
+        return current == null || !candidate.isBefore(current);
+    }
+
+    /**
+     * Result of coalescing a batch.
+     *
+     * @param latest the newest event per key; these are the only ones that should be written
+     * @param superseded events made obsolete by a newer event for the same key in the same batch
+     */
+    public record CoalescedEvents<T>(List<T> latest, List<T> superseded) {}
+}
@@ -0,0 +1,44 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Utility methods for splitting a batch into sub-batches by key hash.
+ */
+public final class KeyPartitionUtil {
+
+    private KeyPartitionUtil() {}
+
+    /**
+     * Splits the items into at most {@code partitions} sub-batches so that all items sharing a key land in the same
+     * sub-batch. The relative order of items inside a sub-batch is preserved and empty sub-batches are omitted.
+     *
+     * @param items the items to split
+     * @param keyExtractor extracts the key used for hashing (e.g. artId, product name)
+     * @param partitions number of buckets to hash into
+     * @return the non-empty sub-batches
+     */
+    public static <T> List<List<T>> partitionByKey(List<T> items, Function<T, String> keyExtractor, int partitions) {
+        if (partitions <= 1 || items.size() <= 1) {
+            return List.of(items);
+        }
+        List<List<T>> buckets = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (T item : items) {
+            buckets.get(bucketOf(keyExtractor.apply(item), partitions)).add(item);
+        }
+        buckets.removeIf(List::isEmpty);
+        return buckets;
+    }
+
+    /**
+     * @return the bucket in [0, partitions) the key hashes into; always the same for the same key, 0 for a null key
+     */
+    public static int bucketOf(String key, int partitions) {
+        return key == null || partitions <= 1 ? 0 : Math.floorMod(key.hashCode(), partitions);
+    }
+}
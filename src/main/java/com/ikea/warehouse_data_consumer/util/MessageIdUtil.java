@@ -0,0 +1,28 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utility methods for the id of the Kafka message that carried an event, stored as lastMessageId of the document it
+ * applied.
+ *
+ * A producer may supply the id in the messageId header, which keeps it stable when the same message is published
+ * twice; otherwise the record's topic, partition and offset identify it, which is stable across redeliveries.
+ */
+public final class MessageIdUtil {
+
+    public static final String MESSAGE_ID_HEADER = "messageId";
+
+    private MessageIdUtil() {}
+
+    public static String messageId(ConsumerRecord<?, ?> record) {
+        Header header = record.headers() == null ? null : record.headers().lastHeader(MESSAGE_ID_HEADER);
+        if (header != null && header.value() != null && header.value().length > 0) {
+            return new String(header.value(), StandardCharsets.UTF_8);
+        }
+        return record.topic() + "-" + record.partition() + "@" + record.offset();
+    }
+}
@@ -1,12 +1,14 @@
 package com.ikea.warehouse_data_consumer.util;
 
+import com.ikea.warehouse_data_consumer.data.dto.WriteOutcome;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.bulk.BulkWriteUpsert;
-import org.apache.commons.lang3.ObjectUtils;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -14,32 +16,137 @@ import java.util.stream.Collectors;
  */
 public final class MongoBulkUtil {
 
+    /**
+     * Reported for an upsert whose filter did not match an existing document with the same _id: the insert collides.
+     */
+    public static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
     private MongoBulkUtil() {}
 
     /**
-     * Returns the subset of input items that did not match the update filter in a bulk writing
-     * (i.e., neither matched nor were upserted), based on Mongo's upsert indices and matchedCount.
+     * Returns the operation indexes whose outcome cannot be told from the aggregate counts of a bulk write.
      *
-     * This method is generic and can be reused by different services (e.g., InventoryService, ProductService).
+     * Upserted operations were applied and write errors other than duplicate keys failed. The remaining operations
+     * all matched when matchedCount says so; otherwise Mongo does not say which of them missed, so every one of them
+     * is ambiguous. A duplicate key error is how a guarded upsert on the _id reports that the existing document was
+     * rejected by its filter, so those are ambiguous as well.
      *
-     * @param items the original list of items used to build the bulk operations (ordered)
-     * @param bulkWriteResult the result of the bulk write
-     * @return list of items considered as "not matched" according to the criteria used in services
+     * @param size number of operations in the bulk write
+     * @param bulkWriteResult the result of the bulk write, or the partial result of its exception
+     * @param writeErrors the write errors of the bulk write; empty when it succeeded
+     * @return the ambiguous indexes in ascending order
      */
-    public static <T> List<T> getNotMatchedCriteria(List<T> items, BulkWriteResult bulkWriteResult) {
-        List<T> notMatched = new ArrayList<>();
-        Set<Integer> upsertedIndexList = bulkWriteResult.getUpserts()
+    public static List<Integer> getAmbiguousIndexes(int size, BulkWriteResult bulkWriteResult, List<BulkWriteError> writeErrors) {
+        Set<Integer> upsertedIndexes = bulkWriteResult.getUpserts()
                 .stream()
                 .map(BulkWriteUpsert::getIndex)
                 .collect(Collectors.toSet());
+        Set<Integer> errorIndexes = writeErrors.stream()
+                .map(BulkWriteError::getIndex)
+                .collect(Collectors.toSet());
+
+        List<Integer> matchCandidates = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (!upsertedIndexes.contains(i) && !errorIndexes.contains(i)) {
+                matchCandidates.add(i);
+            }
+        }
 
-        if (ObjectUtils.notEqual(bulkWriteResult.getMatchedCount(), items.size())) {
-            for (int i = 0; i < items.size(); i++) {
-                if (!upsertedIndexList.contains(i)) {
-                    notMatched.add(items.get(i));
-                }
+        List<Integer> ambiguous = new ArrayList<>();
+        if (bulkWriteResult.getMatchedCount() < matchCandidates.size()) {
+            ambiguous.addAll(matchCandidates);
+        }
+        for (BulkWriteError writeError : writeErrors) {
+            if (writeError.getCode() == DUPLICATE_KEY_ERROR_CODE) {
+                ambiguous.add(writeError.getIndex());
             }
         }
-        return notMatched;
+        Collections.sort(ambiguous);
+        return ambiguous;
+    }
+
+    /**
+     * Returns the operation indexes of a conditional bulk write (key-only filters, update pipelines that only apply
+     * newer events) that may have matched without modifying, i.e. whose event may have been stale.
+     *
+     * Upserted operations were applied and write errors failed. When every remaining operation modified its document
+     * they were all applied; otherwise Mongo does not say which of them were stale, so every one of them is returned.
+     *
+     * @param size number of operations in the bulk write
+     * @param bulkWriteResult the result of the bulk write, or the partial result of its exception
+     * @param writeErrors the write errors of the bulk write; empty when it succeeded
+     * @return the possibly stale indexes in ascending order
+     */
+    public static List<Integer> getPossiblyStaleIndexes(int size, BulkWriteResult bulkWriteResult, List<BulkWriteError> writeErrors) {
+        Set<Integer> upsertedIndexes = bulkWriteResult.getUpserts()
+                .stream()
+                .map(BulkWriteUpsert::getIndex)
+                .collect(Collectors.toSet());
+        Set<Integer> errorIndexes = writeErrors.stream()
+                .map(BulkWriteError::getIndex)
+                .collect(Collectors.toSet());
+
+        List<Integer> matchCandidates = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (!upsertedIndexes.contains(i) && !errorIndexes.contains(i)) {
+                matchCandidates.add(i);
+            }
+        }
+        return bulkWriteResult.getModifiedCount() < matchCandidates.size() ? matchCandidates : List.of();
+    }
+
+    /**
+     * Classifies every operation of a versioned bulk write (fileCreatedAt and version guarded upserts). Operations
+     * the counts settle are classified from the result alone; only the ambiguous ones are verified, with a single
+     * read of their stored fileCreatedAt.
+     *
+     * @param items the items the operations were built from, in operation order
+     * @param bulkWriteResult the result of the bulk write, or the partial result of its exception
+     * @param writeErrors the write errors of the bulk write; empty when it succeeded
+     * @param keyExtractor document key of an item (e.g. artId, product name)
+     * @param fileCreatedAtExtractor fileCreatedAt of an item
+     * @param storedFileCreatedAtReader reads the stored fileCreatedAt per key; missing documents are left out
+     * @return the outcome of every item, aligned with items
+     */
+    public static <T> List<WriteOutcome> resolveOutcomes(List<T> items,
+                                                         BulkWriteResult bulkWriteResult,
+                                                         List<BulkWriteError> writeErrors,
+                                                         Function<T, String> keyExtractor,
+                                                         Function<T, Instant> fileCreatedAtExtractor,
+                                                         Function<Set<String>, Map<String, Instant>> storedFileCreatedAtReader) {
+        WriteOutcome[] outcomes = new WriteOutcome[items.size()];
+        Arrays.fill(outcomes, WriteOutcome.APPLIED);
+        for (BulkWriteError writeError : writeErrors) {
+            outcomes[writeError.getIndex()] = WriteOutcome.ERROR;
+        }
+
+        List<Integer> ambiguousIndexes = getAmbiguousIndexes(items.size(), bulkWriteResult, writeErrors);
+        if (!ambiguousIndexes.isEmpty()) {
+            Set<String> keys = new HashSet<>();
+            for (int index : ambiguousIndexes) {
+                keys.add(keyExtractor.apply(items.get(index)));
+            }
+            Map<String, Instant> storedFileCreatedAt = storedFileCreatedAtReader.apply(keys);
+            for (int index : ambiguousIndexes) {
+                T item = items.get(index);
+                outcomes[index] = classify(fileCreatedAtExtractor.apply(item), storedFileCreatedAt.get(keyExtractor.apply(item)));
+            }
+        }
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * Compares an event that was not counted as applied with the document state read after the write. The stored
+     * value has the millisecond precision of a BSON date.
+     */
+    static WriteOutcome classify(Instant eventFileCreatedAt, Instant storedFileCreatedAt) {
+        if (eventFileCreatedAt == null || storedFileCreatedAt == null) {
+            return WriteOutcome.CONFLICT;
+        }
+        int comparison = storedFileCreatedAt.compareTo(eventFileCreatedAt.truncatedTo(ChronoUnit.MILLIS));
+        if (comparison > 0) {
+            return WriteOutcome.STALE;
+        }
+        return comparison == 0 ? WriteOutcome.APPLIED : WriteOutcome.CONFLICT;
     }
 }
@@ -0,0 +1,64 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import com.mongodb.MongoException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Utility methods for running work in a Mongo transaction through the MongoTransactionManager.
+ */
+@Slf4j
+public final class MongoTransactionUtil {
+
+    private MongoTransactionUtil() {}
+
+    /**
+     * Runs the work in a transaction and reruns it when Mongo labels the failure as transient or the commit result
+     * as unknown. The work must therefore be safe to rerun after a commit that did succeed.
+     *
+     * When a transaction is already active the work joins it without retrying; only the outermost caller can rerun
+     * a transaction that Mongo aborted.
+     *
+     * @throws MongoException the last failure when it is not retryable or the attempts are exhausted; commit
+     *                        failures are unwrapped from the transaction manager's exception
+     */
+    public static void executeWithRetry(TransactionTemplate transactionTemplate, int maxAttempts, Runnable work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            work.run();
+            return;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> work.run());
+                return;
+            } catch (RuntimeException exception) {
+                MongoException mongoException = mongoCause(exception);
+                if (mongoException == null) {
+                    throw exception;
+                }
+                if (!isRetryable(mongoException) || attempt >= maxAttempts) {
+                    throw mongoException;
+                }
+                log.debug("Retrying Mongo transaction; attempt={}", attempt, mongoException);
+            }
+        }
+    }
+
+    public static boolean isRetryable(MongoException mongoException) {
+        return mongoException.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)
+                || mongoException.hasErrorLabel(MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL);
+    }
+
+    /**
+     * The MongoException behind a failed transaction; the transaction manager wraps commit failures.
+     */
+    public static MongoException mongoCause(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException mongoException) {
+                return mongoException;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds server-side conditional update pipelines that give last-writer-wins semantics on fileCreatedAt
+ * without a prior read of the document.
+ */
+public final class MongoUpdatePipelineUtil {
+
+    private MongoUpdatePipelineUtil() {}
+
+    /**
+     * Returns a single-stage update pipeline that sets the given fields, fileCreatedAt and an incremented version,
+     * but only when the stored fileCreatedAt is missing or older than the given one. Otherwise every field keeps
+     * its current value, so a stale update matches the document without modifying it.
+     *
+     * Values are wrapped in $literal so that strings starting with '$' are never read as field paths.
+     *
+     * @param fileCreatedAt the fileCreatedAt of the event being applied
+     * @param fields the fields to set, keyed by document field name
+     * @return update pipeline usable with UpdateOneModel
+     */
+    public static List<Bson> setIfNewerPipeline(Instant fileCreatedAt, Map<String, Object> fields) {
+        Document isNewer = new Document("$lt",
+                Arrays.asList(new Document("$ifNull", Arrays.asList("$fileCreatedAt", null)), fileCreatedAt));
+
+        Document set = new Document();
+        fields.forEach((field, value) -> set.append(field, cond(isNewer, new Document("$literal", value), "$" + field)));
+        set.append("fileCreatedAt", cond(isNewer, fileCreatedAt, "$fileCreatedAt"));
+        set.append("version", cond(isNewer,
+                new Document("$add", Arrays.asList(new Document("$ifNull", Arrays.asList("$version", 0L)), 1L)),
+                "$version"));
+
+        return List.of(new Document("$set", set));
+    }
+
+    private static Document cond(Document condition, Object whenTrue, Object whenFalse) {
+        return new Document("$cond", Arrays.asList(condition, whenTrue, whenFalse));
+    }
+}
@@ -0,0 +1,68 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Utility methods for the per-record retry state carried in headers of retry topic records.
+ *
+ * Records published without these headers (straight from the main consumers) are treated as the first attempt,
+ * due immediately.
+ */
+public final class RetryHeaderUtil {
+
+    public static final String RETRY_ATTEMPT_HEADER = "x-retry-attempt";
+    public static final String RETRY_NOT_BEFORE_HEADER = "x-retry-not-before";
+
+    private RetryHeaderUtil() {}
+
+    /**
+     * @return the 1-based attempt the record represents
+     */
+    public static int attempt(Headers headers) {
+        String value = lastValue(headers, RETRY_ATTEMPT_HEADER);
+        return value == null ? 1 : Integer.parseInt(value);
+    }
+
+    /**
+     * @return the earliest time the record may be processed
+     */
+    public static Instant notBefore(Headers headers) {
+        String value = lastValue(headers, RETRY_NOT_BEFORE_HEADER);
+        return value == null ? Instant.EPOCH : Instant.ofEpochMilli(Long.parseLong(value));
+    }
+
+    public static Headers retryHeaders(int attempt, Instant notBefore) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(RETRY_ATTEMPT_HEADER, String.valueOf(attempt).getBytes(StandardCharsets.UTF_8));
+        headers.add(RETRY_NOT_BEFORE_HEADER, String.valueOf(notBefore.toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+
+    /**
+     * Counts the leading records of a polled batch that are due. Processing stops at the first record that is not,
+     * so offsets are never committed past a record that still has to wait.
+     */
+    public static int dueCount(List<? extends ConsumerRecord<?, ?>> records, Instant now) {
+        for (int i = 0; i < records.size(); i++) {
+            if (notBefore(records.get(i).headers()).isAfter(now)) {
+                return i;
+            }
+        }
+        return records.size();
+    }
+
+    private static String lastValue(Headers headers, String key) {
+        if (headers == null) {
+            return null;
+        }
+        Header header = headers.lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
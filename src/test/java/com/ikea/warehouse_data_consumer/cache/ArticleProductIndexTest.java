@@ -0,0 +1,76 @@
+package com.ikea.warehouse_data_consumer.cache;
+
+import com.ikea.warehouse_data_consumer.cache.ArticleProductIndex.Snapshot;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArticleProductIndexTest {
+
+    private final Snapshot snapshot = new Snapshot();
+
+    @Test
+    void dependents_shouldFanOutABatchOfArticlesToEachProductOnce() {
+        snapshot.put(new ProductRequirements("table", 1L, Map.of("1", 4L, "2", 1L)));
+        snapshot.put(new ProductRequirements("chair", 1L, Map.of("1", 4L, "3", 2L)));
+        snapshot.put(new ProductRequirements("shelf", 1L, Map.of("4", 1L)));
+
+        List<ProductRequirements> dependents = sorted(snapshot.dependents(List.of("1", "2", "3", "unknown")));
+
+        assertEquals(List.of(
+                new ProductRequirements("chair", 1L, Map.of("1", 4L, "3", 2L)),
+                new ProductRequirements("table", 1L, Map.of("1", 4L, "2", 1L))), dependents);
+    }
+
+    @Test
+    void put_shouldMoveAProductToItsNewArticles() {
+        snapshot.put(new ProductRequirements("table", 1L, Map.of("1", 4L)));
+        snapshot.put(new ProductRequirements("table", 2L, Map.of("2", 1L)));
+
+        assertTrue(snapshot.dependents(List.of("1")).isEmpty());
+        assertEquals(List.of(new ProductRequirements("table", 2L, Map.of("2", 1L))), snapshot.dependents(List.of("2")));
+        assertEquals(1, snapshot.productCount());
+    }
+
+    @Test
+    void put_shouldIgnoreAnOlderVersion() {
+        snapshot.put(new ProductRequirements("table", 3L, Map.of("2", 1L)));
+        // a read that raced with a newer write
+        snapshot.put(new ProductRequirements("table", 2L, Map.of("1", 4L)));
+
+        assertTrue(snapshot.dependents(List.of("1")).isEmpty());
+        assertEquals(3L, snapshot.dependents(List.of("2")).get(0).version());
+    }
+
+    @Test
+    void put_shouldGrowPastTheInitialCapacity() {
+        for (int i = 0; i < 5_000; i++) {
+            snapshot.put(new ProductRequirements("product-" + i, 1L, Map.of("shared", 1L, "own-" + i, 2L)));
+        }
+
+        assertEquals(5_000, snapshot.productCount());
+        assertEquals(5_001, snapshot.articleCount());
+        assertEquals(5_000, snapshot.dependents(List.of("shared")).size());
+        assertTrue(snapshot.estimatedBytes() > 5_000L * 100);
+    }
+
+    @Test
+    void toRequirements_shouldAddUpRepeatedArticlesAndSkipNonPositiveAmounts() {
+        Document product = new Document("name", "table").append("version", 2L).append("containArticles", List.of(
+                new Document("artId", "1").append("amountOf", 4L),
+                new Document("artId", "1").append("amountOf", 2),
+                new Document("artId", "2").append("amountOf", 0L)));
+
+        assertEquals(new ProductRequirements("table", 2L, Map.of("1", 6L)), ArticleProductIndex.toRequirements(product));
+    }
+
+    private static List<ProductRequirements> sorted(List<ProductRequirements> products) {
+        return products.stream().sorted(Comparator.comparing(ProductRequirements::name)).toList();
+    }
+}
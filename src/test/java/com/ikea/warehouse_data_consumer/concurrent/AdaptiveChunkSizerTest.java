@@ -0,0 +1,86 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveChunkSizerTest {
+
+    private static final long FAST = Duration.ofMillis(50).toNanos();
+    private static final long SLOW = Duration.ofMillis(500).toNanos();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void split_shouldCutEventsIntoChunksOfTheCurrentSize() {
+        AdaptiveChunkSizer sizer = new ArticleChunkSizer(
+                new ChunkSizeProperties(true, 2, 1, 1_000, Duration.ofMillis(200), 10, 0.5), meterRegistry);
+
+        assertEquals(List.of(List.of(1, 2), List.of(3, 4), List.of(5)), sizer.split(List.of(1, 2, 3, 4, 5)));
+    }
+
+    @Test
+    void split_shouldKeepOneChunkWhenNotAdaptive() {
+        AdaptiveChunkSizer sizer = new ArticleChunkSizer(properties(false, 2), meterRegistry);
+
+        assertEquals(List.of(List.of(1, 2, 3, 4, 5)), sizer.split(List.of(1, 2, 3, 4, 5)));
+        assertEquals(0, meterRegistry.find(AdaptiveChunkSizer.CHUNK_SIZE_METRIC).gauges().size());
+    }
+
+    @Test
+    void onWrite_shouldGrowAdditivelyOnlyWhileTheCurrentSizeProjectsWithinTarget() {
+        AdaptiveChunkSizer sizer = new ArticleChunkSizer(properties(true, 100), meterRegistry);
+
+        sizer.onWrite(100, FAST);
+        sizer.onWrite(100, FAST);
+        // 20 operations in 50 ms project to 300 ms for a chunk of 120
+        sizer.onWrite(20, FAST);
+
+        assertEquals(120, sizer.chunkSize());
+        assertEquals(120.0, meterRegistry.get(AdaptiveChunkSizer.CHUNK_SIZE_METRIC).tag("entity", "article").gauge().value());
+    }
+
+    @Test
+    void onWrite_shouldGrowFromSubBatchesSmallerThanTheChunk() {
+        AdaptiveChunkSizer sizer = new ArticleChunkSizer(properties(true, 400), meterRegistry);
+
+        // parallel sub-batches of 50 at 10 ms each project to 80 ms for a chunk of 400
+        sizer.onWrite(50, Duration.ofMillis(10).toNanos());
+        sizer.onWrite(50, Duration.ofMillis(10).toNanos());
+
+        assertEquals(420, sizer.chunkSize());
+    }
+
+    @Test
+    void onWrite_shouldCutMultiplicativelyRelativeToTheSlowChunk() {
+        AdaptiveChunkSizer sizer = new ArticleChunkSizer(properties(true, 400), meterRegistry);
+
+        // two concurrent sub-batches of 400 were slow: the size is halved once, not twice
+        sizer.onWrite(400, SLOW);
+        sizer.onWrite(400, SLOW);
+        assertEquals(200, sizer.chunkSize());
+
+        sizer.onFailure(200);
+        sizer.onFailure(20);
+        assertEquals(50, sizer.chunkSize());
+    }
+
+    @Test
+    void onWrite_shouldStayWithinBounds() {
+        AdaptiveChunkSizer sizer = new ArticleChunkSizer(properties(true, 990), meterRegistry);
+
+        sizer.onWrite(990, FAST);
+        assertEquals(1_000, sizer.chunkSize());
+        sizer.onWrite(1_000, FAST);
+        assertEquals(1_000, sizer.chunkSize());
+    }
+
+    private static ChunkSizeProperties properties(boolean adaptive, int initialSize) {
+        return new ChunkSizeProperties(adaptive, initialSize, 50, 1_000, Duration.ofMillis(200), 10, 0.5);
+    }
+}
@@ -0,0 +1,105 @@
+package com.ikea.warehouse_data_consumer.concurrent;
+
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker.State;
+import com.ikea.warehouse_data_consumer.config.mongo.CircuitBreakerProperties;
+import com.ikea.warehouse_data_consumer.data.exception.MongoCircuitOpenException;
+import com.mongodb.MongoTimeoutException;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MongoCircuitBreakerTest {
+
+    private static final MongoTimeoutException TIMEOUT = new MongoTimeoutException("timed out");
+
+    private final MockClock clock = new MockClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+    private final MongoCircuitBreaker breaker = new MongoCircuitBreaker(
+            new CircuitBreakerProperties(true, 3, Duration.ofSeconds(30), 10), meterRegistry);
+
+    @Test
+    void acquirePermission_shouldFailFastAfterConsecutiveFailures() {
+        fail(3);
+
+        assertEquals(State.OPEN, breaker.state());
+        assertThrows(MongoCircuitOpenException.class, breaker::acquirePermission);
+        assertEquals(2.0, meterRegistry.get(MongoCircuitBreaker.STATE_METRIC).gauge().value());
+        assertEquals(1.0, meterRegistry.get(MongoCircuitBreaker.REJECTED_METRIC).counter().count());
+    }
+
+    @Test
+    void onSuccess_shouldResetTheFailureCount() {
+        fail(2);
+        breaker.acquirePermission();
+        breaker.onSuccess();
+        fail(2);
+
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void onFailure_shouldIgnoreErrorsThatAreNotMongoErrors() {
+        for (int i = 0; i < 5; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure(new IllegalStateException("bug"));
+        }
+
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void acquirePermission_shouldLetASingleSmallProbeThroughOnceTheOpenDurationElapsed() {
+        fail(3);
+        clock.add(30, TimeUnit.SECONDS);
+
+        assertEquals(State.HALF_OPEN, breaker.state());
+        assertEquals(10, breaker.acquirePermission());
+        // a second writer fails fast while the probe is in flight
+        assertThrows(MongoCircuitOpenException.class, breaker::acquirePermission);
+
+        breaker.onSuccess();
+
+        assertEquals(State.CLOSED, breaker.state());
+        assertEquals(Integer.MAX_VALUE, breaker.acquirePermission());
+        assertEquals(1.0, meterRegistry.get(MongoCircuitBreaker.TRANSITIONS_METRIC)
+                .tags("from", "half_open", "to", "closed").counter().count());
+    }
+
+    @Test
+    void onFailure_shouldReopenWhenTheProbeFails() {
+        fail(3);
+        clock.add(30, TimeUnit.SECONDS);
+
+        fail(1);
+
+        assertEquals(State.OPEN, breaker.state());
+        assertThrows(MongoCircuitOpenException.class, breaker::acquirePermission);
+        assertEquals(1.0, meterRegistry.get(MongoCircuitBreaker.TRANSITIONS_METRIC)
+                .tags("from", "half_open", "to", "open").counter().count());
+    }
+
+    @Test
+    void acquirePermission_shouldAlwaysPermitWhenDisabled() {
+        MongoCircuitBreaker disabled = new MongoCircuitBreaker(
+                new CircuitBreakerProperties(false, 1, Duration.ofSeconds(30), 10), meterRegistry);
+
+        disabled.acquirePermission();
+        disabled.onFailure(TIMEOUT);
+
+        assertEquals(Integer.MAX_VALUE, disabled.acquirePermission());
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.acquirePermission();
+            breaker.onFailure(TIMEOUT);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ikea.warehouse_data_consumer.config.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RetryPropertiesTest {
+
+    private final RetryProperties retryProperties = new RetryProperties(5,
+            List.of(Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofMillis(1_500)));
+
+    @Test
+    void tierTopic_shouldMapAttemptsToTiersAndReuseTheLastOne() {
+        assertEquals("retry-1s", retryProperties.tierTopic("retry", 1));
+        assertEquals("retry-10s", retryProperties.tierTopic("retry", 2));
+        assertEquals("retry-1500ms", retryProperties.tierTopic("retry", 3));
+        assertEquals("retry-1500ms", retryProperties.tierTopic("retry", 7));
+        assertEquals(Duration.ofSeconds(10), retryProperties.delay(2));
+    }
+
+    @Test
+    void topics_shouldListBaseTopicFollowedByEveryTier() {
+        assertArrayEquals(new String[]{"retry", "retry-1s", "retry-10s", "retry-1500ms"}, retryProperties.topics("retry"));
+    }
+}
@@ -0,0 +1,196 @@
+package com.ikea.warehouse_data_consumer.consumer.backpressure;
+
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.BackpressureProperties;
+import com.ikea.warehouse_data_consumer.consumer.backpressure.MongoPressureMonitor.PressureWindow;
+import com.ikea.warehouse_data_consumer.data.exception.MongoCircuitOpenException;
+import com.ikea.warehouse_data_consumer.data.exception.MongoSaturatedException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BackpressureControllerTest {
+
+    private static final PressureWindow IDLE = new PressureWindow(0, 0, 0, 0, 0);
+    private static final PressureWindow HEALTHY = window(5, 100);
+    private static final PressureWindow POOL_EXHAUSTED = window(500, 100);
+    private static final PressureWindow SLOW_WRITES = window(5, 3_000);
+    private static final PressureWindow IN_BETWEEN = window(100, 100);
+
+    @Mock
+    private KafkaListenerEndpointRegistry registry;
+
+    @Mock
+    private MongoPressureMonitor monitor;
+
+    @Mock
+    private MongoCircuitBreaker circuitBreaker;
+
+    @Mock
+    private MessageListenerContainer container;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BackpressureController controller;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(registry.getListenerContainers()).thenReturn(List.of(container));
+        lenient().when(circuitBreaker.state()).thenReturn(MongoCircuitBreaker.State.CLOSED);
+        controller = controller(Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    void evaluate_shouldPauseAllContainersWhenConnectionWaitsExceedTheThreshold() {
+        when(monitor.snapshot()).thenReturn(POOL_EXHAUSTED);
+
+        controller.evaluate();
+
+        assertTrue(controller.isPaused());
+        verify(container).pause();
+        assertEquals(1.0, meterRegistry.get(BackpressureController.PAUSED_METRIC).gauge().value());
+        assertEquals(1.0, meterRegistry.get(BackpressureController.PAUSES_METRIC).tag("reason", "pool_wait")
+                .counter().count());
+    }
+
+    @Test
+    void evaluate_shouldPauseOnSlowWrites() {
+        when(monitor.snapshot()).thenReturn(SLOW_WRITES);
+
+        controller.evaluate();
+
+        assertTrue(controller.isPaused());
+    }
+
+    @Test
+    void evaluate_shouldNotPauseWhenHealthy() {
+        when(monitor.snapshot()).thenReturn(HEALTHY, IN_BETWEEN);
+
+        controller.evaluate();
+        controller.evaluate();
+
+        assertFalse(controller.isPaused());
+        verify(container, never()).pause();
+    }
+
+    @Test
+    void evaluate_shouldResumeOnlyAfterConsecutiveHealthyChecks() {
+        // in between the thresholds neither pauses nor counts as healthy, and restarts the streak
+        when(monitor.snapshot()).thenReturn(POOL_EXHAUSTED, HEALTHY, IN_BETWEEN, HEALTHY, IDLE, HEALTHY);
+
+        for (int i = 0; i < 5; i++) {
+            controller.evaluate();
+            assertTrue(controller.isPaused());
+        }
+        controller.evaluate();
+
+        assertFalse(controller.isPaused());
+        verify(container).pause();
+        verify(container).resume();
+        assertEquals(0.0, meterRegistry.get(BackpressureController.PAUSED_METRIC).gauge().value());
+    }
+
+    @Test
+    void evaluate_shouldStayPausedForTheMinimumPause() {
+        controller = controller(Duration.ofHours(1));
+        when(monitor.snapshot()).thenReturn(POOL_EXHAUSTED, HEALTHY);
+
+        for (int i = 0; i < 10; i++) {
+            controller.evaluate();
+        }
+
+        assertTrue(controller.isPaused());
+        verify(container, never()).resume();
+    }
+
+    @Test
+    void evaluate_shouldNotResumeWhileTheCircuitBreakerIsOpen() {
+        when(monitor.snapshot()).thenReturn(POOL_EXHAUSTED, HEALTHY);
+        when(circuitBreaker.state()).thenReturn(MongoCircuitBreaker.State.OPEN, MongoCircuitBreaker.State.HALF_OPEN);
+
+        for (int i = 0; i < 4; i++) {
+            controller.evaluate();
+        }
+        assertTrue(controller.isPaused());
+        controller.evaluate();
+
+        assertFalse(controller.isPaused());
+    }
+
+    @Test
+    void pauseIfSaturated_shouldPauseWhenTheCircuitBreakerRejectsWrites() {
+        assertTrue(controller.pauseIfSaturated(new MongoCircuitOpenException("open")));
+        assertTrue(controller.isPaused());
+    }
+
+    @Test
+    void pauseIfSaturated_shouldPauseOnTimeoutsAnywhereInTheCauseChain() {
+        RuntimeException failure = new IllegalStateException(new MongoTimeoutException("timed out"));
+
+        assertTrue(controller.pauseIfSaturated(failure));
+        assertTrue(controller.pauseIfSaturated(new MongoSaturatedException("saturated", failure)));
+
+        assertTrue(controller.isPaused());
+        verify(container, times(1)).pause();
+    }
+
+    @Test
+    void pauseIfSaturated_shouldIgnoreErrorsOfSingleDocuments() {
+        MongoWriteException failure = new MongoWriteException(
+                new WriteError(11000, "duplicate key", new BsonDocument()), new ServerAddress());
+
+        assertFalse(controller.pauseIfSaturated(failure));
+        assertFalse(controller.isPaused());
+    }
+
+    @Test
+    void pauseIfSaturated_shouldNotPauseWhenDisabled() {
+        controller = new BackpressureController(registry, monitor, circuitBreaker, new BackpressureProperties(false,
+                Duration.ofSeconds(1), Duration.ofMillis(200), Duration.ofMillis(20), Duration.ofSeconds(2),
+                Duration.ofMillis(500), Duration.ZERO, 3), meterRegistry);
+
+        assertFalse(controller.pauseIfSaturated(new MongoTimeoutException("timed out")));
+        verify(container, never()).pause();
+    }
+
+    private BackpressureController controller(Duration minPause) {
+        // Not started: the tests drive evaluate() themselves.
+        return new BackpressureController(registry, monitor, circuitBreaker, new BackpressureProperties(true,
+                Duration.ofSeconds(1), Duration.ofMillis(200), Duration.ofMillis(20), Duration.ofSeconds(2),
+                Duration.ofMillis(500), minPause, 3), meterRegistry);
+    }
+
+    private static PressureWindow window(long maxWaitMillis, long meanWriteMillis) {
+        return new PressureWindow(TimeUnit.MILLISECONDS.toNanos(maxWaitMillis), 0,
+                TimeUnit.MILLISECONDS.toNanos(meanWriteMillis), 10, 0);
+    }
+}
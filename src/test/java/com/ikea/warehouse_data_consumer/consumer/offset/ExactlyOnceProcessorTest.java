@@ -0,0 +1,177 @@
+package com.ikea.warehouse_data_consumer.consumer.offset;
+
+import com.ikea.warehouse_data_consumer.config.kafka.ExactlyOnceProperties;
+import com.ikea.warehouse_data_consumer.config.kafka.PipelineProperties;
+import com.ikea.warehouse_data_consumer.consumer.pipeline.BatchPipeline;
+import com.mongodb.MongoException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExactlyOnceProcessorTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("inventory", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("inventory", 1);
+
+    @Mock
+    private MongoOffsetStore offsetStore;
+
+    @Mock
+    private MongoTransactionManager transactionManager;
+
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    private final BatchPipeline pipeline =
+            new BatchPipeline("test", new PipelineProperties(false, 2, Duration.ofSeconds(5))) {};
+
+    private SimpleMeterRegistry meterRegistry;
+    private ExactlyOnceProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        processor = processor(true, false);
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.destroy();
+    }
+
+    @Test
+    void execute_shouldStoreTheNextOffsetPerPartitionInTheWriteTransaction() {
+        List<ConsumerRecord<String, Object>> records = List.of(record(0, 7), record(1, 3), record(0, 8));
+
+        processor.execute(records, () -> verifyNoInteractions(offsetStore));
+
+        verify(offsetStore).store(Map.of(PARTITION_0, 9L, PARTITION_1, 4L));
+        verify(transactionManager).commit(any());
+        assertTrue(processor.isProcessed(record(0, 8)));
+        assertFalse(processor.isProcessed(record(0, 9)));
+    }
+
+    @Test
+    void execute_shouldNotAdvanceWhenTheTransactionFails() {
+        IllegalStateException failure = new IllegalStateException("write failed");
+
+        assertThrows(IllegalStateException.class, () -> processor.execute(List.of(record(0, 7)), () -> {
+            throw failure;
+        }));
+
+        verify(transactionManager).rollback(any());
+        verifyNoInteractions(offsetStore);
+        assertFalse(processor.isProcessed(record(0, 7)));
+    }
+
+    @Test
+    void execute_shouldRerunTheBatchOnATransientError() {
+        MongoException writeConflict = new MongoException(112, "WriteConflict");
+        writeConflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+        doThrow(writeConflict).doNothing().when(offsetStore).store(any());
+        Runnable write = mock(Runnable.class);
+
+        processor.execute(List.of(record(0, 7)), write);
+
+        verify(write, times(2)).run();
+        assertTrue(processor.isProcessed(record(0, 7)));
+    }
+
+    @Test
+    void onPartitionsAssigned_shouldSeekToStoredOffsetsAheadOfTheCommittedOnes() {
+        when(offsetStore.read(List.of(PARTITION_0, PARTITION_1))).thenReturn(Map.of(PARTITION_0, 10L, PARTITION_1, 4L));
+        when(consumer.committed(Set.of(PARTITION_0, PARTITION_1))).thenReturn(Map.of(
+                PARTITION_0, new OffsetAndMetadata(8L),
+                PARTITION_1, new OffsetAndMetadata(6L)));
+
+        processor.onPartitionsAssigned(consumer, List.of(PARTITION_0, PARTITION_1));
+
+        verify(consumer).seek(PARTITION_0, 10L);
+        verify(consumer, never()).seek(eq(PARTITION_1), anyLong());
+        assertTrue(processor.isProcessed(record(0, 9)));
+        assertTrue(processor.isProcessed(record(1, 5)));
+        assertFalse(processor.isProcessed(record(1, 6)));
+    }
+
+    @Test
+    void onPartitionsAssigned_shouldResumeFromCommittedOffsetsWhenTheStoreIsUnavailable() {
+        when(offsetStore.read(any())).thenThrow(new MongoException("unavailable"));
+
+        processor.onPartitionsAssigned(consumer, List.of(PARTITION_0));
+
+        verifyNoInteractions(consumer);
+    }
+
+    @Test
+    void onPartitionsRevokedAfterCommit_shouldForgetThePartitionPositions() {
+        processor.execute(List.of(record(0, 7)), () -> { });
+
+        processor.onPartitionsRevokedAfterCommit(consumer, List.of(PARTITION_0));
+
+        assertFalse(processor.isProcessed(record(0, 7)));
+    }
+
+    @Test
+    void markHandedOff_shouldOnlyLogWhenTheOffsetsCannotBeStored() {
+        doThrow(new MongoException("unavailable")).when(offsetStore).store(any());
+
+        assertDoesNotThrow(() -> processor.markHandedOff(List.of(record(0, 7))));
+        assertFalse(processor.isProcessed(record(0, 7)));
+    }
+
+    @Test
+    void markSentToErrorTopic_shouldSkipTheSentRecordsWhileThePartitionIsAssigned() {
+        processor.markSentToErrorTopic(List.of(record(0, 8)));
+
+        assertFalse(processor.isProcessed(record(0, 7)));
+        assertTrue(processor.isProcessed(record(0, 8)));
+
+        processor.onPartitionsRevokedAfterCommit(consumer, List.of(PARTITION_0));
+        assertFalse(processor.isProcessed(record(0, 8)));
+    }
+
+    @Test
+    void isProcessed_shouldBeFalseWhenDisabled() {
+        processor = processor(false, false);
+
+        processor.onPartitionsAssigned(consumer, List.of(PARTITION_0));
+
+        assertFalse(processor.isProcessed(record(0, 0)));
+        verifyNoInteractions(offsetStore);
+    }
+
+    @Test
+    void constructor_shouldRejectTheKeyOrderedLanes() {
+        assertThrows(IllegalStateException.class, () -> processor(true, true));
+    }
+
+    private ExactlyOnceProcessor processor(boolean enabled, boolean keyOrdered) {
+        return new ExactlyOnceProcessor("test", "article", new ExactlyOnceProperties(enabled, 3), keyOrdered,
+                offsetStore, transactionManager, pipeline, meterRegistry) {};
+    }
+
+    private static ConsumerRecord<String, Object> record(int partition, long offset) {
+        return new ConsumerRecord<>("inventory", partition, offset, "key", "value");
+    }
+}
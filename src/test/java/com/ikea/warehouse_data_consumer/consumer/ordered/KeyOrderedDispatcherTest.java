@@ -0,0 +1,173 @@
+package com.ikea.warehouse_data_consumer.consumer.ordered;
+
+import com.ikea.warehouse_data_consumer.config.kafka.KeyOrderedProperties;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class KeyOrderedDispatcherTest {
+
+    private static final String TOPIC = "topic";
+    private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition OTHER_PARTITION = new TopicPartition(TOPIC, 1);
+
+    // "slow" and "fast" hash to different lanes of four, "a" and "slow" to the same one
+
+    private final KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test",
+            new KeyOrderedProperties(true, 4, 100, Duration.ofSeconds(5))) {
+        @Override
+        protected String keyOf(ConsumerRecord<String, ?> record) {
+            return record.key();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private final Consumer<String, Object> consumer = mock(Consumer.class);
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.destroy();
+    }
+
+    @Test
+    void dispatch_shouldKeepTheOffsetOrderOfEveryKeyAcrossBatches() {
+        List<String> processed = new CopyOnWriteArrayList<>();
+        dispatcher.dispatch(consumer, List.of(record(0, "a"), record(1, "b"), record(2, "a")), mock(Acknowledgment.class),
+                (records, ack) -> { records.forEach(r -> processed.add(r.key() + r.offset())); ack.acknowledge(); });
+        dispatcher.dispatch(consumer, List.of(record(3, "b"), record(4, "a")), mock(Acknowledgment.class),
+                (records, ack) -> { records.forEach(r -> processed.add(r.key() + r.offset())); ack.acknowledge(); });
+        dispatcher.drain();
+
+        assertEquals(List.of("a0", "a2", "a4"), processed.stream().filter(p -> p.startsWith("a")).toList());
+        assertEquals(List.of("b1", "b3"), processed.stream().filter(p -> p.startsWith("b")).toList());
+    }
+
+    @Test
+    void dispatch_shouldAcknowledgeBatchesInDispatchOrder() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Acknowledgment first = mock(Acknowledgment.class);
+        Acknowledgment second = mock(Acknowledgment.class);
+        dispatcher.dispatch(consumer, List.of(record(0, "slow")), first, (records, ack) -> {
+            await(release);
+            ack.acknowledge();
+        });
+        dispatcher.dispatch(consumer, List.of(record(1, "fast")), second, (records, ack) -> ack.acknowledge());
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        // the second batch is done, but committing it would pass the unfinished first one
+        verify(second, never()).acknowledge();
+        release.countDown();
+        dispatcher.drain();
+
+        InOrder order = inOrder(first, second);
+        order.verify(first).acknowledge();
+        order.verify(second).acknowledge();
+    }
+
+    @Test
+    void rewindIfFailed_shouldCommitTheContiguousCompletedPrefix() {
+        Acknowledgment batchAck = mock(Acknowledgment.class);
+        // offsets 10 and 11 complete, 12 cannot be handed off, 13 completes on another lane
+        dispatcher.dispatch(consumer, List.of(record(10, "slow"), record(11, "slow"), record(12, "slow"), record(13, "fast")),
+                batchAck, (records, ack) -> {
+                    if (records.get(0).key().equals("slow")) {
+                        ack.nack(2, Duration.ZERO);
+                    } else {
+                        ack.acknowledge();
+                    }
+                });
+        dispatcher.drain();
+
+        when(consumer.assignment()).thenReturn(Set.of(PARTITION));
+        when(consumer.committed(Set.of(PARTITION))).thenReturn(Map.of(PARTITION, new OffsetAndMetadata(12)));
+
+        assertTrue(dispatcher.rewindIfFailed(consumer));
+        verify(batchAck, never()).acknowledge();
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(12)));
+        verify(consumer).seek(PARTITION, 12);
+        assertFalse(dispatcher.rewindIfFailed(consumer));
+    }
+
+    @Test
+    void dispatch_shouldSkipLaneWorkQueuedAfterAFailure() {
+        List<Long> processed = new CopyOnWriteArrayList<>();
+        dispatcher.dispatch(consumer, List.of(record(0, "a")), mock(Acknowledgment.class), (records, ack) -> {
+            throw new IllegalStateException("hand-off failed");
+        });
+        dispatcher.dispatch(consumer, List.of(record(1, "a")), mock(Acknowledgment.class),
+                (records, ack) -> records.forEach(r -> processed.add(r.offset())));
+        dispatcher.drain();
+
+        assertTrue(processed.isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rewindIfFailed_shouldOnlySkipAndRewindTheBatchesOfTheConsumerWhoseRecordFailed() {
+        Consumer<String, Object> other = mock(Consumer.class);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> processed = new CopyOnWriteArrayList<>();
+        Acknowledgment otherAck = mock(Acknowledgment.class);
+        // both consumers share the lane of "slow"; the failure of the first must not skip the record of the second
+        dispatcher.dispatch(consumer, List.of(record(5, "slow")), mock(Acknowledgment.class), (records, ack) -> {
+            await(release);
+            ack.nack(0, Duration.ZERO);
+        });
+        dispatcher.dispatch(other, List.of(record(OTHER_PARTITION, 7, "slow")), otherAck, (records, ack) -> {
+            records.forEach(r -> processed.add(r.offset()));
+            ack.acknowledge();
+        });
+        release.countDown();
+        dispatcher.drain();
+
+        assertEquals(List.of(7L), processed);
+        verify(otherAck).acknowledge();
+        assertFalse(dispatcher.rewindIfFailed(other));
+        verifyNoInteractions(other);
+
+        when(consumer.assignment()).thenReturn(Set.of(PARTITION));
+        when(consumer.committed(Set.of(PARTITION))).thenReturn(Map.of(PARTITION, new OffsetAndMetadata(5)));
+        assertTrue(dispatcher.rewindIfFailed(consumer));
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(5)));
+        verify(consumer).seek(PARTITION, 5);
+    }
+
+    private static ConsumerRecord<String, Object> record(long offset, String key) {
+        return record(PARTITION, offset, key);
+    }
+
+    private static ConsumerRecord<String, Object> record(TopicPartition topicPartition, long offset, String key) {
+        return new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, key, key);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
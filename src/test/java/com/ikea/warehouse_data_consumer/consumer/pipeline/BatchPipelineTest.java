@@ -0,0 +1,114 @@
+package com.ikea.warehouse_data_consumer.consumer.pipeline;
+
+import com.ikea.warehouse_data_consumer.config.kafka.PipelineProperties;
+import com.ikea.warehouse_data_consumer.data.exception.MongoSaturatedException;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class BatchPipelineTest {
+
+    private final BatchPipeline pipeline =
+            new BatchPipeline("test", new PipelineProperties(true, 2, Duration.ofSeconds(5))) {};
+
+    @SuppressWarnings("unchecked")
+    private final Consumer<String, Object> consumer = mock(Consumer.class);
+
+    @AfterEach
+    void tearDown() {
+        pipeline.destroy();
+    }
+
+    @Test
+    void submit_shouldProcessBatchesInSubmissionOrder() {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int batch = i;
+            pipeline.submit(consumer, () -> processed.add(batch), t -> {});
+        }
+        pipeline.drain();
+
+        assertEquals(List.of(0, 1, 2, 3, 4), processed);
+    }
+
+    @Test
+    void submit_shouldRecoverFailedBatch() {
+        List<Throwable> recovered = new CopyOnWriteArrayList<>();
+        pipeline.submit(consumer, () -> { throw new IllegalStateException("boom"); }, recovered::add);
+        pipeline.drain();
+
+        assertEquals(1, recovered.size());
+        assertFalse(pipeline.rewindIfFailed(consumer));
+    }
+
+    @Test
+    void submit_shouldSkipLaterBatchesAndRewindWhenRecoveryFails() {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        pipeline.submit(consumer, () -> { throw new IllegalStateException("boom"); },
+                t -> { throw new IllegalStateException("recovery failed"); });
+        pipeline.submit(consumer, () -> processed.add(1), t -> {});
+        pipeline.drain();
+
+        TopicPartition partition = new TopicPartition("topic", 0);
+        when(consumer.assignment()).thenReturn(Set.of(partition));
+        when(consumer.committed(Set.of(partition))).thenReturn(Map.of(partition, new OffsetAndMetadata(42)));
+
+        assertTrue(processed.isEmpty());
+        assertTrue(pipeline.rewindIfFailed(consumer));
+        verify(consumer).seek(partition, 42);
+        assertFalse(pipeline.rewindIfFailed(consumer));
+    }
+
+    @Test
+    void submit_shouldRewindInsteadOfRecoveringWhenMongoIsSaturated() {
+        List<Throwable> recovered = new CopyOnWriteArrayList<>();
+        pipeline.submit(consumer, () -> {
+            throw new MongoSaturatedException("saturated", new com.mongodb.MongoTimeoutException("timed out"));
+        }, recovered::add);
+        pipeline.drain();
+
+        when(consumer.assignment()).thenReturn(Set.of());
+        when(consumer.committed(Set.of())).thenReturn(Map.of());
+
+        assertTrue(recovered.isEmpty());
+        assertTrue(pipeline.rewindIfFailed(consumer));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submit_shouldOnlySkipAndRewindTheBatchesOfTheConsumerWhoseBatchFailed() {
+        Consumer<String, Object> other = mock(Consumer.class);
+        List<String> processed = new CopyOnWriteArrayList<>();
+        pipeline.submit(consumer, () -> { throw new IllegalStateException("boom"); },
+                t -> { throw new IllegalStateException("recovery failed"); });
+        pipeline.submit(consumer, () -> processed.add("consumer"), t -> {});
+        pipeline.submit(other, () -> processed.add("other"), t -> {});
+        pipeline.drain();
+
+        TopicPartition partition = new TopicPartition("topic", 0);
+        when(consumer.assignment()).thenReturn(Set.of(partition));
+        when(consumer.committed(Set.of(partition))).thenReturn(Map.of(partition, new OffsetAndMetadata(42)));
+
+        assertEquals(List.of("other"), processed);
+        assertFalse(pipeline.rewindIfFailed(other));
+        verifyNoInteractions(other);
+        assertTrue(pipeline.rewindIfFailed(consumer));
+        verify(consumer).seek(partition, 42);
+    }
+}
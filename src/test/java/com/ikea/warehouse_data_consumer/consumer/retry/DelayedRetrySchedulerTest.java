@@ -0,0 +1,161 @@
+package com.ikea.warehouse_data_consumer.consumer.retry;
+
+import com.ikea.warehouse_data_consumer.data.dto.RecordSendResult;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import com.ikea.warehouse_data_consumer.data.event.MalformedRecord;
+import com.ikea.warehouse_data_consumer.util.RetryHeaderUtil;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DelayedRetrySchedulerTest {
+
+    private static final String LISTENER_ID = "retryListener";
+    private static final TopicPartition DUE_PARTITION = new TopicPartition("retry-1s", 0);
+    private static final TopicPartition WAITING_PARTITION = new TopicPartition("retry-60s", 0);
+
+    @Mock
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Mock
+    private MessageListenerContainer container;
+
+    @Mock
+    private Consumer<String, String> consumer;
+
+    private DelayedRetryScheduler delayedRetryScheduler;
+
+    @BeforeEach
+    void setUp() {
+        delayedRetryScheduler = new DelayedRetryScheduler(kafkaListenerEndpointRegistry, Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        delayedRetryScheduler.destroy();
+    }
+
+    @Test
+    void dispatch_shouldWriteDueRecordsAndPauseOnlyThePartitionThatIsNotDue() {
+        when(kafkaListenerEndpointRegistry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+        Instant past = Instant.now().minusSeconds(1);
+        Instant future = Instant.now().plusSeconds(60);
+        List<ConsumerRecord<String, String>> records = List.of(
+                record(DUE_PARTITION, 10, "a", past),
+                record(WAITING_PARTITION, 20, "b", past),
+                record(DUE_PARTITION, 11, "c", past),
+                record(WAITING_PARTITION, 21, "d", future),
+                record(WAITING_PARTITION, 22, "e", past));
+        List<String> written = new ArrayList<>();
+
+        delayedRetryScheduler.dispatch(LISTENER_ID, records, consumer, dueRecords -> {
+            dueRecords.forEach(record -> written.add(record.value()));
+            return List.of();
+        });
+
+        assertEquals(List.of("a", "c", "b"), written);
+        verify(consumer).commitSync(Map.of(
+                DUE_PARTITION, new OffsetAndMetadata(12),
+                WAITING_PARTITION, new OffsetAndMetadata(21)));
+        verify(consumer).seek(WAITING_PARTITION, 21);
+        verify(container).pausePartition(WAITING_PARTITION);
+        verify(container, never()).pausePartition(DUE_PARTITION);
+    }
+
+    @Test
+    void dispatch_shouldNotCommitPastARecordThatWasNotHandedOff() {
+        when(kafkaListenerEndpointRegistry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+        Instant past = Instant.now().minusSeconds(1);
+        ConsumerRecord<String, String> first = record(DUE_PARTITION, 10, "a", past);
+        ConsumerRecord<String, String> second = record(DUE_PARTITION, 11, "b", past);
+
+        delayedRetryScheduler.dispatch(LISTENER_ID, List.of(first, second), consumer, dueRecords -> List.of(
+                new SendBatchResult("retry-10s", List.of(RecordSendResult.failed(
+                        new KafkaKeyValueRecord("b", second.value()), new IllegalStateException("broker down"))))));
+
+        verify(consumer).commitSync(Map.of(DUE_PARTITION, new OffsetAndMetadata(11)));
+        verify(consumer).seek(DUE_PARTITION, 11);
+        verify(container).pausePartition(DUE_PARTITION);
+    }
+
+    @Test
+    void dispatch_shouldOnlyRewindThePartitionOfARecordThatWasNotHandedOff() {
+        when(kafkaListenerEndpointRegistry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+        Instant past = Instant.now().minusSeconds(1);
+        ConsumerRecord<String, String> failed = record(DUE_PARTITION, 10, "a", past);
+        ConsumerRecord<String, String> other = record(WAITING_PARTITION, 20, "b", past);
+
+        delayedRetryScheduler.dispatch(LISTENER_ID, List.of(failed, other), consumer, dueRecords -> List.of(
+                new SendBatchResult("retry-10s", List.of(RecordSendResult.failed(
+                        new KafkaKeyValueRecord("a", failed.value()), new IllegalStateException("broker down"))))));
+
+        verify(consumer).commitSync(Map.of(WAITING_PARTITION, new OffsetAndMetadata(21)));
+        verify(consumer).seek(DUE_PARTITION, 10);
+        verify(consumer, never()).seek(WAITING_PARTITION, 20);
+    }
+
+    @Test
+    void dispatch_shouldNotCommitPastAMalformedRecordThatWasNotSentToTheErrorTopic() {
+        when(kafkaListenerEndpointRegistry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+        Instant past = Instant.now().minusSeconds(1);
+        ConsumerRecord<String, String> first = record(DUE_PARTITION, 10, "a", past);
+        ConsumerRecord<String, String> malformed = record(DUE_PARTITION, 11, null, past);
+        ConsumerRecord<String, String> third = record(DUE_PARTITION, 12, "c", past);
+
+        delayedRetryScheduler.dispatch(LISTENER_ID, List.of(first, malformed, third), consumer, dueRecords -> List.of(
+                new SendBatchResult("error", List.of(RecordSendResult.failed(
+                        new KafkaKeyValueRecord(null, MalformedRecord.from(malformed)),
+                        new IllegalStateException("broker down"))))));
+
+        verify(consumer).commitSync(Map.of(DUE_PARTITION, new OffsetAndMetadata(11)));
+        verify(consumer).seek(DUE_PARTITION, 11);
+        verify(container).pausePartition(DUE_PARTITION);
+    }
+
+    @Test
+    void dispatch_shouldNotWriteOrCommitWhenNothingIsDue() {
+        when(kafkaListenerEndpointRegistry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+        List<ConsumerRecord<String, String>> records = List.of(
+                record(WAITING_PARTITION, 5, "a", Instant.now().plusSeconds(10)));
+
+        delayedRetryScheduler.dispatch(LISTENER_ID, records, consumer, dueRecords -> {
+            throw new AssertionError("nothing is due");
+        });
+
+        verify(consumer, never()).commitSync(any(Map.class));
+        verify(consumer).seek(WAITING_PARTITION, 5);
+    }
+
+    private static ConsumerRecord<String, String> record(TopicPartition topicPartition, long offset, String value,
+                                                         Instant notBefore) {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(),
+                offset, value, value);
+        Headers headers = RetryHeaderUtil.retryHeaders(2, notBefore);
+        headers.forEach(header -> record.headers().add(header));
+        return record;
+    }
+}
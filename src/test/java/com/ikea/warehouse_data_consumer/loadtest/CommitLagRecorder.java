@@ -0,0 +1,99 @@
+package com.ikea.warehouse_data_consumer.loadtest;
+
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import com.ikea.warehouse_data_consumer.data.exception.ArticleDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.data.exception.ProductDocumentMongoWriteException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the lag from an event's fileCreatedAt to the return of the service's bulk write, i.e. the moment Mongo
+ * acknowledged it. Events the service reports as failed or not matched are left out; they are recorded again when a
+ * retry tier gets them written.
+ *
+ * Also times every batch write call end to end, with the version pre-read of VERSIONED and all its round trips, so
+ * that runs with -Dloadtest.write-mode=VERSIONED and CONDITIONAL against the same Mongo can be compared per batch.
+ */
+@Aspect
+class CommitLagRecorder {
+
+    private final Timer commitLag = Timer.builder("loadtest.commit.lag")
+            .publishPercentiles(0.5, 0.99)
+            .percentilePrecision(2)
+            // One bucket that never rotates, so the percentiles cover the whole run.
+            .distributionStatisticExpiry(Duration.ofDays(1))
+            .distributionStatisticBufferLength(1)
+            .register(new SimpleMeterRegistry());
+
+    private final Timer batchWrite = Timer.builder("loadtest.batch.write")
+            .publishPercentiles(0.5, 0.99)
+            .percentilePrecision(2)
+            .distributionStatisticExpiry(Duration.ofDays(1))
+            .distributionStatisticBufferLength(1)
+            .register(new SimpleMeterRegistry());
+
+    @Around("execution(* com.ikea.warehouse_data_consumer.service.InventoryService.proceedInventoryUpdateBatchEvent(..))"
+            + " || execution(* com.ikea.warehouse_data_consumer.service.ProductService.proceedProductUpdateBatchEvent(..))")
+    public Object recordCommitLag(ProceedingJoinPoint joinPoint) throws Throwable {
+        List<?> events = (List<?>) joinPoint.getArgs()[0];
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            record(events, Set.of());
+            return result;
+        } catch (ArticleDocumentMongoWriteException e) {
+            record(events, rejected(e.getFailedEvents(), e.getCriteriaNotMatchedEvents()));
+            throw e;
+        } catch (ProductDocumentMongoWriteException e) {
+            record(events, rejected(e.getFailedEvents(), e.getCriteriaNotMatchedEvents()));
+            throw e;
+        } finally {
+            batchWrite.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    HistogramSnapshot snapshot() {
+        return commitLag.takeSnapshot();
+    }
+
+    HistogramSnapshot batchWriteSnapshot() {
+        return batchWrite.takeSnapshot();
+    }
+
+    private void record(List<?> events, Set<Object> rejected) {
+        Instant now = Instant.now();
+        for (Object event : events) {
+            if (rejected.contains(event)) {
+                continue;
+            }
+            Instant fileCreatedAt = switch (event) {
+                case InventoryUpdateEvent inventoryUpdateEvent -> inventoryUpdateEvent.fileCreatedAt();
+                case ProductUpdateEvent productUpdateEvent -> productUpdateEvent.fileCreatedAt();
+                default -> null;
+            };
+            if (fileCreatedAt != null) {
+                commitLag.record(Duration.between(fileCreatedAt, now));
+            }
+        }
+    }
+
+    private static Set<Object> rejected(List<?> failedEvents, List<?> criteriaNotMatchedEvents) {
+        Set<Object> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(failedEvents);
+        rejected.addAll(criteriaNotMatchedEvents);
+        return rejected;
+    }
+}
@@ -0,0 +1,306 @@
+package com.ikea.warehouse_data_consumer.loadtest;
+
+import com.ikea.warehouse_data_consumer.config.kafka.RetryProperties;
+import com.ikea.warehouse_data_consumer.data.document.ArticleDocument;
+import com.ikea.warehouse_data_consumer.data.document.ProductDocument;
+import com.ikea.warehouse_data_consumer.loadtest.SyntheticEventGenerator.Payload;
+import com.mongodb.client.MongoCollection;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult.ListOffsetsResultInfo;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Drives the inventory and product consumers with synthetic events on an embedded broker and reports throughput,
+ * commit lag percentiles and retry/error topic rates. Excluded from the regular build; run it with
+ *
+ *   mvn -Ploadtest test -Dloadtest.events=2000000 -Dloadtest.key-skew=1.1 -Dloadtest.duplicate-ratio=0.1
+ *
+ * See {@link LoadProfile} for every knob. Without -Dloadtest.mongo.uri the services write to an in-memory stand-in of
+ * the two collections, so the run needs neither network nor a Mongo installation. The batch write latency it reports
+ * only means something against a real Mongo; run it once per -Dloadtest.write-mode to compare VERSIONED with
+ * CONDITIONAL.
+ */
+@Slf4j
+@Tag("load")
+@SpringBootTest(properties = "management.health.mongo.enabled=false")
+class ConsumerLoadTest {
+
+    private static final LoadProfile PROFILE = LoadProfile.fromSystemProperties();
+    private static final String GROUP_ID = "loadtest-" + UUID.randomUUID();
+
+    private static final String INVENTORY_TOPIC = "loadtest.inventory.update.topic";
+    private static final String INVENTORY_RETRY_TOPIC = INVENTORY_TOPIC + ".retry";
+    private static final String INVENTORY_ERROR_TOPIC = INVENTORY_TOPIC + ".error";
+    private static final String PRODUCT_TOPIC = "loadtest.product.update.topic";
+    private static final String PRODUCT_RETRY_TOPIC = PRODUCT_TOPIC + ".retry";
+    private static final String PRODUCT_ERROR_TOPIC = PRODUCT_TOPIC + ".error";
+
+    // Short tiers keep the drain time dominated by the consumers rather than by retry delays.
+    private static final int RETRY_MAX_ATTEMPTS = 3;
+    private static final String RETRY_TIERS = "200ms,1s";
+    private static final RetryProperties RETRY_PROPERTIES = new RetryProperties(RETRY_MAX_ATTEMPTS,
+            List.of(Duration.ofMillis(200), Duration.ofSeconds(1)));
+
+    private static final Duration DRAIN_POLL_INTERVAL = Duration.ofMillis(500);
+
+    private static EmbeddedKafkaBroker embeddedKafka;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private CommitLagRecorder commitLagRecorder;
+
+    @DynamicPropertySource
+    static void loadTestProperties(DynamicPropertyRegistry registry) {
+        if (embeddedKafka == null) {
+            embeddedKafka = new EmbeddedKafkaBroker(1, false, PROFILE.partitions(), allTopics());
+            embeddedKafka.afterPropertiesSet();
+        }
+        registry.add("spring.kafka.bootstrap-servers", embeddedKafka::getBrokersAsString);
+        registry.add("spring.kafka.consumer.group-id", () -> GROUP_ID);
+        registry.add("spring.kafka.consumer.concurrency", PROFILE::concurrency);
+        registry.add("app.kafka.consumer.execution.mode", PROFILE::executionMode);
+        registry.add("app.kafka.consumer.inventory.topic", () -> INVENTORY_TOPIC);
+        registry.add("app.kafka.consumer.inventory.retryTopic", () -> INVENTORY_RETRY_TOPIC);
+        registry.add("app.kafka.consumer.inventory.errorTopic", () -> INVENTORY_ERROR_TOPIC);
+        registry.add("app.kafka.consumer.product.topic", () -> PRODUCT_TOPIC);
+        registry.add("app.kafka.consumer.product.retryTopic", () -> PRODUCT_RETRY_TOPIC);
+        registry.add("app.kafka.consumer.product.errorTopic", () -> PRODUCT_ERROR_TOPIC);
+        registry.add("app.kafka.consumer.retry.max-attempts", () -> RETRY_MAX_ATTEMPTS);
+        registry.add("app.kafka.consumer.retry.tiers", () -> RETRY_TIERS);
+        registry.add("app.mongo.write.mode", PROFILE::writeMode);
+        // The stand-in only serves the articles and products write path.
+        registry.add("app.mongo.availability.enabled", () -> !PROFILE.usesStandIn());
+        registry.add("spring.data.mongodb.uri", () -> PROFILE.usesStandIn() ? "mongodb://localhost:27017" : PROFILE.mongoUri());
+        registry.add("spring.data.mongodb.database", () -> "warehouse_loadtest");
+    }
+
+    @AfterAll
+    static void stopBroker() {
+        if (embeddedKafka != null) {
+            embeddedKafka.destroy();
+        }
+    }
+
+    @Test
+    void consumers_shouldDrainSyntheticLoad() throws Exception {
+        mongoTemplate.dropCollection(ArticleDocument.class);
+        mongoTemplate.dropCollection(ProductDocument.class);
+
+        long start = System.nanoTime();
+        produce();
+        Duration produceTime = Duration.ofNanos(System.nanoTime() - start);
+
+        try (Admin admin = Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafka.getBrokersAsString()))) {
+            Duration timeout = Duration.ofMinutes(PROFILE.timeoutMinutes());
+            boolean drained = awaitDrained(admin, timeout);
+            Duration drainTime = Duration.ofNanos(System.nanoTime() - start);
+
+            report(admin, produceTime, drainTime);
+            assertTrue(drained, "Consumers did not drain the load test topics within " + timeout);
+        }
+    }
+
+    private void produce() throws InterruptedException {
+        SyntheticEventGenerator inventoryEvents = SyntheticEventGenerator.inventory(PROFILE, 1L);
+        SyntheticEventGenerator productEvents = SyntheticEventGenerator.product(PROFILE, 2L);
+
+        Map<String, Object> producerProps = Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafka.getBrokersAsString(),
+                ProducerConfig.ACKS_CONFIG, "all",
+                ProducerConfig.LINGER_MS_CONFIG, 5,
+                ProducerConfig.BATCH_SIZE_CONFIG, 65_536);
+        long start = System.nanoTime();
+        try (Producer<String, byte[]> producer = new KafkaProducer<>(producerProps, new StringSerializer(), new ByteArraySerializer())) {
+            for (int i = 0; i < PROFILE.events(); i++) {
+                Payload inventory = inventoryEvents.next();
+                producer.send(new ProducerRecord<>(INVENTORY_TOPIC, inventory.key(), inventory.value()));
+                Payload product = productEvents.next();
+                producer.send(new ProducerRecord<>(PRODUCT_TOPIC, product.key(), product.value()));
+
+                if (PROFILE.rate() > 0 && i % 100 == 0) {
+                    long aheadNanos = start + TimeUnit.SECONDS.toNanos(i) / PROFILE.rate() - System.nanoTime();
+                    if (aheadNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                    }
+                }
+            }
+            producer.flush();
+        }
+    }
+
+    /**
+     * Waits until the group has committed every record of the consumed topics, twice in a row so that a retry
+     * hand-off racing with the check is not missed.
+     */
+    private boolean awaitDrained(Admin admin, Duration timeout) throws Exception {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int drainedChecks = 0;
+        while (System.nanoTime() < deadline) {
+            drainedChecks = isDrained(admin) ? drainedChecks + 1 : 0;
+            if (drainedChecks == 2) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_INTERVAL.toMillis());
+        }
+        return false;
+    }
+
+    private boolean isDrained(Admin admin) throws Exception {
+        Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(GROUP_ID)
+                .partitionsToOffsetAndMetadata().get();
+        for (Map.Entry<TopicPartition, Long> end : endOffsets(admin, consumedTopics()).entrySet()) {
+            OffsetAndMetadata offset = committed.get(end.getKey());
+            long committedOffset = offset == null ? 0L : offset.offset();
+            if (committedOffset < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void report(Admin admin, Duration produceTime, Duration drainTime) throws Exception {
+        long events = 2L * PROFILE.events();
+        double drainSeconds = drainTime.toMillis() / 1_000d;
+        long retryRecords = sum(endOffsets(admin, retryTopics()));
+        long errorRecords = sum(endOffsets(admin, new String[]{INVENTORY_ERROR_TOPIC, PRODUCT_ERROR_TOPIC}));
+        HistogramSnapshot lag = commitLagRecorder.snapshot();
+        HistogramSnapshot batchWrite = commitLagRecorder.batchWriteSnapshot();
+
+        log.info("""
+
+                        Load test: events={} (inventory + product), keys={}, keySkew={}, duplicateRatio={}, rate={}/s,
+                          partitions={}, concurrency={}, executionMode={}, writeMode={}, mongo={}
+                          throughput: {} events/s (produced in {} s, drained in {} s)
+                          commit lag: p50={} ms, p99={} ms, max={} ms over {} written events
+                          batch write ({}): p50={} ms, p99={} ms, max={} ms, mean={} ms over {} batches
+                          retry topics: {} records ({} /s, {}% of events)
+                          error topics: {} records ({} /s, {}% of events)""",
+                events, PROFILE.keys(), PROFILE.keySkew(), PROFILE.duplicateRatio(), PROFILE.rate(),
+                PROFILE.partitions(), PROFILE.concurrency(), PROFILE.executionMode(), PROFILE.writeMode(),
+                PROFILE.usesStandIn() ? "in-memory stand-in" : PROFILE.mongoUri(),
+                format(events / drainSeconds), format(produceTime.toMillis() / 1_000d), format(drainSeconds),
+                format(percentile(lag, 0.5)), format(percentile(lag, 0.99)), format(lag.max(TimeUnit.MILLISECONDS)),
+                lag.count(),
+                PROFILE.writeMode(), format(percentile(batchWrite, 0.5)), format(percentile(batchWrite, 0.99)),
+                format(batchWrite.max(TimeUnit.MILLISECONDS)), format(batchWrite.mean(TimeUnit.MILLISECONDS)),
+                batchWrite.count(),
+                retryRecords, format(retryRecords / drainSeconds), format(100d * retryRecords / events),
+                errorRecords, format(errorRecords / drainSeconds), format(100d * errorRecords / events));
+    }
+
+    private static Map<TopicPartition, Long> endOffsets(Admin admin, String[] topics) throws Exception {
+        Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+        for (String topic : topics) {
+            for (int partition = 0; partition < PROFILE.partitions(); partition++) {
+                request.put(new TopicPartition(topic, partition), OffsetSpec.latest());
+            }
+        }
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        for (Map.Entry<TopicPartition, ListOffsetsResultInfo> entry : admin.listOffsets(request).all().get().entrySet()) {
+            endOffsets.put(entry.getKey(), entry.getValue().offset());
+        }
+        return endOffsets;
+    }
+
+    private static long sum(Map<TopicPartition, Long> offsets) {
+        return offsets.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static double percentile(HistogramSnapshot snapshot, double percentile) {
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String[] retryTopics() {
+        return Stream.concat(Arrays.stream(RETRY_PROPERTIES.topics(INVENTORY_RETRY_TOPIC)),
+                Arrays.stream(RETRY_PROPERTIES.topics(PRODUCT_RETRY_TOPIC))).toArray(String[]::new);
+    }
+
+    private static String[] consumedTopics() {
+        return Stream.concat(Stream.of(INVENTORY_TOPIC, PRODUCT_TOPIC), Arrays.stream(retryTopics())).toArray(String[]::new);
+    }
+
+    private static String[] allTopics() {
+        return Stream.concat(Arrays.stream(consumedTopics()), Stream.of(INVENTORY_ERROR_TOPIC, PRODUCT_ERROR_TOPIC))
+                .toArray(String[]::new);
+    }
+
+    @TestConfiguration
+    static class LoadTestConfig {
+
+        @Bean
+        CommitLagRecorder commitLagRecorder() {
+            return new CommitLagRecorder();
+        }
+
+        /**
+         * Replaces the Mongo-backed template unless -Dloadtest.mongo.uri points at a local Mongo.
+         */
+        @Bean
+        @Primary
+        @ConditionalOnExpression("'${loadtest.mongo.uri:}'.isBlank()")
+        MongoTemplate standInMongoTemplate() {
+            MongoCollection<Document> articles = new MongoCollectionStandIn("_id", PROFILE.writeErrorRatio()).collection();
+            MongoCollection<Document> products = new MongoCollectionStandIn("name", PROFILE.writeErrorRatio()).collection();
+
+            MongoTemplate mongoTemplate = mock(MongoTemplate.class, withSettings().stubOnly());
+            when(mongoTemplate.getCollectionName(ArticleDocument.class)).thenReturn("articles");
+            when(mongoTemplate.getCollectionName(ProductDocument.class)).thenReturn("products");
+            when(mongoTemplate.getCollection("articles")).thenReturn(articles);
+            when(mongoTemplate.getCollection("products")).thenReturn(products);
+            // Auto-configured beans such as the GridFsTemplate read the converter of the template.
+            when(mongoTemplate.getConverter())
+                    .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+            return mongoTemplate;
+        }
+    }
+}
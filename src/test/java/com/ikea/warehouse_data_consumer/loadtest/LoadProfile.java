@@ -0,0 +1,51 @@
+package com.ikea.warehouse_data_consumer.loadtest;
+
+/**
+ * Shape of one load test run, read from -Dloadtest.* system properties.
+ *
+ * @param events synthetic events produced per entity (inventory and product each)
+ * @param keys distinct artIds / product names
+ * @param keySkew Zipf exponent of the key distribution; 0 is uniform, around 1 is a typical hot-SKU skew
+ * @param duplicateRatio share of events that re-send an earlier event unchanged, as a redelivering producer would
+ * @param rate produced events per second per entity; 0 produces as fast as the broker accepts
+ * @param partitions partitions of every topic
+ * @param concurrency listener containers per listener
+ * @param executionMode app.kafka.consumer.execution.mode under test (PLATFORM or VIRTUAL)
+ * @param writeMode app.mongo.write.mode under test
+ * @param writeErrorRatio share of stand-in write operations failing with a transient write error
+ * @param mongoUri a locally started Mongo to write to; empty uses the in-memory stand-in
+ * @param timeoutMinutes how long the consumers may take to drain every topic
+ */
+record LoadProfile(int events,
+                   int keys,
+                   double keySkew,
+                   double duplicateRatio,
+                   int rate,
+                   int partitions,
+                   int concurrency,
+                   String executionMode,
+                   String writeMode,
+                   double writeErrorRatio,
+                   String mongoUri,
+                   long timeoutMinutes) {
+
+    static LoadProfile fromSystemProperties() {
+        return new LoadProfile(
+                Integer.getInteger("loadtest.events", 1_000_000),
+                Integer.getInteger("loadtest.keys", 10_000),
+                Double.parseDouble(System.getProperty("loadtest.key-skew", "0")),
+                Double.parseDouble(System.getProperty("loadtest.duplicate-ratio", "0.05")),
+                Integer.getInteger("loadtest.rate", 0),
+                Integer.getInteger("loadtest.partitions", 6),
+                Integer.getInteger("loadtest.concurrency", 3),
+                System.getProperty("loadtest.execution-mode", "PLATFORM"),
+                System.getProperty("loadtest.write-mode", "VERSIONED"),
+                Double.parseDouble(System.getProperty("loadtest.write-error-ratio", "0")),
+                System.getProperty("loadtest.mongo.uri", ""),
+                Long.getLong("loadtest.timeout-minutes", 30L));
+    }
+
+    boolean usesStandIn() {
+        return mongoUri.isBlank();
+    }
+}
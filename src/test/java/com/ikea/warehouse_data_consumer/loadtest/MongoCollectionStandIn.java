@@ -0,0 +1,192 @@
+package com.ikea.warehouse_data_consumer.loadtest;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * In-memory stand-in for one Mongo collection, covering the calls of the batch write path: the version pre-read and
+ * the read-back of ambiguous operations (find/projection/forEach) and unordered bulkWrite of the services'
+ * UpdateOneModels.
+ *
+ * Only version and fileCreatedAt are kept per key, and the filters and update pipelines are evaluated the way the
+ * services build them: versioned updates match when the stored fileCreatedAt is older and the version is equal,
+ * conditional pipelines always match and only modify newer events. A versioned upsert whose guard rejects an existing
+ * document fails with a duplicate key error when the key is the _id, as Mongo does; otherwise it is reported as an
+ * upsert of a second document. Timestamps are truncated to milliseconds like BSON dates.
+ */
+final class MongoCollectionStandIn {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int INJECTED_ERROR = 91;
+
+    private final String keyField;
+    private final double writeErrorRatio;
+    private final Map<String, StoredDocument> documents = new ConcurrentHashMap<>();
+
+    MongoCollectionStandIn(String keyField, double writeErrorRatio) {
+        this.keyField = keyField;
+        this.writeErrorRatio = writeErrorRatio;
+    }
+
+    @SuppressWarnings("unchecked")
+    MongoCollection<Document> collection() {
+        // Stub-only mocks do not record invocations, which would otherwise grow with every batch.
+        MongoCollection<Document> collection = mock(MongoCollection.class, withSettings().stubOnly());
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenAnswer(invocation -> bulkWrite(invocation.getArgument(0)));
+        when(collection.find(any(Bson.class))).thenAnswer(invocation -> find(invocation.getArgument(0)));
+        when(collection.withReadPreference(any())).thenReturn(collection);
+        return collection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private FindIterable<Document> find(Bson filter) {
+        List<BsonValue> keys = render(filter).getDocument(keyField).getArray("$in").getValues();
+        FindIterable<Document> findIterable = mock(FindIterable.class, withSettings().stubOnly());
+        when(findIterable.projection(any())).thenReturn(findIterable);
+        doAnswer(invocation -> {
+            Consumer<Document> action = invocation.getArgument(0);
+            for (BsonValue key : keys) {
+                StoredDocument stored = documents.get(key.asString().getValue());
+                if (stored != null) {
+                    action.accept(new Document(keyField, key.asString().getValue())
+                            .append("version", stored.version())
+                            .append("fileCreatedAt", Date.from(stored.fileCreatedAt())));
+                }
+            }
+            return null;
+        }).when(findIterable).forEach(any());
+        return findIterable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BulkWriteResult bulkWrite(List<? extends WriteModel<Document>> operations) {
+        int matched = 0;
+        int modified = 0;
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        List<BulkWriteError> errors = new ArrayList<>();
+
+        for (int i = 0; i < operations.size(); i++) {
+            if (writeErrorRatio > 0 && ThreadLocalRandom.current().nextDouble() < writeErrorRatio) {
+                errors.add(new BulkWriteError(INJECTED_ERROR, "injected write error", new BsonDocument(), i));
+                continue;
+            }
+            UpdateOneModel<Document> operation = (UpdateOneModel<Document>) operations.get(i);
+            Outcome outcome = operation.getUpdatePipeline() != null ? applyPipeline(operation) : applyVersioned(operation);
+            switch (outcome.result()) {
+                case MODIFIED -> {
+                    matched++;
+                    modified++;
+                }
+                case UNMODIFIED -> matched++;
+                case UPSERTED -> upserts.add(new BulkWriteUpsert(i, new BsonString(outcome.key())));
+                case DUPLICATE_KEY -> errors.add(new BulkWriteError(DUPLICATE_KEY, "E11000 duplicate key error",
+                        new BsonDocument(), i));
+            }
+        }
+
+        BulkWriteResult result = BulkWriteResult.acknowledged(0, matched, 0, modified, upserts, List.of());
+        if (!errors.isEmpty()) {
+            throw new MongoBulkWriteException(result, errors, null, new ServerAddress());
+        }
+        return result;
+    }
+
+    private Outcome applyVersioned(UpdateOneModel<Document> operation) {
+        BsonDocument filter = render(operation.getFilter());
+        String key = filter.getString(keyField).getValue();
+        Instant fileCreatedAt = Instant.ofEpochMilli(filter.getDocument("fileCreatedAt").getDateTime("$lt").getValue());
+        Long expectedVersion = filter.containsKey("version") ? filter.getNumber("version").longValue() : null;
+
+        Result[] result = new Result[1];
+        documents.compute(key, (ignored, stored) -> {
+            if (stored == null) {
+                // The upsert copies the version equality from the filter before applying $inc.
+                result[0] = Result.UPSERTED;
+                return new StoredDocument(expectedVersion == null ? 1L : expectedVersion + 1, fileCreatedAt);
+            }
+            if (stored.fileCreatedAt().isBefore(fileCreatedAt)
+                    && (expectedVersion == null || expectedVersion == stored.version())) {
+                result[0] = Result.MODIFIED;
+                return new StoredDocument(stored.version() + 1, fileCreatedAt);
+            }
+            // Mongo inserts a second document for the key; only a unique _id turns that into an error.
+            result[0] = "_id".equals(keyField) ? Result.DUPLICATE_KEY : Result.UPSERTED;
+            return stored;
+        });
+        return new Outcome(key, result[0]);
+    }
+
+    private Outcome applyPipeline(UpdateOneModel<Document> operation) {
+        String key = render(operation.getFilter()).getString(keyField).getValue();
+        // setIfNewerPipeline: {$set: {..., fileCreatedAt: {$cond: [isNewer, <event fileCreatedAt>, "$fileCreatedAt"]}}}
+        Document set = ((Document) operation.getUpdatePipeline().get(0)).get("$set", Document.class);
+        Instant eventFileCreatedAt = (Instant) set.get("fileCreatedAt", Document.class).getList("$cond", Object.class).get(1);
+        Instant fileCreatedAt = eventFileCreatedAt.truncatedTo(ChronoUnit.MILLIS);
+
+        Result[] result = new Result[1];
+        documents.compute(key, (ignored, stored) -> {
+            if (stored == null) {
+                result[0] = Result.UPSERTED;
+                return new StoredDocument(1L, fileCreatedAt);
+            }
+            if (stored.fileCreatedAt().isBefore(fileCreatedAt)) {
+                result[0] = Result.MODIFIED;
+                return new StoredDocument(stored.version() + 1, fileCreatedAt);
+            }
+            result[0] = Result.UNMODIFIED;
+            return stored;
+        });
+        return new Outcome(key, result[0]);
+    }
+
+    private static BsonDocument render(Bson bson) {
+        BsonDocument document = bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+        if (!document.containsKey("$and")) {
+            return document;
+        }
+        // Nested Filters.and(...) render as $and arrays; the services only combine conditions on distinct fields.
+        BsonDocument flattened = new BsonDocument();
+        for (BsonValue condition : document.getArray("$and")) {
+            flattened.putAll(render(condition.asDocument()));
+        }
+        return flattened;
+    }
+
+    private record StoredDocument(long version, Instant fileCreatedAt) {}
+
+    private record Outcome(String key, Result result) {}
+
+    private enum Result { MODIFIED, UNMODIFIED, UPSERTED, DUPLICATE_KEY }
+}
@@ -0,0 +1,96 @@
+package com.ikea.warehouse_data_consumer.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.SplittableRandom;
+
+/**
+ * Produces JSON payloads of inventory and product update events with a Zipf-distributed key choice and a share of
+ * exact duplicates. fileCreatedAt is the generation time, so the consumer's lag is measured from the moment an event
+ * was handed to Kafka.
+ */
+final class SyntheticEventGenerator {
+
+    private static final int DUPLICATE_WINDOW = 1_024;
+
+    private final boolean inventory;
+    private final SplittableRandom random;
+    private final double duplicateRatio;
+    private final double[] cumulativeWeights;
+    private final Payload[] recent = new Payload[DUPLICATE_WINDOW];
+    private long generated;
+
+    private SyntheticEventGenerator(boolean inventory, LoadProfile profile, long seed) {
+        this.inventory = inventory;
+        this.random = new SplittableRandom(seed);
+        this.duplicateRatio = profile.duplicateRatio();
+        this.cumulativeWeights = zipfCumulativeWeights(profile.keys(), profile.keySkew());
+    }
+
+    static SyntheticEventGenerator inventory(LoadProfile profile, long seed) {
+        return new SyntheticEventGenerator(true, profile, seed);
+    }
+
+    static SyntheticEventGenerator product(LoadProfile profile, long seed) {
+        return new SyntheticEventGenerator(false, profile, seed);
+    }
+
+    Payload next() {
+        if (generated > 0 && random.nextDouble() < duplicateRatio) {
+            return recent[random.nextInt((int) Math.min(generated, DUPLICATE_WINDOW))];
+        }
+        int key = nextKey();
+        Instant fileCreatedAt = Instant.now();
+        Payload payload = inventory ? inventoryPayload(key, fileCreatedAt) : productPayload(key, fileCreatedAt);
+        recent[(int) (generated++ % DUPLICATE_WINDOW)] = payload;
+        return payload;
+    }
+
+    private Payload inventoryPayload(int key, Instant fileCreatedAt) {
+        String artId = String.valueOf(key);
+        String json = "{\"artId\":\"" + artId + "\",\"name\":\"article-" + key + "\",\"stock\":" + random.nextInt(1_000)
+                + ",\"fileCreatedAt\":\"" + fileCreatedAt + "\"}";
+        return new Payload(artId, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Payload productPayload(int key, Instant fileCreatedAt) {
+        String name = "product-" + key;
+        StringBuilder json = new StringBuilder("{\"name\":\"").append(name).append("\",\"containArticles\":[");
+        int articles = 1 + random.nextInt(4);
+        for (int i = 0; i < articles; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"art_id\":\"").append(nextKey()).append("\",\"amount_of\":").append(1 + random.nextInt(8)).append('}');
+        }
+        json.append("],\"fileCreatedAt\":\"").append(fileCreatedAt).append("\"}");
+        return new Payload(name, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int nextKey() {
+        double sample = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int low = 0;
+        int high = cumulativeWeights.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeWeights[mid] < sample) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double[] zipfCumulativeWeights(int keys, double skew) {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        return cumulative;
+    }
+
+    record Payload(String key, byte[] value) {}
+}
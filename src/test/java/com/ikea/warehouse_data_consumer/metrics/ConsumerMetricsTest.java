@@ -0,0 +1,103 @@
+package com.ikea.warehouse_data_consumer.metrics;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsumerMetricsTest {
+
+    private static final String METHOD = "proceedInventoryUpdateBatchEvent";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ConsumerMetrics consumerMetrics = new ConsumerMetrics(meterRegistry);
+
+    @Test
+    void recordBulkWrite_shouldSplitOperationsByResult() {
+        // 5 operations: 2 matched (1 modified), 1 upserted, 1 failed, 1 matched nothing
+        BulkWriteResult result = BulkWriteResult.acknowledged(0, 2, 0, 1,
+                List.of(new BulkWriteUpsert(2, new BsonString("3"))), List.of());
+        List<BulkWriteError> writeErrors = List.of(new BulkWriteError(91, "shutdown", new BsonDocument(), 3));
+
+        consumerMetrics.recordBulkWrite(consumerMetrics.startTimer(), "article", METHOD, 5, result, writeErrors);
+
+        assertEquals(1, meterRegistry.get(ConsumerMetrics.WRITE_METRIC)
+                .tags("entity", "article", "method", METHOD, "operation", "bulkWrite", "outcome", "partial")
+                .timer().count());
+        assertEquals(2.0, documents("matched"));
+        assertEquals(1.0, documents("modified"));
+        assertEquals(1.0, documents("upserted"));
+        assertEquals(0.0, documents("inserted"));
+        assertEquals(1.0, rejected("not_matched"));
+        assertEquals(1.0, rejected("failed"));
+    }
+
+    @Test
+    void recordBulkWrite_shouldNotCountUpsertsAsNotMatched() {
+        BulkWriteResult result = BulkWriteResult.acknowledged(0, 1, 0, 1,
+                List.of(new BulkWriteUpsert(0, new BsonString("1"))), List.of());
+
+        consumerMetrics.recordBulkWrite(consumerMetrics.startTimer(), "article", METHOD, 2, result, List.of());
+
+        assertEquals(0.0, rejected("not_matched"));
+    }
+
+    @Test
+    void recordPollBatch_shouldRecordSizePerListener() {
+        consumerMetrics.recordPollBatch("product", "main", 500);
+        consumerMetrics.recordPollBatch("product", "retry", 3);
+
+        assertEquals(500.0, meterRegistry.get(ConsumerMetrics.POLL_BATCH_SIZE_METRIC)
+                .tags("entity", "product", "listener", "main").summary().totalAmount());
+        assertEquals(1, meterRegistry.get(ConsumerMetrics.POLL_BATCH_SIZE_METRIC)
+                .tags("entity", "product", "listener", "retry").summary().count());
+    }
+
+    @Test
+    void recordApplied_shouldReportNowMinusNewestAppliedFileCreatedAt() {
+        MockClock clock = new MockClock();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+        ConsumerMetrics metrics = new ConsumerMetrics(registry);
+        Instant now = Instant.ofEpochMilli(clock.wallTime());
+
+        metrics.recordApplied("article", now.minusSeconds(30));
+        // an older event applied later, e.g. by a retry tier, does not make the read model look staler
+        metrics.recordApplied("article", now.minusSeconds(90));
+        clock.add(10, TimeUnit.SECONDS);
+
+        assertEquals(40.0, registry.get(ConsumerMetrics.FRESHNESS_METRIC).tag("entity", "article")
+                .timeGauge().value(TimeUnit.SECONDS));
+    }
+
+    @Test
+    void recordApplied_shouldKeepEntitiesApart() {
+        consumerMetrics.recordApplied("product", Instant.now());
+        consumerMetrics.recordApplied("article", null);
+
+        assertEquals(1, meterRegistry.find(ConsumerMetrics.FRESHNESS_METRIC).timeGauges().size());
+        assertTrue(meterRegistry.get(ConsumerMetrics.FRESHNESS_METRIC).tag("entity", "product")
+                .timeGauge().value(TimeUnit.SECONDS) < 60);
+    }
+
+    private double documents(String result) {
+        return meterRegistry.get(ConsumerMetrics.WRITE_DOCUMENTS_METRIC)
+                .tags("entity", "article", "method", METHOD, "result", result).counter().count();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get(ConsumerMetrics.WRITE_REJECTED_METRIC)
+                .tags("entity", "article", "method", METHOD, "reason", reason).counter().count();
+    }
+}
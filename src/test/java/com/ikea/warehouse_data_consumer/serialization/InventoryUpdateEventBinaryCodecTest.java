@@ -0,0 +1,72 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InventoryUpdateEventBinaryCodecTest {
+
+    private final InventoryUpdateEventBinaryCodec codec = new InventoryUpdateEventBinaryCodec();
+
+    @Test
+    void decode_shouldRoundTripEncodedEvent() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "leg", -3L, Instant.parse("2024-01-01T10:00:00.123456789Z"));
+
+        assertEquals(event, codec.decode(codec.encode(event)));
+    }
+
+    @Test
+    void decode_shouldKeepAbsentStockNull() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "leg", null, Instant.parse("2024-01-01T10:00:00Z"));
+
+        assertEquals(event, codec.decode(codec.encode(event)));
+    }
+
+    @Test
+    void decode_shouldSkipFieldsAddedByNewerProducers() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "leg", 12L, Instant.parse("2024-01-01T10:00:00Z"));
+        BinaryWriter extraFields = new BinaryWriter(16);
+        extraFields.writeStringField(99, "added later");
+        extraFields.writeVarintField(100, 42);
+        byte[] encoded = codec.encode(event);
+        byte[] extra = extraFields.toByteArray();
+        byte[] withExtraFields = Arrays.copyOf(encoded, encoded.length + extra.length);
+        System.arraycopy(extra, 0, withExtraFields, encoded.length, extra.length);
+
+        assertEquals(event, codec.decode(withExtraFields));
+    }
+
+    @Test
+    void decode_shouldSkipUnknownLengthDelimitedFieldsBeforeKnownOnes() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "leg", 12L, Instant.parse("2024-01-01T10:00:00Z"));
+        BinaryWriter writer = new BinaryWriter(64);
+        writer.writeByte(CompactBinaryCodec.SCHEMA_VERSION);
+        writer.writeStringField(99, "a field added by a newer producer");
+        new InventoryUpdateEventBinaryCodec().writeFields(writer, event);
+
+        assertEquals(event, codec.decode(writer.toByteArray()));
+    }
+
+    @Test
+    void decode_shouldRejectRecordsWithoutRequiredFields() {
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[] {CompactBinaryCodec.SCHEMA_VERSION}));
+        assertThrows(IllegalArgumentException.class,
+                () -> codec.decode(codec.encode(new InventoryUpdateEvent("1", "leg", 12L, null))));
+    }
+
+    @Test
+    void decode_shouldRejectUnknownSchemaVersionAndTruncatedRecords() {
+        byte[] encoded = codec.encode(new InventoryUpdateEvent("1", "leg", 12L, Instant.EPOCH));
+        byte[] unknownVersion = encoded.clone();
+        unknownVersion[0] = (byte) (CompactBinaryCodec.SCHEMA_VERSION + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(unknownVersion));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(Arrays.copyOf(encoded, 4)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InventoryUpdateEventDeserializerTest {
+
+    private final InventoryUpdateEventDeserializer deserializer = new InventoryUpdateEventDeserializer();
+
+    @Test
+    void deserialize_shouldReadIsoTimestampAndSkipUnknownFields() {
+        String json = """
+                {"artId":"1","name":"leg","stock":12,"extra":{"nested":[1,2]},"fileCreatedAt":"2024-01-01T10:00:00Z"}
+                """;
+
+        InventoryUpdateEvent event = deserializer.deserialize("topic", new RecordHeaders(), bytes(json));
+
+        assertEquals(new InventoryUpdateEvent("1", "leg", 12L, Instant.parse("2024-01-01T10:00:00Z")), event);
+    }
+
+    @Test
+    void deserialize_shouldReadEpochSecondTimestampsAndNumericStrings() {
+        String json = """
+                {"artId":"1","name":"leg","stock":"12","fileCreatedAt":1704103200.123456789}
+                """;
+
+        InventoryUpdateEvent event = deserializer.deserialize("topic", new RecordHeaders(), bytes(json));
+
+        assertEquals(12L, event.stock());
+        assertEquals(Instant.ofEpochSecond(1704103200L, 123456789), event.fileCreatedAt());
+    }
+
+    @Test
+    void deserialize_shouldReturnNullWithErrorHeadersForMalformedRecord() {
+        byte[] payload = bytes("{\"artId\":\"1\",\"stock\":\"many\"}");
+        Headers headers = new RecordHeaders();
+
+        InventoryUpdateEvent event = deserializer.deserialize("topic", headers, payload);
+
+        assertNull(event);
+        assertNotNull(headers.lastHeader(StreamingEventDeserializer.DESERIALIZATION_ERROR_HEADER));
+        assertArrayEquals(payload, headers.lastHeader(StreamingEventDeserializer.DESERIALIZATION_PAYLOAD_HEADER).value());
+    }
+
+    @Test
+    void deserialize_shouldReturnNullForTombstone() {
+        assertNull(deserializer.deserialize("topic", new RecordHeaders(), null));
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.dto.ArticleAmount;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductUpdateEventBinaryCodecTest {
+
+    private final ProductUpdateEventBinaryCodec codec = new ProductUpdateEventBinaryCodec();
+
+    @Test
+    void decode_shouldRoundTripEncodedEvent() {
+        ProductUpdateEvent event = new ProductUpdateEvent("Dining Chair",
+                List.of(new ArticleAmount("1", 4L), new ArticleAmount("2", null)),
+                Instant.parse("2024-01-01T10:00:00Z"));
+
+        assertEquals(event, codec.decode(codec.encode(event)));
+    }
+
+    @Test
+    void decode_shouldDistinguishEmptyFromAbsentArticles() {
+        ProductUpdateEvent empty = new ProductUpdateEvent("Dining Chair", List.of(), Instant.parse("2024-01-01T10:00:00Z"));
+        ProductUpdateEvent absent = new ProductUpdateEvent("Dining Chair", null, Instant.parse("2024-01-01T10:00:00Z"));
+
+        assertEquals(empty, codec.decode(codec.encode(empty)));
+        assertEquals(absent, codec.decode(codec.encode(absent)));
+    }
+
+    @Test
+    void encode_shouldBeSmallerThanJson() {
+        ProductUpdateEvent event = new ProductUpdateEvent("Dining Chair",
+                List.of(new ArticleAmount("1", 4L), new ArticleAmount("2", 8L), new ArticleAmount("3", 1L)),
+                Instant.parse("2024-01-01T10:00:00Z"));
+        String json = """
+                {"name":"Dining Chair","containArticles":[{"art_id":"1","amount_of":4},{"art_id":"2","amount_of":8},\
+                {"art_id":"3","amount_of":1}],"fileCreatedAt":"2024-01-01T10:00:00Z"}""";
+
+        assertTrue(codec.encode(event).length * 2 < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void deserializer_shouldSelectBinaryCodecByContentTypeHeader() {
+        ProductUpdateEvent event = new ProductUpdateEvent("Dining Chair", List.of(new ArticleAmount("1", 4L)),
+                Instant.parse("2024-01-01T10:00:00Z"));
+        Headers headers = new RecordHeaders();
+        headers.add(StreamingEventDeserializer.CONTENT_TYPE_HEADER,
+                CompactBinaryCodec.CONTENT_TYPE.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(event, new ProductUpdateEventDeserializer().deserialize("topic", headers, codec.encode(event)));
+    }
+}
@@ -0,0 +1,45 @@
+package com.ikea.warehouse_data_consumer.serialization;
+
+import com.ikea.warehouse_data_consumer.data.dto.ArticleAmount;
+import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProductUpdateEventDeserializerTest {
+
+    private final ProductUpdateEventDeserializer deserializer = new ProductUpdateEventDeserializer();
+
+    @Test
+    void deserialize_shouldReadProductWithArticles() {
+        String json = """
+                {"name":"Dining Chair","containArticles":[{"art_id":"1","amount_of":4},{"art_id":"2","amount_of":"8"}],
+                 "fileCreatedAt":"2024-01-01T10:00:00Z"}
+                """;
+
+        ProductUpdateEvent event = deserializer.deserialize("topic", new RecordHeaders(), json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(new ProductUpdateEvent("Dining Chair",
+                List.of(new ArticleAmount("1", 4L), new ArticleAmount("2", 8L)),
+                Instant.parse("2024-01-01T10:00:00Z")), event);
+    }
+
+    @Test
+    void deserialize_shouldReturnNullWithErrorHeaderForTruncatedRecord() {
+        Headers headers = new RecordHeaders();
+
+        ProductUpdateEvent event = deserializer.deserialize("topic", headers,
+                "{\"name\":\"Dining Chair\",\"containArticles\":[{\"art_id\":".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(event);
+        assertNotNull(headers.lastHeader(StreamingEventDeserializer.DESERIALIZATION_ERROR_HEADER));
+    }
+}
@@ -0,0 +1,186 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.config.mongo.AvailabilityProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.OutboxProperties;
+import com.ikea.warehouse_data_consumer.data.document.AvailabilityOutboxDocument;
+import com.ikea.warehouse_data_consumer.data.dto.RecordSendResult;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import com.ikea.warehouse_data_consumer.data.event.ProductAvailabilityChangedEvent;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityOutboxRelayTest {
+
+    private static final String TOPIC = "availability-topic";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> outbox;
+
+    @Mock
+    private MongoCollection<Document> leases;
+
+    @Mock
+    private FindIterable<Document> findIterable;
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AvailabilityOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        relay = new AvailabilityOutboxRelay(mongoTemplate, kafkaProducerService,
+                new OutboxProperties(true, TOPIC, Duration.ofMillis(500), 2, Duration.ofSeconds(30)),
+                new AvailabilityProperties(true, true, Duration.ofMinutes(15)), meterRegistry);
+        lenient().when(mongoTemplate.getCollectionName(AvailabilityOutboxDocument.class)).thenReturn("availability_outbox");
+        lenient().when(mongoTemplate.getCollection("availability_outbox")).thenReturn(outbox);
+        lenient().when(mongoTemplate.getCollection(AvailabilityOutboxRelay.LEASE_COLLECTION)).thenReturn(leases);
+        lenient().when(outbox.withReadPreference(any())).thenReturn(outbox);
+        lenient().when(outbox.find()).thenReturn(findIterable);
+        lenient().when(findIterable.sort(any())).thenReturn(findIterable);
+        lenient().when(findIterable.limit(anyInt())).thenReturn(findIterable);
+    }
+
+    @Test
+    void relay_shouldPublishDeltasKeyedByProductNameAndDeleteThem() {
+        pending(List.of(delta(1, "Chair", 2L)));
+        when(kafkaProducerService.sendBatch(eq(TOPIC), anyList())).thenAnswer(inv -> sent(inv.getArgument(1), 1));
+
+        assertEquals(1, relay.relay());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<KafkaKeyValueRecord>> recordsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(kafkaProducerService).sendBatch(eq(TOPIC), recordsCaptor.capture());
+        KafkaKeyValueRecord record = recordsCaptor.getValue().get(0);
+        assertEquals("Chair", record.key());
+        ProductAvailabilityChangedEvent event = (ProductAvailabilityChangedEvent) record.event();
+        assertEquals(2L, event.buildableQuantity());
+        assertEquals(1L, event.previousBuildableQuantity());
+        assertEquals(Instant.EPOCH, event.computedAt());
+        verify(outbox).deleteMany(any(Bson.class));
+        assertEquals(1, meterRegistry.get(AvailabilityOutboxRelay.PUBLISHED_METRIC).tag("outcome", "success")
+                .counter().count());
+    }
+
+    @Test
+    void relay_shouldOnlyDeleteTheDeltasBeforeTheFirstFailedSend() {
+        pending(List.of(delta(1, "Chair", 2L), delta(2, "Table", 0L)));
+        when(kafkaProducerService.sendBatch(eq(TOPIC), anyList())).thenAnswer(inv -> sent(inv.getArgument(1), 1));
+
+        assertEquals(1, relay.relay());
+
+        ArgumentCaptor<Bson> filterCaptor = ArgumentCaptor.forClass(Bson.class);
+        verify(outbox).deleteMany(filterCaptor.capture());
+        String filter = filterCaptor.getValue()
+                .toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()).toJson();
+        assertEquals("{\"_id\": {\"$in\": [1]}}", filter);
+        assertEquals(1, meterRegistry.get(AvailabilityOutboxRelay.PUBLISHED_METRIC).tag("outcome", "failure")
+                .counter().count());
+    }
+
+    @Test
+    void relay_shouldKeepRelayingFullBatchesUntilTheOutboxIsDrained() {
+        when(findIterable.into(any())).thenAnswer(inv -> {
+            List<Document> target = inv.getArgument(0);
+            target.addAll(List.of(delta(1, "Chair", 2L), delta(2, "Table", 0L)));
+            return target;
+        }).thenAnswer(inv -> {
+            List<Document> target = inv.getArgument(0);
+            target.add(delta(3, "Bed", 1L));
+            return target;
+        });
+        when(kafkaProducerService.sendBatch(eq(TOPIC), anyList()))
+                .thenAnswer(inv -> sent(inv.getArgument(1), ((List<?>) inv.getArgument(1)).size()));
+
+        assertEquals(3, relay.relay());
+
+        verify(outbox, times(2)).deleteMany(any(Bson.class));
+        verify(leases, times(2)).findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class));
+    }
+
+    @Test
+    void relay_shouldNotPublishWhileAnotherInstanceHoldsTheLease() {
+        when(leases.findOneAndUpdate(any(Bson.class), any(Bson.class), any(FindOneAndUpdateOptions.class)))
+                .thenThrow(new MongoCommandException(new BsonDocument("code", new BsonInt32(11000))
+                        .append("errmsg", new BsonString("duplicate key")), new ServerAddress()));
+
+        assertEquals(0, relay.relay());
+
+        verifyNoInteractions(outbox, kafkaProducerService);
+    }
+
+    @Test
+    void afterPropertiesSet_shouldNotScheduleWhenAvailabilityIsDisabled() {
+        relay = new AvailabilityOutboxRelay(mongoTemplate, kafkaProducerService,
+                new OutboxProperties(true, TOPIC, Duration.ofMillis(500), 2, Duration.ofSeconds(30)),
+                new AvailabilityProperties(false, true, Duration.ofMinutes(15)), meterRegistry);
+
+        relay.afterPropertiesSet();
+        relay.destroy();
+
+        assertFalse(relay.isEnabled());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private void pending(List<Document> deltas) {
+        when(findIterable.into(any())).thenAnswer(inv -> {
+            List<Document> target = inv.getArgument(0);
+            target.addAll(deltas);
+            return target;
+        });
+    }
+
+    private static SendBatchResult sent(List<KafkaKeyValueRecord> records, int acknowledged) {
+        return new SendBatchResult(TOPIC, IntStream.range(0, records.size())
+                .mapToObj(i -> i < acknowledged
+                        ? RecordSendResult.sent(records.get(i), null)
+                        : RecordSendResult.failed(records.get(i), new IllegalStateException("not acknowledged")))
+                .toList());
+    }
+
+    private static Document delta(int id, String name, Long buildableQuantity) {
+        return new Document("_id", id).append("name", name)
+                .append("previousBuildableQuantity", 1L)
+                .append("buildableQuantity", buildableQuantity)
+                .append("productVersion", 1L)
+                .append("articleVersionSum", 1L)
+                .append("computedAt", Date.from(Instant.EPOCH));
+    }
+}
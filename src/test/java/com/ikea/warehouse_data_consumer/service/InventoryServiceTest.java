@@ -1,26 +1,38 @@
 package com.ikea.warehouse_data_consumer.service;
 
+import com.ikea.warehouse_data_consumer.cache.ArticleVersionCache;
+import com.ikea.warehouse_data_consumer.concurrent.ArticleChunkSizer;
+import com.ikea.warehouse_data_consumer.concurrent.KeyPartitionedBulkExecutor;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.CircuitBreakerProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties.WriteMode;
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
 import com.ikea.warehouse_data_consumer.data.document.ArticleDocument;
 import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
 import com.ikea.warehouse_data_consumer.data.exception.ArticleDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
 import com.mongodb.MongoBulkWriteException;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.BulkWriteOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.mongodb.core.MongoTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -28,22 +40,37 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class InventoryServiceTest {
 
+    private static final ChunkSizeProperties SINGLE_CHUNK =
+            new ChunkSizeProperties(false, 500, 50, 5000, Duration.ofMillis(200), 50, 0.5);
+    private static final CircuitBreakerProperties NO_BREAKER =
+            new CircuitBreakerProperties(false, 5, Duration.ofSeconds(30), 50);
+
     @Mock
     MongoTemplate mongoTemplate;
 
+    @Mock
+    ProductAvailabilityService productAvailabilityService;
+
     @Mock
     MongoCollection<Document> collection;
 
     @Mock
     com.mongodb.client.FindIterable<Document> findIterable;
 
-    @InjectMocks
     InventoryService inventoryService;
 
+    SimpleMeterRegistry meterRegistry;
+
     String collectionName;
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        inventoryService = new InventoryService(mongoTemplate, new MongoWriteProperties(WriteMode.VERSIONED, 1),
+                new KeyPartitionedBulkExecutor(),
+                new ArticleVersionCache(new VersionCacheProperties(true, 1_000), meterRegistry), meterRegistry,
+                new ConsumerMetrics(meterRegistry), new ArticleChunkSizer(SINGLE_CHUNK, meterRegistry),
+                new MongoCircuitBreaker(NO_BREAKER, meterRegistry), productAvailabilityService);
         collectionName = "articleDocument";
         lenient().when(mongoTemplate.getCollectionName(ArticleDocument.class)).thenReturn(collectionName);
         lenient().when(mongoTemplate.getCollection(collectionName)).thenReturn(collection);
@@ -54,11 +81,15 @@ class InventoryServiceTest {
         lenient().when(findIterable.first()).thenReturn(null);
         // For batch prefetch, do nothing on forEach
         lenient().doAnswer(inv -> null).when(findIterable).forEach(any());
+        // Read-back of ambiguous bulk write operations goes to the primary
+        lenient().when(collection.withReadPreference(any())).thenReturn(collection);
     }
 
     @Test
     void proceedInventoryUpdateEvent_shouldCallUpdateOneWithUpsert() {
             InventoryUpdateEvent event = new InventoryUpdateEvent("1", "art", 10L, Instant.parse("2024-01-01T00:00:00Z"));
+            when(collection.updateOne(any(Bson.class), any(Bson.class), any(com.mongodb.client.model.UpdateOptions.class)))
+                    .thenReturn(com.mongodb.client.result.UpdateResult.acknowledged(0L, 0L, new org.bson.BsonString("1")));
 
             inventoryService.proceedInventoryUpdateEvent(event);
 
@@ -68,6 +99,8 @@ class InventoryServiceTest {
         @Test
         void proceedInventoryUpdateEvent_shouldIncludeVersionOperatorsInUpdate() {
             InventoryUpdateEvent event = new InventoryUpdateEvent("1", "art", 10L, Instant.parse("2024-01-01T00:00:00Z"));
+            when(collection.updateOne(any(Bson.class), any(Bson.class), any(com.mongodb.client.model.UpdateOptions.class)))
+                    .thenReturn(com.mongodb.client.result.UpdateResult.acknowledged(0L, 0L, new org.bson.BsonString("1")));
 
             inventoryService.proceedInventoryUpdateEvent(event);
 
@@ -82,6 +115,18 @@ class InventoryServiceTest {
             assertEquals(new org.bson.BsonInt64(1L), inc.get("version"));
         }
 
+    @Test
+    void proceedInventoryUpdateEvent_shouldTimeFailedWritesWithFailureOutcome() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "art", 10L, Instant.parse("2024-01-01T00:00:00Z"));
+        when(collection.updateOne(any(Bson.class), any(Bson.class), any(com.mongodb.client.model.UpdateOptions.class)))
+                .thenThrow(new com.mongodb.MongoException("primary stepped down"));
+
+        assertThrows(com.mongodb.MongoException.class, () -> inventoryService.proceedInventoryUpdateEvent(event));
+
+        assertEquals(1, meterRegistry.get(ConsumerMetrics.WRITE_METRIC)
+                .tags("operation", "updateOne", "outcome", "failure").timer().count());
+    }
+
     @Test
     void proceedInventoryUpdateBatchEvent_shouldReturnWhenListEmpty() {
         assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(List.of()));
@@ -89,19 +134,276 @@ class InventoryServiceTest {
     }
 
     @Test
-    void proceedInventoryUpdateBatchEvent_shouldThrowWhenNotMatchedCriteriaExists() {
+    void proceedInventoryUpdateBatchEvent_shouldNotRejectAnythingWhenUpsertAndMatchCoverTheBatch() {
         InventoryUpdateEvent e1 = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
         InventoryUpdateEvent e2 = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-02T00:00:00Z"));
 
+        // matchedCount excludes upserts: index 0 upserted, index 1 matched
         BulkWriteResult result = mock(BulkWriteResult.class);
         when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
         when(result.getMatchedCount()).thenReturn(1);
 
         when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
 
+        assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(e1, e2)));
+        verify(collection, never()).withReadPreference(any());
+        assertNotNull(meterRegistry.find(ConsumerMetrics.FRESHNESS_METRIC).tag("entity", "article").timeGauge());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldRetryOnlyConflictedEventsAfterVerifyingAmbiguousOnes() {
+        InventoryUpdateEvent upserted = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent applied = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-02T00:00:00Z"));
+        InventoryUpdateEvent conflicted = new InventoryUpdateEvent("3", "c", 3L, Instant.parse("2024-01-03T00:00:00Z"));
+
+        // one of the two non-upserted operations missed
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
+        when(result.getMatchedCount()).thenReturn(1);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+        storedDocuments(storedDocument("2", applied.fileCreatedAt()),
+                storedDocument("3", Instant.parse("2024-01-01T00:00:00Z")));
+
         ArticleDocumentMongoWriteException ex = assertThrows(ArticleDocumentMongoWriteException.class,
-                () -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(e1, e2)));
-        assertTrue(ex.getCriteriaNotMatchedEvents().contains(e2));
+                () -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(upserted, applied, conflicted)));
+        assertEquals(List.of(conflicted), ex.getFailedEvents());
+        assertTrue(ex.getCriteriaNotMatchedEvents().isEmpty());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldDropEventsVerifiedAsStale() {
+        InventoryUpdateEvent upserted = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent stale = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-02T00:00:00Z"));
+
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
+        when(result.getMatchedCount()).thenReturn(0);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+        storedDocuments(storedDocument("2", Instant.parse("2024-01-05T00:00:00Z")));
+
+        assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(upserted, stale)));
+        verify(collection).withReadPreference(com.mongodb.ReadPreference.primary());
+        assertEquals(1.0, meterRegistry.counter(InventoryService.STALE_EVENTS_METRIC, "entity", "article").count());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldWriteOnlyNewestEventPerArtId() {
+        InventoryUpdateEvent older = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent newer = new InventoryUpdateEvent("1", "a", 5L, Instant.parse("2024-01-02T00:00:00Z"));
+        InventoryUpdateEvent other = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-01T00:00:00Z"));
+
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of());
+        when(result.getMatchedCount()).thenReturn(2);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+
+        assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(newer, older, other)));
+
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        assertEquals(2, modelsCaptor.getValue().size());
+        assertEquals(1.0, meterRegistry.counter(InventoryService.SUPERSEDED_EVENTS_METRIC, "entity", "article").count());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_conditionalModeShouldSkipVersionPreReadAndCountStaleEvents() {
+        ArticleVersionCache versionCache = new ArticleVersionCache(new VersionCacheProperties(true, 1_000), meterRegistry);
+        inventoryService = new InventoryService(mongoTemplate, new MongoWriteProperties(WriteMode.CONDITIONAL, 1),
+                new KeyPartitionedBulkExecutor(), versionCache, meterRegistry,
+                new ConsumerMetrics(meterRegistry), new ArticleChunkSizer(SINGLE_CHUNK, meterRegistry),
+                new MongoCircuitBreaker(NO_BREAKER, meterRegistry), productAvailabilityService);
+        InventoryUpdateEvent e1 = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent e2 = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-02T00:00:00Z"));
+
+        // both matched, only one modified -> the other was stale
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(2);
+        when(result.getModifiedCount()).thenReturn(1);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+
+        assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(e1, e2)));
+
+        verify(collection, never()).find(any(Bson.class));
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        com.mongodb.client.model.UpdateOneModel<Document> model =
+                (com.mongodb.client.model.UpdateOneModel<Document>) modelsCaptor.getValue().get(0);
+        assertNotNull(model.getUpdatePipeline());
+        assertTrue(model.getOptions().isUpsert());
+        assertEquals(1.0, meterRegistry.counter(InventoryService.STALE_EVENTS_METRIC, "entity", "article").count());
+        // either event may be the stale one, so neither watermark is cached
+        assertNull(versionCache.get("1"));
+        assertNull(versionCache.get("2"));
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldRejectStaleEventsAndSkipPreReadOnVersionCacheHit() {
+        InventoryUpdateEvent applied = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-02T00:00:00Z"));
+        InventoryUpdateEvent older = new InventoryUpdateEvent("1", "a", 2L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent newer = new InventoryUpdateEvent("1", "a", 3L, Instant.parse("2024-01-03T00:00:00Z"));
+
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of());
+        when(result.getMatchedCount()).thenReturn(1);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(applied));
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(older));
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(newer));
+
+        // only the first batch needed the version pre-read, the stale one never reached Mongo
+        verify(collection, times(1)).find(any(Bson.class));
+        verify(collection, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        assertEquals(1.0, meterRegistry.counter(InventoryService.STALE_EVENTS_METRIC, "entity", "article").count());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldRecordTheMessageIdAndSkipItsReplay() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(allUpserted(1));
+
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(event), Map.of(event, "inventory-0@7"));
+        InventoryUpdateEvent replayed = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(replayed), Map.of(replayed, "inventory-0@7"));
+
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection, times(1)).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        Bson update = ((com.mongodb.client.model.UpdateOneModel<Document>) modelsCaptor.getValue().get(0)).getUpdate();
+        org.bson.BsonDocument set = update.toBsonDocument(Document.class,
+                com.mongodb.MongoClientSettings.getDefaultCodecRegistry()).getDocument("$set");
+        assertEquals(new org.bson.BsonString("inventory-0@7"), set.get("lastMessageId"));
+        assertEquals(1.0, meterRegistry.counter(InventoryService.DUPLICATE_EVENTS_METRIC, "entity", "article").count());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldSkipMessagesThatAppliedTheStoredArticleOfACacheMiss() {
+        InventoryUpdateEvent replayed = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        storedDocuments(storedDocument("1", replayed.fileCreatedAt()).append("lastMessageId", "inventory-0@7"));
+
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(replayed), Map.of(replayed, "inventory-0@7"));
+
+        verify(collection, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        assertEquals(1.0, meterRegistry.counter(InventoryService.DUPLICATE_EVENTS_METRIC, "entity", "article").count());
+        assertEquals(0.0, meterRegistry.counter(InventoryService.STALE_EVENTS_METRIC, "entity", "article").count());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldReuseTheStoredWatermarkOfACacheMissAsExpectedVersion() {
+        InventoryUpdateEvent event = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-02T00:00:00Z"));
+        storedDocuments(storedDocument("1", Instant.parse("2024-01-01T00:00:00Z")).append("lastMessageId", "inventory-0@3"));
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of());
+        when(result.getMatchedCount()).thenReturn(1);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+
+        inventoryService.proceedInventoryUpdateBatchEvent(List.of(event), Map.of(event, "inventory-0@7"));
+
+        // the stored watermark read replaced the version pre-read
+        verify(collection, times(1)).find(any(Bson.class));
+        verify(collection).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldWriteKeyPartitionedSubBatchesWhenParallel() {
+        inventoryService = new InventoryService(mongoTemplate, new MongoWriteProperties(WriteMode.VERSIONED, 4),
+                new KeyPartitionedBulkExecutor(),
+                new ArticleVersionCache(new VersionCacheProperties(true, 1_000), meterRegistry), meterRegistry,
+                new ConsumerMetrics(meterRegistry), new ArticleChunkSizer(SINGLE_CHUNK, meterRegistry),
+                new MongoCircuitBreaker(NO_BREAKER, meterRegistry), productAvailabilityService);
+        List<InventoryUpdateEvent> events = new java.util.ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            events.add(new InventoryUpdateEvent(String.valueOf(i), "a" + i, (long) i, Instant.parse("2024-01-01T00:00:00Z")));
+        }
+
+        java.util.Map<Integer, BulkWriteResult> resultsBySize = new java.util.HashMap<>();
+        for (int size = 1; size <= events.size(); size++) {
+            BulkWriteResult result = mock(BulkWriteResult.class);
+            lenient().when(result.getUpserts()).thenReturn(List.of());
+            lenient().when(result.getMatchedCount()).thenReturn(size);
+            resultsBySize.put(size, result);
+        }
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenAnswer(invocation -> resultsBySize.get(((List<?>) invocation.getArgument(0)).size()));
+
+        assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(events));
+
+        // artIds "1".."8" hash into all 4 buckets, two events each
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection, times(4)).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        assertEquals(8, modelsCaptor.getAllValues().stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldReportUnwrittenChunksAsFailedWhenAChunkFails() {
+        ArticleChunkSizer chunkSizer = new ArticleChunkSizer(
+                new ChunkSizeProperties(true, 2, 1, 10, Duration.ofSeconds(10), 1, 0.5), meterRegistry);
+        inventoryService = new InventoryService(mongoTemplate, new MongoWriteProperties(WriteMode.VERSIONED, 1),
+                new KeyPartitionedBulkExecutor(),
+                new ArticleVersionCache(new VersionCacheProperties(true, 1_000), meterRegistry), meterRegistry,
+                new ConsumerMetrics(meterRegistry), chunkSizer, new MongoCircuitBreaker(NO_BREAKER, meterRegistry),
+                productAvailabilityService);
+        List<InventoryUpdateEvent> events = new java.util.ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            events.add(new InventoryUpdateEvent(String.valueOf(i), "a" + i, (long) i, Instant.parse("2024-01-01T00:00:00Z")));
+        }
+
+        BulkWriteResult upserted = mock(BulkWriteResult.class);
+        when(upserted.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null), new BulkWriteUpsert(1, null)));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(upserted)
+                .thenThrow(new com.mongodb.MongoTimeoutException("timed out"));
+
+        ArticleDocumentMongoWriteException ex = assertThrows(ArticleDocumentMongoWriteException.class,
+                () -> inventoryService.proceedInventoryUpdateBatchEvent(events));
+
+        // the third chunk is not attempted; the size is cut relative to the failed chunk
+        assertEquals(events.subList(2, 5), ex.getFailedEvents());
+        verify(collection, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        assertEquals(1, chunkSizer.chunkSize());
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldRethrowWhenTheFirstChunkFails() {
+        InventoryUpdateEvent e1 = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenThrow(new com.mongodb.MongoTimeoutException("timed out"));
+
+        // nothing was written, so the listener decides whether the batch stays in Kafka
+        assertThrows(com.mongodb.MongoTimeoutException.class,
+                () -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(e1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void proceedInventoryUpdateBatchEvent_shouldProbeWithASmallChunkOnceTheCircuitIsHalfOpen() {
+        MongoCircuitBreaker breaker = new MongoCircuitBreaker(
+                new CircuitBreakerProperties(true, 1, Duration.ZERO, 1), meterRegistry);
+        inventoryService = new InventoryService(mongoTemplate, new MongoWriteProperties(WriteMode.VERSIONED, 1),
+                new KeyPartitionedBulkExecutor(),
+                new ArticleVersionCache(new VersionCacheProperties(true, 1_000), meterRegistry), meterRegistry,
+                new ConsumerMetrics(meterRegistry), new ArticleChunkSizer(SINGLE_CHUNK, meterRegistry), breaker,
+                productAvailabilityService);
+        List<InventoryUpdateEvent> events = List.of(
+                new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z")),
+                new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-01T00:00:00Z")),
+                new InventoryUpdateEvent("3", "c", 3L, Instant.parse("2024-01-01T00:00:00Z")));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenThrow(new com.mongodb.MongoTimeoutException("timed out"))
+                .thenAnswer(inv -> allUpserted(inv.<List<?>>getArgument(0).size()));
+
+        assertThrows(com.mongodb.MongoTimeoutException.class, () -> inventoryService.proceedInventoryUpdateBatchEvent(events));
+        assertDoesNotThrow(() -> inventoryService.proceedInventoryUpdateBatchEvent(events));
+
+        // the first write after opening is a single-operation probe; its success lets the rest through
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection, times(3)).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        assertEquals(List.of(3, 1, 2), modelsCaptor.getAllValues().stream().map(List::size).toList());
+        assertEquals(MongoCircuitBreaker.State.CLOSED, breaker.state());
     }
 
     @Test
@@ -111,10 +413,10 @@ class InventoryServiceTest {
 
         BulkWriteResult result = mock(BulkWriteResult.class);
         when(result.getUpserts()).thenReturn(List.of());
-        when(result.getMatchedCount()).thenReturn(0);
+        when(result.getMatchedCount()).thenReturn(1);
 
         org.bson.BsonDocument details = new org.bson.BsonDocument();
-        BulkWriteError writeError = new BulkWriteError(11000, "dup", details, 1);
+        BulkWriteError writeError = new BulkWriteError(91, "shutdown in progress", details, 1);
         com.mongodb.ServerAddress serverAddress = new com.mongodb.ServerAddress();
         com.mongodb.bulk.WriteConcernError wcError = null;
         MongoBulkWriteException bulkEx = new MongoBulkWriteException(result, List.of(writeError), wcError, serverAddress);
@@ -124,7 +426,31 @@ class InventoryServiceTest {
         ArticleDocumentMongoWriteException ex = assertThrows(ArticleDocumentMongoWriteException.class,
                 () -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(e1, e2)));
         assertEquals(List.of(e2), ex.getFailedEvents());
-        assertTrue(ex.getCriteriaNotMatchedEvents().containsAll(List.of(e1, e2)));
+        assertTrue(ex.getCriteriaNotMatchedEvents().isEmpty());
+        // only the products requiring the applied article are recomputed
+        verify(productAvailabilityService).onArticlesChanged(java.util.Set.of("1"));
+    }
+
+    @Test
+    void proceedInventoryUpdateBatchEvent_shouldVerifyDuplicateKeyErrorsOfGuardedUpserts() {
+        InventoryUpdateEvent e1 = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent e2 = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-02T00:00:00Z"));
+
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of());
+        when(result.getMatchedCount()).thenReturn(1);
+
+        // the guard rejected the stored document of artId 2, so the upsert collided with its _id
+        BulkWriteError writeError = new BulkWriteError(11000, "dup", new org.bson.BsonDocument(), 1);
+        MongoBulkWriteException bulkEx = new MongoBulkWriteException(result, List.of(writeError), null,
+                new com.mongodb.ServerAddress());
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenThrow(bulkEx);
+        storedDocuments(storedDocument("2", Instant.parse("2024-01-01T00:00:00Z")));
+
+        ArticleDocumentMongoWriteException ex = assertThrows(ArticleDocumentMongoWriteException.class,
+                () -> inventoryService.proceedInventoryUpdateBatchEvent(List.of(e1, e2)));
+        assertEquals(List.of(e2), ex.getFailedEvents());
+        assertTrue(ex.getCriteriaNotMatchedEvents().isEmpty());
     }
 
     @Test
@@ -141,4 +467,24 @@ class InventoryServiceTest {
         assertThrows(org.springframework.dao.OptimisticLockingFailureException.class,
                 () -> inventoryService.proceedInventoryUpdateEvent(event));
     }
+
+    private void storedDocuments(Document... documents) {
+        doAnswer(inv -> {
+            java.util.function.Consumer<Document> action = inv.getArgument(0);
+            List.of(documents).forEach(action);
+            return null;
+        }).when(findIterable).forEach(any());
+    }
+
+    private static BulkWriteResult allUpserted(int operations) {
+        List<BulkWriteUpsert> upserts = new java.util.ArrayList<>();
+        for (int i = 0; i < operations; i++) {
+            upserts.add(new BulkWriteUpsert(i, new org.bson.BsonString(String.valueOf(i))));
+        }
+        return BulkWriteResult.acknowledged(0, 0, 0, 0, upserts, List.of());
+    }
+
+    private static Document storedDocument(String artId, Instant fileCreatedAt) {
+        return new Document("_id", artId).append("version", 1L).append("fileCreatedAt", java.util.Date.from(fileCreatedAt));
+    }
 }
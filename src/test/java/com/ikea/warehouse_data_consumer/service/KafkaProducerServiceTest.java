@@ -0,0 +1,106 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.config.kafka.ProducerProperties;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaProducerServiceTest {
+
+    private static final String TOPIC = "retry-topic";
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private KafkaProducerService kafkaProducerService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        kafkaProducerService = new KafkaProducerService(kafkaTemplate,
+                new ProducerProperties(Duration.ofMillis(200)), meterRegistry);
+    }
+
+    @Test
+    void sendBatch_shouldReportEveryRecordSentWhenAllAcknowledged() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> acknowledged(invocation.getArgument(0)));
+
+        SendBatchResult result = kafkaProducerService.sendBatch(TOPIC, List.of(record("a"), record("b")));
+
+        assertTrue(result.allSent());
+        assertEquals(2, result.results().size());
+        assertEquals(2, meterRegistry.get(KafkaProducerService.SEND_TIMER_METRIC).tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(KafkaProducerService.SEND_BATCH_TIMER_METRIC).tag("topic", TOPIC)
+                .tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void sendBatch_shouldReportFailedAndTimedOutRecordsPerRecord() {
+        KafkaKeyValueRecord sent = record("sent");
+        KafkaKeyValueRecord failed = record("failed");
+        KafkaKeyValueRecord pending = record("pending");
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, Object> producerRecord = invocation.getArgument(0);
+            return switch (producerRecord.key()) {
+                case "sent" -> acknowledged(producerRecord);
+                case "failed" -> CompletableFuture.failedFuture(new IllegalStateException("broker down"));
+                default -> new CompletableFuture<>();
+            };
+        });
+
+        SendBatchResult result = kafkaProducerService.sendBatch(TOPIC, List.of(sent, failed, pending));
+
+        assertFalse(result.allSent());
+        assertEquals(List.of(failed, pending), result.failedRecords());
+        assertTrue(result.results().get(0).isSent());
+        assertEquals(1.0, meterRegistry.get(KafkaProducerService.SEND_FAILED_METRIC).tag("reason", "error").counter().count());
+        assertEquals(1.0, meterRegistry.get(KafkaProducerService.SEND_FAILED_METRIC).tag("reason", "timeout").counter().count());
+    }
+
+    @Test
+    void sendBatch_shouldReportSynchronousSendFailureInsteadOfThrowing() {
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenThrow(new IllegalStateException("serialization"));
+
+        SendBatchResult result = kafkaProducerService.sendBatch(TOPIC, List.of(record("a")));
+
+        assertEquals(1, result.failedRecords().size());
+    }
+
+    @Test
+    void sendBatch_shouldSendNothingForEmptyList() {
+        assertTrue(kafkaProducerService.sendBatch(TOPIC, List.of()).allSent());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    private static KafkaKeyValueRecord record(String key) {
+        return new KafkaKeyValueRecord(key, "event-" + key);
+    }
+
+    private static CompletableFuture<SendResult<String, Object>> acknowledged(ProducerRecord<String, Object> producerRecord) {
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition(TOPIC, 0), 0, 0, 0, 0, 0);
+        return CompletableFuture.completedFuture(new SendResult<>(producerRecord, metadata));
+    }
+}
@@ -0,0 +1,294 @@
+package com.ikea.warehouse_data_consumer.service;
+
+import com.ikea.warehouse_data_consumer.cache.ArticleProductIndex;
+import com.ikea.warehouse_data_consumer.cache.ProductRequirements;
+import com.ikea.warehouse_data_consumer.config.mongo.AvailabilityProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.OutboxProperties;
+import com.ikea.warehouse_data_consumer.data.document.ArticleDocument;
+import com.ikea.warehouse_data_consumer.data.document.AvailabilityOutboxDocument;
+import com.ikea.warehouse_data_consumer.data.document.ProductAvailabilityDocument;
+import com.ikea.warehouse_data_consumer.data.document.ProductDocument;
+import com.ikea.warehouse_data_consumer.service.ProductAvailabilityService.Availability;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductAvailabilityServiceTest {
+
+    @Mock
+    MongoTemplate mongoTemplate;
+
+    @Mock
+    MongoCollection<Document> products;
+
+    @Mock
+    MongoCollection<Document> articles;
+
+    @Mock
+    MongoCollection<Document> availability;
+
+    @Mock
+    MongoCollection<Document> outbox;
+
+    @Mock
+    ArticleProductIndex articleProductIndex;
+
+    @Mock
+    MongoTransactionManager transactionManager;
+
+    SimpleMeterRegistry meterRegistry;
+
+    ProductAvailabilityService productAvailabilityService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productAvailabilityService = service(new AvailabilityProperties(true, true, Duration.ofMinutes(15)), false);
+        lenient().when(mongoTemplate.getCollectionName(ProductDocument.class)).thenReturn("products");
+        lenient().when(mongoTemplate.getCollectionName(ArticleDocument.class)).thenReturn("articles");
+        lenient().when(mongoTemplate.getCollectionName(ProductAvailabilityDocument.class)).thenReturn("product_availability");
+        lenient().when(mongoTemplate.getCollection("products")).thenReturn(products);
+        lenient().when(mongoTemplate.getCollection("articles")).thenReturn(articles);
+        lenient().when(mongoTemplate.getCollectionName(AvailabilityOutboxDocument.class)).thenReturn("availability_outbox");
+        lenient().when(mongoTemplate.getCollection("product_availability")).thenReturn(availability);
+        lenient().when(mongoTemplate.getCollection("availability_outbox")).thenReturn(outbox);
+        lenient().when(availability.withReadPreference(any())).thenReturn(availability);
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(products.withReadPreference(any())).thenReturn(products);
+        lenient().when(articles.withReadPreference(any())).thenReturn(articles);
+    }
+
+    @Test
+    void compute_shouldTakeTheMinimumOverRequiredArticles() {
+        ProductRequirements product = new ProductRequirements("Dining Table", 3L, Map.of("1", 6L, "2", 1L));
+        Map<String, Document> stored = Map.of(
+                "1", article("1", 20L, 5L),
+                "2", article("2", 2L, 7L));
+
+        // artId 1 builds 20 / 6 = 3, artId 2 limits to 2
+        assertEquals(new Availability("Dining Table", 2L, "2", 3L, 12L),
+                ProductAvailabilityService.compute(product, stored));
+    }
+
+    @Test
+    void compute_shouldBuildNothingWhenARequiredArticleIsMissing() {
+        ProductRequirements product = new ProductRequirements("Chair", 1L, Map.of("1", 1L, "9", 1L));
+
+        assertEquals(new Availability("Chair", 0L, "9", 1L, 5L),
+                ProductAvailabilityService.compute(product, Map.of("1", article("1", 10L, 5L))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onArticlesChanged_shouldRecomputeProductsRequiringTheArticlesBehindAVersionGuard() {
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(mock(BulkWriteResult.class));
+
+        productAvailabilityService.onArticlesChanged(List.of("1"));
+
+        ArgumentCaptor<List<WriteModel<Document>>> modelsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(availability).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        UpdateOneModel<Document> model = (UpdateOneModel<Document>) modelsCaptor.getValue().get(0);
+        assertTrue(model.getOptions().isUpsert());
+        String filter = render(model.getFilter()).toJson();
+        assertTrue(filter.contains("\"productVersion\": {\"$lt\": 2}"), filter);
+        assertTrue(filter.contains("\"articleVersionSum\": {\"$lt\": 3}"), filter);
+        BsonDocument set = render((Bson) model.getUpdate()).getDocument("$set");
+        assertEquals(2, set.getInt64("buildableQuantity").getValue());
+        assertEquals("1", set.getString("limitingArtId").getValue());
+    }
+
+    @Test
+    void onArticlesChanged_shouldFanOutThroughTheIndexOnceItIsWarm() {
+        when(articleProductIndex.isReady()).thenReturn(true);
+        when(articleProductIndex.dependents(Set.of("1")))
+                .thenReturn(List.of(new ProductRequirements("Chair", 2L, Map.of("1", 4L))));
+        stored(articles, article("1", 9L, 3L));
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(mock(BulkWriteResult.class));
+
+        productAvailabilityService.onArticlesChanged(List.of("1"));
+
+        verifyNoInteractions(products);
+        verify(availability).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    @Test
+    void onProductsChanged_shouldPutTheReadProductsIntoTheIndex() {
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(mock(BulkWriteResult.class));
+
+        productAvailabilityService.onProductsChanged(List.of("Chair"));
+
+        verify(articleProductIndex).put(new ProductRequirements("Chair", 2L, Map.of("1", 4L)));
+    }
+
+    @Test
+    void onArticlesChanged_shouldIgnoreDuplicateKeysOfAlreadyNewerResults() {
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        // a concurrent recompute stored a newer result; the guarded upsert collides with its _id
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenThrow(new MongoBulkWriteException(
+                mock(BulkWriteResult.class), List.of(new BulkWriteError(11000, "dup", new BsonDocument(), 0)),
+                null, new ServerAddress()));
+
+        assertDoesNotThrow(() -> productAvailabilityService.onArticlesChanged(List.of("1")));
+        assertEquals(1, meterRegistry.get(ProductAvailabilityService.RECOMPUTE_METRIC)
+                .tags("trigger", "article", "outcome", "success").timer().count());
+    }
+
+    @Test
+    void onProductsChanged_shouldNotTouchMongoWhenDisabled() {
+        productAvailabilityService = service(new AvailabilityProperties(false, true, Duration.ofMinutes(15)), false);
+
+        productAvailabilityService.onProductsChanged(List.of("Chair"));
+
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onArticlesChanged_shouldRecordADeltaInTheSameTransactionWhenTheQuantityChanged() {
+        productAvailabilityService = service(new AvailabilityProperties(true, true, Duration.ofMinutes(15)), true);
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        stored(availability, storedAvailability("Chair", 1L, 2L, 2L));
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(mock(BulkWriteResult.class));
+
+        productAvailabilityService.onArticlesChanged(List.of("1"));
+
+        ArgumentCaptor<List<WriteModel<Document>>> modelsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(availability).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        UpdateOneModel<Document> model = (UpdateOneModel<Document>) modelsCaptor.getValue().get(0);
+        // the stored pair was checked inside the transaction; a guard in the filter would abort it on a collision
+        assertEquals("{\"_id\": \"Chair\"}", render(model.getFilter()).toJson());
+
+        ArgumentCaptor<List<Document>> deltasCaptor = ArgumentCaptor.forClass(List.class);
+        verify(outbox).insertMany(deltasCaptor.capture());
+        Document delta = deltasCaptor.getValue().get(0);
+        assertEquals("Chair", delta.getString("name"));
+        assertEquals(1L, delta.getLong("previousBuildableQuantity"));
+        assertEquals(2L, delta.getLong("buildableQuantity"));
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void onArticlesChanged_shouldSkipProductsWithAnEqualOrNewerStoredResultInsideTheTransaction() {
+        productAvailabilityService = service(new AvailabilityProperties(true, true, Duration.ofMinutes(15)), true);
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        stored(availability, storedAvailability("Chair", 5L, 2L, 3L));
+
+        productAvailabilityService.onArticlesChanged(List.of("1"));
+
+        verify(availability, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verifyNoInteractions(outbox);
+    }
+
+    @Test
+    void onArticlesChanged_shouldNotRecordADeltaWhenTheQuantityIsUnchanged() {
+        productAvailabilityService = service(new AvailabilityProperties(true, true, Duration.ofMinutes(15)), true);
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        stored(availability, storedAvailability("Chair", 2L, 2L, 2L));
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(mock(BulkWriteResult.class));
+
+        productAvailabilityService.onArticlesChanged(List.of("1"));
+
+        verify(availability).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verifyNoInteractions(outbox);
+    }
+
+    @Test
+    void onArticlesChanged_shouldRetryTheTransactionOnATransientError() {
+        productAvailabilityService = service(new AvailabilityProperties(true, true, Duration.ofMinutes(15)), true);
+        stored(products, product("Chair", 2L, requirement("1", 4L)));
+        stored(articles, article("1", 9L, 3L));
+        stored(availability);
+        MongoException writeConflict = new MongoException(112, "WriteConflict");
+        writeConflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+        when(availability.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenThrow(writeConflict)
+                .thenReturn(mock(BulkWriteResult.class));
+
+        productAvailabilityService.onArticlesChanged(List.of("1"));
+
+        verify(availability, times(2)).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verify(transactionManager).rollback(any());
+        verify(transactionManager).commit(any());
+        assertEquals(1, meterRegistry.get(ProductAvailabilityService.RECOMPUTE_METRIC)
+                .tags("trigger", "article", "outcome", "success").timer().count());
+    }
+
+    private ProductAvailabilityService service(AvailabilityProperties availabilityProperties, boolean outboxEnabled) {
+        return new ProductAvailabilityService(mongoTemplate, availabilityProperties, articleProductIndex,
+                new OutboxProperties(outboxEnabled, "availability", Duration.ofMillis(500), 500, Duration.ofSeconds(30)),
+                transactionManager, meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void stored(MongoCollection<Document> collection, Document... documents) {
+        FindIterable<Document> findIterable = mock(FindIterable.class);
+        when(collection.find(any(Bson.class))).thenReturn(findIterable);
+        when(findIterable.projection(any())).thenReturn(findIterable);
+        doAnswer(inv -> {
+            Consumer<Document> action = inv.getArgument(0);
+            List.of(documents).forEach(action);
+            return null;
+        }).when(findIterable).forEach(any());
+    }
+
+    private static Document product(String name, Long version, Document... requirements) {
+        return new Document("name", name).append("version", version).append("containArticles", List.of(requirements));
+    }
+
+    private static Document requirement(String artId, Long amountOf) {
+        return new Document("artId", artId).append("amountOf", amountOf);
+    }
+
+    private static Document article(String artId, Long stock, Long version) {
+        return new Document("_id", artId).append("stock", stock).append("version", version);
+    }
+
+    private static Document storedAvailability(String name, Long buildableQuantity, Long productVersion,
+                                                Long articleVersionSum) {
+        return new Document("_id", name).append("buildableQuantity", buildableQuantity)
+                .append("productVersion", productVersion).append("articleVersionSum", articleVersionSum);
+    }
+
+    private static BsonDocument render(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+}
@@ -1,26 +1,38 @@
 package com.ikea.warehouse_data_consumer.service;
 
+import com.ikea.warehouse_data_consumer.cache.ProductVersionCache;
+import com.ikea.warehouse_data_consumer.concurrent.ProductChunkSizer;
+import com.ikea.warehouse_data_consumer.concurrent.KeyPartitionedBulkExecutor;
+import com.ikea.warehouse_data_consumer.concurrent.MongoCircuitBreaker;
+import com.ikea.warehouse_data_consumer.config.mongo.ChunkSizeProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.CircuitBreakerProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties;
+import com.ikea.warehouse_data_consumer.config.mongo.MongoWriteProperties.WriteMode;
+import com.ikea.warehouse_data_consumer.config.mongo.VersionCacheProperties;
 import com.ikea.warehouse_data_consumer.data.document.ProductDocument;
 import com.ikea.warehouse_data_consumer.data.event.ProductUpdateEvent;
 import com.ikea.warehouse_data_consumer.data.exception.ProductDocumentMongoWriteException;
+import com.ikea.warehouse_data_consumer.metrics.ConsumerMetrics;
 import com.mongodb.MongoBulkWriteException;
 import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.BulkWriteOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.mongodb.core.MongoTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -28,22 +40,37 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ProductServiceTest {
 
+    private static final ChunkSizeProperties SINGLE_CHUNK =
+            new ChunkSizeProperties(false, 500, 50, 5000, Duration.ofMillis(200), 50, 0.5);
+    private static final CircuitBreakerProperties NO_BREAKER =
+            new CircuitBreakerProperties(false, 5, Duration.ofSeconds(30), 50);
+
     @Mock
     MongoTemplate mongoTemplate;
 
+    @Mock
+    ProductAvailabilityService productAvailabilityService;
+
     @Mock
     MongoCollection<Document> collection;
 
     @Mock
     com.mongodb.client.FindIterable<Document> findIterable;
 
-    @InjectMocks
     ProductService productService;
 
+    SimpleMeterRegistry meterRegistry;
+
     String collectionName;
 
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productService = new ProductService(mongoTemplate, new MongoWriteProperties(WriteMode.VERSIONED, 1),
+                new KeyPartitionedBulkExecutor(),
+                new ProductVersionCache(new VersionCacheProperties(true, 1_000), meterRegistry), meterRegistry,
+                new ConsumerMetrics(meterRegistry), new ProductChunkSizer(SINGLE_CHUNK, meterRegistry),
+                new MongoCircuitBreaker(NO_BREAKER, meterRegistry), productAvailabilityService);
         collectionName = "productDocument";
         lenient().when(mongoTemplate.getCollectionName(ProductDocument.class)).thenReturn(collectionName);
         lenient().when(mongoTemplate.getCollection(collectionName)).thenReturn(collection);
@@ -54,11 +81,15 @@ class ProductServiceTest {
         lenient().when(findIterable.first()).thenReturn(null);
         // For batch prefetch, do nothing on forEach
         lenient().doAnswer(inv -> null).when(findIterable).forEach(any());
+        // Read-back of ambiguous bulk write operations goes to the primary
+        lenient().when(collection.withReadPreference(any())).thenReturn(collection);
     }
 
     @Test
     void proceedProductUpdateEvent_shouldCallUpdateOneWithUpsert_andIncludeVersionOps() {
         ProductUpdateEvent event = new ProductUpdateEvent("chair", List.of(), Instant.parse("2024-01-01T00:00:00Z"));
+        when(collection.updateOne(any(Bson.class), any(Bson.class), any(com.mongodb.client.model.UpdateOptions.class)))
+                .thenReturn(com.mongodb.client.result.UpdateResult.acknowledged(0L, 0L, new org.bson.BsonString("1")));
 
         // no exception expected
         productService.proceedProductUpdateEvent(event);
@@ -82,20 +113,91 @@ class ProductServiceTest {
     }
 
     @Test
-    void proceedProductUpdateBatchEvent_shouldThrowWhenNotMatchedCriteriaExists() {
+    void proceedProductUpdateBatchEvent_shouldNotRejectAnythingWhenUpsertAndMatchCoverTheBatch() {
         ProductUpdateEvent e1 = new ProductUpdateEvent("a", List.of(), Instant.parse("2024-01-01T00:00:00Z"));
         ProductUpdateEvent e2 = new ProductUpdateEvent("b", List.of(), Instant.parse("2024-01-02T00:00:00Z"));
 
-        // Simulate bulk result: matchedCount 1 (only one matched), and upsert for index 0 -> means index 1 not matched
+        // matchedCount excludes upserts: index 0 upserted, index 1 matched
         BulkWriteResult result = mock(BulkWriteResult.class);
         when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
         when(result.getMatchedCount()).thenReturn(1);
 
         when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
 
+        assertDoesNotThrow(() -> productService.proceedProductUpdateBatchEvent(List.of(e1, e2)));
+        verify(collection, never()).withReadPreference(any());
+    }
+
+    @Test
+    void proceedProductUpdateBatchEvent_shouldRetryOnlyConflictedEventsAndDropStaleOnes() {
+        ProductUpdateEvent applied = new ProductUpdateEvent("a", List.of(), Instant.parse("2024-01-02T00:00:00Z"));
+        ProductUpdateEvent stale = new ProductUpdateEvent("b", List.of(), Instant.parse("2024-01-02T00:00:00Z"));
+        ProductUpdateEvent conflicted = new ProductUpdateEvent("c", List.of(), Instant.parse("2024-01-03T00:00:00Z"));
+
+        // two of the three operations missed
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of());
+        when(result.getMatchedCount()).thenReturn(1);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+        storedDocuments(storedDocument("a", applied.fileCreatedAt()),
+                storedDocument("b", Instant.parse("2024-01-05T00:00:00Z")),
+                storedDocument("c", Instant.parse("2024-01-01T00:00:00Z")));
+
         ProductDocumentMongoWriteException ex = assertThrows(ProductDocumentMongoWriteException.class,
-                () -> productService.proceedProductUpdateBatchEvent(List.of(e1, e2)));
-        assertTrue(ex.getCriteriaNotMatchedEvents().contains(e2));
+                () -> productService.proceedProductUpdateBatchEvent(List.of(applied, stale, conflicted)));
+        assertEquals(List.of(conflicted), ex.getFailedEvents());
+        assertTrue(ex.getCriteriaNotMatchedEvents().isEmpty());
+        assertEquals(1.0, meterRegistry.counter("warehouse.consumer.events.stale", "entity", "product").count());
+    }
+
+    @Test
+    void proceedProductUpdateBatchEvent_shouldWriteOnlyNewestEventPerName() {
+        ProductUpdateEvent older = new ProductUpdateEvent("chair", List.of(), Instant.parse("2024-01-01T00:00:00Z"));
+        ProductUpdateEvent newer = new ProductUpdateEvent("chair", List.of(), Instant.parse("2024-01-02T00:00:00Z"));
+
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of());
+        when(result.getMatchedCount()).thenReturn(1);
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+
+        assertDoesNotThrow(() -> productService.proceedProductUpdateBatchEvent(List.of(older, newer)));
+
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        assertEquals(1, modelsCaptor.getValue().size());
+    }
+
+    @Test
+    void proceedProductUpdateBatchEvent_shouldRecordTheMessageIdAndSkipItsReplay() {
+        ProductUpdateEvent event = new ProductUpdateEvent("chair", List.of(), Instant.parse("2024-01-01T00:00:00Z"));
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenReturn(result);
+
+        productService.proceedProductUpdateBatchEvent(List.of(event), Map.of(event, "product-0@7"));
+        ProductUpdateEvent replayed = new ProductUpdateEvent("chair", List.of(), Instant.parse("2024-01-01T00:00:00Z"));
+        productService.proceedProductUpdateBatchEvent(List.of(replayed), Map.of(replayed, "product-0@7"));
+
+        org.mockito.ArgumentCaptor<List<com.mongodb.client.model.WriteModel<Document>>> modelsCaptor =
+                org.mockito.ArgumentCaptor.forClass(List.class);
+        verify(collection, times(1)).bulkWrite(modelsCaptor.capture(), any(BulkWriteOptions.class));
+        Bson update = ((com.mongodb.client.model.UpdateOneModel<Document>) modelsCaptor.getValue().get(0)).getUpdate();
+        org.bson.BsonDocument set = update.toBsonDocument(Document.class,
+                com.mongodb.MongoClientSettings.getDefaultCodecRegistry()).getDocument("$set");
+        assertEquals(new org.bson.BsonString("product-0@7"), set.get("lastMessageId"));
+        assertEquals(1.0, meterRegistry.counter(InventoryService.DUPLICATE_EVENTS_METRIC, "entity", "product").count());
+    }
+
+    @Test
+    void proceedProductUpdateBatchEvent_shouldSkipMessagesThatAppliedTheStoredProductOfACacheMiss() {
+        ProductUpdateEvent replayed = new ProductUpdateEvent("chair", List.of(), Instant.parse("2024-01-01T00:00:00Z"));
+        storedDocuments(storedDocument("chair", replayed.fileCreatedAt()).append("lastMessageId", "product-0@7"));
+
+        productService.proceedProductUpdateBatchEvent(List.of(replayed), Map.of(replayed, "product-0@7"));
+
+        verify(collection, never()).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        assertEquals(1.0, meterRegistry.counter(InventoryService.DUPLICATE_EVENTS_METRIC, "entity", "product").count());
     }
 
     @Test
@@ -106,10 +208,10 @@ class ProductServiceTest {
         // mock BulkWriteException with write result and one error at index 1
         BulkWriteResult result = mock(BulkWriteResult.class);
         when(result.getUpserts()).thenReturn(List.of());
-        when(result.getMatchedCount()).thenReturn(0);
+        when(result.getMatchedCount()).thenReturn(1);
 
         org.bson.BsonDocument details = new org.bson.BsonDocument();
-        BulkWriteError writeError = new BulkWriteError(11000, "dup", details, 1);
+        BulkWriteError writeError = new BulkWriteError(91, "shutdown in progress", details, 1);
         com.mongodb.ServerAddress serverAddress = new com.mongodb.ServerAddress();
         com.mongodb.bulk.WriteConcernError wcError = null;
         MongoBulkWriteException bulkEx = new MongoBulkWriteException(result, List.of(writeError), wcError, serverAddress);
@@ -119,7 +221,7 @@ class ProductServiceTest {
         ProductDocumentMongoWriteException ex = assertThrows(ProductDocumentMongoWriteException.class,
                 () -> productService.proceedProductUpdateBatchEvent(List.of(e1, e2)));
         assertEquals(List.of(e2), ex.getFailedEvents());
-        assertTrue(ex.getCriteriaNotMatchedEvents().containsAll(List.of(e1, e2)));
+        assertTrue(ex.getCriteriaNotMatchedEvents().isEmpty());
     }
 
     @Test
@@ -138,4 +240,16 @@ class ProductServiceTest {
         assertThrows(org.springframework.dao.OptimisticLockingFailureException.class,
                 () -> productService.proceedProductUpdateEvent(event));
     }
+
+    private void storedDocuments(Document... documents) {
+        doAnswer(inv -> {
+            java.util.function.Consumer<Document> action = inv.getArgument(0);
+            List.of(documents).forEach(action);
+            return null;
+        }).when(findIterable).forEach(any());
+    }
+
+    private static Document storedDocument(String name, Instant fileCreatedAt) {
+        return new Document("name", name).append("version", 1L).append("fileCreatedAt", java.util.Date.from(fileCreatedAt));
+    }
 }
@@ -0,0 +1,45 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import com.ikea.warehouse_data_consumer.data.dto.RecordSendResult;
+import com.ikea.warehouse_data_consumer.data.dto.SendBatchResult;
+import com.ikea.warehouse_data_consumer.data.event.KafkaKeyValueRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchAckUtilTest {
+
+    private final String first = new String("a");
+    private final String second = new String("b");
+    private final String third = new String("c");
+
+    @Test
+    void firstUnsafeIndex_shouldReturnMinusOneWhenAllSent() {
+        SendBatchResult result = new SendBatchResult("retry", List.of(
+                RecordSendResult.sent(new KafkaKeyValueRecord("a", first), null)));
+
+        assertEquals(-1, BatchAckUtil.firstUnsafeIndex(List.of(first, second, third), List.of(result)));
+    }
+
+    @Test
+    void firstUnsafeIndex_shouldReturnLowestFailedIndexAcrossTopics() {
+        SendBatchResult retry = new SendBatchResult("retry", List.of(
+                RecordSendResult.failed(new KafkaKeyValueRecord("c", third), new IllegalStateException())));
+        SendBatchResult error = new SendBatchResult("error", List.of(
+                RecordSendResult.sent(new KafkaKeyValueRecord("a", first), null),
+                RecordSendResult.failed(new KafkaKeyValueRecord("b", second), new IllegalStateException())));
+
+        assertEquals(1, BatchAckUtil.firstUnsafeIndex(List.of(first, second, third), List.of(retry, error)));
+    }
+
+    @Test
+    void firstUnsafeIndex_shouldMatchByIdentityAndFallBackToZero() {
+        String equalButDistinct = new String("b");
+        SendBatchResult result = new SendBatchResult("retry", List.of(
+                RecordSendResult.failed(new KafkaKeyValueRecord("b", equalButDistinct), new IllegalStateException())));
+
+        assertEquals(0, BatchAckUtil.firstUnsafeIndex(List.of(first, second, third), List.of(result)));
+    }
+}
@@ -0,0 +1,48 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import com.ikea.warehouse_data_consumer.data.event.InventoryUpdateEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventCoalesceUtilTest {
+
+    @Test
+    void coalesceLatest_shouldKeepNewestEventPerKey() {
+        InventoryUpdateEvent a1 = new InventoryUpdateEvent("1", "a", 1L, Instant.parse("2024-01-02T00:00:00Z"));
+        InventoryUpdateEvent b1 = new InventoryUpdateEvent("2", "b", 2L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent a2 = new InventoryUpdateEvent("1", "a", 3L, Instant.parse("2024-01-01T00:00:00Z"));
+        InventoryUpdateEvent a3 = new InventoryUpdateEvent("1", "a", 4L, Instant.parse("2024-01-03T00:00:00Z"));
+
+        EventCoalesceUtil.CoalescedEvents<InventoryUpdateEvent> result = EventCoalesceUtil.coalesceLatest(
+                List.of(a1, b1, a2, a3), InventoryUpdateEvent::artId, InventoryUpdateEvent::fileCreatedAt);
+
+        assertEquals(List.of(a3, b1), result.latest());
+        assertEquals(List.of(a2, a1), result.superseded());
+    }
+
+    @Test
+    void coalesceLatest_shouldPreferLaterEventWhenTimestampsAreEqual() {
+        Instant ts = Instant.parse("2024-01-01T00:00:00Z");
+        InventoryUpdateEvent first = new InventoryUpdateEvent("1", "a", 1L, ts);
+        InventoryUpdateEvent second = new InventoryUpdateEvent("1", "a", 2L, ts);
+
+        EventCoalesceUtil.CoalescedEvents<InventoryUpdateEvent> result = EventCoalesceUtil.coalesceLatest(
+                List.of(first, second), InventoryUpdateEvent::artId, InventoryUpdateEvent::fileCreatedAt);
+
+        assertEquals(List.of(second), result.latest());
+        assertEquals(List.of(first), result.superseded());
+    }
+
+    @Test
+    void coalesceLatest_shouldReturnEmptyForEmptyInput() {
+        EventCoalesceUtil.CoalescedEvents<InventoryUpdateEvent> result = EventCoalesceUtil.coalesceLatest(
+                List.of(), InventoryUpdateEvent::artId, InventoryUpdateEvent::fileCreatedAt);
+        assertTrue(result.latest().isEmpty());
+        assertTrue(result.superseded().isEmpty());
+    }
+}
@@ -0,0 +1,43 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeyPartitionUtilTest {
+
+    @Test
+    void partitionByKey_shouldKeepSameKeyTogetherAndPreserveOrder() {
+        List<String> items = List.of("a", "b", "a", "c", "b", "a");
+
+        List<List<String>> partitions = KeyPartitionUtil.partitionByKey(items, Function.identity(), 3);
+
+        assertEquals(items.size(), partitions.stream().mapToInt(List::size).sum());
+        for (String key : List.of("a", "b", "c")) {
+            List<String> owning = partitions.stream().filter(p -> p.contains(key)).findFirst().orElseThrow();
+            assertEquals(items.stream().filter(key::equals).count(), owning.stream().filter(key::equals).count(),
+                    key + " split across partitions");
+        }
+    }
+
+    @Test
+    void partitionByKey_shouldReturnSingleBatchWhenParallelismIsOne() {
+        List<String> items = List.of("a", "b");
+        assertEquals(List.of(items), KeyPartitionUtil.partitionByKey(items, Function.identity(), 1));
+    }
+
+    @Test
+    void bucketOf_shouldMatchTheSubBatchOfPartitionByKey() {
+        List<String> items = List.of("a", "b", "c", "d");
+
+        List<List<String>> partitions = KeyPartitionUtil.partitionByKey(items, Function.identity(), 2);
+
+        for (List<String> partition : partitions) {
+            assertEquals(1, partition.stream().map(key -> KeyPartitionUtil.bucketOf(key, 2)).distinct().count());
+        }
+        assertEquals(0, KeyPartitionUtil.bucketOf(null, 8));
+    }
+}
@@ -1,10 +1,17 @@
 package com.ikea.warehouse_data_consumer.util;
 
+import com.ikea.warehouse_data_consumer.data.dto.WriteOutcome;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.bulk.BulkWriteUpsert;
+import org.bson.BsonDocument;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -13,26 +20,106 @@ import static org.mockito.Mockito.when;
 
 class MongoBulkUtilTest {
 
+    private static final Instant T1 = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant T2 = Instant.parse("2024-01-02T00:00:00Z");
+
     @Test
-    void getNotMatchedCriteria_shouldReturnEmptyWhenAllMatched() {
-        List<String> items = List.of("a", "b");
+    void getAmbiguousIndexes_shouldReturnEmptyWhenAllMatched() {
         BulkWriteResult result = mock(BulkWriteResult.class);
-        when(result.getMatchedCount()).thenReturn(items.size());
+        when(result.getMatchedCount()).thenReturn(2);
         when(result.getUpserts()).thenReturn(List.of());
 
-        List<String> notMatched = MongoBulkUtil.getNotMatchedCriteria(items, result);
-        assertTrue(notMatched.isEmpty());
+        assertTrue(MongoBulkUtil.getAmbiguousIndexes(2, result, List.of()).isEmpty());
     }
 
     @Test
-    void getNotMatchedCriteria_shouldReturnNonUpsertedWhenMatchedLessThanSize() {
-        List<String> items = List.of("a", "b", "c");
+    void getAmbiguousIndexes_shouldNotCountUpsertsAsMisses() {
+        // Mongo's matchedCount excludes upserts: one upsert plus one match is a fully applied batch of two.
         BulkWriteResult result = mock(BulkWriteResult.class);
         when(result.getMatchedCount()).thenReturn(1);
         when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
 
-        List<String> notMatched = MongoBulkUtil.getNotMatchedCriteria(items, result);
-        // indices 1 and 2 should be not matched
-        assertEquals(List.of("b", "c"), notMatched);
+        assertTrue(MongoBulkUtil.getAmbiguousIndexes(2, result, List.of()).isEmpty());
+    }
+
+    @Test
+    void getAmbiguousIndexes_shouldReturnNonUpsertedWhenMatchedLessThanCandidates() {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(1);
+        when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
+
+        // one of indices 1 and 2 missed, the counts do not tell which
+        assertEquals(List.of(1, 2), MongoBulkUtil.getAmbiguousIndexes(3, result, List.of()));
+    }
+
+    @Test
+    void getPossiblyStaleIndexes_shouldReturnTheMatchedOperationsWhenNotAllOfThemModified() {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getModifiedCount()).thenReturn(1);
+        when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
+        List<BulkWriteError> writeErrors = List.of(new BulkWriteError(91, "shutdown", new BsonDocument(), 3));
+
+        // one of indices 1 and 2 matched without modifying, the counts do not tell which
+        assertEquals(List.of(1, 2), MongoBulkUtil.getPossiblyStaleIndexes(4, result, writeErrors));
+
+        when(result.getModifiedCount()).thenReturn(2);
+        assertTrue(MongoBulkUtil.getPossiblyStaleIndexes(4, result, writeErrors).isEmpty());
+    }
+
+    @Test
+    void getAmbiguousIndexes_shouldTreatDuplicateKeyErrorsAsAmbiguousAndOtherErrorsAsSettled() {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(1);
+        when(result.getUpserts()).thenReturn(List.of());
+        List<BulkWriteError> writeErrors = List.of(
+                new BulkWriteError(MongoBulkUtil.DUPLICATE_KEY_ERROR_CODE, "dup", new BsonDocument(), 2),
+                new BulkWriteError(91, "shutdown", new BsonDocument(), 0));
+
+        assertEquals(List.of(2), MongoBulkUtil.getAmbiguousIndexes(3, result, writeErrors));
+    }
+
+    @Test
+    void resolveOutcomes_shouldVerifyOnlyAmbiguousItems() {
+        List<String> items = List.of("upserted", "stale", "applied", "conflict", "failed", "missing");
+        Map<String, Instant> fileCreatedAt = Map.of("upserted", T2, "stale", T1, "applied", T2, "conflict", T2,
+                "failed", T2, "missing", T2);
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(1);
+        when(result.getUpserts()).thenReturn(List.of(new BulkWriteUpsert(0, null)));
+        List<BulkWriteError> writeErrors = List.of(new BulkWriteError(91, "shutdown", new BsonDocument(), 4));
+
+        List<Set<String>> reads = new ArrayList<>();
+        List<WriteOutcome> outcomes = MongoBulkUtil.resolveOutcomes(items, result, writeErrors, item -> item,
+                fileCreatedAt::get, keys -> {
+                    reads.add(keys);
+                    return Map.of("stale", T2, "applied", T2, "conflict", T1);
+                });
+
+        assertEquals(List.of(WriteOutcome.APPLIED, WriteOutcome.STALE, WriteOutcome.APPLIED, WriteOutcome.CONFLICT,
+                WriteOutcome.ERROR, WriteOutcome.CONFLICT), outcomes);
+        assertEquals(List.of(Set.of("stale", "applied", "conflict", "missing")), reads);
+    }
+
+    @Test
+    void resolveOutcomes_shouldNotReadWhenCountsSettleEveryItem() {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(2);
+        when(result.getUpserts()).thenReturn(List.of());
+
+        List<WriteOutcome> outcomes = MongoBulkUtil.resolveOutcomes(List.of("a", "b"), result, List.of(), item -> item,
+                item -> T1, keys -> {
+                    throw new AssertionError("unexpected read of " + keys);
+                });
+
+        assertEquals(List.of(WriteOutcome.APPLIED, WriteOutcome.APPLIED), outcomes);
+    }
+
+    @Test
+    void classify_shouldCompareAtMillisecondPrecision() {
+        Instant event = Instant.parse("2024-01-01T00:00:00.123456Z");
+
+        assertEquals(WriteOutcome.APPLIED, MongoBulkUtil.classify(event, Instant.parse("2024-01-01T00:00:00.123Z")));
+        assertEquals(WriteOutcome.STALE, MongoBulkUtil.classify(event, Instant.parse("2024-01-01T00:00:00.124Z")));
+        assertEquals(WriteOutcome.CONFLICT, MongoBulkUtil.classify(event, Instant.parse("2024-01-01T00:00:00.122Z")));
     }
 }
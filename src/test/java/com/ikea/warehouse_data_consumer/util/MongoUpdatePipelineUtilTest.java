@@ -0,0 +1,38 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MongoUpdatePipelineUtilTest {
+
+    @Test
+    void setIfNewerPipeline_shouldGuardEveryFieldOnFileCreatedAt() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("name", "$leg");
+        fields.put("stock", 12L);
+
+        List<Bson> pipeline = MongoUpdatePipelineUtil.setIfNewerPipeline(Instant.parse("2024-01-01T00:00:00Z"), fields);
+
+        assertEquals(1, pipeline.size());
+        BsonDocument set = pipeline.get(0)
+                .toBsonDocument(Document.class, MongoClientSettings.getDefaultCodecRegistry())
+                .getDocument("$set");
+        assertEquals(List.of("name", "stock", "fileCreatedAt", "version"), List.copyOf(set.keySet()));
+        for (String field : set.keySet()) {
+            assertTrue(set.getDocument(field).containsKey("$cond"), field + " should be conditional");
+        }
+        // values are literals so a leading '$' is not treated as a field path
+        BsonDocument nameThen = set.getDocument("name").getArray("$cond").get(1).asDocument();
+        assertEquals("$leg", nameThen.getString("$literal").getValue());
+    }
+}
@@ -0,0 +1,49 @@
+package com.ikea.warehouse_data_consumer.util;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RetryHeaderUtilTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+
+    @Test
+    void attemptAndNotBefore_shouldRoundTripThroughHeaders() {
+        Headers headers = RetryHeaderUtil.retryHeaders(3, NOW);
+
+        assertEquals(3, RetryHeaderUtil.attempt(headers));
+        assertEquals(NOW, RetryHeaderUtil.notBefore(headers));
+    }
+
+    @Test
+    void attemptAndNotBefore_shouldTreatRecordsWithoutHeadersAsFirstAttemptDueNow() {
+        Headers headers = new RecordHeaders();
+
+        assertEquals(1, RetryHeaderUtil.attempt(headers));
+        assertEquals(Instant.EPOCH, RetryHeaderUtil.notBefore(headers));
+    }
+
+    @Test
+    void dueCount_shouldStopAtFirstRecordThatIsNotDue() {
+        List<ConsumerRecord<String, String>> records = List.of(
+                record(0, new RecordHeaders()),
+                record(1, RetryHeaderUtil.retryHeaders(2, NOW.minusSeconds(1))),
+                record(2, RetryHeaderUtil.retryHeaders(2, NOW.plusSeconds(5))),
+                record(3, RetryHeaderUtil.retryHeaders(2, NOW.minusSeconds(1))));
+
+        assertEquals(2, RetryHeaderUtil.dueCount(records, NOW));
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, Headers headers) {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>("retry", 0, offset, "key", "value");
+        headers.forEach(header -> record.headers().add(header));
+        return record;
+    }
+}